@@ -1,5 +1,6 @@
 package com.smallfish.zhiwei.agent.core;
 
+import com.smallfish.zhiwei.common.context.OpsTraceContext;
 import com.smallfish.zhiwei.service.chat.ChatService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -32,7 +33,9 @@ public abstract class BaseAgent {
      */
     public String chat(String input, String conversationId) {
         log.info("[{}] Agent 收到请求: {}", getRoleName(), input);
-        String response = chatService.executeChat(input, conversationId, getSystemPrompt());
+        // 以当前角色执行，工具与 LLM 埋点会按角色打标签
+        String response = OpsTraceContext.withRole(getRoleName(),
+                () -> chatService.executeChat(input, conversationId, getSystemPrompt()));
         log.info("[{}] Agent 响应完成", getRoleName());
         return response;
     }
@@ -40,10 +43,12 @@ public abstract class BaseAgent {
     /**
      * 流式执行
      * 用于 ReviewerAgent 生成报告时展示打字机效果
+     * 流在订阅时才组装，角色在订阅线程上绑定后随工具上下文传给工具埋点 (工具跑在 Reactor 线程上)
      */
     public Flux<String> streamChat(String input, String conversationId) {
         log.info("[{}] Agent 开始流式请求: {}", getRoleName(), input);
-        return chatService.streamChatContent(input, conversationId, getSystemPrompt())
+        return Flux.defer(() -> OpsTraceContext.withRole(getRoleName(),
+                        () -> chatService.streamChatContent(input, conversationId, getSystemPrompt())))
                 .doOnComplete(() -> log.info("[{}] Agent 流式响应结束", getRoleName()))
                 .doOnError(e -> log.error("[{}] Agent 流式响应异常", getRoleName(), e));
     }
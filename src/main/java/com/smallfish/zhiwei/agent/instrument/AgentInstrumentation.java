@@ -0,0 +1,59 @@
+package com.smallfish.zhiwei.agent.instrument;
+
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.service.base.AiMetricsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.support.ToolCallbacks;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Agent 埋点装配器
+ * 统一负责把工具对象和 ChatModel 包装成带埋点的版本，
+ * ChatService (ChatClient 模式) 与 AutoOpsGraphService (Graph 模式) 共用。
+ */
+@Component
+@RequiredArgsConstructor
+public class AgentInstrumentation {
+
+    private final AiMetricsService metricsService;
+
+    /**
+     * 将工具对象解析为 ToolCallback 并加上埋点
+     *
+     * @param role    默认 Agent 角色
+     * @param profile 绑定的诊断耗时分解，null 表示从线程上下文获取
+     * @param tools   带 @Tool 注解的工具对象
+     */
+    public ToolCallback[] wrapTools(String role, DiagnosisProfile profile, Object... tools) {
+        return wrapTools(role, profile, (ToolCallListener) null, tools);
+    }
+
+    /**
+     * 将工具对象解析为 ToolCallback 并加上埋点，同时把调用事件推送给监听器
+     *
+     * @param role     默认 Agent 角色
+     * @param profile  绑定的诊断耗时分解，null 表示从线程上下文获取
+     * @param listener 工具调用事件监听器，可为 null
+     * @param tools    带 @Tool 注解的工具对象
+     */
+    public ToolCallback[] wrapTools(String role, DiagnosisProfile profile, ToolCallListener listener, Object... tools) {
+        return Arrays.stream(ToolCallbacks.from(tools))
+                .map(callback -> (ToolCallback) new InstrumentedToolCallback(callback, role, profile, metricsService, listener))
+                .toArray(ToolCallback[]::new);
+    }
+
+    /**
+     * 包装 ChatModel，记录 LLM 调用耗时与 Token
+     *
+     * @param role    节点角色
+     * @param profile 绑定的诊断耗时分解，可为 null
+     * @param model   原始模型
+     */
+    public ChatModel wrapModel(String role, DiagnosisProfile profile, ChatModel model) {
+        return new InstrumentedChatModel(model, role, profile, metricsService);
+    }
+}
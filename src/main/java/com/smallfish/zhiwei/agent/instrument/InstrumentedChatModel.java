@@ -0,0 +1,103 @@
+package com.smallfish.zhiwei.agent.instrument;
+
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.service.base.AiMetricsService;
+import com.smallfish.zhiwei.utils.TokenEstimator;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * LLM 调用埋点装饰器
+ * 用于 Graph 模式下的各个节点 (Supervisor / Planner / Executor)，
+ * 优先使用模型返回的 Usage，缺失时回退到本地估算。
+ */
+public class InstrumentedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final String role;
+    private final DiagnosisProfile profile;
+    private final AiMetricsService metricsService;
+
+    public InstrumentedChatModel(ChatModel delegate, String role,
+                                 DiagnosisProfile profile, AiMetricsService metricsService) {
+        this.delegate = delegate;
+        this.role = role;
+        this.profile = profile;
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        long start = System.nanoTime();
+        ChatResponse response = null;
+        boolean error = false;
+        try {
+            response = delegate.call(prompt);
+            return response;
+        } catch (RuntimeException e) {
+            error = true;
+            throw e;
+        } finally {
+            Usage usage = response != null && response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+            metricsService.recordLlmCall(role, profile, System.nanoTime() - start,
+                    promptTokens(prompt, usage), completionTokens(response, usage), error);
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong completionChars = new AtomicLong();
+            AtomicReference<Usage> lastUsage = new AtomicReference<>();
+            return delegate.stream(prompt)
+                    .doOnNext(response -> {
+                        if (response.getResult() != null && response.getResult().getOutput().getText() != null) {
+                            completionChars.addAndGet(TokenEstimator.estimate(response.getResult().getOutput().getText()));
+                        }
+                        if (response.getMetadata() != null && response.getMetadata().getUsage() != null) {
+                            lastUsage.set(response.getMetadata().getUsage());
+                        }
+                    })
+                    .doFinally(signal -> {
+                        Usage usage = lastUsage.get();
+                        long completion = usage != null && usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0
+                                ? usage.getCompletionTokens()
+                                : completionChars.get();
+                        metricsService.recordLlmCall(role, profile, System.nanoTime() - start,
+                                promptTokens(prompt, usage), completion,
+                                signal == SignalType.ON_ERROR);
+                    });
+        });
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    private long promptTokens(Prompt prompt, Usage usage) {
+        if (usage != null && usage.getPromptTokens() != null && usage.getPromptTokens() > 0) {
+            return usage.getPromptTokens();
+        }
+        return prompt == null ? 0 : TokenEstimator.estimate(prompt.getContents());
+    }
+
+    private long completionTokens(ChatResponse response, Usage usage) {
+        if (usage != null && usage.getCompletionTokens() != null && usage.getCompletionTokens() > 0) {
+            return usage.getCompletionTokens();
+        }
+        if (response == null || response.getResult() == null) {
+            return 0;
+        }
+        return TokenEstimator.estimate(response.getResult().getOutput().getText());
+    }
+}
@@ -0,0 +1,120 @@
+package com.smallfish.zhiwei.agent.instrument;
+
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.common.context.OpsTraceContext;
+import com.smallfish.zhiwei.service.base.AiMetricsService;
+import com.smallfish.zhiwei.utils.TokenEstimator;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.regex.Pattern;
+
+/**
+ * 工具调用埋点装饰器
+ * 包装 Spring AI 的 ToolCallback，记录耗时、入参/返回大小、估算 Token 与失败情况。
+ * 工具内部大多吞掉异常返回错误报文，因此除了异常外还会识别常见的失败报文。
+ */
+public class InstrumentedToolCallback implements ToolCallback {
+
+    // 匹配 DTO 序列化后的 "success": false
+    private static final Pattern FAILED_PAYLOAD = Pattern.compile("\"success\"\\s*:\\s*false");
+
+    private final ToolCallback delegate;
+    private final String defaultRole;
+    private final DiagnosisProfile boundProfile;
+    private final AiMetricsService metricsService;
+    private final ToolCallListener listener;
+
+    /**
+     * @param delegate       原始工具回调
+     * @param defaultRole    上下文中没有角色时使用的默认角色
+     * @param boundProfile   构建时绑定的诊断耗时分解 (Graph 模式跨线程使用)，可为 null
+     * @param metricsService 埋点服务
+     * @param listener       工具调用事件监听器，可为 null
+     */
+    public InstrumentedToolCallback(ToolCallback delegate, String defaultRole, DiagnosisProfile boundProfile,
+                                    AiMetricsService metricsService, ToolCallListener listener) {
+        this.delegate = delegate;
+        this.defaultRole = defaultRole;
+        this.boundProfile = boundProfile;
+        this.metricsService = metricsService;
+        this.listener = listener;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        // 流式调用时工具不在组装流的线程上执行，优先取工具上下文里的角色
+        Object contextRole = toolContext == null ? null : toolContext.getContext().get(OpsTraceContext.TOOL_CONTEXT_ROLE);
+        String role = contextRole != null ? contextRole.toString() : OpsTraceContext.currentRole(defaultRole);
+        DiagnosisProfile profile = boundProfile != null ? boundProfile : OpsTraceContext.currentProfile();
+
+        String toolName = delegate.getToolDefinition().name();
+        if (listener != null) {
+            listener.onStart(toolName, toolInput);
+        }
+
+        // Graph 节点可能跑在其他线程上，工具执行期间补绑诊断上下文 (租户等)
+        boolean rebind = boundProfile != null && OpsTraceContext.currentProfile() == null;
+        if (rebind) {
+            OpsTraceContext.bind(boundProfile);
+        }
+
+        long start = System.nanoTime();
+        String result = null;
+        boolean error = false;
+        try {
+            result = delegate.call(toolInput, toolContext);
+            error = isFailedPayload(result);
+            return result;
+        } catch (RuntimeException e) {
+            error = true;
+            throw e;
+        } finally {
+            if (rebind) {
+                OpsTraceContext.bind(null);
+            }
+            long elapsed = System.nanoTime() - start;
+            metricsService.recordToolCall(
+                    toolName,
+                    role,
+                    profile,
+                    elapsed,
+                    TokenEstimator.utf8Length(toolInput),
+                    TokenEstimator.utf8Length(result),
+                    TokenEstimator.estimate(result),
+                    error);
+            if (listener != null) {
+                listener.onFinish(toolName, elapsed / 1_000_000, error);
+            }
+        }
+    }
+
+    private boolean isFailedPayload(String result) {
+        if (result == null) {
+            return false;
+        }
+        // 工具返回被 JSON 序列化后可能带引号前缀，这里只看开头的一小段
+        String head = result.length() > 64 ? result.substring(0, 64) : result;
+        return FAILED_PAYLOAD.matcher(result).find()
+                || head.contains("查询失败")
+                || head.contains("{\"error\"")
+                || head.contains("{\\\"error\\\"");
+    }
+}
@@ -0,0 +1,27 @@
+package com.smallfish.zhiwei.agent.instrument;
+
+/**
+ * 工具调用事件监听器
+ * 用于把工具调用的开始/结束实时推送给前端 (SSE)，回调可能发生在框架线程中，实现需保证线程安全。
+ */
+public interface ToolCallListener {
+
+    /**
+     * 工具开始执行
+     *
+     * @param tool  工具名
+     * @param input 工具入参 (JSON)
+     */
+    default void onStart(String tool, String input) {
+    }
+
+    /**
+     * 工具执行结束
+     *
+     * @param tool      工具名
+     * @param elapsedMs 耗时 (毫秒)
+     * @param error     是否失败
+     */
+    default void onFinish(String tool, long elapsedMs, boolean error) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.smallfish.zhiwei.agent.tool;
+
+import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.service.alert.AlertDedupEngine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * 告警频率查询工具
+ * 读取告警去重引擎记录的滑动窗口统计，帮助 Agent 判断告警是偶发、持续还是抖动
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AlertFrequencyTools implements AgentTools {
+
+    private final AlertDedupEngine dedupEngine;
+
+    @Tool(description = """
+            查询某个告警最近的触发频率统计，包括窗口内触发次数、每分钟触发速率、抖动次数 (恢复后再次触发)、
+            首次 / 最近触发时间以及上次 AI 诊断 / 升级时间。
+            当你需要判断告警是偶发、持续恶化还是反复抖动，或者确认问题开始的时间点时使用。
+            """)
+    public String queryAlertFrequency(
+            @ToolParam(description = "告警名称 (alertname 标签)") String alertName,
+            @ToolParam(description = "实例 (instance 标签)，例如 '10.0.0.1:9100'") String instance,
+            @ToolParam(description = "租户 ID (tenant_id 标签)，不确定时请留空", required = false) String tenantId) {
+        try {
+            String tenant = StringUtils.hasText(tenantId) ? tenantId : "default";
+            log.info("Agent 查询告警频率: {} / {} / {}", tenant, alertName, instance);
+            return JSONUtil.toJsonStr(dedupEngine.stats(tenant, alertName, instance));
+        } catch (Exception e) {
+            log.error("[工具错误] queryAlertFrequency 执行失败", e);
+            return String.format("{\"error\": \"查询失败: %s\"}", e.getMessage());
+        }
+    }
+}
@@ -1,9 +1,8 @@
 package com.smallfish.zhiwei.agent.tool;
 
 import cn.hutool.core.date.DateUtil;
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
 import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.client.HttpGateway;
 import com.smallfish.zhiwei.dto.internal.PrometheusAlert;
 import com.smallfish.zhiwei.dto.internal.PrometheusAlertsResult;
 import com.smallfish.zhiwei.dto.resp.PrometheusAlertDTO;
@@ -26,6 +25,8 @@ import java.util.*;
 @Component
 public class PrometheusAlertTools implements AgentTools {
 
+    private final HttpGateway httpGateway;
+
     @Value("${prometheus.endpoint}")
     private String prometheusEndpoint;
 
@@ -35,6 +36,10 @@ public class PrometheusAlertTools implements AgentTools {
     @Value("${prometheus.mock-enabled:false}")
     private boolean mockEnabled;
 
+    public PrometheusAlertTools(HttpGateway httpGateway) {
+        this.httpGateway = httpGateway;
+    }
+
     /**
      * 查询 Prometheus 活动告警
      * 该工具从 Prometheus 告警系统检索所有当前活动/触发的告警，包括标签、注释、状态和值
@@ -155,17 +160,9 @@ public class PrometheusAlertTools implements AgentTools {
         String apiUrl = prometheusEndpoint + "/api/v1/alerts";
         log.debug("请求 Prometheus API: {}", apiUrl);
 
-        try (HttpResponse response = HttpRequest.get(apiUrl)
-                .timeout(timeoutSeconds * 1000)
-                .execute()) {
-
-            if (!response.isOk()) {
-                throw new RuntimeException("HTTP 请求失败: " + response.getStatus());
-            }
-
-            String responseBody = response.body();
-            return JSONUtil.toBean(responseBody, PrometheusAlertsResult.class);
-        }
+        // 非 2xx、超时、熔断均以 HttpGatewayException 抛出，由上层统一转为错误响应
+        String responseBody = httpGateway.get(apiUrl, Map.of(), Duration.ofSeconds(timeoutSeconds)).block();
+        return JSONUtil.toBean(responseBody, PrometheusAlertsResult.class);
     }
 
     /**
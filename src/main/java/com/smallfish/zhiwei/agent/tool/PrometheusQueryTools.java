@@ -1,9 +1,8 @@
 package com.smallfish.zhiwei.agent.tool;
 
-import cn.hutool.core.io.IORuntimeException;
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
 import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.client.HttpGateway;
+import com.smallfish.zhiwei.client.HttpGatewayException;
 import com.smallfish.zhiwei.dto.resp.PrometheusResponseDTO;
 import com.smallfish.zhiwei.utils.LttbUtils; // Added import
 import lombok.extern.slf4j.Slf4j;
@@ -13,6 +12,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -27,6 +27,8 @@ import java.util.stream.Collectors;
 @Component
 public class PrometheusQueryTools implements AgentTools{
 
+    private final HttpGateway httpGateway;
+
     @Value("${prometheus.endpoint}")
     private String prometheusEndpoint;
 
@@ -41,6 +43,10 @@ public class PrometheusQueryTools implements AgentTools{
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm")
             .withZone(ZoneId.systemDefault());
 
+    public PrometheusQueryTools(HttpGateway httpGateway) {
+        this.httpGateway = httpGateway;
+    }
+
     @Tool(description = "查询 Prometheus 监控数据。用于获取 CPU、内存、QPS 等指标的历史趋势。")
     public String queryPrometheus(
             @ToolParam(description = "PromQL 查询语句，例如 'up' 或 'sum(rate(http_requests_total[5m]))'") String query,
@@ -76,20 +82,9 @@ public class PrometheusQueryTools implements AgentTools{
 
         log.info("执行 PromQL: {}, 范围: {}m, Step: {}s", query, range, step);
 
-        // 5. 发起 HTTP GET 请求
-        try (HttpResponse response = HttpRequest.get(url)
-                .form(params)
-                .timeout(timeoutSeconds * 1000) // 秒转毫秒
-                .execute()) {
-
-            // 先判断 HTTP 状态码 (防御性编程)
-            if (!response.isOk()) {
-                log.warn("Prometheus 返回非 200 状态码: {}", response.getStatus());
-                return "查询失败: Prometheus 服务端返回错误 (Status: " + response.getStatus() + ")";
-            }
-
-            // 获取响应体
-            String jsonResp = response.body();
+        // 5. 发起 HTTP GET 请求 (共享连接池，非 2xx 以异常返回)
+        try {
+            String jsonResp = httpGateway.get(url, params, Duration.ofSeconds(timeoutSeconds)).block();
 
             // 解析结果
             PrometheusResponseDTO respObj = JSONUtil.toBean(jsonResp, PrometheusResponseDTO.class);
@@ -104,7 +99,15 @@ public class PrometheusQueryTools implements AgentTools{
 
             return formatForAI(respObj, range);
 
-        } catch (IORuntimeException e) {
+        } catch (HttpGatewayException e) {
+            if (e.getStatus() > 0) {
+                log.warn("Prometheus 返回非 200 状态码: {}", e.getStatus());
+                return "查询失败: Prometheus 服务端返回错误 (Status: " + e.getStatus() + ")";
+            }
+            if (e.getStatus() == HttpGatewayException.CIRCUIT_OPEN) {
+                log.warn("Prometheus 熔断中，跳过查询: {}", query);
+                return "查询失败: Prometheus 近期连续失败，已暂停调用，请稍后再试 - " + prometheusEndpoint;
+            }
             log.error("Prometheus 请求超时或网络异常", e);
             return "查询失败: 请求超时 (" + timeoutSeconds + "秒) 或网络不可达 - " + prometheusEndpoint;
         } catch (Throwable e) {
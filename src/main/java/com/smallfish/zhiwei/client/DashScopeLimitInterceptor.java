@@ -0,0 +1,68 @@
+package com.smallfish.zhiwei.client;
+
+import com.smallfish.zhiwei.common.context.TrafficContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+
+/*
+*  DashScope 请求限流拦截器
+*  同步调用 (RestClient：向量化、对话、重排) 按当前线程的优先级获取许可；
+*  流式调用 (WebClient) 拿不到线程上下文，按在线流量处理，收到响应头即归还许可。
+*  只拦截 DashScope 域名，共用 Builder 的其他客户端不受影响。
+* */
+@RequiredArgsConstructor
+public class DashScopeLimitInterceptor implements ClientHttpRequestInterceptor, ExchangeFilterFunction {
+
+    private static final String DASHSCOPE_HOST = "dashscope";
+
+    private final DashScopeLimiter limiter;
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        if (!isDashScope(request.getURI())) {
+            return execution.execute(request, body);
+        }
+        DashScopeLimiter.Permit permit = limiter.acquire(TrafficContext.current());
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            permit.release(response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                    ? DashScopeLimiter.Outcome.THROTTLED : DashScopeLimiter.Outcome.SUCCESS);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            permit.release(DashScopeLimiter.Outcome.ERROR);
+            throw e;
+        }
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!isDashScope(request.url())) {
+            return next.exchange(request);
+        }
+        // 排队是阻塞等待，放到弹性线程池，不占用事件循环线程
+        return Mono.fromCallable(() -> limiter.acquire(TrafficContext.current()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(permit -> next.exchange(request)
+                        .doOnNext(response -> permit.release(response.statusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value()
+                                ? DashScopeLimiter.Outcome.THROTTLED : DashScopeLimiter.Outcome.SUCCESS))
+                        .doFinally(signal -> permit.release(DashScopeLimiter.Outcome.ERROR)));
+    }
+
+    private static boolean isDashScope(URI uri) {
+        return uri != null && uri.getHost() != null && uri.getHost().contains(DASHSCOPE_HOST);
+    }
+}
@@ -0,0 +1,238 @@
+package com.smallfish.zhiwei.client;
+
+import com.smallfish.zhiwei.common.enums.TrafficPriority;
+import com.smallfish.zhiwei.config.DashScopeLimiterProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+*  DashScope 客户端限流器
+*  1. 令牌桶：限制请求速率，不超过账号 QPS 配额。
+*  2. 自适应并发 (AIMD)：成功且耗时正常时并发上限每轮加 1，收到 429 时乘性下降，耗时过长时小幅下降。
+*  3. 优先级：有在线请求排队时批量请求不再获取许可，批量请求最多占用 bulk-share 比例的并发。
+*  向量化、对话、重排共用同一个限流器，批量入库打满配额时在线诊断仍能优先拿到额度。
+* */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DashScopeLimiter {
+
+    // 耗时过长时的下降系数，比 429 温和
+    private static final double LATENCY_DECREASE = 0.9;
+
+    private final DashScopeLimiterProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Object lock = new Object();
+    private final Map<TrafficPriority, Integer> waiting = new EnumMap<>(TrafficPriority.class);
+    private final Map<TrafficPriority, Integer> inflight = new EnumMap<>(TrafficPriority.class);
+    private final Map<TrafficPriority, Timer> waitTimers = new EnumMap<>(TrafficPriority.class);
+    private final Map<TrafficPriority, Counter> throttledCounters = new EnumMap<>(TrafficPriority.class);
+    private final Map<TrafficPriority, Counter> rejectedCounters = new EnumMap<>(TrafficPriority.class);
+
+    private double limit;
+    private double tokens;
+    private long lastRefill;
+
+    @PostConstruct
+    public void init() {
+        limit = clamp(properties.getInitialConcurrency());
+        tokens = properties.getBurst();
+        lastRefill = System.nanoTime();
+        for (TrafficPriority priority : TrafficPriority.values()) {
+            String tag = priority.name().toLowerCase();
+            waiting.put(priority, 0);
+            inflight.put(priority, 0);
+            waitTimers.put(priority, Timer.builder("zhiwei.dashscope.queue.wait")
+                    .description("DashScope 调用在客户端限流器中的排队时间")
+                    .tags("priority", tag)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            throttledCounters.put(priority, Counter.builder("zhiwei.dashscope.throttled")
+                    .description("DashScope 返回 429 的次数")
+                    .tags("priority", tag)
+                    .register(meterRegistry));
+            rejectedCounters.put(priority, Counter.builder("zhiwei.dashscope.rejected")
+                    .description("客户端排队超时被拒绝的次数")
+                    .tags("priority", tag)
+                    .register(meterRegistry));
+            Gauge.builder("zhiwei.dashscope.queue.size", this, limiter -> limiter.snapshot(waiting, priority))
+                    .description("限流器中排队的请求数")
+                    .tags("priority", tag)
+                    .register(meterRegistry);
+            Gauge.builder("zhiwei.dashscope.inflight", this, limiter -> limiter.snapshot(inflight, priority))
+                    .description("正在执行的 DashScope 请求数")
+                    .tags("priority", tag)
+                    .register(meterRegistry);
+        }
+        Gauge.builder("zhiwei.dashscope.concurrency.limit", this, DashScopeLimiter::currentLimit)
+                .description("AIMD 当前并发上限")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取一个调用许可，排队超时抛出异常 (异常信息含 rate limit，上层按限流处理)
+     *
+     * @param priority 调用优先级
+     * @return 许可，调用结束后必须 {@link Permit#release} 一次
+     */
+    public Permit acquire(TrafficPriority priority) {
+        if (!properties.isEnabled()) {
+            return new Permit(this, priority, System.nanoTime(), false);
+        }
+        long start = System.nanoTime();
+        long maxWait = priority == TrafficPriority.BULK ? properties.getBulkMaxWaitMs() : properties.getInteractiveMaxWaitMs();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(maxWait);
+        synchronized (lock) {
+            waiting.merge(priority, 1, Integer::sum);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long waitNanos = deadline - now;
+                    if (admissible(priority)) {
+                        refill(now);
+                        if (tokens >= 1) {
+                            tokens -= 1;
+                            inflight.merge(priority, 1, Integer::sum);
+                            break;
+                        }
+                        // 等到下一个令牌产生
+                        long nextToken = (long) ((1 - tokens) * 1_000_000_000L / properties.getRequestsPerSecond());
+                        waitNanos = Math.min(waitNanos, Math.max(nextToken, 1_000_000L));
+                    }
+                    if (deadline - now <= 0) {
+                        rejectedCounters.get(priority).increment();
+                        throw new IllegalStateException("DashScope 客户端限流: rate limit 排队超时 (" + maxWait + " ms)");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("DashScope 客户端限流: 排队被中断", e);
+            } finally {
+                waiting.merge(priority, -1, Integer::sum);
+            }
+        }
+        waitTimers.get(priority).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit(this, priority, System.nanoTime(), true);
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public double currentLimit() {
+        synchronized (lock) {
+            return Math.floor(limit);
+        }
+    }
+
+    /**
+     * 能否立即占用并发：在线请求只受总上限约束；
+     * 批量请求在有在线请求排队时让路，且不超过总上限的 bulk-share
+     */
+    private boolean admissible(TrafficPriority priority) {
+        int total = inflight.values().stream().mapToInt(Integer::intValue).sum();
+        int effective = (int) Math.floor(limit);
+        if (total >= effective) {
+            return false;
+        }
+        if (priority == TrafficPriority.INTERACTIVE) {
+            return true;
+        }
+        int bulkCap = Math.max(1, (int) Math.floor(effective * properties.getBulkShare()));
+        return waiting.get(TrafficPriority.INTERACTIVE) == 0 && inflight.get(TrafficPriority.BULK) < bulkCap;
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefill) / 1_000_000_000.0;
+        tokens = Math.min(properties.getBurst(), tokens + elapsedSeconds * properties.getRequestsPerSecond());
+        lastRefill = now;
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - permit.startNanos);
+        synchronized (lock) {
+            inflight.merge(permit.priority, -1, Integer::sum);
+            switch (outcome) {
+                case THROTTLED -> {
+                    double previous = limit;
+                    limit = clamp(limit * properties.getDecreaseFactor());
+                    // 清空令牌，给服务端留出恢复时间
+                    tokens = 0;
+                    throttledCounters.get(permit.priority).increment();
+                    log.warn("DashScope 返回 429，并发上限 {} -> {}", (int) previous, (int) limit);
+                }
+                case SUCCESS -> {
+                    if (latencyMs > properties.getLatencyThresholdMs()) {
+                        limit = clamp(limit * LATENCY_DECREASE);
+                    } else {
+                        // 加性增加：每完成约 limit 个请求，上限加 1
+                        limit = clamp(limit + 1.0 / Math.max(1.0, limit));
+                    }
+                }
+                default -> {
+                    // 网络错误等不作为容量信号
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    private double clamp(double value) {
+        return Math.max(properties.getMinConcurrency(), Math.min(properties.getMaxConcurrency(), value));
+    }
+
+    private double snapshot(Map<TrafficPriority, Integer> counts, TrafficPriority priority) {
+        synchronized (lock) {
+            return counts.get(priority);
+        }
+    }
+
+    /**
+     * 调用结果
+     */
+    public enum Outcome {
+        SUCCESS, THROTTLED, ERROR
+    }
+
+    /**
+     * 调用许可
+     */
+    public static final class Permit {
+
+        private final DashScopeLimiter limiter;
+        private final TrafficPriority priority;
+        private final long startNanos;
+        private boolean held;
+
+        private Permit(DashScopeLimiter limiter, TrafficPriority priority, long startNanos, boolean held) {
+            this.limiter = limiter;
+            this.priority = priority;
+            this.startNanos = startNanos;
+            this.held = held;
+        }
+
+        /**
+         * 归还许可并反馈调用结果 (重复调用无效)
+         */
+        public void release(Outcome outcome) {
+            synchronized (this) {
+                if (!held) {
+                    return;
+                }
+                held = false;
+            }
+            limiter.release(this, outcome);
+        }
+    }
+}
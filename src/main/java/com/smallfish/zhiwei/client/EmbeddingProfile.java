@@ -0,0 +1,52 @@
+package com.smallfish.zhiwei.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 向量来源 (Embedding 模型 / 维度 / 存储精度)
+ * <p>
+ * 写入集合描述作为签名。正式集合的 profile 以集合自身为准，配置只是新建集合 / 重建索引的默认值：
+ * 重建索引把目标 profile 作为任务参数，切换别名前在线检索始终按旧集合的 profile 向量化。
+ * </p>
+ *
+ * @param model 模型名
+ * @param dimension 向量维度
+ * @param precision 存储精度
+ */
+public record EmbeddingProfile(String model, int dimension, VectorPrecision precision) {
+
+    /**
+     * 旧版本集合没有签名，历史上只用过 text-embedding-v4
+     */
+    public static final String LEGACY_MODEL = "text-embedding-v4";
+
+    /**
+     * 集合描述中的签名
+     */
+    public String signature() {
+        return String.format("embedding=%s;dim=%d;precision=%s", model, dimension, precision);
+    }
+
+    /**
+     * 解析集合描述中的签名，格式不符时返回 null
+     */
+    public static EmbeddingProfile parse(String signature) {
+        if (signature == null || signature.isBlank()) {
+            return null;
+        }
+        Map<String, String> parts = new HashMap<>();
+        for (String part : signature.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq > 0) {
+                parts.put(part.substring(0, eq).trim(), part.substring(eq + 1).trim());
+            }
+        }
+        try {
+            return new EmbeddingProfile(parts.get("embedding"), Integer.parseInt(parts.get("dim")),
+                    VectorPrecision.of(parts.get("precision")));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
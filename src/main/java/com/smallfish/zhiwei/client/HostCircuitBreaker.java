@@ -0,0 +1,119 @@
+package com.smallfish.zhiwei.client;
+
+import com.smallfish.zhiwei.config.HttpGatewayProperties;
+
+import java.util.Arrays;
+
+/*
+*  单个主机的熔断器
+*  CLOSED：按最近 window-size 次调用的失败率判断，超过阈值进入 OPEN；
+*  OPEN：直接拒绝，open-duration 后进入 HALF_OPEN；
+*  HALF_OPEN：放行 half-open-calls 个探测请求，全部成功则 CLOSED，任一失败重新 OPEN。
+* */
+public class HostCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final HttpGatewayProperties.CircuitBreaker config;
+    // 环形窗口：true 表示失败
+    private final boolean[] window;
+    private int cursor;
+    private int calls;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public HostCircuitBreaker(HttpGatewayProperties.CircuitBreaker config) {
+        this.config = config;
+        this.window = new boolean[Math.max(1, config.getWindowSize())];
+    }
+
+    /**
+     * 是否允许发出请求 (HALF_OPEN 时会占用一个探测名额)
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < config.getOpenDuration().toMillis()) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = config.getHalfOpenCalls();
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits <= 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= config.getHalfOpenCalls()) {
+                reset();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (calls >= config.getMinimumCalls() && (double) failures / calls >= config.getFailureRateThreshold()) {
+            open();
+        }
+    }
+
+    /**
+     * 请求被取消 (订阅方超时、停机等)，既没有成功也没有失败：HALF_OPEN 时归还探测名额，
+     * 否则名额耗尽后熔断器会一直停在 HALF_OPEN 拒绝该主机
+     */
+    public synchronized void onCancel() {
+        if (state == State.HALF_OPEN && halfOpenPermits < config.getHalfOpenCalls()) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (calls == window.length) {
+            if (window[cursor]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[cursor] = failed;
+        if (failed) {
+            failures++;
+        }
+        cursor = (cursor + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        cursor = 0;
+        Arrays.fill(window, false);
+    }
+}
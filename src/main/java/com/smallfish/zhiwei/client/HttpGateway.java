@@ -0,0 +1,182 @@
+package com.smallfish.zhiwei.client;
+
+import com.smallfish.zhiwei.config.HttpGatewayProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/*
+*  内部 HTTP 网关
+*  Prometheus 查询、告警查询、通知推送等出站调用共用一个 Reactor Netty 连接池：
+*  按主机分池并限制连接数、长连接保活、gzip 压缩，按主机熔断。
+*  返回 Mono，同步调用方 (Agent 工具) 直接 block()，并发扇出的查询复用已建立的 TCP / TLS 连接。
+* */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HttpGateway {
+
+    // 单个响应最大缓存大小 (Prometheus range 查询结果可能较大)
+    private static final int MAX_IN_MEMORY_BYTES = 16 * 1024 * 1024;
+
+    private final HttpGatewayProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, HostCircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private ConnectionProvider connectionProvider;
+    private WebClient webClient;
+
+    @PostConstruct
+    public void init() {
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("zhiwei-http-gateway")
+                .maxConnections(properties.getMaxConnectionsPerHost())
+                .pendingAcquireMaxCount(properties.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(properties.getPendingAcquireTimeout())
+                .maxIdleTime(properties.getMaxIdleTime())
+                .maxLifeTime(properties.getMaxLifeTime())
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(true);
+        properties.getHostLimits().forEach((hostPort, limit) -> {
+            int sep = hostPort.lastIndexOf(':');
+            if (sep <= 0) {
+                log.warn("忽略无效的主机连接数配置 (需要 host:port): {}", hostPort);
+                return;
+            }
+            InetSocketAddress address = InetSocketAddress.createUnresolved(hostPort.substring(0, sep),
+                    Integer.parseInt(hostPort.substring(sep + 1)));
+            builder.forRemoteHost(address, spec -> spec.maxConnections(limit));
+        });
+        connectionProvider = builder.build();
+
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .compress(properties.isCompress())
+                .keepAlive(true);
+        webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(MAX_IN_MEMORY_BYTES))
+                .build();
+        log.info("HTTP 网关已初始化: 每主机连接数 {}, 保活 {}, gzip {}", properties.getMaxConnectionsPerHost(),
+                properties.getMaxIdleTime(), properties.isCompress());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    /**
+     * GET 请求，返回响应体
+     *
+     * @param url 地址
+     * @param query 查询参数 (按表单规则编码)
+     * @param timeout 整体超时
+     * @throws HttpGatewayException 非 2xx、网络错误、超时或熔断打开 (通过 Mono 错误信号传递)
+     */
+    public Mono<String> get(String url, Map<String, ?> query, Duration timeout) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url);
+        if (query != null) {
+            query.forEach((key, value) -> builder.queryParam(key,
+                    URLEncoder.encode(String.valueOf(value), StandardCharsets.UTF_8)));
+        }
+        URI uri = builder.build(true).toUri();
+        return exchange(uri, client -> client.get().uri(uri), timeout);
+    }
+
+    /**
+     * POST JSON 请求，返回响应体
+     */
+    public Mono<String> postJson(String url, String json, Duration timeout) {
+        URI uri = URI.create(url);
+        return exchange(uri, client -> client.post().uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(json), timeout);
+    }
+
+    /**
+     * 主机当前的熔断状态
+     */
+    public HostCircuitBreaker.State circuitState(String url) {
+        HostCircuitBreaker breaker = breakers.get(hostKey(URI.create(url)));
+        return breaker == null ? HostCircuitBreaker.State.CLOSED : breaker.getState();
+    }
+
+    private Mono<String> exchange(URI uri, Function<WebClient, WebClient.RequestHeadersSpec<?>> request,
+                                  Duration timeout) {
+        String host = hostKey(uri);
+        HostCircuitBreaker breaker = breakers.computeIfAbsent(host,
+                key -> new HostCircuitBreaker(properties.getCircuitBreaker()));
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                count(host, "circuit_open");
+                return Mono.error(new HttpGatewayException(HttpGatewayException.CIRCUIT_OPEN,
+                        "熔断打开，暂停调用: " + host, null, null));
+            }
+            return request.apply(webClient)
+                    .exchangeToMono(response -> response.bodyToMono(String.class)
+                            .defaultIfEmpty("")
+                            .flatMap(body -> {
+                                int status = response.statusCode().value();
+                                if (response.statusCode().is2xxSuccessful()) {
+                                    return Mono.just(body);
+                                }
+                                return Mono.<String>error(new HttpGatewayException(status,
+                                        "HTTP 请求失败: " + status, body, null));
+                            }))
+                    .timeout(timeout)
+                    .onErrorMap(e -> !(e instanceof HttpGatewayException), e -> new HttpGatewayException(
+                            HttpGatewayException.NETWORK_ERROR, "请求超时或网络异常: " + host, null, e))
+                    .doOnSuccess(body -> {
+                        breaker.onSuccess();
+                        count(host, "success");
+                    })
+                    .doOnError(e -> {
+                        int status = ((HttpGatewayException) e).getStatus();
+                        // 4xx 是调用方的问题，不计入熔断
+                        if (status >= 400 && status < 500) {
+                            breaker.onSuccess();
+                            count(host, "client_error");
+                        } else {
+                            breaker.onFailure();
+                            count(host, status == HttpGatewayException.NETWORK_ERROR ? "network_error" : "server_error");
+                        }
+                    })
+                    // 订阅方取消 (如 block 超时) 时不会走到上面两个回调，归还 HALF_OPEN 的探测名额
+                    .doOnCancel(() -> {
+                        breaker.onCancel();
+                        count(host, "cancelled");
+                    });
+        });
+    }
+
+    private void count(String host, String outcome) {
+        meterRegistry.counter("zhiwei.http.gateway.requests", "host", host, "outcome", outcome).increment();
+    }
+
+    private static String hostKey(URI uri) {
+        int port = uri.getPort() != -1 ? uri.getPort() : ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+        return uri.getHost() + ":" + port;
+    }
+}
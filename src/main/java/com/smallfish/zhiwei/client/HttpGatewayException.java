@@ -0,0 +1,23 @@
+package com.smallfish.zhiwei.client;
+
+import lombok.Getter;
+
+/*
+*  HTTP 网关调用异常
+*  status > 0 为服务端返回的非 2xx 状态码；0 为网络错误 / 超时；-1 为熔断打开未发出请求
+* */
+@Getter
+public class HttpGatewayException extends RuntimeException {
+
+    public static final int NETWORK_ERROR = 0;
+    public static final int CIRCUIT_OPEN = -1;
+
+    private final int status;
+    private final String body;
+
+    public HttpGatewayException(int status, String message, String body, Throwable cause) {
+        super(message, cause);
+        this.status = status;
+        this.body = body;
+    }
+}
@@ -2,18 +2,23 @@ package com.smallfish.zhiwei.client;
 
 import cn.hutool.core.util.StrUtil;
 import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.config.MilvusIndexProperties;
 import com.smallfish.zhiwei.config.MilvusProperties;
+import com.smallfish.zhiwei.config.VectorStorageProperties;
 import com.smallfish.zhiwei.model.BizKnowledge;
 import io.milvus.client.MilvusServiceClient;
 import io.milvus.grpc.DataType;
 import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.KeyValuePair;
 import io.milvus.param.*;
 import io.milvus.param.collection.*;
 import io.milvus.param.index.CreateIndexParam;
 import jakarta.annotation.Resource;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.retry.support.RetryTemplate;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.TimeUnit;
@@ -30,12 +35,68 @@ public class MilvusClientFactory {
     @Resource
     private MilvusProperties  milvusProperties;
 
+    @Resource
+    private MilvusIndexProperties indexProperties;
+
+    @Resource
+    private VectorStorageProperties vectorProperties;
+
+    /**
+     * 集合是否带 tenant_id (Partition Key) / category 字段
+     * 旧版本创建的集合没有这两个字段，入库与检索需要退化为不分区
+     */
+    @Getter
+    @Setter
+    private volatile boolean partitionKeyEnabled = true;
+
+    /**
+     * 正式集合 (别名当前指向的集合) 的向量来源，在线向量化与写入都按它进行
+     * 只在启动校验和重建索引切换别名时变更
+     */
+    @Setter
+    private volatile EmbeddingProfile activeProfile;
+
+    @Value("${spring.ai.dashscope.embedding.options.model:text-embedding-v4}")
+    private String embeddingModel;
+
+    /**
+     * 连接重试：最多 3 次，每次间隔 2 秒
+     * 用显式的 RetryTemplate 而不是 @Retryable：createClient 内部调用 connect 属于自调用，不经过代理，注解不会生效
+     */
+    private final RetryTemplate retryTemplate = RetryTemplate.builder()
+            .maxAttempts(3)
+            .fixedBackoff(2000)
+            .retryOn(Exception.class)
+            .build();
+
     /**
      * 创建客户端（带重试机制）
      * 如果连接失败，会重试 3 次，每次间隔 2 秒
      */
-    @Retryable(retryFor = Exception.class, maxAttempts = 3, backoff = @Backoff(delay = 2000))
     public MilvusServiceClient createClient() {
+        return retryTemplate.execute(context -> {
+            MilvusServiceClient client = doConnect();
+            try {
+                // 3. 初始化
+                initializeCollection(client);
+                return client;
+            } catch (Exception e) {
+                log.error("Milvus 集合初始化失败 (第 {} 次)", context.getRetryCount() + 1, e);
+                client.close();
+                throw e; // 抛出异常以触发重试
+            }
+        });
+    }
+
+    /**
+     * 只建立连接并握手，不做集合初始化 (连接池新建 / 重连通道使用)
+     * 如果连接失败，会重试 3 次，每次间隔 2 秒
+     */
+    public MilvusServiceClient connect() {
+        return retryTemplate.execute(context -> doConnect());
+    }
+
+    private MilvusServiceClient doConnect() {
         MilvusServiceClient client = null;
         try {
             // 1. 建立连接
@@ -60,16 +121,13 @@ public class MilvusClientFactory {
                 throw new RuntimeException("Milvus 连接握手失败: " + health.getMessage());
             }
             log.info("Milvus 连接成功！");
-
-            // 3. 初始化
-            initializeCollection(client);
             return client;
         } catch (Exception e) {
             log.error("Milvus 连接初始化失败", e);
             if (client != null) {
                 client.close();
             }
-            throw e; // 抛出异常以触发 @Retryable
+            throw e; // 抛出异常以触发重试
         }
     }
 
@@ -87,9 +145,10 @@ public class MilvusClientFactory {
         } else {
             log.info("Collection '{}' 不存在，开始创建...", collectionName);
             // 创建数据库
-            createBizCollection(client);
+            createBizCollection(client, collectionName, configuredProfile());
+            this.activeProfile = configuredProfile();
             // 创建索引
-            createIndexes(client);
+            createIndexes(client, collectionName);
             log.info("Collection '{}' 创建并初始化完成。", collectionName);
         }
     }
@@ -116,14 +175,74 @@ public class MilvusClientFactory {
             throw new RuntimeException("严重错误：现有 Collection 缺少 'vector' 字段！请检查数据库或执行迁移。");
         }
 
+        // 向量来源以集合自身为准：配置变更后继续按现有集合服务，通过重建索引 (蓝绿切换) 迁移
+        EmbeddingProfile live = profileOf(collectionInfo);
+        if (live != null) {
+            this.activeProfile = live;
+            if (!live.equals(configuredProfile())) {
+                log.warn("正式集合的向量来源 [{}] 与配置 [{}] 不一致，继续按集合服务；执行重建索引后切换",
+                        live.signature(), configuredProfile().signature());
+            }
+        }
+
+        // 分区字段：缺失时不中断启动，退化为全集合检索
+        this.partitionKeyEnabled = collectionInfo.getSchema().getFieldsList().stream()
+                .anyMatch(field -> field.getName().equals(BizKnowledge.FIELD_TENANT) && field.getIsPartitionKey());
+        if (!partitionKeyEnabled) {
+            log.warn("Collection 缺少 Partition Key 字段 '{}'，检索将不做分区裁剪，重建集合后生效", BizKnowledge.FIELD_TENANT);
+        }
+
         log.info("Schema 校验通过。");
     }
 
 
+    /**
+     * 正式集合的向量来源，集合尚未校验时按配置
+     */
+    public EmbeddingProfile getActiveProfile() {
+        EmbeddingProfile profile = activeProfile;
+        return profile != null ? profile : configuredProfile();
+    }
+
+    /**
+     * 配置中的向量来源 (新建集合、重建索引未指定目标时的默认值)
+     */
+    public EmbeddingProfile configuredProfile() {
+        return new EmbeddingProfile(embeddingModel, vectorProperties.getDimension(),
+                VectorPrecision.of(vectorProperties.getPrecision()));
+    }
+
+    /**
+     * 读取集合的向量来源：优先取集合描述中的签名，旧版本集合按向量字段推断 (模型视为 text-embedding-v4)
+     * @return 没有向量字段或类型无法识别时为 null
+     */
+    public static EmbeddingProfile profileOf(DescribeCollectionResponse collectionInfo) {
+        EmbeddingProfile signed = EmbeddingProfile.parse(collectionInfo.getSchema().getDescription());
+        if (signed != null) {
+            return signed;
+        }
+        return collectionInfo.getSchema().getFieldsList().stream()
+                .filter(field -> field.getName().equals(BizKnowledge.FIELD_VECTOR))
+                .findFirst()
+                .map(field -> {
+                    VectorPrecision precision = VectorPrecision.fromDataType(field.getDataType());
+                    String dim = field.getTypeParamsList().stream()
+                            .filter(kv -> "dim".equals(kv.getKey()))
+                            .map(KeyValuePair::getValue)
+                            .findFirst()
+                            .orElse(null);
+                    if (precision == null || dim == null) {
+                        return null;
+                    }
+                    return new EmbeddingProfile(EmbeddingProfile.LEGACY_MODEL, Integer.parseInt(dim), precision);
+                })
+                .orElse(null);
+    }
+
     /*
     *  创建 model collection
     * */
-    private void createBizCollection(MilvusServiceClient client) {
+    public void createBizCollection(MilvusServiceClient client, String collectionName, EmbeddingProfile profile) {
         // 定义字段
         final FieldType id = FieldType.newBuilder()
                 .withName(BizKnowledge.FIELD_ID)
@@ -133,8 +252,8 @@ public class MilvusClientFactory {
                 .build();
         final FieldType vector = FieldType.newBuilder()
                 .withName(BizKnowledge.FIELD_VECTOR)
-                .withDataType(DataType.FloatVector)
-                .withDimension(MilvusConstants.VECTOR_DIM) // 向量字段的维度
+                .withDataType(profile.precision().getDataType()) // 存储精度
+                .withDimension(profile.dimension()) // 向量字段的维度
                 .withDescription("相似度计算")
                 .build();
         final FieldType content = FieldType.newBuilder()
@@ -155,6 +274,20 @@ public class MilvusClientFactory {
                 .withMaxLength(MilvusConstants.SOURCE_MAX_LENGTH) // 路径长度
                 .withDescription("源文件标识，用于幂等性删除")
                 .build();
+        // 租户作为 Partition Key：Milvus 按哈希分到多个物理分区，带租户条件的检索只扫描对应分区
+        final FieldType tenant = FieldType.newBuilder()
+                .withName(BizKnowledge.FIELD_TENANT)
+                .withDataType(DataType.VarChar)
+                .withMaxLength(MilvusConstants.TAG_MAX_LENGTH)
+                .withPartitionKey(true)
+                .withDescription("租户，分区裁剪")
+                .build();
+        final FieldType category = FieldType.newBuilder()
+                .withName(BizKnowledge.FIELD_CATEGORY)
+                .withDataType(DataType.VarChar)
+                .withMaxLength(MilvusConstants.TAG_MAX_LENGTH)
+                .withDescription("文档类别，倒排索引过滤")
+                .build();
         // 创建 collection schema
         final CollectionSchemaParam schemaParam = CollectionSchemaParam.newBuilder()
                 .withEnableDynamicField(false)
@@ -163,13 +296,17 @@ public class MilvusClientFactory {
                 .addFieldType(content)
                 .addFieldType(metadata)
                 .addFieldType(source)
+                .addFieldType(tenant)
+                .addFieldType(category)
                 .build();
 
         // 创建 collection
         final CreateCollectionParam createCollectionParam = CreateCollectionParam.newBuilder()
-                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withCollectionName(collectionName)
+                .withDescription(profile.signature())
                 .withSchema(schemaParam)
                 .withShardsNum(MilvusConstants.DEFAULT_SHARD_NUMBER)
+                .withPartitionsNum(MilvusConstants.DEFAULT_PARTITION_NUMBER)
                 .build();
 
         final R<RpcStatus> response = client.createCollection(createCollectionParam);
@@ -183,21 +320,24 @@ public class MilvusClientFactory {
     /*
      *  创建数据库索引
      * */
-    private void createIndexes(MilvusServiceClient client) {
-        // 为 vector 字段创建索引（FloatVector 使用 IVF_FLAT 和 L2 距离）
+    public void createIndexes(MilvusServiceClient client, String collectionName) {
+        // 为 vector 字段创建索引，类型由配置决定 (AUTO 按预估数据量选择)
+        // 建表时集合为空，构建参数 (如 nlist ≈ 4 * sqrt(N)) 按预估数据量推导
+        final MilvusIndexProfile profile = MilvusIndexProfile.resolve(indexProperties.getType(), indexProperties.getExpectedRows());
+        final String buildParams = profile.buildParams(indexProperties, indexProperties.getExpectedRows());
         final CreateIndexParam vectorIndexParam = CreateIndexParam.newBuilder()
-                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withCollectionName(collectionName)
                 .withFieldName(BizKnowledge.FIELD_VECTOR)
-                .withIndexType(IndexType.IVF_FLAT) // 倒排文件索引 整个向量空间切分成许多个“聚类单元
+                .withIndexType(profile.getIndexType())
                 .withMetricType(MetricType.IP) // 内积算法。
-                .withExtraParam("{\"nlist\":1024}") // nlist 将数据分成多少个桶 nlist ≈ 4 * sqrt(N)
+                .withExtraParam(buildParams)
                 .withSyncMode(Boolean.FALSE)
                 .build();
         client.createIndex(vectorIndexParam);
         // 4. 【新增】为 source 字段创建倒排索引 (Inverted Index)
         // 这对于字符串的精确匹配（source == "xxx"）是必须的优化
         final CreateIndexParam sourceIndexParam = CreateIndexParam.newBuilder()
-                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withCollectionName(collectionName)
                 .withFieldName(BizKnowledge.FIELD_SOURCE            )
                 .withIndexName("idx_source") // 给索引取个名
                 .withIndexType(IndexType.INVERTED) // 倒排索引类型
@@ -206,6 +346,17 @@ public class MilvusClientFactory {
         if(response.getStatus() != R.Status.Success.getCode()) {
             throw new RuntimeException("创建 source 索引失败: " + response.getMessage());
         }
-        log.info("成功创建索引: vector(IVF_FLAT), source(INVERTED)");
+        // category 倒排索引：category == 'md' 走索引而不是逐行匹配 source
+        final R<RpcStatus> categoryResponse = client.createIndex(CreateIndexParam.newBuilder()
+                .withCollectionName(collectionName)
+                .withFieldName(BizKnowledge.FIELD_CATEGORY)
+                .withIndexName("idx_category")
+                .withIndexType(IndexType.INVERTED)
+                .build());
+        if(categoryResponse.getStatus() != R.Status.Success.getCode()) {
+            throw new RuntimeException("创建 category 索引失败: " + categoryResponse.getMessage());
+        }
+        log.info("成功创建索引: vector({} {}), source(INVERTED), category(INVERTED), partition key({})",
+                profile, buildParams, BizKnowledge.FIELD_TENANT);
     }
 }
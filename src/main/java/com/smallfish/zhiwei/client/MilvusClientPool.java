@@ -0,0 +1,226 @@
+package com.smallfish.zhiwei.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.config.MilvusProperties;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.SearchResults;
+import io.milvus.param.R;
+import io.milvus.param.collection.HasCollectionParam;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.param.dml.UpsertParam;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+*  Milvus 多通道连接池
+*  检索、写入、删除、标量查询等数据读写都走这里：多个独立 gRPC 连接轮询使用，优先调用 SDK 的异步接口，
+*  定期健康检查并重建失效通道。建表、索引维护、别名切换等低频管理操作仍使用单例 MilvusServiceClient。
+* */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MilvusClientPool {
+
+    private final MilvusClientFactory milvusClientFactory;
+    private final MilvusProperties milvusProperties;
+
+    private final List<Channel> channels = new ArrayList<>();
+    private final AtomicInteger cursor = new AtomicInteger();
+    private ScheduledExecutorService healthChecker;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < Math.max(1, milvusProperties.getPoolSize()); i++) {
+            Channel channel = new Channel(i);
+            try {
+                channel.client = milvusClientFactory.connect();
+                channel.healthy = true;
+            } catch (Exception e) {
+                // 启动时个别通道失败不阻断，交给健康检查重连
+                log.warn("Milvus 连接池通道 #{} 初始化失败，稍后重试: {}", i, e.getMessage());
+            }
+            channels.add(channel);
+        }
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "milvus-pool-health");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = milvusProperties.getHealthCheckSeconds();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.SECONDS);
+        log.info("Milvus 连接池就绪: {} 个通道", channels.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        healthChecker.shutdownNow();
+        channels.forEach(channel -> {
+            if (channel.client != null) {
+                channel.client.close();
+            }
+        });
+    }
+
+    /**
+     * 异步检索
+     */
+    public CompletableFuture<SearchResults> searchAsync(SearchParam param) {
+        Channel channel = acquire();
+        return toCompletable(channel, channel.client.searchAsync(param), "检索");
+    }
+
+    /**
+     * 异步写入
+     */
+    public CompletableFuture<MutationResult> insertAsync(InsertParam param) {
+        Channel channel = acquire();
+        return toCompletable(channel, channel.client.insertAsync(param), "写入");
+    }
+
+    /**
+     * 异步 upsert (主键已存在时覆盖，重新入库时新旧版本交替期间不产生重复行)
+     */
+    public CompletableFuture<MutationResult> upsertAsync(UpsertParam param) {
+        Channel channel = acquire();
+        return toCompletable(channel, channel.client.upsertAsync(param), "写入");
+    }
+
+    /**
+     * 异步标量查询
+     */
+    public CompletableFuture<QueryResults> queryAsync(QueryParam param) {
+        Channel channel = acquire();
+        return toCompletable(channel, channel.client.queryAsync(param), "查询");
+    }
+
+    /**
+     * 同步调用 (SDK 没有异步版本的接口，如 delete)，同样享受轮询与健康检查
+     */
+    public <T> T execute(Function<MilvusServiceClient, T> action) {
+        Channel channel = acquire();
+        try {
+            return action.apply(channel.client);
+        } catch (RuntimeException e) {
+            channel.healthy = false;
+            throw e;
+        }
+    }
+
+    /**
+     * 轮询选择健康的通道，全部不健康时退化为任意一个有连接的通道
+     */
+    private Channel acquire() {
+        int size = channels.size();
+        int start = Math.floorMod(cursor.getAndIncrement(), size);
+        Channel fallback = null;
+        for (int i = 0; i < size; i++) {
+            Channel channel = channels.get((start + i) % size);
+            if (channel.client == null) {
+                continue;
+            }
+            if (channel.healthy) {
+                return channel;
+            }
+            if (fallback == null) {
+                fallback = channel;
+            }
+        }
+        if (fallback == null) {
+            throw new IllegalStateException("Milvus 连接池没有可用通道");
+        }
+        return fallback;
+    }
+
+    private <T> CompletableFuture<T> toCompletable(Channel channel, ListenableFuture<R<T>> future, String action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.addListener(() -> {
+            try {
+                R<T> response = future.get();
+                if (response.getStatus() != R.Status.Success.getCode()) {
+                    result.completeExceptionally(new RuntimeException("Milvus 异步" + action + "失败: " + response.getMessage()));
+                } else {
+                    result.complete(response.getData());
+                }
+            } catch (ExecutionException e) {
+                // 传输层异常 (连接断开等) 才标记通道不健康，业务错误不影响通道
+                channel.healthy = false;
+                result.completeExceptionally(e.getCause());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }, MoreExecutors.directExecutor());
+        // 超时后取消底层 gRPC 调用，避免堆积
+        return result.orTimeout(milvusProperties.getRequestTimeout(), TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> {
+                    if (e != null && !future.isDone()) {
+                        future.cancel(true);
+                    }
+                });
+    }
+
+    /**
+     * 健康检查：握手失败的通道重建连接
+     */
+    private void checkHealth() {
+        for (Channel channel : channels) {
+            try {
+                if (channel.client != null && ping(channel.client)) {
+                    channel.healthy = true;
+                    continue;
+                }
+                log.warn("Milvus 连接池通道 #{} 不健康，开始重连", channel.index);
+                MilvusServiceClient old = channel.client;
+                channel.client = milvusClientFactory.connect();
+                channel.healthy = true;
+                if (old != null) {
+                    old.close();
+                }
+                log.info("Milvus 连接池通道 #{} 重连成功", channel.index);
+            } catch (Exception e) {
+                channel.healthy = false;
+                log.error("Milvus 连接池通道 #{} 重连失败: {}", channel.index, e.getMessage());
+            }
+        }
+    }
+
+    private boolean ping(MilvusServiceClient client) {
+        try {
+            R<Boolean> response = client.hasCollection(HasCollectionParam.newBuilder()
+                    .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                    .build());
+            return response.getStatus() == R.Status.Success.getCode();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static class Channel {
+        final int index;
+        volatile MilvusServiceClient client;
+        volatile boolean healthy;
+
+        Channel(int index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.smallfish.zhiwei.client;
+
+import com.google.gson.Gson;
+import com.smallfish.zhiwei.config.MilvusIndexProperties;
+import io.milvus.param.IndexType;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+*  向量索引策略
+*  每种索引给出：建索引参数 (按数据量) 与检索参数 (按当前行数与 topK)
+* */
+@Getter
+public enum MilvusIndexProfile {
+
+    IVF_FLAT(IndexType.IVF_FLAT),
+    IVF_PQ(IndexType.IVF_PQ),
+    SCANN(IndexType.SCANN),
+    HNSW(IndexType.HNSW),
+    DISKANN(IndexType.DISKANN);
+
+    /**
+     * AUTO 模式下 HNSW 的数据量上限，超过后内存占用过高，改用 IVF_PQ
+     */
+    private static final long AUTO_HNSW_MAX_ROWS = 2_000_000L;
+
+    /**
+     * IVF 类索引：期望探测到的候选数至少是 topK 的倍数，数据稀疏时自动放大 nprobe
+     */
+    private static final int IVF_CANDIDATE_FACTOR = 4;
+
+    private static final Gson GSON = new Gson();
+
+    private final IndexType indexType;
+
+    MilvusIndexProfile(IndexType indexType) {
+        this.indexType = indexType;
+    }
+
+    /**
+     * 解析配置的索引类型
+     * @param type 配置值 (含 AUTO)
+     * @param rows 数据量
+     */
+    public static MilvusIndexProfile resolve(String type, long rows) {
+        if (type == null || type.isBlank() || "AUTO".equalsIgnoreCase(type)) {
+            return rows <= AUTO_HNSW_MAX_ROWS ? HNSW : IVF_PQ;
+        }
+        return valueOf(type.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 按 Milvus 返回的 index_type 反查策略，未知类型返回 null
+     */
+    public static MilvusIndexProfile fromIndexType(String indexType) {
+        for (MilvusIndexProfile profile : values()) {
+            if (profile.indexType.name().equalsIgnoreCase(indexType)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * nlist ≈ 4 * sqrt(N)，限制在 [16, 65536]
+     */
+    public static int nlist(long rows) {
+        return (int) Math.max(16, Math.min(65536, Math.round(4 * Math.sqrt(Math.max(rows, 1)))));
+    }
+
+    /**
+     * 建索引参数 (JSON)
+     */
+    public String buildParams(MilvusIndexProperties props, long rows) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        switch (this) {
+            case IVF_FLAT -> params.put("nlist", nlist(rows));
+            case IVF_PQ -> {
+                params.put("nlist", nlist(rows));
+                params.put("m", props.getPqM());
+                params.put("nbits", 8);
+            }
+            case SCANN -> {
+                params.put("nlist", nlist(rows));
+                // 保留原始向量用于 reorder 精排
+                params.put("with_raw_data", true);
+            }
+            case HNSW -> {
+                params.put("M", props.getHnswM());
+                params.put("efConstruction", props.getHnswEfConstruction());
+            }
+            case DISKANN -> {
+                // DiskANN 构建参数由服务端配置决定
+            }
+        }
+        return GSON.toJson(params);
+    }
+
+    /**
+     * 检索参数 (JSON)
+     * @param builtNlist 索引实际的 nlist (未知时传 0，按行数推导)
+     * @param rows 当前行数
+     * @param topK 本次检索的 limit
+     */
+    public String searchParams(MilvusIndexProperties props, int builtNlist, long rows, int topK) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        switch (this) {
+            case IVF_FLAT, IVF_PQ, SCANN -> {
+                int nlist = builtNlist > 0 ? builtNlist : nlist(rows);
+                params.put("nprobe", nprobe(props, nlist, rows, topK));
+                if (this == SCANN) {
+                    params.put("reorder_k", Math.max(topK * 2, 100));
+                }
+            }
+            case HNSW -> params.put("ef", graphSearchList(props, rows, topK));
+            case DISKANN -> params.put("search_list", graphSearchList(props, rows, topK));
+        }
+        return GSON.toJson(params);
+    }
+
+    /**
+     * nprobe = max(nlist * ratio, 使候选数达到 topK 倍数所需的桶数)，上限 nlist
+     */
+    private static int nprobe(MilvusIndexProperties props, int nlist, long rows, int topK) {
+        if (rows <= 0) {
+            return nlist;
+        }
+        long byRatio = (long) Math.ceil(nlist * props.getNprobeRatio());
+        long byDensity = (long) Math.ceil((double) IVF_CANDIDATE_FACTOR * topK * nlist / rows);
+        return (int) Math.max(1, Math.min(nlist, Math.max(byRatio, byDensity)));
+    }
+
+    /**
+     * 图索引候选队列长度 = efFactor * log2(N)，不小于 topK，上限 32768
+     */
+    private static int graphSearchList(MilvusIndexProperties props, long rows, int topK) {
+        double log2 = Math.log(Math.max(rows, 2)) / Math.log(2);
+        long ef = Math.round(props.getEfFactor() * log2);
+        return (int) Math.min(32768, Math.max(topK, ef));
+    }
+}
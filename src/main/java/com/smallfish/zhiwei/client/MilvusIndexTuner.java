@@ -0,0 +1,208 @@
+package com.smallfish.zhiwei.client;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.config.MilvusIndexProperties;
+import com.smallfish.zhiwei.model.BizKnowledge;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.grpc.GetCollectionStatisticsResponse;
+import io.milvus.grpc.IndexDescription;
+import io.milvus.grpc.KeyValuePair;
+import io.milvus.param.MetricType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.GetCollectionStatisticsParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.ReleaseCollectionParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.param.index.DescribeIndexParam;
+import io.milvus.param.index.DropIndexParam;
+import io.milvus.response.GetCollStatResponseWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/*
+*  Milvus 检索参数调优
+*  定期读取正式集合的实际索引 (类型、nlist) 与行数，推导每次检索的 nprobe / ef / search_list
+* */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MilvusIndexTuner {
+
+    private final MilvusServiceClient milvusClient;
+    private final MilvusIndexProperties properties;
+    private final Gson gson = new Gson();
+
+    private volatile IndexState state;
+
+    /**
+     * 当前集合的检索参数 (JSON)
+     * @param topK 本次检索的 limit
+     */
+    public String searchParams(int topK) {
+        IndexState current = refreshIfStale();
+        return current.profile().searchParams(properties, current.nlist(), current.rowCount(), topK);
+    }
+
+    /**
+     * 指定集合的检索参数 (重建索引校验新集合时使用，不缓存)
+     * @param collection 物理集合名
+     * @param topK 本次检索的 limit
+     */
+    public String searchParams(String collection, int topK) {
+        IndexState target = load(collection, null, System.currentTimeMillis());
+        return target.profile().searchParams(properties, target.nlist(), target.rowCount(), topK);
+    }
+
+    /**
+     * 当前索引策略
+     */
+    public MilvusIndexProfile currentProfile() {
+        return refreshIfStale().profile();
+    }
+
+    /**
+     * 重建正式集合的向量索引 (离线压测选出推荐配置后调用)
+     * 过程中集合不可检索，只应在维护窗口执行
+     */
+    public void applyIndex(MilvusIndexProfile profile) {
+        String collection = MilvusConstants.MILVUS_COLLECTION_NAME;
+        long rows = Math.max(refreshIfStale().rowCount(), properties.getExpectedRows());
+        String indexName = findVectorIndex(collection).map(IndexDescription::getIndexName).orElse(null);
+
+        log.warn("开始重建向量索引: {} -> {} (rows={})", currentProfile(), profile, rows);
+        check(milvusClient.releaseCollection(ReleaseCollectionParam.newBuilder()
+                .withCollectionName(collection).build()), "释放集合");
+        if (indexName != null) {
+            check(milvusClient.dropIndex(DropIndexParam.newBuilder()
+                    .withCollectionName(collection)
+                    .withIndexName(indexName)
+                    .build()), "删除旧索引");
+        }
+        check(milvusClient.createIndex(CreateIndexParam.newBuilder()
+                .withCollectionName(collection)
+                .withFieldName(BizKnowledge.FIELD_VECTOR)
+                .withIndexType(profile.getIndexType())
+                .withMetricType(MetricType.IP)
+                .withExtraParam(profile.buildParams(properties, rows))
+                .withSyncMode(Boolean.TRUE)
+                .build()), "创建新索引");
+        check(milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .withSyncLoad(Boolean.TRUE)
+                .build()), "加载集合");
+
+        // 立即刷新，下一次检索即使用新索引的参数
+        this.state = null;
+        log.warn("向量索引重建完成: {}", profile);
+    }
+
+    /**
+     * 标记索引信息过期 (集合切换后调用)，下一次检索重新读取
+     */
+    public void invalidate() {
+        this.state = null;
+    }
+
+    private IndexState refreshIfStale() {
+        IndexState current = state;
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.loadedAt() < properties.getStatsRefreshSeconds() * 1000) {
+            return current;
+        }
+        synchronized (this) {
+            if (state != null && state != current) {
+                return state;
+            }
+            state = load(MilvusConstants.MILVUS_COLLECTION_NAME, current, now);
+            return state;
+        }
+    }
+
+    /**
+     * 读取索引与行数，失败时沿用上一次的结果 (首次失败则按配置推导)
+     */
+    private IndexState load(String collection, IndexState previous, long now) {
+        MilvusIndexProfile profile = previous != null ? previous.profile()
+                : MilvusIndexProfile.resolve(properties.getType(), properties.getExpectedRows());
+        int nlist = previous != null ? previous.nlist() : 0;
+        long rows = previous != null ? previous.rowCount() : properties.getExpectedRows();
+
+        try {
+            Optional<IndexDescription> index = findVectorIndex(collection);
+            if (index.isPresent()) {
+                JsonObject params = flattenParams(index.get());
+                MilvusIndexProfile detected = params.has("index_type")
+                        ? MilvusIndexProfile.fromIndexType(params.get("index_type").getAsString()) : null;
+                if (detected != null) {
+                    profile = detected;
+                }
+                if (params.has("nlist")) {
+                    nlist = params.get("nlist").getAsInt();
+                }
+            }
+
+            R<GetCollectionStatisticsResponse> stats = milvusClient.getCollectionStatistics(
+                    GetCollectionStatisticsParam.newBuilder()
+                            .withCollectionName(collection)
+                            .build());
+            if (stats.getStatus() == R.Status.Success.getCode()) {
+                rows = new GetCollStatResponseWrapper(stats.getData()).getRowCount();
+            }
+        } catch (Exception e) {
+            log.warn("读取 Milvus 索引信息失败，沿用上次参数: {}", e.getMessage());
+        }
+        log.debug("Milvus 索引状态: profile={}, nlist={}, rows={}", profile, nlist, rows);
+        return new IndexState(profile, nlist, rows, now);
+    }
+
+    private Optional<IndexDescription> findVectorIndex(String collection) {
+        R<DescribeIndexResponse> response = milvusClient.describeIndex(DescribeIndexParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            return Optional.empty();
+        }
+        return response.getData().getIndexDescriptionsList().stream()
+                .filter(desc -> BizKnowledge.FIELD_VECTOR.equals(desc.getFieldName()))
+                .findFirst();
+    }
+
+    /**
+     * 索引参数可能是扁平的 (nlist=1024)，也可能嵌在 params 的 JSON 字符串里，统一展开
+     */
+    private JsonObject flattenParams(IndexDescription description) {
+        JsonObject result = new JsonObject();
+        for (KeyValuePair pair : description.getParamsList()) {
+            if ("params".equals(pair.getKey())) {
+                try {
+                    gson.fromJson(pair.getValue(), JsonObject.class).entrySet()
+                            .forEach(e -> result.add(e.getKey(), e.getValue()));
+                } catch (Exception ignore) {
+                    // 非 JSON 的 params 直接忽略
+                }
+            } else {
+                result.addProperty(pair.getKey(), pair.getValue());
+            }
+        }
+        return result;
+    }
+
+    private void check(R<RpcStatus> response, String action) {
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new RuntimeException(action + "失败: " + response.getMessage());
+        }
+    }
+
+    /**
+     * 索引状态快照
+     */
+    private record IndexState(MilvusIndexProfile profile, int nlist, long rowCount, long loadedAt) {
+    }
+}
@@ -0,0 +1,113 @@
+package com.smallfish.zhiwei.client;
+
+import com.smallfish.zhiwei.config.DashScopeHttpProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  按调用类型路由的 HTTP 请求工厂
+*  向量化、对话、重排各用一个 JDK HttpClient (各自的建连超时和连接池)，按请求路径选择，
+*  请求超时按类型设置：重排几秒超时即可降级，对话允许长时间生成，互不拖累。
+*  HTTP/2 下同一连接多路复用，连接数不再随并发线性增长。
+* */
+@Slf4j
+public class ProfiledClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private static final String DEFAULT_PROFILE = "default";
+
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, HttpClient> clients = new LinkedHashMap<>();
+    private final JdkClientHttpRequestFactory fallback;
+
+    public ProfiledClientHttpRequestFactory(DashScopeHttpProperties properties) {
+        applyPoolSettings(properties);
+        HttpClient.Version version = HttpClient.Version.valueOf(properties.getVersion());
+        JdkClientHttpRequestFactory defaultFactory = null;
+        for (Map.Entry<String, DashScopeHttpProperties.Profile> entry : properties.getProfiles().entrySet()) {
+            DashScopeHttpProperties.Profile profile = entry.getValue();
+            HttpClient client = HttpClient.newBuilder()
+                    .version(version)
+                    .connectTimeout(profile.getConnectTimeout())
+                    .build();
+            JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+            factory.setReadTimeout(profile.getReadTimeout());
+            clients.put(entry.getKey(), client);
+            if (DEFAULT_PROFILE.equals(entry.getKey())) {
+                defaultFactory = factory;
+            }
+            for (String path : profile.getPaths()) {
+                routes.add(new Route(path, entry.getKey(), factory));
+            }
+            log.info("DashScope HTTP 配置 [{}]: {}, 建连超时 {}, 请求超时 {}, 路径 {}", entry.getKey(), version,
+                    profile.getConnectTimeout(), profile.getReadTimeout(), profile.getPaths());
+        }
+        if (defaultFactory == null) {
+            DashScopeHttpProperties.Profile profile = new DashScopeHttpProperties.Profile();
+            HttpClient client = HttpClient.newBuilder()
+                    .version(version)
+                    .connectTimeout(profile.getConnectTimeout())
+                    .build();
+            defaultFactory = new JdkClientHttpRequestFactory(client);
+            defaultFactory.setReadTimeout(profile.getReadTimeout());
+            clients.put(DEFAULT_PROFILE, client);
+        }
+        this.fallback = defaultFactory;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        return resolve(uri).createRequest(uri, httpMethod);
+    }
+
+    /**
+     * 请求路径对应的配置名 (便于日志和测试)
+     */
+    public String profileOf(URI uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        for (Route route : routes) {
+            if (path.contains(route.path())) {
+                return route.profile();
+            }
+        }
+        return DEFAULT_PROFILE;
+    }
+
+    private ClientHttpRequestFactory resolve(URI uri) {
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        for (Route route : routes) {
+            if (path.contains(route.path())) {
+                return route.factory();
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * 连接池和保活是 JDK HttpClient 的全局参数，只在连接池类初始化前生效，
+     * 因此在创建第一个 HttpClient 前写入；已通过 -D 显式指定的不覆盖
+     */
+    private static void applyPoolSettings(DashScopeHttpProperties properties) {
+        setIfAbsent("jdk.httpclient.keepalive.timeout", String.valueOf(properties.getKeepAlive().toSeconds()));
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(properties.getMaxConnections()));
+    }
+
+    private static void setIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    private record Route(String path, String profile, ClientHttpRequestFactory factory) {
+    }
+}
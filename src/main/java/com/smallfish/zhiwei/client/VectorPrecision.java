@@ -0,0 +1,91 @@
+package com.smallfish.zhiwei.client;
+
+import io.milvus.common.utils.Float16Utils;
+import io.milvus.grpc.DataType;
+import io.milvus.param.dml.SearchParam;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/*
+*  向量存储精度
+*  负责 float32 与 Milvus 存储格式之间的编解码，业务层始终使用 List<Float>
+* */
+@Getter
+public enum VectorPrecision {
+
+    FLOAT32(DataType.FloatVector, 4),
+    FLOAT16(DataType.Float16Vector, 2),
+    BFLOAT16(DataType.BFloat16Vector, 2);
+
+    private final DataType dataType;
+    private final int bytesPerDim;
+
+    VectorPrecision(DataType dataType, int bytesPerDim) {
+        this.dataType = dataType;
+        this.bytesPerDim = bytesPerDim;
+    }
+
+    public static VectorPrecision of(String precision) {
+        if (precision == null || precision.isBlank()) {
+            return FLOAT32;
+        }
+        return valueOf(precision.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 按 Milvus 字段类型反查存储精度，非浮点向量返回 null
+     */
+    public static VectorPrecision fromDataType(DataType dataType) {
+        for (VectorPrecision precision : values()) {
+            if (precision.dataType == dataType) {
+                return precision;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 编码为写入 Milvus 的字段值 (List<Float> 或 ByteBuffer)
+     */
+    public Object encode(List<Float> vector) {
+        return switch (this) {
+            case FLOAT32 -> vector;
+            case FLOAT16 -> Float16Utils.f32VectorToFp16Buffer(vector);
+            case BFLOAT16 -> Float16Utils.f32VectorToBf16Buffer(vector);
+        };
+    }
+
+    /**
+     * 批量编码
+     */
+    public List<?> encodeAll(List<List<Float>> vectors) {
+        return this == FLOAT32 ? vectors : vectors.stream().map(this::encode).toList();
+    }
+
+    /**
+     * 解码 Milvus 返回的向量字段值
+     */
+    @SuppressWarnings("unchecked")
+    public List<Float> decode(Object value) {
+        return switch (this) {
+            case FLOAT32 -> (List<Float>) value;
+            case FLOAT16 -> Float16Utils.fp16BufferToVector((ByteBuffer) value);
+            case BFLOAT16 -> Float16Utils.bf16BufferToVector((ByteBuffer) value);
+        };
+    }
+
+    /**
+     * 按存储精度设置检索向量
+     */
+    @SuppressWarnings("unchecked")
+    public SearchParam.Builder withVectors(SearchParam.Builder builder, List<List<Float>> vectors) {
+        return switch (this) {
+            case FLOAT32 -> builder.withFloatVectors(vectors);
+            case FLOAT16 -> builder.withFloat16Vectors((List<ByteBuffer>) encodeAll(vectors));
+            case BFLOAT16 -> builder.withBFloat16Vectors((List<ByteBuffer>) encodeAll(vectors));
+        };
+    }
+}
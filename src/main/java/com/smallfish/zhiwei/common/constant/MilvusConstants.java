@@ -10,12 +10,13 @@ public class MilvusConstants {
     public static final String MILVUS_DB_NAME = "default";
 
     /**
-     * Milvus 集合名称
+     * Milvus 集合名称 (重建索引后为指向 model_vxxx 的别名)
      */
     public static final String MILVUS_COLLECTION_NAME = "model";
 
     /**
-     * 向量维度（阿里 text-embedding-v4 向量模型） 支持64~2048维用户自定义向量维度
+     * 默认向量维度（阿里 text-embedding-v4 向量模型） 支持64~2048维用户自定义向量维度
+     * 实际维度以 milvus.vector.dimension 为准
      */
     public static final int VECTOR_DIM = 1024;  // 设置为 1024
 
@@ -34,6 +35,16 @@ public class MilvusConstants {
     * */
     public static final int SOURCE_MAX_LENGTH = 1024;
 
+    /*
+    *  租户 / 类别字段最大长度
+    * */
+    public static final int TAG_MAX_LENGTH = 64;
+
+    /**
+     * Partition Key 哈希出的物理分区数
+     */
+    public static final int DEFAULT_PARTITION_NUMBER = 64;
+
     /**
      * 默认分片数
      */
@@ -0,0 +1,97 @@
+package com.smallfish.zhiwei.common.context;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单次诊断的耗时分解
+ * 按 "类别 · 名称" (如 LLM · Planner、Tool · queryPrometheus) 聚合调用次数、耗时、Token 和失败数，
+ * 诊断结束后以 Markdown 表格附加在最终报告末尾。
+ */
+public class DiagnosisProfile {
+
+    @Getter
+    private final String traceId;
+
+    private final long startNanos = System.nanoTime();
+
+    // 保持插入顺序，报告里按首次出现的先后展示
+    private final Map<String, Stat> stats = new LinkedHashMap<>();
+
+    // 上下文压缩节省的 Token 数
+    private long tokensSaved;
+
+    // 当前诊断所属租户 (来自告警标签 tenant_id)，知识库检索据此裁剪分区
+    @Getter
+    @Setter
+    private volatile String tenantId;
+
+    public DiagnosisProfile(String traceId) {
+        this.traceId = traceId;
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param category 类别 (LLM / Tool)
+     * @param name     名称 (Agent 角色或工具名)
+     * @param nanos    耗时 (纳秒)
+     * @param tokens   Token 数 (估算或模型返回)
+     * @param error    是否失败
+     */
+    public synchronized void record(String category, String name, long nanos, long tokens, boolean error) {
+        Stat stat = stats.computeIfAbsent(category + " · " + name, k -> new Stat());
+        stat.count++;
+        stat.nanos += nanos;
+        stat.tokens += tokens;
+        if (error) {
+            stat.errors++;
+        }
+    }
+
+    /**
+     * 累加上下文压缩节省的 Token 数
+     */
+    public synchronized void addTokensSaved(long tokens) {
+        this.tokensSaved += tokens;
+    }
+
+    /**
+     * 诊断开始至今的总耗时 (毫秒)
+     */
+    public long elapsedMs() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * 生成 Markdown 格式的耗时分解表
+     */
+    public synchronized String toMarkdown() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n\n---\n");
+        sb.append(String.format("**⏱️ 耗时分解** (TraceID: `%s`, 总耗时 %.2fs)\n\n", traceId, elapsedMs() / 1000.0));
+        if (stats.isEmpty()) {
+            sb.append("暂无调用记录\n");
+            return sb.toString();
+        }
+        sb.append("| 阶段 | 调用次数 | 累计耗时 | Token | 失败 |\n");
+        sb.append("|---|---|---|---|---|\n");
+        stats.forEach((key, stat) -> sb.append(String.format("| %s | %d | %.2fs | %d | %d |\n",
+                key, stat.count, stat.nanos / 1_000_000_000.0, stat.tokens, stat.errors)));
+        if (tokensSaved > 0) {
+            sb.append(String.format("\n上下文压缩节省约 %d tokens\n", tokensSaved));
+        }
+        sb.append("\n> 注：LLM 耗时包含其内部触发的工具调用时间");
+        return sb.toString();
+    }
+
+    private static class Stat {
+        int count;
+        long nanos;
+        long tokens;
+        int errors;
+    }
+}
@@ -0,0 +1,85 @@
+package com.smallfish.zhiwei.common.context;
+
+import java.util.function.Supplier;
+
+/**
+ * 诊断链路上下文 (线程级)
+ * 在同步执行链路上传递当前 Agent 角色与诊断耗时分解，供工具和 LLM 埋点读取。
+ * 注意：跨线程 (如 Reactor 流) 不会自动传播，需要在组装流时提前取出。
+ */
+public class OpsTraceContext {
+
+    /**
+     * 工具上下文 (ToolContext) 中携带 Agent 角色的键
+     * 流式调用的工具跑在 Reactor 线程上，读不到线程变量，角色通过工具上下文传给埋点
+     */
+    public static final String TOOL_CONTEXT_ROLE = "zhiwei.role";
+
+    private static final ThreadLocal<String> ROLE = new ThreadLocal<>();
+    private static final ThreadLocal<DiagnosisProfile> PROFILE = new ThreadLocal<>();
+
+    private OpsTraceContext() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 绑定当前线程的诊断耗时分解
+     */
+    public static void bind(DiagnosisProfile profile) {
+        if (profile == null) {
+            PROFILE.remove();
+        } else {
+            PROFILE.set(profile);
+        }
+    }
+
+    /**
+     * 清理当前线程的上下文 (线程池场景必须调用，防止串号)
+     */
+    public static void clear() {
+        PROFILE.remove();
+        ROLE.remove();
+    }
+
+    /**
+     * 获取当前诊断的耗时分解，未绑定时返回 null
+     */
+    public static DiagnosisProfile currentProfile() {
+        return PROFILE.get();
+    }
+
+    /**
+     * 获取当前诊断所属租户，未绑定时返回 null
+     */
+    public static String currentTenant() {
+        DiagnosisProfile profile = PROFILE.get();
+        return profile != null ? profile.getTenantId() : null;
+    }
+
+    /**
+     * 获取当前 Agent 角色
+     *
+     * @param defaultRole 未设置时的默认角色
+     */
+    public static String currentRole(String defaultRole) {
+        String role = ROLE.get();
+        return role != null ? role : defaultRole;
+    }
+
+    /**
+     * 以指定角色执行一段逻辑，结束后恢复之前的角色
+     */
+    public static <T> T withRole(String role, Supplier<T> action) {
+        String previous = ROLE.get();
+        ROLE.set(role);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                ROLE.remove();
+            } else {
+                ROLE.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.smallfish.zhiwei.common.context;
+
+import com.smallfish.zhiwei.common.enums.TrafficPriority;
+
+import java.util.function.Supplier;
+
+/**
+ * 模型调用优先级上下文 (线程级)
+ * 未设置时视为在线流量；批量入库在调用模型前切换为 BULK。
+ * 注意：跨线程 (如 Reactor 流) 不会自动传播，流式调用一律按在线流量处理。
+ */
+public class TrafficContext {
+
+    private static final ThreadLocal<TrafficPriority> PRIORITY = new ThreadLocal<>();
+
+    private TrafficContext() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 当前线程的调用优先级
+     */
+    public static TrafficPriority current() {
+        TrafficPriority priority = PRIORITY.get();
+        return priority != null ? priority : TrafficPriority.INTERACTIVE;
+    }
+
+    /**
+     * 以指定优先级执行一段逻辑，结束后恢复之前的优先级
+     */
+    public static <T> T withPriority(TrafficPriority priority, Supplier<T> action) {
+        TrafficPriority previous = PRIORITY.get();
+        PRIORITY.set(priority);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIORITY.remove();
+            } else {
+                PRIORITY.set(previous);
+            }
+        }
+    }
+}
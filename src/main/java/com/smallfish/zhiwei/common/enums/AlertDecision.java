@@ -0,0 +1,23 @@
+package com.smallfish.zhiwei.common.enums;
+
+/**
+ * 告警去重决策
+ * 由滑动窗口去重脚本根据窗口内触发次数、抖动次数和上次处置时间给出
+ */
+public enum AlertDecision {
+
+    /**
+     * 抑制：冷却期内重复触发，只计数不诊断
+     */
+    SUPPRESS,
+
+    /**
+     * 诊断：新告警或冷却期已过，触发一次完整诊断
+     */
+    DIAGNOSE,
+
+    /**
+     * 升级：冷却期内高频触发或反复抖动，通知值班并带着频率信息重新诊断
+     */
+    ESCALATE
+}
@@ -0,0 +1,18 @@
+package com.smallfish.zhiwei.common.enums;
+
+/**
+ * 模型调用优先级
+ * 在线对话 / 诊断优先于批量入库，额度紧张时批量流量让路
+ */
+public enum TrafficPriority {
+
+    /**
+     * 在线流量：对话、诊断、检索 (查询向量化、重排)
+     */
+    INTERACTIVE,
+
+    /**
+     * 批量流量：文档入库、重建索引的向量化
+     */
+    BULK
+}
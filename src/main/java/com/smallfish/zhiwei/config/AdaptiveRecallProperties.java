@@ -0,0 +1,40 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  自适应召回深度配置
+*  根据 Milvus 召回分数的分布，决定送入重排的候选数量，以及是否可以跳过重排
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.recall.adaptive")
+public class AdaptiveRecallProperties {
+
+    /*
+    *  是否开启自适应召回 (关闭时固定将 rag.recall.top-k 条全部送入重排)
+    * */
+    private boolean enabled = true;
+
+    /*
+    *  送入重排的最少候选数，防止分布异常时截得过狠
+    * */
+    private int minDepth = 5;
+
+    /*
+    *  与第一名的分差上限：分数低于 top1 - topMargin 的候选直接丢弃
+    * */
+    private double topMargin = 0.25;
+
+    /*
+    *  断层阈值：相邻分差占整体分数跨度的比例超过该值，视为一个明显断层
+    * */
+    private double gapRatio = 0.3;
+
+    /*
+    *  高置信分数：截断后的候选全部高于该分数且数量不超过重排 top-k 时，跳过重排
+    * */
+    private double highConfidence = 0.85;
+}
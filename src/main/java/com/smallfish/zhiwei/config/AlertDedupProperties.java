@@ -0,0 +1,46 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+*  告警滑动窗口去重配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai-ops.dedup")
+public class AlertDedupProperties {
+
+    /*
+    *  滑动窗口大小，触发次数 / 抖动次数都在窗口内统计
+    * */
+    private Duration window = Duration.ofMinutes(15);
+
+    /*
+    *  触发记录保留时间 (供频率统计工具查询更长的历史)，不小于窗口
+    * */
+    private Duration retention = Duration.ofHours(1);
+
+    /*
+    *  诊断冷却期：同一告警在冷却期内只诊断一次
+    * */
+    private Duration cooldown = Duration.ofMinutes(15);
+
+    /*
+    *  窗口内触发次数达到该值时升级
+    * */
+    private int escalateCount = 10;
+
+    /*
+    *  窗口内抖动次数 (resolved 后再次 firing，即不同的 startsAt) 达到该值时升级
+    * */
+    private int flapCount = 3;
+
+    /*
+    *  升级冷却期：同一告警在该时间内最多升级一次
+    * */
+    private Duration escalateCooldown = Duration.ofMinutes(30);
+}
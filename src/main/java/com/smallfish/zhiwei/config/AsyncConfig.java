@@ -46,6 +46,46 @@ public class AsyncConfig {
         return executor;
     }
 
+    /**
+     * 定义一个专门用于"远程重排"的线程池
+     * RerankDispatcher 合并后的批次在这里并发调用 DashScope，避免阻塞批处理调度线程
+     */
+    @Bean("rerankExecutor")
+    public Executor rerankExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(16);
+        // 队列不宜过长：排队本身就会吃掉重排的延迟预算，满了直接拒绝走本地降级
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("rerank-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 定义一个专门用于"文档解析"的线程池
+     * 大 PDF 按页区间并行抽取文本，CPU 密集，线程数与核数一致；
+     * 调用方本身在 kbExecutor 上，这里单独建池避免互相等待
+     */
+    @Bean("parseExecutor")
+    public Executor parseExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int processors = Runtime.getRuntime().availableProcessors();
+        executor.setCorePoolSize(processors);
+        executor.setMaxPoolSize(processors);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("doc-parse-");
+        // 队列满时由调用线程自己抽取，退化为串行而不是失败
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
     /**
      * 定义一个名为 "aiTaskExecutor" 的线程池
      * 专门用于处理耗时的 AI 诊断任务
@@ -0,0 +1,46 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+*  目录批量导入配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.import")
+public class BulkImportProperties {
+
+    /*
+    *  同时处理的文件数 (在 kbExecutor 上执行)
+    * */
+    private int concurrency = 4;
+
+    /*
+    *  每秒最多开始处理的文件数
+    * */
+    private double filesPerSecond = 10;
+
+    /*
+    *  全局向量化限流 (条/秒)，所有并发文件共享
+    * */
+    private double embedRatePerSecond = 50;
+
+    /*
+    *  单文件大小上限 (字节)，超过的文件记为失败，避免一个大文件占满配额
+    * */
+    private long maxFileBytes = 5 * 1024 * 1024;
+
+    /*
+    *  任务进度在 Redis 中的保留时间
+    * */
+    private Duration jobTtl = Duration.ofDays(7);
+
+    /*
+    *  进度写回 Redis 的最小间隔 (ms)
+    * */
+    private long flushIntervalMs = 2000;
+}
@@ -0,0 +1,36 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+*  聊天记忆存储配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "chat.memory")
+public class ChatMemoryProperties {
+
+    /*
+    *  存储方式：redis (多副本共享、重启不丢) / in-memory (单机调试)
+    * */
+    private String store = "redis";
+
+    /*
+    *  会话空闲过期时间，每次写入都会续期
+    * */
+    private Duration ttl = Duration.ofHours(24);
+
+    /*
+    *  单个会话序列化后的最大字节数，超出时从最早的消息开始淘汰
+    * */
+    private int maxBytes = 64 * 1024;
+
+    /*
+    *  本地近端缓存的热点会话数量上限
+    * */
+    private int nearCacheSize = 1000;
+}
@@ -1,16 +1,19 @@
 package com.smallfish.zhiwei.config;
 
+import com.smallfish.zhiwei.client.DashScopeLimitInterceptor;
+import com.smallfish.zhiwei.client.DashScopeLimiter;
+import com.smallfish.zhiwei.client.ProfiledClientHttpRequestFactory;
+import com.smallfish.zhiwei.service.chat.RedisChatMemoryRepository;
 import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.memory.InMemoryChatMemoryRepository;
 import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
-import java.net.http.HttpClient;
-import java.time.Duration;
-
 
 /*
 *  DashScope API 配置
@@ -19,40 +22,43 @@ import java.time.Duration;
 public class DashScopeConfig {
 
 
-    // 超时时间
-    @Value("${spring.ai.dashscope.chat.options.timeout:180000}")
-    private long timeout;
-
     // 聊天记忆的长度
     @Value("${spring.ai.dashscope.chat.options.memory.windows-size}")
     private int memoryWindowSize;
     /**
      * 配置聊天记忆存储
+     * 默认使用 Redis 仓库 (多副本共享、带 TTL 和字节上限)，chat.memory.store=in-memory 时退回本地内存
      */
     @Bean
-    public ChatMemory chatMemory() {
+    public ChatMemory chatMemory(ChatMemoryProperties memoryProperties,
+                                 RedisChatMemoryRepository redisChatMemoryRepository) {
+        ChatMemoryRepository repository = "in-memory".equalsIgnoreCase(memoryProperties.getStore())
+                ? new InMemoryChatMemoryRepository()
+                : redisChatMemoryRepository;
         // maxMessages(10) 表示只保留最近 10 条消息
         return MessageWindowChatMemory.builder()
+                .chatMemoryRepository(repository)
                 .maxMessages(memoryWindowSize)
                 .build();
     }
     /**
-     * 配置 RestClient.Builder，设置超时时间
+     * 配置 RestClient.Builder：按调用类型 (向量化 / 对话 / 重排) 区分超时，优先 HTTP/2，
+     * 并接入 DashScope 客户端限流
      * Spring AI 会自动使用这个 Bean
      */
     @Bean
-    public RestClient.Builder restClientBuilder() {
-        // 1. 配置 JDK HttpClient (负责连接超时)
-        HttpClient httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofMillis(timeout))
-                .build();
-
-        // 2. 创建工厂并配置读取超时 (JdkClientHttpRequestFactory 分离了这两种超时)
-        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
-        requestFactory.setReadTimeout(Duration.ofMillis(timeout));
-
-        // 3. 构建 RestClient
+    public RestClient.Builder restClientBuilder(DashScopeLimiter dashScopeLimiter,
+                                                DashScopeHttpProperties httpProperties) {
         return RestClient.builder()
-                .requestFactory(requestFactory);
+                .requestFactory(new ProfiledClientHttpRequestFactory(httpProperties))
+                .requestInterceptor(new DashScopeLimitInterceptor(dashScopeLimiter));
+    }
+
+    /**
+     * 流式调用走 WebClient，同样接入客户端限流
+     */
+    @Bean
+    public WebClientCustomizer dashScopeLimiterCustomizer(DashScopeLimiter dashScopeLimiter) {
+        return builder -> builder.filter(new DashScopeLimitInterceptor(dashScopeLimiter));
     }
 }
\ No newline at end of file
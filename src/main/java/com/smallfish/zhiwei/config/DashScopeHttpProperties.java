@@ -0,0 +1,68 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  DashScope HTTP 客户端配置 (连接池、HTTP/2、按调用类型区分超时)
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "dashscope.http")
+public class DashScopeHttpProperties {
+
+    /*
+    *  协议版本：HTTP_2 (TLS 下 ALPN 协商，不支持时自动回落 HTTP/1.1) / HTTP_1_1
+    * */
+    private String version = "HTTP_2";
+
+    /*
+    *  空闲连接保活时间 (JDK HttpClient 全局参数 jdk.httpclient.keepalive.timeout)
+    * */
+    private Duration keepAlive = Duration.ofSeconds(60);
+
+    /*
+    *  HTTP/1.1 连接池上限 (JDK HttpClient 全局参数 jdk.httpclient.connectionPoolSize，0 不限)
+    * */
+    private int maxConnections = 64;
+
+    /*
+    *  调用类型 -> 超时配置，按请求路径匹配，都不匹配时使用 default
+    * */
+    private Map<String, Profile> profiles = new LinkedHashMap<>(Map.of(
+            "embedding", new Profile(Duration.ofSeconds(3), Duration.ofSeconds(30), new ArrayList<>(List.of("/embeddings"))),
+            "rerank", new Profile(Duration.ofSeconds(3), Duration.ofSeconds(10), new ArrayList<>(List.of("/rerank"))),
+            "chat", new Profile(Duration.ofSeconds(5), Duration.ofSeconds(180),
+                    new ArrayList<>(List.of("/generation", "/chat/completions"))),
+            "default", new Profile(Duration.ofSeconds(5), Duration.ofSeconds(60), new ArrayList<>())));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Profile {
+
+        /*
+        *  建连超时
+        * */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /*
+        *  请求超时：从发出请求到收到响应的总时限 (JDK HttpClient 的 request timeout)
+        * */
+        private Duration readTimeout = Duration.ofSeconds(60);
+
+        /*
+        *  匹配的请求路径片段 (包含即命中)
+        * */
+        private List<String> paths = new ArrayList<>();
+    }
+}
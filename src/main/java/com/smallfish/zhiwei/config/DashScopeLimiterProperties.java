@@ -0,0 +1,69 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  DashScope 客户端限流配置 (令牌桶 + AIMD 自适应并发)
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "dashscope.limiter")
+public class DashScopeLimiterProperties {
+
+    /*
+    *  是否启用
+    * */
+    private boolean enabled = true;
+
+    /*
+    *  令牌桶速率 (请求/秒)，按账号 QPS 配额设置
+    * */
+    private double requestsPerSecond = 20;
+
+    /*
+    *  令牌桶容量 (允许的突发请求数)
+    * */
+    private int burst = 20;
+
+    /*
+    *  初始并发上限
+    * */
+    private int initialConcurrency = 8;
+
+    /*
+    *  并发上限下界 (AIMD 不会降到该值以下)
+    * */
+    private int minConcurrency = 1;
+
+    /*
+    *  并发上限上界
+    * */
+    private int maxConcurrency = 32;
+
+    /*
+    *  批量流量最多占用的并发比例，有在线请求排队时批量流量暂停获取
+    * */
+    private double bulkShare = 0.5;
+
+    /*
+    *  收到 429 时并发上限的乘性下降系数
+    * */
+    private double decreaseFactor = 0.5;
+
+    /*
+    *  单次调用耗时超过该值 (ms) 视为过载，并发上限小幅下降
+    * */
+    private long latencyThresholdMs = 30000;
+
+    /*
+    *  在线请求最长排队时间 (ms)，超时直接失败
+    * */
+    private long interactiveMaxWaitMs = 30000;
+
+    /*
+    *  批量请求最长排队时间 (ms)
+    * */
+    private long bulkMaxWaitMs = 600000;
+}
@@ -0,0 +1,29 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  近重复分片去重配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "rag.dedup")
+public class DedupProperties {
+
+    /*
+    *  入库时去重：与已有分片近重复 (同租户) 的分片不再向量化和写入，只作为引用记录在规范分片下
+    * */
+    private boolean enabled = true;
+
+    /*
+    *  SimHash 汉明距离不超过该值视为近重复 (LSH 分 4 段，<= 3 时保证不漏检)
+    * */
+    private int maxDistance = 3;
+
+    /*
+    *  检索时折叠近重复结果，只保留分数最高的一条
+    * */
+    private boolean collapseResults = true;
+}
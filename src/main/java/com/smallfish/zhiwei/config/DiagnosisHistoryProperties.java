@@ -0,0 +1,73 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  告警诊断历史配置 (指纹索引、相似诊断复用)
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai-ops.history")
+public class DiagnosisHistoryProperties {
+
+    /*
+    *  是否启用
+    * */
+    private boolean enabled = true;
+
+    /*
+    *  不参与指纹的易变标签
+    * */
+    private List<String> ignoredLabels = new ArrayList<>(List.of("pod", "pod_name", "container_id", "uid", "endpoint"));
+
+    /*
+    *  每个 (租户, 告警名) 保留的历史诊断数
+    * */
+    private int maxPerAlert = 200;
+
+    /*
+    *  历史诊断保留时间
+    * */
+    private Duration retention = Duration.ofDays(30);
+
+    /*
+    *  相似度超过该值的历史诊断作为上下文提供给 Agent
+    * */
+    private double contextThreshold = 0.8;
+
+    /*
+    *  作为上下文的历史诊断条数
+    * */
+    private int contextTopK = 3;
+
+    /*
+    *  单条历史报告进入上下文的最大字符数
+    * */
+    private int contextReportChars = 1500;
+
+    /*
+    *  是否允许高置信度匹配时直接复用历史报告，跳过大模型
+    * */
+    private boolean reuseEnabled = true;
+
+    /*
+    *  直接复用的相似度阈值 (指纹完全一致视为 1.0)
+    * */
+    private double reuseThreshold = 0.95;
+
+    /*
+    *  只复用该时间内的历史诊断，更早的仅作为上下文
+    * */
+    private Duration reuseMaxAge = Duration.ofHours(24);
+
+    /*
+    *  同一条历史诊断最多连续复用的次数，达到后重新完整诊断一次
+    * */
+    private int maxReuse = 3;
+}
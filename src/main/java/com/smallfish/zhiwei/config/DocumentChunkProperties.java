@@ -21,4 +21,25 @@ public class DocumentChunkProperties {
     *  分片之间的重叠字符树
     * */
     private int overlap;
+
+    /*
+    *  分片模式：char 按字符数 (maxSize / overlap)；token 按本地分词器计算的 Token 数，
+    *  且代码块、表格不会被切开
+    * */
+    private String mode = "char";
+
+    /*
+    *  token 模式下每个分片的最大 Token 数
+    * */
+    private int maxTokens = 512;
+
+    /*
+    *  token 模式下分片之间的重叠 Token 数
+    * */
+    private int overlapTokens = 64;
+
+    /*
+    *  代码块 / 表格超过该 Token 数时才允许按行拆开 (需小于 Embedding 输入上限 8192)
+    * */
+    private int hardMaxTokens = 2048;
 }
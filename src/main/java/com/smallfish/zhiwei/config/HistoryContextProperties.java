@@ -0,0 +1,34 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  Executor 排查历史的上下文预算配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ai-ops.context")
+public class HistoryContextProperties {
+
+    /*
+    *  排查历史允许占用的最大 Token 数 (估算值)
+    * */
+    private int tokenBudget = 3000;
+
+    /*
+    *  最近 N 个步骤保留原文，更早的步骤压缩为摘要
+    * */
+    private int keepRecentSteps = 2;
+
+    /*
+    *  单个步骤摘要的 Token 上限
+    * */
+    private int summaryTokens = 150;
+
+    /*
+    *  摘要模式：extractive (本地抽取，零成本) / llm (异步调用模型总结)
+    * */
+    private String summaryMode = "extractive";
+}
@@ -0,0 +1,92 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+*  内部 HTTP 网关配置 (Prometheus 查询、告警通知等出站调用共用)
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "http.gateway")
+public class HttpGatewayProperties {
+
+    /*
+    *  每个目标主机的最大连接数 (Reactor Netty 按远端地址分池)
+    * */
+    private int maxConnectionsPerHost = 50;
+
+    /*
+    *  个别主机的连接数上限 (host:port -> 连接数)，覆盖默认值
+    * */
+    private Map<String, Integer> hostLimits = new LinkedHashMap<>();
+
+    /*
+    *  连接耗尽时最多排队的请求数
+    * */
+    private int pendingAcquireMaxCount = 500;
+
+    /*
+    *  等待空闲连接的超时
+    * */
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+    /*
+    *  空闲连接保活时间，超过后关闭
+    * */
+    private Duration maxIdleTime = Duration.ofSeconds(60);
+
+    /*
+    *  连接最长存活时间 (定期轮换，避免长期连到已下线的后端)
+    * */
+    private Duration maxLifeTime = Duration.ofMinutes(10);
+
+    /*
+    *  建连超时
+    * */
+    private Duration connectTimeout = Duration.ofSeconds(3);
+
+    /*
+    *  是否请求 gzip 压缩响应
+    * */
+    private boolean compress = true;
+
+    /*
+    *  熔断配置 (按主机)
+    * */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    @Data
+    public static class CircuitBreaker {
+
+        /*
+        *  统计窗口 (最近 N 次调用)
+        * */
+        private int windowSize = 20;
+
+        /*
+        *  窗口内至少有这么多次调用才判断是否熔断
+        * */
+        private int minimumCalls = 10;
+
+        /*
+        *  失败率超过该值时打开熔断
+        * */
+        private double failureRateThreshold = 0.5;
+
+        /*
+        *  熔断打开后多久进入半开状态放行探测请求
+        * */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /*
+        *  半开状态放行的探测请求数，全部成功后关闭熔断
+        * */
+        private int halfOpenCalls = 3;
+    }
+}
@@ -0,0 +1,51 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+*  入库台账配置 (失败重试 / 死信 / 断点续传)
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.ledger")
+public class IngestionLedgerProperties {
+
+    /*
+    *  文件级最大尝试次数，超过后进入死信
+    * */
+    private int maxAttempts = 5;
+
+    /*
+    *  文件级首次重试延迟，之后按 2 的幂指数退避
+    * */
+    private Duration initialBackoff = Duration.ofSeconds(30);
+
+    /*
+    *  文件级重试延迟上限
+    * */
+    private Duration maxBackoff = Duration.ofMinutes(30);
+
+    /*
+    *  批次内遇到限流时的重试次数 (向量化 / Milvus 写入)
+    * */
+    private int batchRetries = 4;
+
+    /*
+    *  批次内首次退避时间 (ms)，之后翻倍
+    * */
+    private long batchBackoffMs = 1000;
+
+    /*
+    *  扫描到期重试任务的间隔 (秒)
+    * */
+    private long pollSeconds = 10;
+
+    /*
+    *  已完成文件台账的保留时间 (重试中 / 死信不过期)
+    * */
+    private Duration completedTtl = Duration.ofDays(7);
+}
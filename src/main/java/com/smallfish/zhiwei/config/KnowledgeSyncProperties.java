@@ -0,0 +1,36 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  上传目录增量同步配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "file.sync")
+public class KnowledgeSyncProperties {
+
+    /*
+    *  是否监听上传目录
+    * */
+    private boolean enabled = true;
+
+    /*
+    *  防抖时间 (ms)：同一文件在该时间内没有新事件才处理，合并编辑器的连续写入
+    * */
+    private long debounceMs = 1500;
+
+    /*
+    *  清单文件路径，为空时使用 上传目录/.kb-manifest.json
+    * */
+    private String manifestPath;
+
+    /*
+    *  首次启动 (没有清单) 的处理方式：
+    *  seed   只按磁盘现状生成清单，不导入 (已有数据的部署升级时使用)
+    *  ingest 把目录下所有文件导入一遍
+    * */
+    private String bootstrap = "seed";
+}
@@ -7,8 +7,12 @@ import io.milvus.param.R;
 import io.milvus.param.collection.LoadCollectionParam;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
+import com.smallfish.zhiwei.service.retrieval.IndexSweepService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -64,6 +68,27 @@ public class MilvusConfig {
         };
     }
 
+    /**
+     * 向量索引离线压测 (recall@k / 延迟)
+     * 启动参数 --milvus.index.sweep.enabled=true 时执行，需在集合加载之后运行
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "milvus.index.sweep", name = "enabled", havingValue = "true")
+    public CommandLineRunner milvusIndexSweep(IndexSweepService indexSweepService,
+                                              MilvusIndexProperties indexProperties,
+                                              ApplicationContext context) {
+        return args -> {
+            try {
+                indexSweepService.sweep();
+            } catch (Exception e) {
+                log.error("向量索引压测失败", e);
+            }
+            if (indexProperties.getSweep().isExitOnFinish()) {
+                System.exit(SpringApplication.exit(context));
+            }
+        };
+    }
+
     /*
     *  应用关闭时清理资源
     * */
@@ -0,0 +1,108 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  Milvus 向量索引配置
+*  索引类型与构建参数在建表时生效，检索参数 (nprobe / ef / search_list) 根据当前行数动态推导
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "milvus.index")
+public class MilvusIndexProperties {
+
+    /*
+    *  索引类型：AUTO / IVF_FLAT / IVF_PQ / SCANN / HNSW / DISKANN
+    *  AUTO 根据 expectedRows 选择：两百万以内 HNSW，更大规模 IVF_PQ
+    * */
+    private String type = "AUTO";
+
+    /*
+    *  预估数据量，建索引时集合通常为空，nlist 按该值推导 (nlist ≈ 4 * sqrt(N))
+    * */
+    private long expectedRows = 100_000;
+
+    /*
+    *  HNSW 每个节点的最大出边数
+    * */
+    private int hnswM = 16;
+
+    /*
+    *  HNSW 建图时的候选队列长度
+    * */
+    private int hnswEfConstruction = 200;
+
+    /*
+    *  IVF_PQ 子向量个数，必须能整除向量维度
+    * */
+    private int pqM = 16;
+
+    /*
+    *  IVF 类索引：探测桶数占 nlist 的比例
+    * */
+    private double nprobeRatio = 0.02;
+
+    /*
+    *  图索引 (HNSW / DiskANN)：候选队列长度 = efFactor * log2(N)，且不小于 topK
+    * */
+    private int efFactor = 4;
+
+    /*
+    *  行数与索引信息的刷新间隔 (秒)
+    * */
+    private long statsRefreshSeconds = 60;
+
+    /*
+    *  离线压测配置
+    * */
+    private Sweep sweep = new Sweep();
+
+    @Data
+    public static class Sweep {
+
+        /*
+        *  是否在启动后执行压测 (java -jar app.jar --milvus.index.sweep.enabled=true)
+        * */
+        private boolean enabled = false;
+
+        /*
+        *  压测结束后是否把推荐的索引应用到正式集合
+        * */
+        private boolean apply = false;
+
+        /*
+        *  压测结束后是否退出进程
+        * */
+        private boolean exitOnFinish = true;
+
+        /*
+        *  recall@k 中的 k
+        * */
+        private int topK = 10;
+
+        /*
+        *  从正式集合抽样的向量条数 (单次查询上限 16384)
+        * */
+        private int sampleRows = 10_000;
+
+        /*
+        *  满足该召回率的配置中选延迟最低的
+        * */
+        private double recallTarget = 0.95;
+
+        /*
+        *  参与压测的索引类型
+        * */
+        private List<String> candidates = new ArrayList<>(List.of("HNSW", "IVF_FLAT", "IVF_PQ", "SCANN"));
+
+        /*
+        *  样例查询
+        * */
+        private List<String> queries = new ArrayList<>();
+    }
+}
@@ -19,6 +19,21 @@ public class MilvusProperties {
     private String database;
     private Long timeout;
 
+    /*
+    *  检索 / 写入连接池的通道数 (每个通道一个独立的 gRPC 连接)
+    * */
+    private int poolSize = 4;
+
+    /*
+    *  连接池健康检查间隔 (秒)，不健康的通道会被重建
+    * */
+    private long healthCheckSeconds = 30;
+
+    /*
+    *  异步检索 / 写入的超时时间 (毫秒)
+    * */
+    private long requestTimeout = 5000;
+
     /*
     *  获取连接地址
     * */
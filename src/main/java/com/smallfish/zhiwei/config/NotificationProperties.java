@@ -0,0 +1,98 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+*  通知推送配置 (异步队列、窗口汇总、多通道)
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "notification")
+public class NotificationProperties {
+
+    /*
+    *  钉钉机器人 Webhook (兼容旧配置，sinks 为空时作为唯一的钉钉通道)
+    * */
+    private String webhookUrl;
+
+    /*
+    *  汇总窗口：第一条消息入队后等待该时间，窗口内的多条报告合并为一条发送
+    * */
+    private Duration digestWindow = Duration.ofSeconds(10);
+
+    /*
+    *  单条汇总消息最多包含的报告数
+    * */
+    private int maxDigestItems = 10;
+
+    /*
+    *  单条消息正文最大 UTF-8 字节数 (钉钉上限 20000 字节，留出标题与 JSON 包装的余量)，
+    *  超出时按报告均分截断，汇总头和截断提示计入预算；通道可单独覆盖
+    * */
+    private int maxMessageBytes = 18000;
+
+    /*
+    *  单条消息最大发送次数，超过后丢弃
+    * */
+    private int maxAttempts = 5;
+
+    /*
+    *  首次重试延迟，之后翻倍
+    * */
+    private Duration retryBackoff = Duration.ofSeconds(5);
+
+    /*
+    *  每个通道待发送报告的上限，超过时丢弃最早的
+    * */
+    private int maxQueueSize = 1000;
+
+    /*
+    *  通道列表
+    * */
+    private List<Sink> sinks = new ArrayList<>();
+
+    @Data
+    public static class Sink {
+
+        /*
+        *  通道名称 (日志与指标标签)
+        * */
+        private String name;
+
+        /*
+        *  类型：dingtalk / feishu / webhook
+        * */
+        private String type = "dingtalk";
+
+        /*
+        *  Webhook 地址
+        * */
+        private String url;
+
+        /*
+        *  每分钟最多发送的消息数 (钉钉、飞书机器人均为 20)
+        * */
+        private int maxPerMinute = 20;
+
+        /*
+        *  同时在途的发送数
+        * */
+        private int concurrency = 1;
+
+        /*
+        *  发送超时
+        * */
+        private Duration timeout = Duration.ofSeconds(5);
+
+        /*
+        *  该通道的正文字节上限，为空时使用全局 maxMessageBytes (飞书卡片上限约 30 KB)
+        * */
+        private Integer maxMessageBytes;
+    }
+}
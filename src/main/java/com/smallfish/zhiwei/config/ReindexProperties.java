@@ -0,0 +1,39 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  知识库重建索引 (蓝绿切换) 配置
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "milvus.reindex")
+public class ReindexProperties {
+
+    /*
+    *  重建期间 Embedding 的限流 (条/秒)，给在线检索留出 DashScope 配额
+    * */
+    private double embedRatePerSecond = 20;
+
+    /*
+    *  召回校验的抽样条数
+    * */
+    private int recallSampleSize = 50;
+
+    /*
+    *  召回校验的 topK：用分片自身向量检索，自身应出现在前 K 条
+    * */
+    private int recallTopK = 10;
+
+    /*
+    *  召回率低于该值时放弃切换
+    * */
+    private double minRecall = 0.9;
+
+    /*
+    *  保留的历史版本数 (含当前版本)，用于快速回滚
+    * */
+    private int keepVersions = 2;
+}
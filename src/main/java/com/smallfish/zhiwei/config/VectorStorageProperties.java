@@ -0,0 +1,33 @@
+package com.smallfish.zhiwei.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/*
+*  向量存储配置
+*  维度与存储精度决定 Milvus 查询节点的内存占用：1024 维 float32 每条 4KB，512 维 float16 每条 1KB
+* */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "milvus.vector")
+public class VectorStorageProperties {
+
+    /*
+    *  向量维度 (text-embedding-v4 支持 64 ~ 2048)
+    *  只作为新建集合的默认值；已有集合以集合描述中的签名为准，更换维度通过重建索引的参数完成
+    * */
+    private int dimension = 1024;
+
+    /*
+    *  存储精度：FLOAT32 / FLOAT16 / BFLOAT16 (同样只作为新建集合的默认值)
+    * */
+    private String precision = "FLOAT32";
+
+    /*
+    *  全精度重打分的过采样倍数：从 Milvus 取 limit * rescoreFactor 条候选，
+    *  再用 float32 查询向量与存储向量精确计算内积后截断到 limit。1 表示关闭
+    *  只对 FLOAT32 存储生效 (配合 IVF_PQ 等量化索引)；半精度存储没有全精度副本，检索分数为近似值
+    * */
+    private int rescoreFactor = 1;
+}
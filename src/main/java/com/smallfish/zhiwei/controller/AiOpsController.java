@@ -17,7 +17,6 @@ import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.scheduler.Schedulers;
 
-import java.time.Duration;
 import java.util.UUID;
 
 @Slf4j
@@ -43,34 +42,19 @@ public class AiOpsController {
         final String conversationId = (rawId == null || rawId.isEmpty())
                 ? UUID.randomUUID().toString()
                 : rawId;
-        // 1. 发送开场白 (立即发送)
+        // 1. 发送开场白 (立即发送，作为进度信息而不是报告正文)
         Flux<ServerSentEvent<ChatRespDTO>> startFlux = Flux.just(
-                buildSSE(conversationId, " 收到请求，正在启动多智能体协作引擎...\n\n(分析过程约需 15-30 秒，请耐心等待)")
+                buildSSE(conversationId, ChatEventType.TOOL_LOG, "收到请求，正在启动多智能体协作引擎...")
         );
 
-        // 2. 异步执行 Graph 并生成报告流
-        Flux<ServerSentEvent<ChatRespDTO>> processFlux = Flux.defer(() -> {
-            // 在这里调用 Service 的同步方法，但这整个块是在 boundedElastic 线程池跑的
-            return Flux.just(req.getQuery())
-                    .map(q -> {
-                        // A. 执行耗时的 Graph 分析
-                        log.info("开始执行 Graph 分析...");
-                        return autoOpsGraphService.executeAnalysis(q);
-                    })
-                    .flatMap(stateOpt -> {
-                        if (stateOpt.isEmpty()) {
-                            return Flux.just(buildSSE(conversationId, "\n 分析失败，Agent 未返回结果。"));
-                        }
-
-                        // B. 提取最终报告
-                        String report = autoOpsGraphService.extractFinalReport(stateOpt.get());
-
-                        // C. 将长文本切分为字符块，模拟打字机效果
-                        // 比如每 20ms 发送 5 个字符
-                        return splitTextToFlux(report)
-                                .map(chunk -> buildSSE(conversationId, chunk));
-                    });
-        }).subscribeOn(Schedulers.boundedElastic()); // 关键：把重活扔给 Elastic 线程池
+        // 2. 订阅 Graph 流式输出：节点切换、工具调用、LLM Token 实时推送
+        Flux<ServerSentEvent<ChatRespDTO>> processFlux = autoOpsGraphService.streamAnalysis(req.getQuery(), conversationId)
+                .map(event -> ServerSentEvent.builder(event).build())
+                .onErrorResume(e -> {
+                    log.error("Graph 流式分析失败", e);
+                    return Flux.just(buildSSE(conversationId, ChatEventType.ERROR, "分析失败: " + e.getMessage()));
+                })
+                .subscribeOn(Schedulers.boundedElastic()); // Graph 内部存在阻塞调用，放到 Elastic 线程池
 
         // 3. 结束信号
         Flux<ServerSentEvent<ChatRespDTO>> endFlux = Flux.just(
@@ -80,30 +64,13 @@ public class AiOpsController {
         return Flux.concat(startFlux, processFlux, endFlux);
     }
     // 辅助：构建 SSE 对象
-    private ServerSentEvent<ChatRespDTO> buildSSE(String id, String text) {
+    private ServerSentEvent<ChatRespDTO> buildSSE(String id, ChatEventType type, String text) {
         return ServerSentEvent.builder(
                 ChatRespDTO.builder()
                         .conversationId(id)
                         .answer(text)
-                        .type(ChatEventType.CONTENT.getValue())
+                        .type(type.getValue())
                         .build()
         ).build();
     }
-
-    // 辅助：将长字符串切分成流
-    private Flux<String> splitTextToFlux(String text) {
-        if (text == null || text.isEmpty()) return Flux.empty();
-
-        // 简单切分：按字符切分，或者按固定长度切分
-        int chunkSize = 10; // 每次发10个字
-        int length = text.length();
-
-        return Flux.range(0, (length + chunkSize - 1) / chunkSize)
-                .map(i -> {
-                    int start = i * chunkSize;
-                    int end = Math.min(length, start + chunkSize);
-                    return text.substring(start, end);
-                })
-                .delayElements(Duration.ofMillis(50)); // ⚡️ 增加一点延迟，制造“正在生成”的视觉感
-    }
 }
@@ -1,16 +1,23 @@
 package com.smallfish.zhiwei.controller;
 
 import cn.hutool.core.collection.CollUtil;
+import com.smallfish.zhiwei.common.enums.AlertDecision;
 import com.smallfish.zhiwei.common.result.Result;
 import com.smallfish.zhiwei.dto.req.AlertWebhookDTO;
+import com.smallfish.zhiwei.service.alert.AlertDedupEngine;
 import com.smallfish.zhiwei.service.chat.AutoOpsGraphService;
 import com.smallfish.zhiwei.service.chat.AutoOpsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
 /**
  * 自动运维入口：接收 Prometheus 告警 -> 触发 AI 诊断 -> 发送报告
  */
@@ -22,6 +29,7 @@ public class AlertWebhookController {
 
     private final AutoOpsService autoOpsService;
     private final AutoOpsGraphService autoOpsGraphService;
+    private final AlertDedupEngine dedupEngine;
 
     /**
      * 接收 Prometheus Alertmanager 的 Webhook
@@ -33,14 +41,34 @@ public class AlertWebhookController {
             return Result.success("Skipped");
         }
 
-        // 遍历告警，丢给异步线程池处理
-        for (AlertWebhookDTO.Alert alert : webhook.getAlerts()) {
+        // 整批告警一次往返完成去重决策
+        List<AlertDedupEngine.Verdict> verdicts = dedupEngine.evaluate(webhook.getAlerts());
+
+        // 遍历告警，需要诊断 / 升级的丢给异步线程池处理
+        int suppressed = 0;
+        for (int i = 0; i < verdicts.size(); i++) {
+            AlertDedupEngine.Verdict verdict = verdicts.get(i);
+            if (verdict.decision() == AlertDecision.SUPPRESS) {
+                suppressed++;
+                log.info("告警收敛跳过: {} (窗口内第 {} 次)", verdict.key(), verdict.count());
+                continue;
+            }
             // 线性编排
-            // autoOpsService.processAlertAsync(alert);
+            // autoOpsService.processAlertAsync(webhook.getAlerts().get(i), verdict);
             // 图编排
-            autoOpsGraphService.processAlertGraphAsync(alert);
+            autoOpsGraphService.processAlertGraphAsync(webhook.getAlerts().get(i), verdict);
         }
 
-        return Result.success("Accepted");
+        return Result.success(String.format("Accepted %d, suppressed %d", verdicts.size() - suppressed, suppressed));
+    }
+
+    /**
+     * 查询告警触发频率
+     */
+    @GetMapping("/stats")
+    public Result<AlertDedupEngine.AlertStats> stats(@RequestParam String alertName,
+                                                    @RequestParam String instance,
+                                                    @RequestParam(defaultValue = "default") String tenantId) {
+        return Result.success(dedupEngine.stats(tenantId, alertName, instance));
     }
 }
\ No newline at end of file
@@ -2,7 +2,11 @@ package com.smallfish.zhiwei.controller;
 
 import com.smallfish.zhiwei.common.result.Result;
 import com.smallfish.zhiwei.dto.req.FileUploadReqDTO;
+import com.smallfish.zhiwei.dto.resp.ImportJobStatusDTO;
+import com.smallfish.zhiwei.dto.resp.IngestionLedgerEntryDTO;
+import com.smallfish.zhiwei.dto.resp.ReindexStatusDTO;
 import com.smallfish.zhiwei.service.ingestion.KnowledgeBaseFacade;
+import com.smallfish.zhiwei.service.ingestion.ReindexService;
 import com.smallfish.zhiwei.service.storage.FileStorageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -24,28 +28,28 @@ public class FileUploadController {
 
     private final FileStorageService fileStorageService;
     private final KnowledgeBaseFacade knowledgeBaseFacade;
+    private final ReindexService reindexService;
 
     /*
     *  文件上传接口，同时上传到向量数据库
     * */
     @PostMapping( consumes = "multipart/form-data")
-    public ResponseEntity<Result<?>> upload(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Result<?>> upload(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(value = "tenantId", required = false) String tenantId) {
         try {
-            // 1. 委托给存储服务处理文件
+            // 1. 委托给存储服务处理文件 (流式写盘，同时计算内容哈希)
             FileUploadReqDTO fileInfo = fileStorageService.upload(file);
 
-            // 2. 读取内容用于知识库导入
-            String content = fileStorageService.readFileContent(fileInfo.getFilePath());
-
-            // 3. 调用异步门面导入知识库
+            // 2. 调用异步门面导入知识库，只传文件路径 (先登记指纹，目录监听不再重复导入)
             try {
-                knowledgeBaseFacade.importSingleDocAsync(fileInfo.getFileName(), content);
+                knowledgeBaseFacade.trackUpload(fileInfo.getFileName(), fileInfo.getContentHash(), tenantId);
+                knowledgeBaseFacade.importSingleDocAsync(fileInfo.getFileName(), fileInfo.getFilePath(), tenantId);
             } catch (Throwable e) {
                 log.error("任务提交失败", e);
                 return ResponseEntity.status(503).body(Result.error(503, "任务提交失败"));
             }
 
-            // 4. 返回结果
+            // 3. 返回结果
             return ResponseEntity.ok(Result.success(fileInfo));
 
         } catch (IllegalArgumentException e) {
@@ -85,4 +89,89 @@ public class FileUploadController {
         knowledgeBaseFacade.deleteDocument(fileName);
         return Result.success("删除成功: " + fileName);
     }
+
+    /*
+    *  重建索引：后台按指定的向量来源重建集合 (参数为空时沿用正式集合)，校验通过后切换别名
+    *  更换 Embedding 模型 / 维度通过这里的参数完成，不需要修改全局配置，切换前检索不受影响
+    * */
+    @PostMapping("/reindex")
+    public ResponseEntity<Result<ReindexStatusDTO>> reindex(@RequestParam(required = false) String model,
+                                                            @RequestParam(required = false) Integer dimension,
+                                                            @RequestParam(required = false) String precision) {
+        try {
+            return ResponseEntity.ok(Result.success(reindexService.start(model, dimension, precision)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Result.error(400, e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Result.error(409, e.getMessage()));
+        }
+    }
+
+    /*
+    *  重建索引进度
+    * */
+    @GetMapping("/reindex")
+    public Result<ReindexStatusDTO> reindexStatus() {
+        return Result.success(reindexService.getStatus());
+    }
+
+    /*
+    *  目录批量导入：立即返回任务 ID，后台并发处理
+    *  directory 只能是上传根目录 (file.upload.path) 内的目录，为空时导入整个上传目录
+    * */
+    @PostMapping("/import")
+    public ResponseEntity<Result<ImportJobStatusDTO>> importDirectory(
+            @RequestParam(value = "directory", required = false) String directory,
+            @RequestParam(value = "tenantId", required = false) String tenantId) {
+        try {
+            return ResponseEntity.ok(Result.success(knowledgeBaseFacade.startDirectoryImport(directory, tenantId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Result.error(400, e.getMessage()));
+        }
+    }
+
+    /*
+    *  目录导入进度 (文件/秒、分片/秒、预计剩余时间)
+    * */
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<Result<ImportJobStatusDTO>> importStatus(@PathVariable String jobId) {
+        ImportJobStatusDTO status = knowledgeBaseFacade.getImportStatus(jobId);
+        if (status == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Result.error(404, "任务不存在或已过期: " + jobId));
+        }
+        return ResponseEntity.ok(Result.success(status));
+    }
+
+    /*
+    *  续跑中断的目录导入任务
+    * */
+    @PostMapping("/import/{jobId}/resume")
+    public ResponseEntity<Result<ImportJobStatusDTO>> resumeImport(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(Result.success(knowledgeBaseFacade.resumeImport(jobId)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Result.error(404, e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Result.error(409, e.getMessage()));
+        }
+    }
+
+    /*
+    *  入库死信列表
+    * */
+    @GetMapping("/ledger/dead")
+    public Result<List<IngestionLedgerEntryDTO>> deadLetters() {
+        return Result.success(knowledgeBaseFacade.listDeadLetters());
+    }
+
+    /*
+    *  死信重新入队
+    * */
+    @PostMapping("/ledger/dead/retry")
+    public ResponseEntity<Result<String>> retryDeadLetter(@RequestParam String source) {
+        if (!knowledgeBaseFacade.retryDeadLetter(source)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Result.error(404, "死信中不存在: " + source));
+        }
+        return ResponseEntity.ok(Result.success("已重新入队: " + source));
+    }
 }
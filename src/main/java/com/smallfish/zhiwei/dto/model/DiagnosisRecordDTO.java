@@ -0,0 +1,75 @@
+package com.smallfish.zhiwei.dto.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/*
+*  告警诊断历史记录 (存储在 Redis)
+* */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class DiagnosisRecordDTO {
+
+    /*
+    *  记录 ID (诊断的 TraceID)
+    * */
+    private String id;
+
+    /*
+    *  告警指纹
+    * */
+    private String fingerprint;
+
+    /*
+    *  租户 ID
+    * */
+    private String tenantId;
+
+    /*
+    *  告警名称
+    * */
+    private String alertName;
+
+    /*
+    *  实例
+    * */
+    private String instance;
+
+    /*
+    *  告警标签
+    * */
+    private Map<String, String> labels;
+
+    /*
+    *  归一化后的告警描述
+    * */
+    private String description;
+
+    /*
+    *  诊断报告 (Markdown)
+    * */
+    private String report;
+
+    /*
+    *  告警检索文本的向量
+    * */
+    private List<Float> embedding;
+
+    /*
+    *  诊断时间
+    * */
+    private LocalDateTime createTime;
+
+    /*
+    *  被直接复用的次数
+    * */
+    private int reuseCount;
+}
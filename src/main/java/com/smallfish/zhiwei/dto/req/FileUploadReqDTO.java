@@ -23,4 +23,8 @@ public class FileUploadReqDTO {
      *  文件大小
      * */
     private Long fileSize;
+    /*
+     *  内容 SHA-256 (上传时边写盘边计算，列表接口不返回)
+     * */
+    private String contentHash;
 }
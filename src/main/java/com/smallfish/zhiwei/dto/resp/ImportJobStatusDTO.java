@@ -0,0 +1,117 @@
+package com.smallfish.zhiwei.dto.resp;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 目录批量导入任务状态 DTO
+ * 进度持久化在 Redis 中，服务重启后可续跑
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJobStatusDTO {
+
+    /*
+    *  任务 ID
+    * */
+    private String jobId;
+
+    /*
+    *  导入目录
+    * */
+    private String directoryPath;
+
+    /*
+    *  租户 ID
+    * */
+    private String tenantId;
+
+    /*
+    *  任务状态：RUNNING / COMPLETED / FAILED / INTERRUPTED
+    * */
+    private String state;
+
+    /*
+    *  扫描到的文件总数
+    * */
+    private int totalFiles;
+
+    /*
+    *  已处理文件数 (含成功、失败和续跑时跳过的)
+    * */
+    private int processedFiles;
+
+    /*
+    *  成功入库的文件数
+    * */
+    private int successCount;
+
+    /*
+    *  失败的文件数
+    * */
+    private int failCount;
+
+    /*
+    *  续跑时因已完成且未修改而跳过的文件数
+    * */
+    private int skippedFiles;
+
+    /*
+    *  已写入的分片总数
+    * */
+    private long totalChunks;
+
+    /*
+    *  本轮运行的吞吐 (文件/秒)
+    * */
+    private double filesPerSecond;
+
+    /*
+    *  本轮运行的吞吐 (分片/秒)
+    * */
+    private double chunksPerSecond;
+
+    /*
+    *  预计剩余时间 (秒)，无法估算时为 -1
+    * */
+    private long etaSeconds;
+
+    /*
+    *  全局错误信息
+    * */
+    private String errorMessage;
+
+    /*
+    *  失败文件详情 (Key: 相对路径, Value: 错误原因)，最多保留 100 条
+    * */
+    @Builder.Default
+    private Map<String, String> failedFiles = new LinkedHashMap<>();
+
+    /*
+    *  任务创建时间
+    * */
+    private LocalDateTime startTime;
+
+    /*
+    *  本轮运行开始时间 (续跑时重置，用于计算吞吐)
+    * */
+    private LocalDateTime runStartTime;
+
+    /*
+    *  最近一次进度更新时间
+    * */
+    private LocalDateTime updateTime;
+
+    /*
+    *  任务结束时间
+    * */
+    private LocalDateTime endTime;
+}
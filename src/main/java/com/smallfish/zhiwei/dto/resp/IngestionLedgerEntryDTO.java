@@ -0,0 +1,73 @@
+package com.smallfish.zhiwei.dto.resp;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 入库台账条目 DTO (一个文件一条，持久化在 Redis)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionLedgerEntryDTO {
+
+    /*
+    *  文件标识 (写入 Milvus source 字段的相对路径)
+    * */
+    private String source;
+
+    /*
+    *  文件路径 (重试时重新读取)
+    * */
+    private String filePath;
+
+    /*
+    *  租户 ID
+    * */
+    private String tenantId;
+
+    /*
+    *  状态：RUNNING / COMMITTED / RETRYING / DEAD
+    * */
+    private String state;
+
+    /*
+    *  文档内容哈希，内容变化后不再续传
+    * */
+    private String contentHash;
+
+    /*
+    *  分片总数
+    * */
+    private int totalChunks;
+
+    /*
+    *  已提交 (写入 Milvus 成功) 的分片数，续传从这里开始
+    * */
+    private int committedChunks;
+
+    /*
+    *  已失败次数
+    * */
+    private int attempts;
+
+    /*
+    *  最近一次错误
+    * */
+    private String lastError;
+
+    /*
+    *  下次重试时间
+    * */
+    private LocalDateTime nextRetryTime;
+
+    /*
+    *  更新时间
+    * */
+    private LocalDateTime updateTime;
+}
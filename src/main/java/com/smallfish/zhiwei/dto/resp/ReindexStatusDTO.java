@@ -0,0 +1,77 @@
+package com.smallfish.zhiwei.dto.resp;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 知识库重建索引任务状态 DTO
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexStatusDTO {
+
+    /*
+    *  任务状态：IDLE / BUILDING / VALIDATING / SWITCHED / FAILED
+    * */
+    private String state;
+
+    /*
+    *  新版本集合名
+    * */
+    private String targetCollection;
+
+    /*
+    *  新集合的向量来源签名 (模型 / 维度 / 精度)
+    * */
+    private String targetProfile;
+
+    /*
+    *  切换前别名指向的集合
+    * */
+    private String previousCollection;
+
+    /*
+    *  文件总数
+    * */
+    private int totalFiles;
+
+    /*
+    *  已处理文件数
+    * */
+    private int processedFiles;
+
+    /*
+    *  失败文件数
+    * */
+    private int failedFiles;
+
+    /*
+    *  复用旧向量的分片数 (模型未变且内容一致)
+    * */
+    private long reusedVectors;
+
+    /*
+    *  重建期间回放的增量变更数
+    * */
+    private int replayedChanges;
+
+    /*
+    *  抽样召回率
+    * */
+    private Double recall;
+
+    /*
+    *  结果说明 / 失败原因
+    * */
+    private String message;
+
+    private LocalDateTime startTime;
+
+    private LocalDateTime endTime;
+}
@@ -23,6 +23,13 @@ public class BizKnowledge {
     public static final String FIELD_VECTOR = "vector";
     public static final String FIELD_METADATA = "metadata";
     public static final String FIELD_SOURCE = "source";
+    public static final String FIELD_TENANT = "tenant_id";
+    public static final String FIELD_CATEGORY = "category";
+
+    /*
+    *  公共知识所属的租户，所有租户检索时都会带上
+    * */
+    public static final String DEFAULT_TENANT = "default";
 
 
     /*
@@ -55,4 +62,14 @@ public class BizKnowledge {
     *  统一路径标识 用于高效删除
     * */
     private String source;
+
+    /*
+    *  租户 ID，作为 Partition Key：检索时按租户裁剪分区
+    * */
+    private String tenantId;
+
+    /*
+    *  文档类别 (文件后缀，如 md / txt)，带倒排索引，替代 source like '%.md' 的标量扫描
+    * */
+    private String category;
 }
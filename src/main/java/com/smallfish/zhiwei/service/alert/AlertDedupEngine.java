@@ -0,0 +1,225 @@
+package com.smallfish.zhiwei.service.alert;
+
+import com.smallfish.zhiwei.common.enums.AlertDecision;
+import com.smallfish.zhiwei.config.AlertDedupProperties;
+import com.smallfish.zhiwei.dto.req.AlertWebhookDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 告警滑动窗口去重引擎
+ * <p>
+ * 每个告警 (租户, 告警名, 实例) 在 Redis 中维护触发时间 ZSET、告警轮次 ZSET 和处置状态 HASH，
+ * 由 Lua 脚本原子地记录触发、统计窗口内的次数 / 抖动，并给出 抑制 / 诊断 / 升级 决策。
+ * 一次 Webhook 的所有告警通过 Pipeline 一次往返完成。
+ * </p>
+ */
+@Slf4j
+@Service
+public class AlertDedupEngine {
+
+    private static final String KEY_PREFIX = "zhiwei:ops:dedup:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final AlertDedupProperties properties;
+    private final DefaultRedisScript<List> recordScript;
+    private final DefaultRedisScript<List> statsScript;
+
+    public AlertDedupEngine(StringRedisTemplate redisTemplate, AlertDedupProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.recordScript = new DefaultRedisScript<>();
+        this.recordScript.setLocation(new ClassPathResource("lua/alert_dedup_record.lua"));
+        this.recordScript.setResultType(List.class);
+        this.statsScript = new DefaultRedisScript<>();
+        this.statsScript.setLocation(new ClassPathResource("lua/alert_dedup_stats.lua"));
+        this.statsScript.setResultType(List.class);
+    }
+
+    /**
+     * 记录一批告警的触发并给出决策 (结果与入参一一对应)
+     */
+    public List<Verdict> evaluate(List<AlertWebhookDTO.Alert> alerts) {
+        List<AlertKey> keys = alerts.stream().map(AlertKey::of).toList();
+        List<Object> results;
+        try {
+            results = pipeline(keys, true);
+        } catch (Exception e) {
+            if (!isNoScript(e)) {
+                throw e;
+            }
+            // Redis 重启或切主后脚本缓存丢失，带上脚本原文重发一次 (EVAL 同时会重新缓存脚本)
+            log.info("告警去重脚本未缓存，改用 EVAL 重发");
+            results = pipeline(keys, false);
+        }
+
+        List<Verdict> verdicts = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            List<?> row = (List<?>) results.get(i);
+            AlertKey key = keys.get(i);
+            long count = asLong(row.get(2));
+            verdicts.add(new Verdict(key, AlertDecision.valueOf(String.valueOf(row.get(0))), String.valueOf(row.get(1)),
+                    count, asLong(row.get(3)), ratePerMinute(count), toTime(asLong(row.get(4)))));
+        }
+        return verdicts;
+    }
+
+    /**
+     * 诊断失败时撤销本次诊断标记，下一次触发可以重新诊断
+     */
+    public void release(Verdict verdict) {
+        redisTemplate.opsForHash().delete(verdict.key().stateKey(), "diagnose");
+    }
+
+    /**
+     * 查询告警触发频率
+     */
+    public AlertStats stats(String tenantId, String alertName, String instance) {
+        AlertKey key = new AlertKey(tenantId, alertName, instance, "");
+        List<?> row = redisTemplate.execute(statsScript, key.keys(), String.valueOf(properties.getWindow().toMillis()));
+        if (row == null || row.isEmpty()) {
+            return new AlertStats(tenantId, alertName, instance, properties.getWindow().toMinutes(), 0, 0, 0, 0,
+                    null, null, null, null);
+        }
+        long count = asLong(row.get(1));
+        return new AlertStats(tenantId, alertName, instance, properties.getWindow().toMinutes(),
+                count, asLong(row.get(2)), asLong(row.get(3)), ratePerMinute(count),
+                toTime(asLong(row.get(4))), toTime(asLong(row.get(5))), toTime(asLong(row.get(6))), toTime(asLong(row.get(7))));
+    }
+
+    private List<Object> pipeline(List<AlertKey> keys, boolean useSha) {
+        byte[] script = recordScript.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        String sha = recordScript.getSha1();
+        long ttl = Math.max(properties.getRetention().toMillis(),
+                Math.max(properties.getCooldown().toMillis(), properties.getEscalateCooldown().toMillis()));
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (AlertKey key : keys) {
+                byte[][] keysAndArgs = toBytes(
+                        key.eventsKey(), key.roundsKey(), key.stateKey(),
+                        UUID.randomUUID().toString().substring(0, 8),
+                        key.startsAt(),
+                        String.valueOf(properties.getWindow().toMillis()),
+                        String.valueOf(Math.max(properties.getRetention().toMillis(), properties.getWindow().toMillis())),
+                        String.valueOf(properties.getCooldown().toMillis()),
+                        String.valueOf(properties.getEscalateCount()),
+                        String.valueOf(properties.getFlapCount()),
+                        String.valueOf(properties.getEscalateCooldown().toMillis()),
+                        String.valueOf(ttl));
+                if (useSha) {
+                    connection.scriptingCommands().evalSha(sha, ReturnType.MULTI, 3, keysAndArgs);
+                } else {
+                    connection.scriptingCommands().eval(script, ReturnType.MULTI, 3, keysAndArgs);
+                }
+            }
+            return null;
+        });
+    }
+
+    private double ratePerMinute(long count) {
+        return (double) count / Math.max(properties.getWindow().toMinutes(), 1);
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[][] toBytes(String... values) {
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = values[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static long asLong(Object value) {
+        return value instanceof Number number ? number.longValue() : Long.parseLong(String.valueOf(value));
+    }
+
+    private static LocalDateTime toTime(long epochMillis) {
+        return epochMillis <= 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 告警的去重维度，Key 使用同一个 hash tag 保证 Cluster 下落在同一个 slot
+     *
+     * @param startsAt 本轮告警开始时间，不同的 startsAt 说明中间恢复过 (抖动)
+     */
+    public record AlertKey(String tenantId, String alertName, String instance, String startsAt) {
+
+        static AlertKey of(AlertWebhookDTO.Alert alert) {
+            Map<String, String> labels = alert.getLabels();
+            return new AlertKey(labels.getOrDefault("tenant_id", "default"),
+                    labels.getOrDefault("alertname", "UnknownAlert"),
+                    labels.getOrDefault("instance", "UnknownInstance"),
+                    alert.getStartsAt() == null ? "" : alert.getStartsAt());
+        }
+
+        private String base() {
+            return KEY_PREFIX + "{" + tenantId + ":" + alertName + ":" + instance + "}";
+        }
+
+        String eventsKey() {
+            return base() + ":events";
+        }
+
+        String roundsKey() {
+            return base() + ":rounds";
+        }
+
+        String stateKey() {
+            return base() + ":state";
+        }
+
+        List<String> keys() {
+            return List.of(eventsKey(), roundsKey(), stateKey());
+        }
+    }
+
+    /**
+     * 去重决策
+     *
+     * @param reason      new / cooldown_expired / cooldown / frequent / flapping
+     * @param count       窗口内触发次数 (含本次)
+     * @param flaps       窗口内抖动次数
+     * @param firstSeen   窗口内首次触发时间
+     */
+    public record Verdict(AlertKey key, AlertDecision decision, String reason, long count, long flaps,
+                          double ratePerMinute, LocalDateTime firstSeen) {
+
+        /**
+         * 频率信息 (Markdown)，升级通知和诊断上下文共用
+         */
+        public String toMarkdown() {
+            return String.format("\n\n## 告警频率\n- 决策: %s (%s)\n- 窗口内首次触发: %s\n- 窗口内触发 %d 次 (%.2f 次/分钟)，抖动 %d 次\n",
+                    decision, reason, firstSeen, count, ratePerMinute, flaps);
+        }
+    }
+
+    /**
+     * 告警频率统计
+     */
+    public record AlertStats(String tenantId, String alertName, String instance, long windowMinutes,
+                             long windowCount, long retainedCount, long flaps, double ratePerMinute,
+                             LocalDateTime firstSeen, LocalDateTime lastSeen,
+                             LocalDateTime lastDiagnose, LocalDateTime lastEscalate) {
+    }
+}
@@ -0,0 +1,121 @@
+package com.smallfish.zhiwei.service.base;
+
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI 调用埋点服务
+ * 将工具调用与 LLM 调用的耗时、报文大小、Token、错误率发布到 Micrometer (Prometheus)，
+ * 同时累加到当前诊断的耗时分解中。
+ * <p>
+ * 指标只按 tool / role / outcome 打标签；TraceID 是高基数字段，
+ * 写入 Prometheus 标签会导致时间序列爆炸，因此只出现在日志和诊断报告的耗时分解里。
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AiMetricsService {
+
+    private static final String OUTCOME_SUCCESS = "success";
+    private static final String OUTCOME_ERROR = "error";
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 记录一次工具调用
+     *
+     * @param tool          工具名
+     * @param role          调用方 Agent 角色
+     * @param profile       当前诊断的耗时分解 (可为 null)
+     * @param nanos         耗时 (纳秒)
+     * @param requestBytes  工具入参字节数
+     * @param responseBytes 工具返回字节数
+     * @param responseTokens 工具返回的估算 Token 数
+     * @param error         是否失败
+     */
+    public void recordToolCall(String tool, String role, DiagnosisProfile profile, long nanos,
+                               int requestBytes, int responseBytes, int responseTokens, boolean error) {
+        String outcome = error ? OUTCOME_ERROR : OUTCOME_SUCCESS;
+
+        Timer.builder("zhiwei.agent.tool.latency")
+                .description("Agent 工具调用耗时")
+                .tags("tool", tool, "role", role, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("zhiwei.agent.tool.calls")
+                .description("Agent 工具调用次数 (按 outcome 区分，可计算错误率)")
+                .tags("tool", tool, "role", role, "outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+        summary("zhiwei.agent.tool.request.bytes", "工具入参大小", "bytes", tool, role).record(requestBytes);
+        summary("zhiwei.agent.tool.response.bytes", "工具返回大小", "bytes", tool, role).record(responseBytes);
+        summary("zhiwei.agent.tool.response.tokens", "工具返回的估算 Token 数", "tokens", tool, role).record(responseTokens);
+
+        if (profile != null) {
+            profile.record("Tool", tool, nanos, responseTokens, error);
+            log.debug("[{}] 工具 {} 耗时 {}ms, 返回 {} bytes", profile.getTraceId(), tool, nanos / 1_000_000, responseBytes);
+        }
+    }
+
+    /**
+     * 记录一次 LLM 调用
+     *
+     * @param role             Agent 角色
+     * @param profile          当前诊断的耗时分解 (可为 null)
+     * @param nanos            耗时 (纳秒)
+     * @param promptTokens     输入 Token 数
+     * @param completionTokens 输出 Token 数
+     * @param error            是否失败
+     */
+    public void recordLlmCall(String role, DiagnosisProfile profile, long nanos,
+                              long promptTokens, long completionTokens, boolean error) {
+        String outcome = error ? OUTCOME_ERROR : OUTCOME_SUCCESS;
+
+        Timer.builder("zhiwei.llm.latency")
+                .description("LLM 调用耗时")
+                .tags("role", role, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("zhiwei.llm.calls")
+                .description("LLM 调用次数 (按 outcome 区分，可计算错误率)")
+                .tags("role", role, "outcome", outcome)
+                .register(meterRegistry)
+                .increment();
+        DistributionSummary.builder("zhiwei.llm.tokens")
+                .description("LLM Token 用量")
+                .baseUnit("tokens")
+                .tags("role", role, "type", "prompt")
+                .register(meterRegistry)
+                .record(promptTokens);
+        DistributionSummary.builder("zhiwei.llm.tokens")
+                .description("LLM Token 用量")
+                .baseUnit("tokens")
+                .tags("role", role, "type", "completion")
+                .register(meterRegistry)
+                .record(completionTokens);
+
+        if (profile != null) {
+            profile.record("LLM", role, nanos, promptTokens + completionTokens, error);
+            log.debug("[{}] LLM({}) 耗时 {}ms, tokens {}/{}", profile.getTraceId(), role, nanos / 1_000_000, promptTokens, completionTokens);
+        }
+    }
+
+    private DistributionSummary summary(String name, String description, String unit, String tool, String role) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .baseUnit(unit)
+                .tags("tool", tool, "role", role)
+                .register(meterRegistry);
+    }
+}
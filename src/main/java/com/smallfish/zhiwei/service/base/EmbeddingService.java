@@ -1,9 +1,14 @@
 package com.smallfish.zhiwei.service.base;
 
 import cn.hutool.core.convert.Convert;
+import com.smallfish.zhiwei.client.EmbeddingProfile;
+import com.smallfish.zhiwei.client.MilvusClientFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -17,6 +22,7 @@ import java.util.List;
 public class EmbeddingService {
 
    private final EmbeddingModel embeddingModel;
+   private final MilvusClientFactory milvusClientFactory;
 
     // text-embedding-v4 支持 8192 tokens。
     // 假设最坏情况 1 char = 1.3 tokens，8192 / 1.3 ≈ 6300。
@@ -24,23 +30,30 @@ public class EmbeddingService {
     private static final int MAX_SAFE_LENGTH = 6000;
 
     /**
-     *  生成单个向量
+     *  生成单个向量 (按正式集合的向量来源)
      * @param text 用户输入
      * @return 返回向量
      */
     public List<Float> generateEmbedding(String text) {
-        String safeText = truncate(text);
-        final float[] vectorArray  = embeddingModel.embed(safeText);
-        // 将 float[] 转换为 List<Float> (Milvus SDK 需要 List)
-        return Convert.toList(Float.class, vectorArray);
+        return generateEmbedding(List.of(text)).get(0);
     }
 
     /**
-     *  批量生成向量
+     *  批量生成向量 (按正式集合的向量来源)
      * @param texts 用户输入 list集合
      * @return 返回向量
      */
     public List<List<Float>> generateEmbedding(List<String> texts) {
+        return generateEmbedding(texts, milvusClientFactory.getActiveProfile());
+    }
+
+    /**
+     *  按指定向量来源批量生成向量 (重建索引写入新集合时使用目标 profile)
+     * @param texts 用户输入 list集合
+     * @param profile 模型与维度
+     * @return 返回向量
+     */
+    public List<List<Float>> generateEmbedding(List<String> texts, EmbeddingProfile profile) {
         if (texts == null || texts.isEmpty()) {
             return List.of();
         }
@@ -48,13 +61,34 @@ public class EmbeddingService {
                 .map(this::truncate)
                 .toList();
 
-        final List<float[]> vectorArrays  = embeddingModel.embed(safeTexts);
+        // 模型与维度随请求传入，覆盖 spring.ai.dashscope.embedding.options 的默认值
+        EmbeddingOptions options = EmbeddingOptions.builder()
+                .model(profile.model())
+                .dimensions(profile.dimension())
+                .build();
+        final List<float[]> vectorArrays = embeddingModel.call(new EmbeddingRequest(safeTexts, options))
+                .getResults()
+                .stream()
+                .map(Embedding::getOutput)
+                .toList();
+        vectorArrays.forEach(vector -> checkDimension(vector, profile));
+        // 将 float[] 转换为 List<Float> (Milvus SDK 需要 List)
         return vectorArrays
                 .stream()
                 .map(each -> Convert.toList(Float.class,each))
                 .toList();
     }
 
+    /**
+     * 维度校验：模型返回的维度与目标集合不一致时，写入和检索都会失败，这里提前给出明确错误
+     */
+    private void checkDimension(float[] vector, EmbeddingProfile profile) {
+        if (vector.length != profile.dimension()) {
+            throw new IllegalStateException(String.format("Embedding 维度 %d 与集合维度 %d 不一致 (%s)",
+                    vector.length, profile.dimension(), profile.signature()));
+        }
+    }
+
     /**
      * 安全截断逻辑
      */
@@ -1,77 +1,34 @@
 package com.smallfish.zhiwei.service.base;
 
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.service.notification.NotificationDispatcher;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 
 /*
 *  发送通知服务层
+*  只负责入队，发送、窗口汇总、限流和重试由 NotificationDispatcher 在后台完成，
+*  通道 (钉钉 / 飞书 / 通用 Webhook) 见 notification.sinks
 * */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class NotificationService {
 
-    // notification.webhook-url: https://oapi.dingtalk.com/robot/send?access_token=xxxx
-    @Value("${notification.webhook-url}")
-    private String webhookUrl;
+    private final NotificationDispatcher dispatcher;
 
     /**
      * 发送 Markdown 消息 (推荐)
      * @param title 消息标题 (会在弹窗中显示)
      * @param content Markdown 格式的正文
+     * 异步发送：调用方立即返回，汇总窗口内的多条报告会合并为一条
      */
     public void sendMarkdown(String title, String content) {
-        if (webhookUrl == null || webhookUrl.isEmpty()) {
+        if (!dispatcher.hasSinks()) {
             log.warn(" 未配置告警机器人 Webhook，跳过发送");
             return;
         }
-
-        try {
-            // 1. 构建钉钉 Markdown 消息体
-            // 文档: https://open.dingtalk.com/document/orgapp/custom-robot-access
-            JSONObject markdown = JSONUtil.createObj()
-                    .set("title", title)
-                    .set("text", content);
-
-            JSONObject message = JSONUtil.createObj()
-                    .set("msgtype", "markdown")
-                    .set("markdown", markdown);
-
-            try (HttpResponse response = HttpRequest.post(webhookUrl)
-                    .body(message.toString())
-                    .timeout(5000)
-                    .execute()) {
-
-                // 1. 检查状态码 (防御性编程，防止钉钉挂了我们还以为成功了)
-                if (!response.isOk()) {
-                    log.error("告警通知发送失败，状态码: {}, 响应: {}",
-                            response.getStatus(), response.body());
-                    return;
-                }
-
-                // 2. 获取结果 (此时调用 body 是安全的)
-                String result = response.body();
-                log.info("告警通知已发送 | 响应: {}", result);
-            }
-        } catch (Exception e) {
-            log.error("发送告警通知失败", e);
-        }
+        dispatcher.submit(title, content);
     }
-
-    // 如果你是飞书 (Feishu)，请使用下面的结构替换上面的 message 构建逻辑：
-    /*
-    JSONObject contentObj = JSONUtil.createObj()
-            .set("title", title)
-            .set("content", JSONUtil.createArray().add(JSONUtil.createArray().add(
-                    JSONUtil.createObj().set("tag", "text").set("text", content)
-            )));
-    JSONObject message = JSONUtil.createObj()
-            .set("msg_type", "post")
-            .set("content", JSONUtil.createObj().set("post", JSONUtil.createObj().set("zh_cn", contentObj)));
-    */
-}
\ No newline at end of file
+}
@@ -2,28 +2,42 @@ package com.smallfish.zhiwei.service.chat;
 
 import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
 import com.alibaba.cloud.ai.graph.CompileConfig;
+import com.alibaba.cloud.ai.graph.NodeOutput;
 import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.alibaba.cloud.ai.graph.agent.flow.agent.SupervisorAgent;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.smallfish.zhiwei.agent.instrument.AgentInstrumentation;
+import com.smallfish.zhiwei.agent.instrument.ToolCallListener;
+import com.smallfish.zhiwei.agent.tool.AlertFrequencyTools;
 import com.smallfish.zhiwei.agent.tool.ClsLogQueryTools;
 import com.smallfish.zhiwei.agent.tool.ClsTopicTools;
 import com.smallfish.zhiwei.agent.tool.InternalDocsTools;
 import com.smallfish.zhiwei.agent.tool.PrometheusQueryTools;
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.common.enums.AlertDecision;
+import com.smallfish.zhiwei.common.enums.ChatEventType;
 import com.smallfish.zhiwei.config.AiOpsPromptConfig;
+import com.smallfish.zhiwei.config.DiagnosisHistoryProperties;
+import com.smallfish.zhiwei.dto.model.DiagnosisRecordDTO;
 import com.smallfish.zhiwei.dto.req.AlertWebhookDTO;
+import com.smallfish.zhiwei.dto.resp.ChatRespDTO;
+import com.smallfish.zhiwei.service.alert.AlertDedupEngine;
 import com.smallfish.zhiwei.service.base.NotificationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.support.ToolCallbacks;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 生产级 AI Ops 自动运维服务 (Graph 模式版)
@@ -36,28 +50,31 @@ import java.util.*;
 public class AutoOpsGraphService {
 
     private final NotificationService notificationService;
-    private final StringRedisTemplate redisTemplate;
+    private final AlertDedupEngine dedupEngine;
     private final DashScopeChatModel chatModel;
     private final AiOpsPromptConfig promptConfig;
+    private final AgentInstrumentation instrumentation;
+    private final DiagnosisHistoryService historyService;
+    private final DiagnosisHistoryProperties historyProperties;
 
     // 工具集注入
     private final PrometheusQueryTools prometheusTools;
     private final ClsLogQueryTools clsTools;
     private final ClsTopicTools clsTopicTools;
     private final InternalDocsTools internalDocsTools;
+    private final AlertFrequencyTools alertFrequencyTools;
 
     private static final CompileConfig GRAPH_COMPILE_CONFIG = CompileConfig.builder()
             .recursionLimit(20)
             .build();
     private static final String STATE_KEY_MESSAGES = "messages";
-    private static final String LOCK_KEY_PREFIX = "zhiwei:ops:graph:lock:";
 
     /**
      * 场景一：异步处理 Webhook 告警 (自动驾驶模式)
-     * 特点：需要告警收敛 (Lock)，执行后通知
+     * 特点：收敛由 {@link AlertDedupEngine} 在入口处完成，这里只处理 诊断 / 升级 决策，执行后通知
      */
     @Async("aiTaskExecutor")
-    public void processAlertGraphAsync(AlertWebhookDTO.Alert alert) {
+    public void processAlertGraphAsync(AlertWebhookDTO.Alert alert, AlertDedupEngine.Verdict verdict) {
         String traceId = UUID.randomUUID().toString().substring(0, 8);
 
         // 1. 提取元数据 (使用 Optional 避免空指针)
@@ -65,33 +82,68 @@ public class AutoOpsGraphService {
         String instance = alert.getLabels().getOrDefault("instance", "UnknownInstance");
         String tenantId = alert.getLabels().getOrDefault("tenant_id", "default");
 
-        // 2. Redis 告警收敛 (15分钟内同实例同告警只处理一次)
-        String lockKey = String.format("%s%s:%s:%s", LOCK_KEY_PREFIX, tenantId, alertName, instance);
-        // 如果已存在锁，直接返回（收敛）
-        if (Boolean.FALSE.equals(redisTemplate.opsForValue().setIfAbsent(lockKey, "RUNNING", Duration.ofMinutes(15)))) {
-            log.info("[{}] 告警收敛生效，跳过: {}", traceId, lockKey);
-            return;
+        // 2. 升级：先通知值班，再带着频率信息重新诊断
+        boolean escalated = verdict.decision() == AlertDecision.ESCALATE;
+        if (escalated) {
+            String title = "🚨 告警升级: " + alertName;
+            notificationService.sendMarkdown(title, String.format("# %s\n\n> TraceID: %s | 实例: %s\n%s",
+                    title, traceId, instance, verdict.toMarkdown()));
         }
 
-        log.info("[{}] 启动 Graph 编排 | 告警: {}", traceId, alertName);
+        log.info("[{}] 启动 Graph 编排 | 告警: {} | 决策: {} ({})", traceId, alertName, verdict.decision(), verdict.reason());
 
         try {
-            // 3. 构造 Graph (复用工厂方法)
-            SupervisorAgent supervisor = buildGraphAgent();
+            // 3. 检索历史诊断：高置信度匹配直接复用，否则作为参考上下文
+            DiagnosisHistoryService.AlertQuery historyQuery = null;
+            List<DiagnosisHistoryService.Match> history = List.of();
+            if (historyProperties.isEnabled()) {
+                try {
+                    historyQuery = historyService.prepare(alert, tenantId);
+                    history = historyService.findSimilar(historyQuery);
+                } catch (Exception e) {
+                    log.warn("[{}] 检索历史诊断失败，按全新告警处理: {}", traceId, e.getMessage());
+                }
+                // 升级说明历史结论没能止住告警，不再直接复用；只复用同一实例的诊断，其他实例的只作参考
+                if (!escalated && historyQuery != null) {
+                    DiagnosisHistoryService.AlertQuery query = historyQuery;
+                    Optional<DiagnosisHistoryService.Match> reusable = history.stream()
+                            .filter(match -> historyService.reusable(match, query))
+                            .findFirst();
+                    if (reusable.isPresent()) {
+                        reuseHistoricalReport(alertName, traceId, reusable.get());
+                        return;
+                    }
+                }
+            }
 
-            // 4. 构造输入上下文
-            String inputContext = buildSafeAlertContext(alert, traceId);
+            // 4. 构造 Graph (复用工厂方法)，绑定本次诊断的耗时分解
+            DiagnosisProfile profile = new DiagnosisProfile(traceId);
+            profile.setTenantId(tenantId);
+            SupervisorAgent supervisor = buildGraphAgent(profile);
 
-            // 5. 执行 Graph
+            // 5. 构造输入上下文
+            String inputContext = buildSafeAlertContext(alert, traceId) + verdict.toMarkdown();
+            if (!history.isEmpty()) {
+                inputContext += historyService.toContext(history);
+            }
+
+            // 6. 执行 Graph
             Optional<OverAllState> result = supervisor.invoke(inputContext);
 
-            // 6. 解析结果并通知
+            // 7. 解析结果并通知，成功的诊断写入历史供后续告警复用
             String report = extractFinalReport(result.orElse(null));
             if (StringUtils.hasText(report)) {
-                String title = "🤖 AI 诊断报告: " + alertName;
-                String markdownBody = String.format("# %s\n\n> TraceID: %s\n\n%s", title, traceId, report);
+                String title = (escalated ? "🚨 升级诊断报告: " : "🤖 AI 诊断报告: ") + alertName;
+                String markdownBody = String.format("# %s\n\n> TraceID: %s\n\n%s%s", title, traceId, report, profile.toMarkdown());
                 notificationService.sendMarkdown(title, markdownBody);
                 log.info("[{}] 诊断成功", traceId);
+                if (historyQuery != null) {
+                    try {
+                        historyService.record(historyQuery, traceId, report);
+                    } catch (Exception e) {
+                        log.warn("[{}] 保存诊断历史失败: {}", traceId, e.getMessage());
+                    }
+                }
             } else {
                 log.warn("[{}] 诊断未生成有效内容", traceId);
             }
@@ -99,11 +151,24 @@ public class AutoOpsGraphService {
         } catch (Exception e) {
             log.error("[{}] Graph 执行异常", traceId, e);
             notificationService.sendMarkdown("诊断失败", "AI Graph 中断: " + e.getMessage());
-            // 只有异常时才释放锁，允许重试；正常情况保持锁以进行收敛
-            redisTemplate.delete(lockKey);
+            // 只有异常时才撤销诊断标记，允许下次触发重试；正常情况保持冷却以进行收敛
+            dedupEngine.release(verdict);
         }
     }
 
+    /**
+     * 复用历史诊断：同一根因的告警直接推送上次的报告，不再调用大模型
+     */
+    private void reuseHistoricalReport(String alertName, String traceId, DiagnosisHistoryService.Match match) {
+        DiagnosisRecordDTO record = match.record();
+        String title = "🤖 疑似同一根因: " + alertName;
+        String markdownBody = String.format("# %s\n\n> TraceID: %s | 复用诊断 %s (%s, 相似度 %.2f)\n> 未重新调用大模型，如结论不符请人工确认\n\n%s",
+                title, traceId, record.getId(), record.getCreateTime(), match.score(), record.getReport());
+        notificationService.sendMarkdown(title, markdownBody);
+        historyService.markReused(record);
+        log.info("[{}] 命中历史诊断 {} (相似度 {})，跳过 Graph 编排", traceId, record.getId(), String.format("%.2f", match.score()));
+    }
+
     /**
      * 场景二：同步执行用户查询 (副驾驶模式)
      * 特点：不需要锁，直接返回结果
@@ -113,13 +178,16 @@ public class AutoOpsGraphService {
             log.info("Graph 开始执行用户查询: {}", query);
 
             // 1. 构造 Graph
-            SupervisorAgent supervisor = buildGraphAgent();
+            DiagnosisProfile profile = new DiagnosisProfile(UUID.randomUUID().toString().substring(0, 8));
+            SupervisorAgent supervisor = buildGraphAgent(profile);
 
             // 2. 构造 Context (这里建议用 PromptTemplate，暂时保持拼接)
             String inputContext = "用户查询: " + query + "\n\n请严格按照《告警分析报告》模板进行排查和输出。";
 
             // 3. 执行
-            return supervisor.invoke(inputContext);
+            Optional<OverAllState> state = supervisor.invoke(inputContext);
+            log.info("Graph 用户查询完成 {}", profile.toMarkdown());
+            return state;
 
         } catch (Exception e) {
             log.error("Graph 执行失败", e);
@@ -127,16 +195,105 @@ public class AutoOpsGraphService {
         }
     }
 
+    /**
+     * 场景三：流式执行用户查询 (SSE)
+     * 直接订阅 Graph 的流式输出：节点切换、工具调用、LLM Token 产生即推送，不再等整图跑完后伪造打字机效果
+     *
+     * @param query          用户问题
+     * @param conversationId 会话 ID
+     * @return 事件流 (CONTENT = 模型输出 Token, TOOL_LOG = 节点切换/工具调用进度)
+     */
+    public Flux<ChatRespDTO> streamAnalysis(String query, String conversationId) {
+        return Flux.defer(() -> {
+            DiagnosisProfile profile = new DiagnosisProfile(UUID.randomUUID().toString().substring(0, 8));
+
+            // 工具在框架线程中回调，通过 Sink 汇入 SSE 流 (busyLooping 处理并发写入)
+            Sinks.Many<ChatRespDTO> toolEvents = Sinks.many().unicast().onBackpressureBuffer();
+            Sinks.EmitFailureHandler retry = Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+            ToolCallListener listener = new ToolCallListener() {
+                @Override
+                public void onStart(String tool, String input) {
+                    toolEvents.emitNext(buildEvent(conversationId, ChatEventType.TOOL_LOG, "🔧 调用工具: " + tool), retry);
+                }
+
+                @Override
+                public void onFinish(String tool, long elapsedMs, boolean error) {
+                    String text = String.format("%s 工具 %s 完成，耗时 %dms", error ? "⚠️" : "✅", tool, elapsedMs);
+                    toolEvents.emitNext(buildEvent(conversationId, ChatEventType.TOOL_LOG, text), retry);
+                }
+            };
+
+            SupervisorAgent supervisor = buildGraphAgent(profile, listener);
+            String inputContext = "用户查询: " + query + "\n\n请严格按照《告警分析报告》模板进行排查和输出。";
+
+            AtomicReference<OverAllState> lastState = new AtomicReference<>();
+            AtomicReference<String> currentNode = new AtomicReference<>();
+            AtomicBoolean streamedContent = new AtomicBoolean(false);
+
+            Flux<NodeOutput> graphStream;
+            try {
+                graphStream = supervisor.stream(inputContext);
+            } catch (Exception e) {
+                return Flux.error(e);
+            }
+
+            Flux<ChatRespDTO> graphEvents = graphStream
+                    .concatMap(output -> {
+                        if (output.state() != null) {
+                            lastState.set(output.state());
+                        }
+                        List<ChatRespDTO> events = new ArrayList<>(2);
+                        String node = output.node();
+                        // 节点切换
+                        if (node != null && !node.startsWith("__") && !node.equals(currentNode.getAndSet(node))) {
+                            events.add(buildEvent(conversationId, ChatEventType.TOOL_LOG, "🔀 进入节点: " + node));
+                        }
+                        // LLM Token (Supervisor 的路由决策不是给用户看的内容)
+                        if (output instanceof StreamingOutput streaming
+                                && StringUtils.hasText(streaming.chunk())
+                                && !isSupervisorNode(node)) {
+                            streamedContent.set(true);
+                            events.add(buildEvent(conversationId, ChatEventType.CONTENT, streaming.chunk()));
+                        }
+                        return Flux.fromIterable(events);
+                    })
+                    // 框架未产生 Token 流 (例如模型以非流式调用) 时，结束后一次性输出最终报告
+                    .concatWith(Flux.defer(() -> {
+                        if (streamedContent.get()) {
+                            return Flux.empty();
+                        }
+                        String report = extractFinalReport(lastState.get());
+                        return StringUtils.hasText(report)
+                                ? Flux.just(buildEvent(conversationId, ChatEventType.CONTENT, report))
+                                : Flux.just(buildEvent(conversationId, ChatEventType.CONTENT, "\n 分析失败，Agent 未返回结果。"));
+                    }))
+                    .doFinally(signal -> {
+                        toolEvents.emitComplete(retry);
+                        log.info("Graph 流式查询结束 ({}) {}", signal, profile.toMarkdown());
+                    });
+
+            return Flux.merge(graphEvents, toolEvents.asFlux());
+        });
+    }
+
     /**
      * 核心工厂方法：构建图结构
      * 解决代码重复问题
+     * Graph 节点可能在框架线程中执行，因此埋点直接绑定 profile，不依赖线程上下文
      */
-    private SupervisorAgent buildGraphAgent() {
+    private SupervisorAgent buildGraphAgent(DiagnosisProfile profile) {
+        return buildGraphAgent(profile, null);
+    }
+
+    /**
+     * 构建图结构，工具调用事件推送给监听器 (流式场景使用)
+     */
+    private SupervisorAgent buildGraphAgent(DiagnosisProfile profile, ToolCallListener listener) {
         // --- Node A: Planner ---
         ReactAgent plannerNode = ReactAgent.builder()
                 .name("Planner")
                 .description("负责分析现状，制定排查计划。")
-                .model(chatModel)
+                .model(instrumentation.wrapModel("Planner", profile, chatModel))
                 .systemPrompt(promptConfig.getPlannerPrompt())
                 .build();
 
@@ -144,16 +301,16 @@ public class AutoOpsGraphService {
         ReactAgent executorNode = ReactAgent.builder()
                 .name("Executor")
                 .description("负责执行具体的查询任务。")
-                .model(chatModel)
+                .model(instrumentation.wrapModel("Executor", profile, chatModel))
                 .systemPrompt(promptConfig.getExecutorPrompt())
-                // 注册所有工具
-                .tools(ToolCallbacks.from(prometheusTools, clsTools, clsTopicTools, internalDocsTools))
+                // 注册所有工具 (带耗时/报文埋点)
+                .tools(instrumentation.wrapTools("Executor", profile, listener, prometheusTools, clsTools, clsTopicTools, internalDocsTools, alertFrequencyTools))
                 .build();
 
         // --- Router: Supervisor ---
         return SupervisorAgent.builder()
                 .name("Supervisor")
-                .model(chatModel)
+                .model(instrumentation.wrapModel("Supervisor", profile, chatModel))
                 .subAgents(List.of(plannerNode, executorNode))
                 .systemPrompt(promptConfig.getSupervisorPrompt())
                 .compileConfig(GRAPH_COMPILE_CONFIG)
@@ -184,6 +341,18 @@ public class AutoOpsGraphService {
         return null;
     }
 
+    private boolean isSupervisorNode(String node) {
+        return node != null && node.toLowerCase().contains("supervisor");
+    }
+
+    private ChatRespDTO buildEvent(String conversationId, ChatEventType type, String text) {
+        return ChatRespDTO.builder()
+                .conversationId(conversationId)
+                .answer(text)
+                .type(type.getValue())
+                .build();
+    }
+
     private String buildSafeAlertContext(AlertWebhookDTO.Alert alert, String traceId) {
         // 1. 准备参数 Map
         Map<String, Object> vars = new HashMap<>();
@@ -6,15 +6,17 @@ import cn.hutool.json.JSONUtil;
 import com.smallfish.zhiwei.agent.core.ExecutorAgent;
 import com.smallfish.zhiwei.agent.core.PlannerAgent;
 import com.smallfish.zhiwei.agent.core.ReviewerAgent;
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.common.context.OpsTraceContext;
 import com.smallfish.zhiwei.common.enums.ChatEventType;
 import com.smallfish.zhiwei.config.AiOpsPromptConfig;
 import com.smallfish.zhiwei.dto.req.AlertWebhookDTO;
 import com.smallfish.zhiwei.dto.resp.ChatRespDTO;
+import com.smallfish.zhiwei.service.alert.AlertDedupEngine;
 import com.smallfish.zhiwei.service.base.NotificationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
@@ -25,7 +27,6 @@ import reactor.core.scheduler.Schedulers;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -38,38 +39,37 @@ import java.util.function.Consumer;
 public class AutoOpsService {
 
     private final NotificationService notificationService;
-    private final StringRedisTemplate redisTemplate;
+    private final AlertDedupEngine dedupEngine;
 
     // Agents
     private final PlannerAgent plannerAgent;
     private final ExecutorAgent executorAgent;
     private final ReviewerAgent reviewerAgent;
 
+    // 排查历史上下文 (Token 预算控制)
+    private final HistoryContextManager historyContextManager;
+
     // ================== 资源文件注入 (彻底解耦 Prompt) ==================
     private final AiOpsPromptConfig promptConfig;
 
 
-    // 常量
-    private static final String LOCK_KEY_PREFIX = "zhiwei:ops:lock:";
-
     /**
      * 场景一：Webhook 异步告警处理 (后台任务)
      */
     @Async("aiTaskExecutor")
-    public void processAlertAsync(AlertWebhookDTO.Alert alert) {
+    public void processAlertAsync(AlertWebhookDTO.Alert alert, AlertDedupEngine.Verdict verdict) {
         String traceId = UUID.randomUUID().toString().substring(0, 8);
         String alertName = alert.getLabels().getOrDefault("alertname", "Unknown");
         String instance = alert.getLabels().getOrDefault("instance", "Unknown");
         String tenantId = alert.getLabels().getOrDefault("tenant_id", "default");
 
-        // 1. Redis 锁：告警收敛 (15分钟内同实例同告警只处理一次)
-        String lockKey = String.format("%s%s:%s:%s", LOCK_KEY_PREFIX, tenantId, alertName, instance);
-        Boolean isLocked = redisTemplate.opsForValue().setIfAbsent(lockKey, "PROCESSING", 15, TimeUnit.MINUTES);
+        // 1. 告警收敛已由去重引擎在入口处完成，这里只记录决策
+        log.info("[{}] 开始诊断 | 告警: {} | 决策: {} ({})", traceId, alertName, verdict.decision(), verdict.reason());
 
-        if (Boolean.FALSE.equals(isLocked)) {
-            log.info("[{}] 告警收敛跳过: {}", traceId, lockKey);
-            return;
-        }
+        // 绑定本次诊断的耗时分解，工具与 LLM 埋点会累加到这里
+        DiagnosisProfile profile = new DiagnosisProfile(traceId);
+        profile.setTenantId(tenantId);
+        OpsTraceContext.bind(profile);
 
         try {
             // 2. 准备数据上下文 (Map)
@@ -82,7 +82,7 @@ public class AutoOpsService {
 
             // 3. 渲染“背景信息”字符串 (此时还是数据，不是指令)
             PromptTemplate fmtTemplate = new PromptTemplate(promptConfig.getFormatAlertContext());
-            String contextString = fmtTemplate.render(dataVars);
+            String contextString = fmtTemplate.render(dataVars) + verdict.toMarkdown();
 
             String conversationId = String.format("AUTO-%s-%s", traceId, DateUtil.today());
 
@@ -96,15 +96,19 @@ public class AutoOpsService {
                     // 结果回调：发送钉钉/企微通知
                     (report) -> {
                         String title = "🤖 AI 诊断报告: " + alertName;
-                        String body = String.format("### %s\n**TraceID**: `%s`\n\n%s", title, traceId, report);
+                        String body = String.format("### %s\n**TraceID**: `%s`\n\n%s%s", title, traceId, report, profile.toMarkdown());
                         notificationService.sendMarkdown(title, body);
-                    }
+                    },
+                    // 后台任务不需要逐 Token 推送
+                    null
             );
 
         } catch (Exception e) {
             log.error("[{}] 诊断异常", traceId, e);
             notificationService.sendMarkdown("诊断失败", "AI 中断: " + e.getMessage());
-            redisTemplate.delete(lockKey); // 异常释放锁，允许重试
+            dedupEngine.release(verdict); // 异常撤销诊断标记，允许重试
+        } finally {
+            OpsTraceContext.clear();
         }
     }
 
@@ -114,6 +118,8 @@ public class AutoOpsService {
     public Flux<ServerSentEvent<ChatRespDTO>> streamTroubleshooting(String query, String conversationId) {
         return Flux.create((FluxSink<ServerSentEvent<ChatRespDTO>> sink )-> {
             String traceId = UUID.randomUUID().toString().substring(0, 8);
+            DiagnosisProfile profile = new DiagnosisProfile(traceId);
+            OpsTraceContext.bind(profile);
 
             try {
                 sendSse(sink, conversationId, "🔍 收到请求，正在启动 Multi-Agent 分析引擎...");
@@ -131,11 +137,14 @@ public class AutoOpsService {
                         contextString,
                         // 过程回调：推送到前端
                         (msg) -> sendSse(sink, conversationId, msg + "\n"),
-                        // 结果回调：这里传 null，因为我们在 workflow 内部会针对 review 阶段做特殊处理，
-                        // 或者你也可以在这里统一发，但为了流式体验，workflow 内部控制更好。
-                        null
+                        // 结果回调：这里传 null，workflow 内部会针对 review 阶段改为流式输出
+                        null,
+                        // 报告 Token 回调：原样推送，不追加换行
+                        (token) -> sendSse(sink, conversationId, token)
                 );
 
+                // 附加本次诊断的耗时分解
+                sendSse(sink, conversationId, profile.toMarkdown());
                 sendDone(sink, conversationId);
                 sink.complete();
 
@@ -144,6 +153,8 @@ public class AutoOpsService {
                 sendSse(sink, conversationId, "❌ 发生错误: " + e.getMessage());
                 sendDone(sink, conversationId);
                 sink.complete();
+            } finally {
+                OpsTraceContext.clear();
             }
         }).subscribeOn(Schedulers.boundedElastic());
     }
@@ -154,7 +165,8 @@ public class AutoOpsService {
     private void runDiagnosticWorkflow(String traceId, String conversationId,
                                        String safeContextString,
                                        Consumer<String> stepCallback,
-                                       Consumer<String> finalReportCallback) {
+                                       Consumer<String> finalReportCallback,
+                                       Consumer<String> reportTokenCallback) {
 
         // --- Phase 1: Planner (规划) ---
         // 使用 PromptTemplate 加载指令
@@ -168,7 +180,8 @@ public class AutoOpsService {
         stepCallback.accept("📋 规划完成，共 " + steps.size() + " 个步骤。");
 
         // --- Phase 2: Execute (循环执行) ---
-        StringBuilder historyBuffer = new StringBuilder(); // 纯文本历史，用于 Template 替换
+        // 近期步骤保留原文，旧步骤压缩为摘要，避免 Prompt 随步骤数平方增长
+        HistoryContextManager.HistoryContext history = historyContextManager.newContext(traceId);
 
         for (int i = 0; i < steps.size(); i++) {
             String step = steps.getStr(i);
@@ -177,14 +190,13 @@ public class AutoOpsService {
             // 使用 PromptTemplate 加载执行指令
             PromptTemplate execTpl = new PromptTemplate(promptConfig.getPhaseExecute());
             execTpl.add("context", safeContextString);
-            execTpl.add("history", historyBuffer.toString().isEmpty() ? "暂无历史" : historyBuffer.toString());
+            execTpl.add("history", history.render());
             execTpl.add("currentStep", step);
 
             String result = executorAgent.chat(execTpl.render(), conversationId);
 
             // 更新历史
-            String record = String.format("**步骤 %d**: %s\n> 结果: %s\n\n", i + 1, step, result);
-            historyBuffer.append(record);
+            history.append(step, result);
 
             stepCallback.accept("✅ 结果: " + result);
         }
@@ -194,19 +206,20 @@ public class AutoOpsService {
 
         PromptTemplate reviewTpl = new PromptTemplate(promptConfig.getPhaseReview());
         reviewTpl.add("context", safeContextString);
-        reviewTpl.add("history", historyBuffer.toString());
+        reviewTpl.add("history", history.render());
 
         String finalPrompt = reviewTpl.render();
+        history.reportSaved(OpsTraceContext.currentProfile());
 
-        // 区分逻辑：如果是后台任务，需要回调发通知；如果是流式，直接返回
-        String report = reviewerAgent.chat(finalPrompt, conversationId);
-
-        // 如果有最终回调（比如发钉钉），则调用
+        // 区分逻辑：如果是后台任务，需要回调发通知；如果是流式，逐 Token 推给前端
         if (finalReportCallback != null) {
+            String report = reviewerAgent.chat(finalPrompt, conversationId);
             finalReportCallback.accept(report);
         } else {
-            // 如果是流式，也通过 stepCallback 把报告推给前端
-            stepCallback.accept(report);
+            // 流式：真实的模型 Token 流，当前线程本就是 boundedElastic，阻塞等待结束即可
+            reviewerAgent.streamChat(finalPrompt, conversationId)
+                    .doOnNext(reportTokenCallback)
+                    .blockLast();
         }
     }
 
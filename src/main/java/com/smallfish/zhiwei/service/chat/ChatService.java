@@ -1,8 +1,13 @@
 package com.smallfish.zhiwei.service.chat;
 
+import com.smallfish.zhiwei.agent.instrument.AgentInstrumentation;
 import com.smallfish.zhiwei.agent.tool.AgentTools;
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.common.context.OpsTraceContext;
 import com.smallfish.zhiwei.common.enums.ChatEventType;
 import com.smallfish.zhiwei.dto.resp.ChatRespDTO;
+import com.smallfish.zhiwei.service.base.AiMetricsService;
+import com.smallfish.zhiwei.utils.TokenEstimator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
@@ -14,8 +19,13 @@ import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  ChatClient + Advisors
@@ -27,19 +37,26 @@ import java.util.List;
 @Service
 public class ChatService {
 
+    // 未处于 Agent 上下文时 (如 /api/chat) 的默认角色
+    private static final String DEFAULT_ROLE = "Chat";
+
     private final ChatClient chatClient;
+    private final AiMetricsService metricsService;
 
     public ChatService(ChatClient.Builder builder,
                        ChatMemory chatMemory,
                         List<AgentTools>  agentTools,
+                       AgentInstrumentation instrumentation,
+                       AiMetricsService metricsService,
                        @Value("classpath:prompts/system-prompt.st") Resource systemPrompt) {
+        this.metricsService = metricsService;
 
         // 2. 构建 Client
         this.chatClient = builder
                 // A. 挂载你的 Prompt 文件 (Spring 会自动替换 {history_block} 等逻辑)
                 .defaultSystem(systemPrompt)
-                // B. 挂载你的旧工具 (自动处理 React/Function Calling)
-                .defaultTools(agentTools.toArray())
+                // B. 挂载你的旧工具 (自动处理 React/Function Calling)，并加上耗时/报文埋点
+                .defaultToolCallbacks(instrumentation.wrapTools(DEFAULT_ROLE, null, agentTools.toArray()))
                 .defaultAdvisors(
                         // 注册记忆
                         MessageChatMemoryAdvisor.builder(chatMemory)
@@ -53,26 +70,26 @@ public class ChatService {
      * 同步阻塞调用 (等待所有结果生成完一次性返回)
      */
     public String executeChat(String question, String conversationId) {
-        return chatClient.prompt()
+        return observeCall(question, () -> chatClient.prompt()
                 .user(question)
                 // 动态传递参数
                 .advisors(a -> a
                         .param(MessageWindowChatMemory.CONVERSATION_ID, conversationId))
                 .call()
-                .content();
+                .content());
     }
 
     /**
      * 同步阻塞调用 (支持自定义 System Prompt)
      */
     public String executeChat(String question, String conversationId, String systemPrompt) {
-        return chatClient.prompt()
+        return observeCall(systemPrompt + question, () -> chatClient.prompt()
                 .system(systemPrompt) // 覆盖默认 System Prompt
                 .user(question)
                 .advisors(a -> a
                         .param(MessageWindowChatMemory.CONVERSATION_ID, conversationId))
                 .call()
-                .content();
+                .content());
     }
 
     /**
@@ -85,12 +102,13 @@ public class ChatService {
     public Flux<ServerSentEvent<ChatRespDTO>> streamChat(String question, String conversationId) {
 
         // 1. 核心对话流 (Type = CONTENT)
-        Flux<ServerSentEvent<ChatRespDTO>> contentStream = chatClient.prompt()
+        Flux<ServerSentEvent<ChatRespDTO>> contentStream = observeStream(question, chatClient.prompt()
                 .user(question)
                 .advisors(a -> a.param(MessageWindowChatMemory.CONVERSATION_ID, conversationId))
                 .stream()
                 .chatResponse()
-                .filter(response -> response.getResult() != null && response.getResult().getOutput().getText() != null)
+                .filter(response -> response.getResult() != null && response.getResult().getOutput().getText() != null),
+                        response -> response.getResult().getOutput().getText())
                 .map(chatResponse -> {
                     String content = chatResponse.getResult().getOutput().getText();
 
@@ -145,11 +163,53 @@ public class ChatService {
      * 只返回纯文本内容，不封装 SSE，方便上层业务自由处理
      */
     public Flux<String> streamChatContent(String question, String conversationId, String systemPrompt) {
-        return chatClient.prompt()
+        String role = OpsTraceContext.currentRole(DEFAULT_ROLE);
+        return observeStream(systemPrompt + question, chatClient.prompt()
                 .system(systemPrompt) // 1. 注入 Agent 的人设
                 .user(question)
                 .advisors(a -> a.param(MessageWindowChatMemory.CONVERSATION_ID, conversationId))
+                // 工具在 Reactor 线程上执行，角色随工具上下文传递
+                .toolContext(Map.of(OpsTraceContext.TOOL_CONTEXT_ROLE, role))
                 .stream()
-                .content(); // 2. 直接返回内容流 (Flux<String>)
+                .content(), Function.identity()); // 2. 直接返回内容流 (Flux<String>)
+    }
+
+    /**
+     * 同步调用埋点：记录耗时、估算 Token 与失败
+     * 注意：ChatClient 内部会执行工具调用，这里的耗时包含工具耗时
+     */
+    private String observeCall(String promptText, Supplier<String> call) {
+        String role = OpsTraceContext.currentRole(DEFAULT_ROLE);
+        DiagnosisProfile profile = OpsTraceContext.currentProfile();
+        long start = System.nanoTime();
+        String answer = null;
+        boolean error = false;
+        try {
+            answer = call.get();
+            return answer;
+        } catch (RuntimeException e) {
+            error = true;
+            throw e;
+        } finally {
+            metricsService.recordLlmCall(role, profile, System.nanoTime() - start,
+                    TokenEstimator.estimate(promptText), TokenEstimator.estimate(answer), error);
+        }
+    }
+
+    /**
+     * 流式调用埋点：角色与诊断上下文在组装时取出 (流会切换线程)，订阅结束时记录
+     * 完成、出错、被取消 (客户端断开、上游超时) 都会记录已产生的用量
+     */
+    private <T> Flux<T> observeStream(String promptText, Flux<T> stream, Function<T, String> textOf) {
+        String role = OpsTraceContext.currentRole(DEFAULT_ROLE);
+        DiagnosisProfile profile = OpsTraceContext.currentProfile();
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicLong completionTokens = new AtomicLong();
+            return stream
+                    .doOnNext(item -> completionTokens.addAndGet(TokenEstimator.estimate(textOf.apply(item))))
+                    .doFinally(signal -> metricsService.recordLlmCall(role, profile, System.nanoTime() - start,
+                            TokenEstimator.estimate(promptText), completionTokens.get(), signal == SignalType.ON_ERROR));
+        });
     }
 }
@@ -0,0 +1,236 @@
+package com.smallfish.zhiwei.service.chat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallfish.zhiwei.config.DiagnosisHistoryProperties;
+import com.smallfish.zhiwei.dto.model.DiagnosisRecordDTO;
+import com.smallfish.zhiwei.dto.req.AlertWebhookDTO;
+import com.smallfish.zhiwei.service.base.EmbeddingService;
+import com.smallfish.zhiwei.utils.AlertFingerprint;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 告警诊断历史
+ * <p>
+ * 每次完整诊断后按告警指纹 (标签 + 归一化描述) 保存报告和告警检索文本的向量。
+ * 新告警到达时在同租户、同告警名的历史中检索：指纹完全一致记为 1.0，否则按向量余弦相似度打分。
+ * 相似的历史诊断作为上下文交给 Agent；同一实例 (或指纹一致) 的高置信度且足够新的匹配直接复用报告，跳过大模型。
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DiagnosisHistoryService {
+
+    private static final String KEY_PREFIX = "zhiwei:ops:diagnosis:";
+    private static final String RECORD_PREFIX = KEY_PREFIX + "record:";
+    private static final String ALERT_PREFIX = KEY_PREFIX + "alert:";
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final EmbeddingService embeddingService;
+    private final DiagnosisHistoryProperties properties;
+
+    /**
+     * 解析告警：计算指纹并向量化检索文本 (向量化失败时只按指纹匹配)
+     */
+    public AlertQuery prepare(AlertWebhookDTO.Alert alert, String tenantId) {
+        Map<String, String> labels = alert.getLabels();
+        String alertName = labels.getOrDefault("alertname", "UnknownAlert");
+        String instance = labels.getOrDefault("instance", "UnknownInstance");
+        String description = alert.getAnnotations() == null ? "" : alert.getAnnotations().getOrDefault("description", "");
+        String normalized = AlertFingerprint.normalize(description);
+        String fingerprint = AlertFingerprint.of(labels, description, properties.getIgnoredLabels());
+
+        List<Float> embedding = null;
+        try {
+            embedding = embeddingService.generateEmbedding(String.format("告警: %s\n实例: %s\n标签: %s\n描述: %s",
+                    alertName, instance, AlertFingerprint.signature(labels, properties.getIgnoredLabels()), normalized));
+        } catch (Exception e) {
+            log.warn("告警向量化失败，只按指纹匹配历史诊断: {}", e.getMessage());
+        }
+        return new AlertQuery(tenantId, alertName, instance, labels, normalized, fingerprint, embedding);
+    }
+
+    /**
+     * 检索相似的历史诊断，按相似度降序，只返回超过上下文阈值的
+     */
+    public List<Match> findSimilar(AlertQuery query) {
+        String alertKey = alertKey(query.tenantId(), query.alertName());
+        Set<String> ids = redisTemplate.opsForZSet().reverseRange(alertKey, 0, properties.getMaxPerAlert() - 1);
+        List<Match> matches = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) {
+            return matches;
+        }
+        List<String> idList = new ArrayList<>(ids);
+        List<String> jsons = redisTemplate.opsForValue().multiGet(idList.stream().map(id -> RECORD_PREFIX + id).toList());
+        for (int i = 0; i < idList.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if (json == null) {
+                // 记录已过期，顺手清理索引
+                redisTemplate.opsForZSet().remove(alertKey, idList.get(i));
+                continue;
+            }
+            DiagnosisRecordDTO record = parse(json);
+            if (record == null) {
+                continue;
+            }
+            double score = query.fingerprint().equals(record.getFingerprint())
+                    ? 1.0 : cosine(query.embedding(), record.getEmbedding());
+            if (score >= properties.getContextThreshold()) {
+                matches.add(new Match(record, score));
+            }
+        }
+        // 同分时越新越靠前
+        matches.sort(Comparator.comparingDouble(Match::score).reversed()
+                .thenComparing(match -> match.record().getCreateTime(), Comparator.reverseOrder()));
+        return matches.size() > properties.getContextTopK()
+                ? new ArrayList<>(matches.subList(0, properties.getContextTopK())) : matches;
+    }
+
+    /**
+     * 是否可以直接复用：指纹完全一致，或同一实例且相似度足够高；并且足够新、没有被连续复用太多次
+     * (定期重新完整诊断，避免结论过期)。其他实例的相似诊断只作为上下文，不直接复用：
+     * 描述相似不代表根因相同，复用会把别的机器的结论当成这台机器的
+     */
+    public boolean reusable(Match match, AlertQuery query) {
+        if (!properties.isReuseEnabled() || match.score() < properties.getReuseThreshold()) {
+            return false;
+        }
+        DiagnosisRecordDTO record = match.record();
+        boolean sameAlert = query.fingerprint().equals(record.getFingerprint())
+                || query.instance().equals(record.getInstance());
+        return sameAlert
+                && record.getCreateTime() != null
+                && Duration.between(record.getCreateTime(), LocalDateTime.now()).compareTo(properties.getReuseMaxAge()) <= 0
+                && record.getReuseCount() < properties.getMaxReuse();
+    }
+
+    /**
+     * 记录一次复用
+     */
+    public void markReused(DiagnosisRecordDTO record) {
+        record.setReuseCount(record.getReuseCount() + 1);
+        save(record);
+    }
+
+    /**
+     * 保存一次完整诊断
+     */
+    public void record(AlertQuery query, String traceId, String report) {
+        DiagnosisRecordDTO record = DiagnosisRecordDTO.builder()
+                .id(traceId)
+                .fingerprint(query.fingerprint())
+                .tenantId(query.tenantId())
+                .alertName(query.alertName())
+                .instance(query.instance())
+                .labels(query.labels())
+                .description(query.description())
+                .report(report)
+                .embedding(query.embedding())
+                .createTime(LocalDateTime.now())
+                .build();
+        save(record);
+
+        String alertKey = alertKey(query.tenantId(), query.alertName());
+        redisTemplate.opsForZSet().add(alertKey, traceId,
+                record.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        redisTemplate.expire(alertKey, properties.getRetention());
+        // 超出保留条数时淘汰最早的
+        Long size = redisTemplate.opsForZSet().size(alertKey);
+        if (size != null && size > properties.getMaxPerAlert()) {
+            Set<String> stale = redisTemplate.opsForZSet().range(alertKey, 0, size - properties.getMaxPerAlert() - 1);
+            if (stale != null && !stale.isEmpty()) {
+                redisTemplate.delete(stale.stream().map(id -> RECORD_PREFIX + id).toList());
+                redisTemplate.opsForZSet().remove(alertKey, stale.toArray());
+            }
+        }
+    }
+
+    /**
+     * 把历史诊断整理为 Agent 上下文
+     */
+    public String toContext(List<Match> matches) {
+        StringBuilder sb = new StringBuilder("\n\n## 历史相似诊断 (仅供参考，结论需用当前数据验证)\n");
+        for (Match match : matches) {
+            DiagnosisRecordDTO record = match.record();
+            String report = record.getReport() == null ? "" : record.getReport();
+            if (report.length() > properties.getContextReportChars()) {
+                report = report.substring(0, properties.getContextReportChars()) + "...(已截断)";
+            }
+            sb.append(String.format("\n### %s | 实例 %s | 相似度 %.2f | TraceID %s\n%s\n",
+                    TIME_FORMATTER.format(record.getCreateTime()), record.getInstance(), match.score(),
+                    record.getId(), report));
+        }
+        return sb.toString();
+    }
+
+    private void save(DiagnosisRecordDTO record) {
+        try {
+            redisTemplate.opsForValue().set(RECORD_PREFIX + record.getId(), objectMapper.writeValueAsString(record),
+                    properties.getRetention());
+        } catch (IOException e) {
+            log.warn("保存诊断历史失败: {}", e.getMessage());
+        }
+    }
+
+    private DiagnosisRecordDTO parse(String json) {
+        try {
+            return objectMapper.readValue(json, DiagnosisRecordDTO.class);
+        } catch (IOException e) {
+            log.warn("读取诊断历史失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String alertKey(String tenantId, String alertName) {
+        return ALERT_PREFIX + tenantId + ":" + alertName;
+    }
+
+    private static double cosine(List<Float> a, List<Float> b) {
+        if (a == null || b == null || a.size() != b.size() || a.isEmpty()) {
+            return 0;
+        }
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.size(); i++) {
+            double x = a.get(i);
+            double y = b.get(i);
+            dot += x * y;
+            normA += x * x;
+            normB += y * y;
+        }
+        return (normA == 0 || normB == 0) ? 0 : dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * 解析后的告警
+     *
+     * @param description 归一化后的描述
+     * @param embedding 检索文本向量，向量化失败时为 null
+     */
+    public record AlertQuery(String tenantId, String alertName, String instance, Map<String, String> labels,
+                             String description, String fingerprint, List<Float> embedding) {
+    }
+
+    /**
+     * 相似的历史诊断
+     */
+    public record Match(DiagnosisRecordDTO record, double score) {
+    }
+}
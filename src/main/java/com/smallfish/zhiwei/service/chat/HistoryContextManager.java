@@ -0,0 +1,266 @@
+package com.smallfish.zhiwei.service.chat;
+
+import com.smallfish.zhiwei.common.context.DiagnosisProfile;
+import com.smallfish.zhiwei.config.HistoryContextProperties;
+import com.smallfish.zhiwei.utils.TokenEstimator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * 排查历史上下文管理器
+ * 解决 historyBuffer 每步全量重发导致 Prompt 随步骤数平方增长的问题：
+ * 最近几步保留原文，更早的步骤压缩为结构化摘要 (本地抽取或异步 LLM 总结)，整体控制在 Token 预算内。
+ */
+@Slf4j
+@Component
+public class HistoryContextManager {
+
+    private static final String MODE_LLM = "llm";
+
+    // 抽取式摘要中视为"关键证据"的词
+    private static final Pattern KEY_SIGNAL = Pattern.compile(
+            "(?i)(error|exception|timeout|fail|oom|错误|异常|超时|失败|超过|峰值|告警|慢查询|\\d+(\\.\\d+)?\\s*(%|ms|s|mb|gb))");
+    private static final Pattern SENTENCE_SPLIT = Pattern.compile("(?<=[。！？；\\n])|(?<=\\.\\s)");
+
+    private final HistoryContextProperties properties;
+    private final ChatModel chatModel;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+
+    public HistoryContextManager(HistoryContextProperties properties,
+                                 ChatModel chatModel,
+                                 @Qualifier("aiTaskExecutor") Executor executor,
+                                 MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.chatModel = chatModel;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 为一次诊断创建历史上下文
+     */
+    public HistoryContext newContext(String traceId) {
+        return new HistoryContext(traceId);
+    }
+
+    /**
+     * 单次诊断的排查历史
+     */
+    public class HistoryContext {
+
+        private final String traceId;
+        private final List<StepRecord> records = new ArrayList<>();
+        private long tokensSaved;
+
+        private HistoryContext(String traceId) {
+            this.traceId = traceId;
+        }
+
+        /**
+         * 追加一个步骤的执行结果
+         */
+        public void append(String step, String result) {
+            StepRecord record = new StepRecord(records.size() + 1, step, result == null ? "" : result);
+            records.add(record);
+            // LLM 模式下提前异步生成摘要，等到该步骤"变旧"时通常已经完成
+            if (MODE_LLM.equalsIgnoreCase(properties.getSummaryMode())) {
+                record.llmSummary = CompletableFuture.supplyAsync(() -> summarizeByLlm(record), executor)
+                        .exceptionally(e -> {
+                            log.warn("[{}] 步骤 {} 异步摘要失败，回退到抽取式摘要: {}", traceId, record.index, e.getMessage());
+                            return null;
+                        });
+            }
+        }
+
+        /**
+         * 渲染在预算内的历史文本，并累计本次渲染节省的 Token
+         */
+        public String render() {
+            if (records.isEmpty()) {
+                return "暂无历史";
+            }
+            int budget = properties.getTokenBudget();
+            int recentFrom = Math.max(0, records.size() - properties.getKeepRecentSteps());
+
+            // 1. 旧步骤用摘要，近期步骤用原文
+            String[] parts = new String[records.size()];
+            int[] tokens = new int[records.size()];
+            int fullTokens = 0;
+            int total = 0;
+            for (int i = 0; i < records.size(); i++) {
+                StepRecord record = records.get(i);
+                parts[i] = i < recentFrom ? record.renderSummary() : record.renderFull();
+                tokens[i] = TokenEstimator.estimate(parts[i]);
+                fullTokens += record.fullTokens;
+                total += tokens[i];
+            }
+
+            // 2. 仍超预算：从最旧的摘要开始降级为一行标题
+            for (int i = 0; i < recentFrom && total > budget; i++) {
+                String brief = records.get(i).renderBrief();
+                int briefTokens = TokenEstimator.estimate(brief);
+                total += briefTokens - tokens[i];
+                parts[i] = brief;
+                tokens[i] = briefTokens;
+            }
+
+            // 3. 还超预算：截断近期步骤的原文 (从最旧的近期步骤开始)
+            for (int i = recentFrom; i < records.size() && total > budget; i++) {
+                int allowed = Math.max(properties.getSummaryTokens(), tokens[i] - (total - budget));
+                String truncated = records.get(i).renderTruncated(allowed);
+                int truncatedTokens = TokenEstimator.estimate(truncated);
+                total += truncatedTokens - tokens[i];
+                parts[i] = truncated;
+                tokens[i] = truncatedTokens;
+            }
+
+            tokensSaved += Math.max(0, fullTokens - total);
+            return String.join("", parts);
+        }
+
+        /**
+         * 本次诊断累计节省的 Token 数，并上报指标
+         */
+        public long reportSaved(DiagnosisProfile profile) {
+            DistributionSummary.builder("zhiwei.context.tokens.saved")
+                    .description("单次诊断中上下文压缩节省的 Token 数 (估算)")
+                    .baseUnit("tokens")
+                    .register(meterRegistry)
+                    .record(tokensSaved);
+            if (profile != null) {
+                profile.addTokensSaved(tokensSaved);
+            }
+            log.info("[{}] 排查历史压缩共节省约 {} tokens", traceId, tokensSaved);
+            return tokensSaved;
+        }
+    }
+
+    /**
+     * 调用模型生成步骤摘要
+     */
+    private String summarizeByLlm(StepRecord record) {
+        String prompt = String.format("""
+                请将以下运维排查步骤的结果压缩为不超过 %d 字的要点摘要，
+                必须保留关键数值、错误信息和结论，不要输出多余解释。
+
+                步骤：%s
+                结果：%s
+                """, properties.getSummaryTokens(), record.step, record.result);
+        return chatModel.call(prompt);
+    }
+
+    /**
+     * 抽取式摘要：保留首句 + 含数值/错误信号的句子，按原文顺序拼接，直到达到 Token 上限
+     */
+    private String summarizeExtractive(String text) {
+        String[] sentences = SENTENCE_SPLIT.split(text.trim());
+        if (sentences.length == 0) {
+            return "";
+        }
+        List<int[]> scored = new ArrayList<>();  // [原始下标, 分数]
+        for (int i = 0; i < sentences.length; i++) {
+            String s = sentences[i].trim();
+            if (s.isEmpty()) {
+                continue;
+            }
+            int score = i == 0 ? 10 : 0;
+            if (KEY_SIGNAL.matcher(s).find()) {
+                score += 5;
+            }
+            scored.add(new int[]{i, score});
+        }
+        scored.sort(Comparator.comparingInt((int[] a) -> a[1]).reversed().thenComparingInt(a -> a[0]));
+
+        int limit = properties.getSummaryTokens();
+        boolean[] picked = new boolean[sentences.length];
+        int used = 0;
+        for (int[] item : scored) {
+            int t = TokenEstimator.estimate(sentences[item[0]]);
+            if (used + t > limit && used > 0) {
+                continue;
+            }
+            picked[item[0]] = true;
+            used += t;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sentences.length; i++) {
+            if (picked[i]) {
+                sb.append(sentences[i].trim().replace("\n", " ")).append(' ');
+            }
+        }
+        return truncateToTokens(sb.toString().trim(), limit);
+    }
+
+    private static String truncateToTokens(String text, int maxTokens) {
+        if (TokenEstimator.estimate(text) <= maxTokens) {
+            return text;
+        }
+        // 二分查找满足预算的最长前缀
+        int lo = 0;
+        int hi = text.length();
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (TokenEstimator.estimate(text.subSequence(0, mid)) <= maxTokens) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return text.substring(0, lo) + "…";
+    }
+
+    private class StepRecord {
+        final int index;
+        final String step;
+        final String result;
+        final int fullTokens;
+        CompletableFuture<String> llmSummary;
+        String extractiveSummary;
+
+        StepRecord(int index, String step, String result) {
+            this.index = index;
+            this.step = step;
+            this.result = result;
+            this.fullTokens = TokenEstimator.estimate(renderFull());
+        }
+
+        String renderFull() {
+            return String.format("**步骤 %d**: %s\n> 结果: %s\n\n", index, step, result);
+        }
+
+        String renderSummary() {
+            String summary = null;
+            // 异步摘要未完成时不阻塞，直接用抽取式摘要
+            if (llmSummary != null && llmSummary.isDone()) {
+                summary = llmSummary.getNow(null);
+            }
+            if (summary == null || summary.isBlank()) {
+                if (extractiveSummary == null) {
+                    extractiveSummary = summarizeExtractive(result);
+                }
+                summary = extractiveSummary;
+            }
+            return String.format("**步骤 %d**: %s\n> 摘要: %s\n\n", index, step, summary);
+        }
+
+        String renderBrief() {
+            return String.format("**步骤 %d**: %s (结果已压缩省略)\n\n", index, step);
+        }
+
+        String renderTruncated(int maxTokens) {
+            return String.format("**步骤 %d**: %s\n> 结果(截断): %s\n\n", index, step, truncateToTokens(result, maxTokens));
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.smallfish.zhiwei.service.chat;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallfish.zhiwei.config.ChatMemoryProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.memory.ChatMemoryRepository;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 Redis 的聊天记忆仓库
+ * <p>
+ * 1. 紧凑序列化：每条消息存为 ["u"|"a"|"s", 文本] 二元组，不保存工具调用等中间消息。
+ * 2. 会话级 TTL：每次写入续期，空闲会话自动过期；会话索引在每次写入时清理过期成员，会话数量不再无限增长。
+ * 3. 容量上限：条数由 MessageWindowChatMemory 控制，这里额外按字节数淘汰最早的消息。
+ * 4. 近端缓存：热点会话在本地 LRU 缓存反序列化结果，读取时只比对 Redis 中的版本号，
+ *    版本一致才命中，保证多副本之间不读到旧上下文。
+ * </p>
+ */
+@Slf4j
+@Component
+public class RedisChatMemoryRepository implements ChatMemoryRepository {
+
+    private static final String KEY_PREFIX = "zhiwei:chat:memory:";
+    private static final String DATA_PREFIX = KEY_PREFIX + "data:";
+    private static final String VERSION_PREFIX = KEY_PREFIX + "ver:";
+    // 会话索引 (ZSET，score 为最后写入时间)，用于 findConversationIds
+    private static final String INDEX_KEY = KEY_PREFIX + "ids";
+
+    private static final TypeReference<List<List<String>>> PAYLOAD_TYPE = new TypeReference<>() {};
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChatMemoryProperties properties;
+
+    // 近端缓存：访问顺序的 LinkedHashMap 实现 LRU
+    private final Map<String, CachedConversation> nearCache;
+
+    public RedisChatMemoryRepository(StringRedisTemplate redisTemplate,
+                                     ObjectMapper objectMapper,
+                                     ChatMemoryProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        int capacity = properties.getNearCacheSize();
+        this.nearCache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedConversation> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    @Override
+    public List<String> findConversationIds() {
+        // 先清理已过期会话的索引 (写入时也会顺带清理)
+        long expireBefore = System.currentTimeMillis() - properties.getTtl().toMillis();
+        redisTemplate.opsForZSet().removeRangeByScore(INDEX_KEY, 0, expireBefore);
+        Set<String> ids = redisTemplate.opsForZSet().range(INDEX_KEY, 0, -1);
+        return ids == null ? List.of() : new ArrayList<>(ids);
+    }
+
+    @Override
+    public List<Message> findByConversationId(String conversationId) {
+        String version = redisTemplate.opsForValue().get(VERSION_PREFIX + conversationId);
+        if (version == null) {
+            nearCache.remove(conversationId);
+            return new ArrayList<>();
+        }
+
+        CachedConversation cached = nearCache.get(conversationId);
+        if (cached != null && cached.version.equals(version)) {
+            return new ArrayList<>(cached.messages);
+        }
+
+        String payload = redisTemplate.opsForValue().get(DATA_PREFIX + conversationId);
+        if (payload == null) {
+            return new ArrayList<>();
+        }
+        List<Message> messages = deserialize(payload);
+        nearCache.put(conversationId, new CachedConversation(version, messages));
+        return new ArrayList<>(messages);
+    }
+
+    @Override
+    public void saveAll(String conversationId, List<Message> messages) {
+        List<List<String>> entries = toEntries(messages);
+        String payload = serializeWithinCap(conversationId, entries);
+
+        long now = System.currentTimeMillis();
+        long ttlMillis = properties.getTtl().toMillis();
+        byte[] dataKey = bytes(DATA_PREFIX + conversationId);
+        byte[] versionKey = bytes(VERSION_PREFIX + conversationId);
+        byte[] indexKey = bytes(INDEX_KEY);
+        // 写数据、递增版本、续期、更新索引并清理索引中已过期的会话，一次往返完成
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.stringCommands().set(dataKey, bytes(payload), Expiration.milliseconds(ttlMillis),
+                    RedisStringCommands.SetOption.upsert());
+            connection.stringCommands().incr(versionKey);
+            connection.keyCommands().pExpire(versionKey, ttlMillis);
+            connection.zSetCommands().zAdd(indexKey, now, bytes(conversationId));
+            connection.zSetCommands().zRemRangeByScore(indexKey, 0, now - ttlMillis);
+            return null;
+        });
+        Object version = results.get(1);
+
+        nearCache.put(conversationId, new CachedConversation(String.valueOf(version), fromEntries(entries)));
+    }
+
+    @Override
+    public void deleteByConversationId(String conversationId) {
+        redisTemplate.delete(List.of(DATA_PREFIX + conversationId, VERSION_PREFIX + conversationId));
+        redisTemplate.opsForZSet().remove(INDEX_KEY, conversationId);
+        nearCache.remove(conversationId);
+    }
+
+    /**
+     * 序列化并按字节上限淘汰最早的非系统消息
+     */
+    private String serializeWithinCap(String conversationId, List<List<String>> entries) {
+        String payload = toJson(entries);
+        int dropped = 0;
+        while (payload.getBytes(StandardCharsets.UTF_8).length > properties.getMaxBytes()) {
+            int victim = oldestNonSystem(entries);
+            if (victim < 0 || entries.size() <= 1) {
+                // 只剩一条仍然超限：截断这条消息的文本
+                List<String> last = entries.get(entries.size() - 1);
+                String text = last.get(1);
+                last.set(1, text.substring(0, Math.max(0, text.length() / 2)));
+                if (text.isEmpty()) {
+                    break;
+                }
+            } else {
+                entries.remove(victim);
+                dropped++;
+            }
+            payload = toJson(entries);
+        }
+        if (dropped > 0) {
+            log.debug("会话 {} 超出记忆字节上限，淘汰最早的 {} 条消息", conversationId, dropped);
+        }
+        return payload;
+    }
+
+    private int oldestNonSystem(List<List<String>> entries) {
+        for (int i = 0; i < entries.size() - 1; i++) {
+            if (!"s".equals(entries.get(i).get(0))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private List<List<String>> toEntries(List<Message> messages) {
+        List<List<String>> entries = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            String code = typeCode(message.getMessageType());
+            String text = message.getText();
+            // 工具消息和空内容 (纯工具调用的 Assistant 消息) 不进入记忆
+            if (code == null || text == null || text.isEmpty()) {
+                continue;
+            }
+            entries.add(new ArrayList<>(List.of(code, text)));
+        }
+        return entries;
+    }
+
+    private List<Message> fromEntries(List<List<String>> entries) {
+        List<Message> messages = new ArrayList<>(entries.size());
+        for (List<String> entry : entries) {
+            String text = entry.get(1);
+            switch (entry.get(0)) {
+                case "u" -> messages.add(new UserMessage(text));
+                case "a" -> messages.add(new AssistantMessage(text));
+                case "s" -> messages.add(new SystemMessage(text));
+                default -> log.warn("未知的记忆消息类型: {}", entry.get(0));
+            }
+        }
+        return messages;
+    }
+
+    private String typeCode(MessageType type) {
+        return switch (type) {
+            case USER -> "u";
+            case ASSISTANT -> "a";
+            case SYSTEM -> "s";
+            default -> null;
+        };
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String toJson(List<List<String>> entries) {
+        try {
+            return objectMapper.writeValueAsString(entries);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("聊天记忆序列化失败", e);
+        }
+    }
+
+    private List<Message> deserialize(String payload) {
+        try {
+            return fromEntries(objectMapper.readValue(payload, PAYLOAD_TYPE));
+        } catch (JsonProcessingException e) {
+            log.warn("聊天记忆反序列化失败，按空会话处理: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private record CachedConversation(String version, List<Message> messages) {
+    }
+}
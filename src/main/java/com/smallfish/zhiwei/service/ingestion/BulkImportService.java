@@ -0,0 +1,388 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.RateLimiter;
+import com.smallfish.zhiwei.config.BulkImportProperties;
+import com.smallfish.zhiwei.config.FileUploadConfig;
+import com.smallfish.zhiwei.dto.resp.ImportJobStatusDTO;
+import com.smallfish.zhiwei.model.BizKnowledge;
+import com.smallfish.zhiwei.service.ingestion.parser.DocumentParserRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * 目录批量导入任务
+ * <p>
+ * 1. 异步：提交后立即返回任务 ID，调度线程用 NIO 递归遍历目录，文件在 kbExecutor 上并发处理，
+ *    并发数由信号量限制。
+ * 2. 限流：文件开始速率 (文件/秒) 和全局向量化速率 (条/秒) 两级限流，单文件超过大小上限直接记为失败。
+ * 3. 可续跑：任务状态和已完成文件集合 (相对路径 + 大小 + 修改时间) 持久化在 Redis，
+ *    服务重启或中断后续跑会跳过已完成且未修改的文件。
+ * </p>
+ */
+@Slf4j
+@Service
+public class BulkImportService {
+
+    private static final String KEY_PREFIX = "zhiwei:kb:import:";
+    private static final String JOB_PREFIX = KEY_PREFIX + "job:";
+    private static final String DONE_PREFIX = KEY_PREFIX + "done:";
+    private static final int MAX_FAILED_DETAILS = 100;
+
+    private final VectorIngestionService ingestionService;
+    private final DocumentParserRegistry parserRegistry;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final FileUploadConfig fileUploadConfig;
+    private final BulkImportProperties properties;
+    private final Executor kbExecutor;
+
+    // 本实例正在运行的任务
+    private final Map<String, ImportJobStatusDTO> activeJobs = new ConcurrentHashMap<>();
+    // 调度线程只负责遍历和派发，文件处理在 kbExecutor 上进行
+    private final ExecutorService dispatcher = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "kb-import-dispatcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BulkImportService(VectorIngestionService ingestionService,
+                             DocumentParserRegistry parserRegistry,
+                             StringRedisTemplate redisTemplate,
+                             ObjectMapper objectMapper,
+                             FileUploadConfig fileUploadConfig,
+                             BulkImportProperties properties,
+                             @Qualifier("kbExecutor") Executor kbExecutor) {
+        this.ingestionService = ingestionService;
+        this.parserRegistry = parserRegistry;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.fileUploadConfig = fileUploadConfig;
+        this.properties = properties;
+        this.kbExecutor = kbExecutor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        // 未完成的任务标记为中断，重启后可续跑
+        activeJobs.values().forEach(job -> {
+            synchronized (job) {
+                job.setState("INTERRUPTED");
+                job.setUpdateTime(LocalDateTime.now());
+            }
+            save(job);
+        });
+    }
+
+    /**
+     * 提交目录导入任务
+     * @param directoryPath 导入目录 (上传根目录下的相对路径或绝对路径，必须位于上传根目录内)
+     * @param tenantId 租户 ID，为空使用默认租户
+     * @return 任务初始状态
+     * @throws IllegalArgumentException 目录不存在或不在上传根目录内
+     */
+    public ImportJobStatusDTO start(String directoryPath, String tenantId) {
+        Path root = resolveDirectory(directoryPath);
+        LocalDateTime now = LocalDateTime.now();
+        ImportJobStatusDTO job = ImportJobStatusDTO.builder()
+                .jobId(UUID.randomUUID().toString().replace("-", ""))
+                .directoryPath(root.toString())
+                .tenantId((tenantId == null || tenantId.isBlank()) ? BizKnowledge.DEFAULT_TENANT : tenantId)
+                .state("RUNNING")
+                .etaSeconds(-1)
+                .startTime(now)
+                .runStartTime(now)
+                .updateTime(now)
+                .build();
+        launch(job);
+        return job;
+    }
+
+    /**
+     * 续跑未完成的任务 (已完成且未修改的文件会被跳过)
+     * @throws IllegalArgumentException 任务不存在
+     * @throws IllegalStateException 任务正在运行或已完成
+     */
+    public ImportJobStatusDTO resume(String jobId) {
+        if (activeJobs.containsKey(jobId)) {
+            throw new IllegalStateException("任务正在运行: " + jobId);
+        }
+        ImportJobStatusDTO job = load(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("任务不存在或已过期: " + jobId);
+        }
+        if ("COMPLETED".equals(job.getState())) {
+            throw new IllegalStateException("任务已完成: " + jobId);
+        }
+        // 持久化的任务同样重新校验目录
+        resolveDirectory(job.getDirectoryPath());
+        LocalDateTime now = LocalDateTime.now();
+        // 计数从头统计，已完成的文件在本轮计入 skippedFiles
+        job.setState("RUNNING");
+        job.setProcessedFiles(0);
+        job.setSuccessCount(0);
+        job.setFailCount(0);
+        job.setSkippedFiles(0);
+        job.setTotalChunks(0);
+        job.getFailedFiles().clear();
+        job.setErrorMessage(null);
+        job.setEtaSeconds(-1);
+        job.setRunStartTime(now);
+        job.setUpdateTime(now);
+        job.setEndTime(null);
+        launch(job);
+        return job;
+    }
+
+    /**
+     * 查询任务状态 (本实例运行中的任务返回实时进度，否则读 Redis)
+     */
+    public ImportJobStatusDTO getStatus(String jobId) {
+        ImportJobStatusDTO active = activeJobs.get(jobId);
+        if (active != null) {
+            synchronized (active) {
+                refreshRates(active);
+                return copy(active);
+            }
+        }
+        return load(jobId);
+    }
+
+    private void launch(ImportJobStatusDTO job) {
+        if (activeJobs.putIfAbsent(job.getJobId(), job) != null) {
+            throw new IllegalStateException("任务正在运行: " + job.getJobId());
+        }
+        save(job);
+        dispatcher.submit(() -> run(job));
+    }
+
+    private void run(ImportJobStatusDTO job) {
+        Path root = Paths.get(job.getDirectoryPath());
+        String doneKey = DONE_PREFIX + job.getJobId();
+        RateLimiter fileLimiter = RateLimiter.create(properties.getFilesPerSecond());
+        RateLimiter embedLimiter = RateLimiter.create(properties.getEmbedRatePerSecond());
+        Semaphore permits = new Semaphore(properties.getConcurrency());
+        long[] lastFlush = {System.currentTimeMillis()};
+
+        try {
+            Path base = uploadRoot();
+            List<Path> files = scan(root);
+            Set<String> done = redisTemplate.opsForSet().members(doneKey);
+            synchronized (job) {
+                job.setTotalFiles(files.size());
+            }
+            log.info("批量导入开始: 任务 {}, 目录 {}, 文件 {}, 已完成 {}", job.getJobId(), root, files.size(),
+                    done == null ? 0 : done.size());
+
+            for (Path file : files) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                // source 相对上传根目录，与上传、目录同步、重建索引一致
+                String source = base.relativize(file).toString().replace(base.getFileSystem().getSeparator(), "/");
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                String fingerprint = source + "|" + attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+                if (done != null && done.contains(fingerprint)) {
+                    synchronized (job) {
+                        job.setSkippedFiles(job.getSkippedFiles() + 1);
+                        job.setProcessedFiles(job.getProcessedFiles() + 1);
+                    }
+                    continue;
+                }
+
+                fileLimiter.acquire();
+                permits.acquire();
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        if (attrs.size() > properties.getMaxFileBytes()) {
+                            throw new IllegalArgumentException("文件超过大小上限: " + attrs.size() + " 字节");
+                        }
+                        String content = parserRegistry.readAsMarkdown(file);
+                        int chunks = ingestionService.ingest(source, content, job.getTenantId(), embedLimiter);
+                        redisTemplate.opsForSet().add(doneKey, fingerprint);
+                        synchronized (job) {
+                            job.setSuccessCount(job.getSuccessCount() + 1);
+                            job.setTotalChunks(job.getTotalChunks() + chunks);
+                        }
+                    } catch (Throwable e) {
+                        log.error("批量导入: 文件 {} 处理失败", source, e);
+                        synchronized (job) {
+                            job.setFailCount(job.getFailCount() + 1);
+                            if (job.getFailedFiles().size() < MAX_FAILED_DETAILS) {
+                                job.getFailedFiles().put(source, e.getMessage());
+                            }
+                        }
+                    } finally {
+                        synchronized (job) {
+                            job.setProcessedFiles(job.getProcessedFiles() + 1);
+                        }
+                        permits.release();
+                        flushIfDue(job, lastFlush);
+                    }
+                }, kbExecutor);
+            }
+
+            // 等待所有在途文件完成
+            permits.acquire(properties.getConcurrency());
+            synchronized (job) {
+                job.setState("COMPLETED");
+                job.setEndTime(LocalDateTime.now());
+            }
+            log.info("批量导入完成: 任务 {}, 成功 {}, 失败 {}, 跳过 {}, 分片 {}", job.getJobId(),
+                    job.getSuccessCount(), job.getFailCount(), job.getSkippedFiles(), job.getTotalChunks());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (job) {
+                job.setState("INTERRUPTED");
+            }
+        } catch (Throwable e) {
+            log.error("批量导入失败: 任务 {}", job.getJobId(), e);
+            synchronized (job) {
+                job.setState("FAILED");
+                job.setErrorMessage(e.getMessage());
+                job.setEndTime(LocalDateTime.now());
+            }
+        } finally {
+            synchronized (job) {
+                refreshRates(job);
+            }
+            save(job);
+            activeJobs.remove(job.getJobId());
+            redisTemplate.expire(doneKey, properties.getJobTtl());
+        }
+    }
+
+    /**
+     * 解析导入目录：相对路径按上传根目录解析，解析符号链接后必须仍在上传根目录内
+     */
+    private Path resolveDirectory(String directoryPath) {
+        try {
+            Path uploadRoot = uploadRoot();
+            Path requested = uploadRoot.resolve(directoryPath).normalize();
+            if (!Files.isDirectory(requested)) {
+                throw new IllegalArgumentException("目录不存在: " + directoryPath);
+            }
+            Path root = requested.toRealPath();
+            if (!root.startsWith(uploadRoot)) {
+                throw new IllegalArgumentException("只能导入上传目录内的目录: " + directoryPath);
+            }
+            return root;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("目录无法访问: " + directoryPath, e);
+        }
+    }
+
+    private Path uploadRoot() throws IOException {
+        return Paths.get(fileUploadConfig.getPath()).toAbsolutePath().normalize().toRealPath();
+    }
+
+    /**
+     * NIO 递归遍历目录，按允许的扩展名过滤，按路径排序保证续跑时顺序稳定
+     */
+    private List<Path> scan(Path root) throws IOException {
+        List<String> extensions = fileUploadConfig.getAllowedExtensions() == null ? List.of()
+                : fileUploadConfig.getAllowedExtensions().stream()
+                .filter(ext -> ext != null && !ext.isBlank())
+                .map(ext -> "." + ext.toLowerCase(Locale.ROOT))
+                .toList();
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream
+                    // 不跟随符号链接，避免通过链接读取上传目录之外的文件
+                    .filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+                    .filter(path -> {
+                        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+                        return extensions.stream().anyMatch(name::endsWith);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * 按本轮运行的实际吞吐估算速率和剩余时间
+     */
+    private void refreshRates(ImportJobStatusDTO job) {
+        LocalDateTime end = job.getEndTime() != null ? job.getEndTime() : LocalDateTime.now();
+        double seconds = Duration.between(job.getRunStartTime(), end).toMillis() / 1000.0;
+        int handled = job.getSuccessCount() + job.getFailCount();
+        if (seconds <= 0 || handled == 0) {
+            job.setEtaSeconds(-1);
+            return;
+        }
+        double filesPerSecond = handled / seconds;
+        job.setFilesPerSecond(Math.round(filesPerSecond * 100) / 100.0);
+        job.setChunksPerSecond(Math.round(job.getTotalChunks() / seconds * 100) / 100.0);
+        int remaining = Math.max(0, job.getTotalFiles() - job.getProcessedFiles());
+        job.setEtaSeconds(Math.round(remaining / filesPerSecond));
+        job.setUpdateTime(LocalDateTime.now());
+    }
+
+    private void flushIfDue(ImportJobStatusDTO job, long[] lastFlush) {
+        long now = System.currentTimeMillis();
+        synchronized (lastFlush) {
+            if (now - lastFlush[0] < properties.getFlushIntervalMs()) {
+                return;
+            }
+            lastFlush[0] = now;
+        }
+        synchronized (job) {
+            refreshRates(job);
+        }
+        save(job);
+    }
+
+    private void save(ImportJobStatusDTO job) {
+        try {
+            String json;
+            synchronized (job) {
+                json = objectMapper.writeValueAsString(job);
+            }
+            redisTemplate.opsForValue().set(JOB_PREFIX + job.getJobId(), json, properties.getJobTtl());
+        } catch (Exception e) {
+            // 进度持久化失败不影响导入本身
+            log.warn("保存导入任务进度失败: {}", e.getMessage());
+        }
+    }
+
+    private ImportJobStatusDTO load(String jobId) {
+        String json = redisTemplate.opsForValue().get(JOB_PREFIX + jobId);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, ImportJobStatusDTO.class);
+        } catch (IOException e) {
+            log.warn("读取导入任务进度失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private ImportJobStatusDTO copy(ImportJobStatusDTO job) {
+        return objectMapper.convertValue(job, ImportJobStatusDTO.class);
+    }
+}
@@ -5,6 +5,8 @@ import com.smallfish.zhiwei.dto.model.DocumentChunkDTO;
 import jakarta.annotation.Resource;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -20,6 +22,13 @@ import java.util.regex.Pattern;
 @Service
 public class DocumentChunkService {
 
+    private static final Pattern FENCE_PATTERN = Pattern.compile("^```", Pattern.MULTILINE);
+    // token 模式下分片至少填充到上限的比例，不足时不为了更好的分割点提前截断
+    private static final double MIN_FILL_RATIO = 0.5;
+
+    // 本地 BPE 分词器 (cl100k)，与 text-embedding-v4 的分词不完全一致，但远比字符数准确
+    private final TokenCountEstimator tokenizer = new JTokkitTokenCountEstimator();
+
     @Resource
     private DocumentChunkProperties chunkConfig;
 
@@ -43,7 +52,9 @@ public class DocumentChunkService {
         // 2. 进一步分片
         int globalChunkIndex = 0;
         for (Section section : sections) {
-            List<DocumentChunkDTO> sectionChunks = chunkSection(section, globalChunkIndex);
+            List<DocumentChunkDTO> sectionChunks = "token".equalsIgnoreCase(chunkConfig.getMode())
+                    ? chunkSectionByTokens(section, globalChunkIndex)
+                    : chunkSection(section, globalChunkIndex);
             chunks.addAll(sectionChunks);
             globalChunkIndex += sectionChunks.size();
         }
@@ -60,12 +71,17 @@ public class DocumentChunkService {
         // 匹配 Markdown 标题
         Pattern headingPattern = Pattern.compile("^(#{1,6})\\s+(.+)$", Pattern.MULTILINE);
         Matcher matcher = headingPattern.matcher(content);
+        // 代码块里的 "# 注释" 不是标题 (PDF / DOCX / HTML 解析出的代码块也以围栏形式出现)
+        List<int[]> fences = findCodeFences(content);
 
         int lastEnd = 0;
         String currentTitle = null; // 初始为无标题
 
         while (matcher.find()) {
             int start = matcher.start();
+            if (insideFence(fences, start)) {
+                continue;
+            }
             // 提取上一段内容
             if (start > lastEnd) {
                 String sectionContent = content.substring(lastEnd, start);
@@ -87,6 +103,36 @@ public class DocumentChunkService {
         return sections;
     }
 
+    /**
+     * 找出 ``` 围栏代码块的区间 [开始, 结束)，未闭合的围栏延伸到文末
+     */
+    private List<int[]> findCodeFences(String content) {
+        List<int[]> fences = new ArrayList<>();
+        Matcher fence = FENCE_PATTERN.matcher(content);
+        int open = -1;
+        while (fence.find()) {
+            if (open < 0) {
+                open = fence.start();
+            } else {
+                fences.add(new int[]{open, fence.end()});
+                open = -1;
+            }
+        }
+        if (open >= 0) {
+            fences.add(new int[]{open, content.length()});
+        }
+        return fences;
+    }
+
+    private boolean insideFence(List<int[]> fences, int position) {
+        for (int[] range : fences) {
+            if (position >= range[0] && position < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 对单个章节进行分片
      */
@@ -164,6 +210,48 @@ public class DocumentChunkService {
         return chunks;
     }
 
+    /**
+     * 对单个章节按 Token 分片 (token 模式)
+     * 分割点与 Token 前缀和预先建好索引，每次决策都是二分查找；代码块与表格不会被切开
+     */
+    private List<DocumentChunkDTO> chunkSectionByTokens(Section section, int startChunkIndex) {
+        List<DocumentChunkDTO> chunks = new ArrayList<>();
+        String content = section.content;
+        SplitIndex index = SplitIndex.build(content, tokenizer, chunkConfig.getHardMaxTokens());
+        int last = index.size() - 1;
+        long maxTokens = chunkConfig.getMaxTokens();
+        long minTokens = (long) (maxTokens * MIN_FILL_RATIO);
+        // 重叠不能吃掉整个分片
+        long overlap = Math.min(chunkConfig.getOverlapTokens(), maxTokens / 2);
+
+        int chunkIndex = startChunkIndex;
+        int from = 0;
+        while (from < last) {
+            int end = index.furthestWithin(from, maxTokens);
+            if (end < last) {
+                end = index.preferredBreak(from, end, minTokens);
+            }
+
+            int start = index.position(from);
+            int stop = index.position(end);
+            String savedText = content.substring(start, stop).trim();
+            if (!savedText.isEmpty()) {
+                chunks.add(new DocumentChunkDTO(
+                        savedText,
+                        section.startIndex + start,
+                        section.startIndex + stop,
+                        chunkIndex++,
+                        section.title
+                ));
+            }
+            if (end >= last) {
+                break;
+            }
+            from = index.overlapStart(from, end, overlap);
+        }
+        return chunks;
+    }
+
     /**
      * 寻找最佳分割点，零拷贝优化版
      * 在 [start, limit] 范围内从后往前找
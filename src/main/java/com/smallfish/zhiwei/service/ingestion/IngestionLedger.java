@@ -0,0 +1,268 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallfish.zhiwei.config.IngestionLedgerProperties;
+import com.smallfish.zhiwei.dto.resp.IngestionLedgerEntryDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 入库台账 (存储在 Redis)
+ * <p>
+ * 1. 文件级：记录每个文件的状态、内容哈希、失败次数和最近错误；失败按指数退避排入重试队列，
+ *    超过最大次数或不可重试的错误 (文件不存在、格式不支持) 进入死信，等待人工处理。
+ * 2. 批次级：每个批次写入 Milvus 成功后推进已提交分片数。同一内容再次入库时从断点继续
+ *    (upsert 覆盖未提交的尾部)，已提交的分片不再向量化；旧版本的数据在全部写入后才清理。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestionLedger {
+
+    private static final String KEY_PREFIX = "zhiwei:kb:ledger:";
+    private static final String FILE_PREFIX = KEY_PREFIX + "file:";
+    private static final String RETRY_KEY = KEY_PREFIX + "retry";
+    private static final String DEAD_KEY = KEY_PREFIX + "dead";
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final IngestionLedgerProperties properties;
+
+    /**
+     * 开始入库，返回续传起点
+     *
+     * @param source 文件标识
+     * @param contentHash 文档内容哈希
+     * @param totalChunks 分片总数
+     * @param tenantId 租户
+     * @return 已提交的分片数 (内容与上次未完成的入库一致时)，否则 0
+     */
+    public int begin(String source, String contentHash, int totalChunks, String tenantId) {
+        IngestionLedgerEntryDTO entry = get(source);
+        int resumeFrom = 0;
+        if (entry == null) {
+            entry = IngestionLedgerEntryDTO.builder().source(source).build();
+        } else if (!"COMMITTED".equals(entry.getState())
+                && Objects.equals(entry.getContentHash(), contentHash)
+                && entry.getTotalChunks() == totalChunks
+                && Objects.equals(entry.getTenantId(), tenantId)) {
+            resumeFrom = Math.min(entry.getCommittedChunks(), totalChunks);
+        }
+        entry.setState("RUNNING");
+        entry.setContentHash(contentHash);
+        entry.setTotalChunks(totalChunks);
+        entry.setTenantId(tenantId);
+        entry.setCommittedChunks(resumeFrom);
+        entry.setNextRetryTime(null);
+        save(entry);
+        return resumeFrom;
+    }
+
+    /**
+     * 推进已提交分片数 (批次写入成功后调用，必须按顺序)
+     */
+    public void commit(String source, int committedChunks) {
+        IngestionLedgerEntryDTO entry = get(source);
+        if (entry == null || committedChunks <= entry.getCommittedChunks()) {
+            return;
+        }
+        entry.setCommittedChunks(committedChunks);
+        save(entry);
+    }
+
+    /**
+     * 入库完成：清除重试和死信记录
+     */
+    public void complete(String source) {
+        IngestionLedgerEntryDTO entry = get(source);
+        if (entry == null) {
+            return;
+        }
+        entry.setState("COMMITTED");
+        entry.setCommittedChunks(entry.getTotalChunks());
+        entry.setAttempts(0);
+        entry.setLastError(null);
+        entry.setNextRetryTime(null);
+        save(entry);
+        redisTemplate.opsForZSet().remove(RETRY_KEY, source);
+        redisTemplate.opsForSet().remove(DEAD_KEY, source);
+    }
+
+    /**
+     * 记录失败：可重试的排入重试队列，否则进入死信
+     *
+     * @param filePath 文件路径 (重试时重新读取)
+     * @return 更新后的台账条目
+     */
+    public IngestionLedgerEntryDTO fail(String source, String filePath, String tenantId, Throwable error) {
+        IngestionLedgerEntryDTO entry = get(source);
+        if (entry == null) {
+            entry = IngestionLedgerEntryDTO.builder().source(source).tenantId(tenantId).build();
+        }
+        entry.setFilePath(filePath);
+        entry.setAttempts(entry.getAttempts() + 1);
+        entry.setLastError(abbreviate(error));
+
+        if (!retryable(error) || entry.getAttempts() >= properties.getMaxAttempts()) {
+            entry.setState("DEAD");
+            entry.setNextRetryTime(null);
+            save(entry);
+            redisTemplate.opsForZSet().remove(RETRY_KEY, source);
+            redisTemplate.opsForSet().add(DEAD_KEY, source);
+            log.error("入库失败进入死信: {}, 尝试 {} 次, 错误: {}", source, entry.getAttempts(), entry.getLastError());
+            return entry;
+        }
+
+        Duration delay = backoff(entry.getAttempts());
+        LocalDateTime next = LocalDateTime.now().plus(delay);
+        entry.setState("RETRYING");
+        entry.setNextRetryTime(next);
+        save(entry);
+        redisTemplate.opsForZSet().add(RETRY_KEY, source, toMillis(next));
+        log.warn("入库失败，{} 秒后第 {} 次重试: {}, 错误: {}", delay.toSeconds(), entry.getAttempts() + 1,
+                source, entry.getLastError());
+        return entry;
+    }
+
+    /**
+     * 领取到期的重试任务 (ZREM 成功才算领取，多实例下不会重复执行)
+     */
+    public List<IngestionLedgerEntryDTO> claimDue(int limit) {
+        Set<String> due = redisTemplate.opsForZSet().rangeByScore(RETRY_KEY, 0, System.currentTimeMillis(), 0, limit);
+        List<IngestionLedgerEntryDTO> claimed = new ArrayList<>();
+        if (due == null) {
+            return claimed;
+        }
+        for (String source : due) {
+            Long removed = redisTemplate.opsForZSet().remove(RETRY_KEY, source);
+            if (removed == null || removed == 0) {
+                continue;
+            }
+            IngestionLedgerEntryDTO entry = get(source);
+            if (entry != null) {
+                claimed.add(entry);
+            }
+        }
+        return claimed;
+    }
+
+    /**
+     * 死信列表
+     */
+    public List<IngestionLedgerEntryDTO> deadLetters() {
+        Set<String> sources = redisTemplate.opsForSet().members(DEAD_KEY);
+        List<IngestionLedgerEntryDTO> entries = new ArrayList<>();
+        if (sources == null) {
+            return entries;
+        }
+        for (String source : sources) {
+            IngestionLedgerEntryDTO entry = get(source);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 死信重新排队 (失败次数清零，立即重试)
+     *
+     * @return 死信中不存在该文件时返回 false
+     */
+    public boolean requeue(String source) {
+        Long removed = redisTemplate.opsForSet().remove(DEAD_KEY, source);
+        IngestionLedgerEntryDTO entry = get(source);
+        if (removed == null || removed == 0 || entry == null) {
+            return false;
+        }
+        entry.setState("RETRYING");
+        entry.setAttempts(0);
+        entry.setNextRetryTime(LocalDateTime.now());
+        save(entry);
+        redisTemplate.opsForZSet().add(RETRY_KEY, source, System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * 删除文件时清除台账
+     */
+    public void remove(String source) {
+        redisTemplate.delete(FILE_PREFIX + source);
+        redisTemplate.opsForZSet().remove(RETRY_KEY, source);
+        redisTemplate.opsForSet().remove(DEAD_KEY, source);
+    }
+
+    /**
+     * 读取台账条目
+     */
+    public IngestionLedgerEntryDTO get(String source) {
+        String json = redisTemplate.opsForValue().get(FILE_PREFIX + source);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, IngestionLedgerEntryDTO.class);
+        } catch (IOException e) {
+            log.warn("读取入库台账失败: {}, {}", source, e.getMessage());
+            return null;
+        }
+    }
+
+    private void save(IngestionLedgerEntryDTO entry) {
+        entry.setUpdateTime(LocalDateTime.now());
+        try {
+            String key = FILE_PREFIX + entry.getSource();
+            String json = objectMapper.writeValueAsString(entry);
+            // 已完成的条目只用于续传判断，过期即可；重试中和死信的条目需要保留到处理为止
+            if ("COMMITTED".equals(entry.getState())) {
+                redisTemplate.opsForValue().set(key, json, properties.getCompletedTtl());
+            } else {
+                redisTemplate.opsForValue().set(key, json);
+            }
+        } catch (IOException e) {
+            log.warn("保存入库台账失败: {}, {}", entry.getSource(), e.getMessage());
+        }
+    }
+
+    /**
+     * 文件不存在、格式不支持、参数错误重试也不会成功，直接进入死信
+     */
+    private boolean retryable(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof IllegalArgumentException || t instanceof UnsupportedOperationException
+                    || t instanceof NoSuchFileException || t instanceof FileNotFoundException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = properties.getInitialBackoff().multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(properties.getMaxBackoff()) > 0 ? properties.getMaxBackoff() : delay;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String abbreviate(Throwable error) {
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        return message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+    }
+}
@@ -0,0 +1,70 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import com.smallfish.zhiwei.config.IngestionLedgerProperties;
+import com.smallfish.zhiwei.dto.resp.IngestionLedgerEntryDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 入库失败重试调度
+ * 定时从台账领取到期的重试任务，重新提交到异步入库 (续传由入库服务根据台账完成)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestionRetryScheduler {
+
+    // 每轮最多领取的任务数，避免一次性占满 kbExecutor 队列
+    private static final int CLAIM_LIMIT = 20;
+
+    private final IngestionLedger ledger;
+    private final KnowledgeBaseFacade knowledgeBaseFacade;
+    private final IngestionLedgerProperties properties;
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kb-ingest-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, properties.getPollSeconds());
+        scheduler.scheduleWithFixedDelay(this::retryDue, period, period, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void retryDue() {
+        try {
+            for (IngestionLedgerEntryDTO entry : ledger.claimDue(CLAIM_LIMIT)) {
+                if (entry.getFilePath() == null || !new File(entry.getFilePath()).isFile()) {
+                    // 文件已被删除，重试没有意义
+                    log.info("重试跳过，文件已不存在: {}", entry.getSource());
+                    ledger.remove(entry.getSource());
+                    continue;
+                }
+                log.info("重试入库: {}, 第 {} 次, 已提交分片 {}/{}", entry.getSource(), entry.getAttempts() + 1,
+                        entry.getCommittedChunks(), entry.getTotalChunks());
+                knowledgeBaseFacade.importSingleDocAsync(entry.getSource(), entry.getFilePath(), entry.getTenantId());
+            }
+        } catch (Throwable e) {
+            // 调度线程不能因为异常退出
+            log.error("入库重试调度失败", e);
+        }
+    }
+}
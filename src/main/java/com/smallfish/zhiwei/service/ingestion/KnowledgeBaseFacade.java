@@ -1,6 +1,8 @@
 package com.smallfish.zhiwei.service.ingestion;
 
 import com.smallfish.zhiwei.service.storage.impl.LocalFileStorageService;
+import com.smallfish.zhiwei.dto.resp.ImportJobStatusDTO;
+import com.smallfish.zhiwei.dto.resp.IngestionLedgerEntryDTO;
 import com.smallfish.zhiwei.dto.resp.IndexingResultDTO;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,6 +24,9 @@ import java.util.List;
 public class KnowledgeBaseFacade {
     private final LocalFileStorageService fileService;
     private final VectorIngestionService ingestionService;
+    private final BulkImportService bulkImportService;
+    private final KnowledgeSyncService syncService;
+    private final IngestionLedger ledger;
 
     @Value("${file.upload.path}")
     private String defaultPath;
@@ -30,7 +35,7 @@ public class KnowledgeBaseFacade {
      * 索引指定目录下的所有文件
      *
      * @param directoryPath 目录路径（可选，默认使用配置的上传目录）
-     * @return 索引结果  这里可以优化：定时重建目录下所有文件的索引
+     * @return 索引结果  同步执行，只适合少量文件；大目录使用 {@link #startDirectoryImport}
      */
     public IndexingResultDTO importFromDirectory(String directoryPath) {
         IndexingResultDTO result = new IndexingResultDTO();
@@ -77,36 +82,92 @@ public class KnowledgeBaseFacade {
     }
 
     /**
-     * 对外接口 2：处理单个上传文件内容
+     * 提交异步目录导入任务 (递归遍历、并发处理、进度可查询、可续跑)
+     *
+     * @param directoryPath 目录路径（可选，默认使用配置的上传目录）
+     * @param tenantId 租户 ID（可选）
+     * @return 任务初始状态
+     */
+    public ImportJobStatusDTO startDirectoryImport(String directoryPath, String tenantId) {
+        String targetPath = (directoryPath == null || directoryPath.isBlank()) ? defaultPath : directoryPath;
+        return bulkImportService.start(targetPath, tenantId);
+    }
+
+    /**
+     * 查询目录导入任务进度
+     */
+    public ImportJobStatusDTO getImportStatus(String jobId) {
+        return bulkImportService.getStatus(jobId);
+    }
+
+    /**
+     * 续跑中断的目录导入任务
+     */
+    public ImportJobStatusDTO resumeImport(String jobId) {
+        return bulkImportService.resume(jobId);
+    }
+
+    /**
+     * 登记上传文件的指纹 (同步调用，需在异步入库前执行)，避免目录监听重复入库
+     */
+    public void trackUpload(String filename, String contentHash, String tenantId) {
+        syncService.track(filename, contentHash, tenantId);
+    }
+
+    /**
+     * 对外接口 2：处理单个上传文件
      * * 添加 @Async 注解，并指定线程池名称 "kbExecutor"
      * 这样 Controller 调用这个方法时，会立即返回，而实际逻辑在子线程跑
+     * 队列里只保存文件路径，轮到执行时才从磁盘读取内容，排队的任务不占用堆内存
+     * 失败记入入库台账：按指数退避自动重试 (从已提交的批次续传)，多次失败后进入死信
      */
     @Async("kbExecutor")
-    public void importSingleDocAsync(String filename, String content) {
-        log.info("开始后台异步处理: {}, 当前线程: {}", filename, Thread.currentThread().getName());
+    public void importSingleDocAsync(String filename, String filePath, String tenantId) {
+        log.info("开始后台异步处理: {}, 租户: {}, 当前线程: {}", filename, tenantId, Thread.currentThread().getName());
 
         try {
             // 直接调用子系统
-            ingestionService.ingest(filename, content);
+            String content = fileService.readFileContent(filePath);
+            ingestionService.ingest(filename, content, tenantId);
             log.info("异步处理完成: {}", filename);
         } catch (Throwable e) {
             log.error("异步处理异常: {}", filename, e);
-            // 生产环境中，这里应该把失败记录写入数据库的 "task_log" 表，方便后续重试
+            ledger.fail(filename.replace(File.separator, "/"), filePath, tenantId, e);
         }
     }
 
+    /**
+     * 入库死信列表 (多次失败或不可重试的文件)
+     */
+    public List<IngestionLedgerEntryDTO> listDeadLetters() {
+        return ledger.deadLetters();
+    }
+
+    /**
+     * 死信重新入队，立即重试
+     *
+     * @return 死信中不存在该文件时返回 false
+     */
+    public boolean retryDeadLetter(String source) {
+        return ledger.requeue(source);
+    }
+
     /**
      * 删除知识库文档（物理文件 + 向量数据）
      */
     public void deleteDocument(String fileName) {
         // 1. 先删向量 (避免文件删了，向量删失败导致"幽灵知识")
+        //    失败时中止删除：近重复引用可能还没提升，此时删掉文件就无法再恢复
         try {
             // 注意：这里需要传入存储在 Milvus 里的确切文件名
             ingestionService.deleteVectorsByFileName(fileName);
         } catch (Exception e) {
-            log.error("删除向量失败，但继续尝试删除物理文件", e);
+            log.error("删除向量失败，中止删除文档: {}", fileName, e);
+            throw e;
         }
-        // 2. 再删物理文件
+        // 2. 从同步清单移除，目录监听收到删除事件时不再重复处理
+        syncService.untrack(fileName);
+        // 3. 再删物理文件
         fileService.delete(fileName);
     }
 
@@ -0,0 +1,434 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallfish.zhiwei.config.FileUploadConfig;
+import com.smallfish.zhiwei.config.KnowledgeSyncProperties;
+import com.smallfish.zhiwei.model.BizKnowledge;
+import com.smallfish.zhiwei.service.ingestion.parser.DocumentParserRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * 上传目录增量同步守护
+ * <p>
+ * 1. 监听：WatchService 递归监听 file.upload.path，事件先进入待处理表，
+ *    同一文件在防抖时间内没有新事件才处理，合并编辑器的连续写入。
+ * 2. 变更判定：大小和修改时间与清单一致直接跳过；不一致再算 SHA-256，内容没变只更新清单。
+ * 3. 增量处理：只把真正变更的文件交给 kbExecutor 重新入库，已删除的文件删除向量。
+ * 4. 清单：每个文件的大小、修改时间、内容哈希和租户持久化到本地 JSON，
+ *    启动时按清单与磁盘对账，重启不会触发全量重建。
+ * </p>
+ */
+@Slf4j
+@Service
+public class KnowledgeSyncService {
+
+    private static final String DEFAULT_MANIFEST = ".kb-manifest.json";
+    private static final TypeReference<Map<String, ManifestEntry>> MANIFEST_TYPE = new TypeReference<>() {};
+
+    private final VectorIngestionService ingestionService;
+    private final DocumentParserRegistry parserRegistry;
+    private final FileUploadConfig fileUploadConfig;
+    private final KnowledgeSyncProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Executor kbExecutor;
+
+    // 清单：相对路径 -> 文件指纹
+    private final Map<String, ManifestEntry> manifest = new ConcurrentHashMap<>();
+    // 待处理：相对路径 -> 最近一次事件时间
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    // 正在处理的文件，同一文件串行处理
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+    private final Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<>();
+    private final AtomicBoolean manifestDirty = new AtomicBoolean(false);
+
+    private Path root;
+    private Path manifestFile;
+    private WatchService watchService;
+    private Thread watchThread;
+    private ScheduledExecutorService scheduler;
+
+    public KnowledgeSyncService(VectorIngestionService ingestionService,
+                                DocumentParserRegistry parserRegistry,
+                                FileUploadConfig fileUploadConfig,
+                                KnowledgeSyncProperties properties,
+                                ObjectMapper objectMapper,
+                                @Qualifier("kbExecutor") Executor kbExecutor) {
+        this.ingestionService = ingestionService;
+        this.parserRegistry = parserRegistry;
+        this.fileUploadConfig = fileUploadConfig;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.kbExecutor = kbExecutor;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!properties.isEnabled()) {
+            log.info("上传目录同步已关闭");
+            return;
+        }
+        try {
+            root = Paths.get(fileUploadConfig.getPath()).toAbsolutePath().normalize();
+            Files.createDirectories(root);
+            manifestFile = (properties.getManifestPath() == null || properties.getManifestPath().isBlank())
+                    ? root.resolve(DEFAULT_MANIFEST)
+                    : Paths.get(properties.getManifestPath()).toAbsolutePath().normalize();
+
+            boolean bootstrap = !loadManifest();
+            watchService = FileSystems.getDefault().newWatchService();
+            registerRecursive(root);
+
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "kb-sync-debounce");
+                t.setDaemon(true);
+                return t;
+            });
+            long tick = Math.max(100, properties.getDebounceMs() / 2);
+            scheduler.scheduleWithFixedDelay(this::flushPending, tick, tick, TimeUnit.MILLISECONDS);
+            scheduler.scheduleWithFixedDelay(this::saveManifestIfDirty, 5, 5, TimeUnit.SECONDS);
+
+            watchThread = new Thread(this::watchLoop, "kb-sync-watcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+
+            // 启动对账放到后台，不阻塞应用启动
+            scheduler.execute(() -> reconcile(bootstrap && "seed".equalsIgnoreCase(properties.getBootstrap())));
+            log.info("上传目录同步已启动: {}, 清单 {} 条", root, manifest.size());
+        } catch (IOException e) {
+            log.error("上传目录同步启动失败，增量同步不可用", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignore) {
+                // 关闭阶段忽略
+            }
+        }
+        if (manifestFile != null) {
+            saveManifest();
+        }
+    }
+
+    /**
+     * 记录经上传接口入库的文件，监听到同一内容时不再重复入库
+     * @param source 相对路径 (上传文件即文件名)
+     * @param contentHash 内容 SHA-256 (上传时已计算)
+     * @param tenantId 租户 ID，之后该文件被修改时沿用
+     */
+    public void track(String source, String contentHash, String tenantId) {
+        if (root == null) {
+            return;
+        }
+        Path file = root.resolve(source);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            manifest.put(source, new ManifestEntry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                    contentHash, normalizeTenant(tenantId)));
+            manifestDirty.set(true);
+        } catch (IOException e) {
+            log.warn("记录上传文件指纹失败: {}", source, e);
+        }
+    }
+
+    /**
+     * 移除经删除接口删除的文件，监听到删除事件时不再重复删除向量
+     */
+    public void untrack(String source) {
+        if (manifest.remove(source) != null) {
+            manifestDirty.set(true);
+        }
+    }
+
+    private void watchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchKeys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    // 事件丢失，退化为一次全量对账 (仍然只处理变更的文件)
+                    log.warn("监听事件溢出，执行全量对账");
+                    scheduler.execute(() -> reconcile(false));
+                    continue;
+                }
+                if (dir == null) {
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                    // 新建子目录：注册监听并把其中已有的文件加入待处理
+                    try {
+                        registerRecursive(path);
+                        try (Stream<Path> stream = Files.walk(path)) {
+                            stream.filter(Files::isRegularFile).forEach(this::enqueue);
+                        }
+                    } catch (IOException e) {
+                        log.warn("注册子目录监听失败: {}", path, e);
+                    }
+                    continue;
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    // 删除 (或移出) 的可能是子目录：其中的文件不会各自产生事件，按清单前缀入队
+                    enqueueUnder(path);
+                }
+                enqueue(path);
+            }
+            if (!key.reset()) {
+                watchKeys.remove(key);
+            }
+        }
+    }
+
+    private void enqueue(Path path) {
+        if (path.equals(manifestFile) || !isAllowed(path)) {
+            return;
+        }
+        pending.put(sourceOf(path), System.currentTimeMillis());
+    }
+
+    /**
+     * 把清单中位于某个目录下的文件全部加入待处理 (sync 发现文件不存在时删除向量)
+     */
+    private void enqueueUnder(Path dir) {
+        String prefix = sourceOf(dir) + "/";
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (String source : manifest.keySet()) {
+            if (source.startsWith(prefix)) {
+                pending.put(source, now);
+                count++;
+            }
+        }
+        if (count > 0) {
+            log.info("同步: 目录已删除 {}，待清理文件 {} 个", prefix, count);
+        }
+    }
+
+    /**
+     * 处理已经静默超过防抖时间的文件
+     */
+    private void flushPending() {
+        long now = System.currentTimeMillis();
+        pending.forEach((source, lastEvent) -> {
+            if (now - lastEvent < properties.getDebounceMs() || !inProgress.add(source)) {
+                return;
+            }
+            // 处理期间又有新事件时保留，下一轮再处理
+            if (!pending.remove(source, lastEvent)) {
+                inProgress.remove(source);
+                return;
+            }
+            try {
+                kbExecutor.execute(() -> {
+                    try {
+                        sync(source);
+                    } finally {
+                        inProgress.remove(source);
+                    }
+                });
+            } catch (Exception e) {
+                inProgress.remove(source);
+                pending.putIfAbsent(source, lastEvent);
+            }
+        });
+    }
+
+    /**
+     * 对比单个文件与清单，只处理真正的变更
+     */
+    private void sync(String source) {
+        Path file = root.resolve(source);
+        ManifestEntry old = manifest.get(source);
+        try {
+            if (!Files.isRegularFile(file)) {
+                if (old != null) {
+                    log.info("同步: 文件已删除 {}", source);
+                    ingestionService.deleteVectorsByFileName(source);
+                    manifest.remove(source);
+                    manifestDirty.set(true);
+                }
+                return;
+            }
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            long mtime = attrs.lastModifiedTime().toMillis();
+            if (old != null && old.size() == attrs.size() && old.mtime() == mtime) {
+                return;
+            }
+            String hash = DigestUtil.sha256Hex(file.toFile());
+            String tenant = old == null ? BizKnowledge.DEFAULT_TENANT : old.tenantId();
+            if (old != null && old.hash().equals(hash)) {
+                // 只是 touch 或者原样覆盖，更新指纹即可
+                manifest.put(source, new ManifestEntry(attrs.size(), mtime, hash, tenant));
+                manifestDirty.set(true);
+                return;
+            }
+            log.info("同步: 文件{} {}", old == null ? "新增" : "修改", source);
+            ingestionService.ingest(source, parserRegistry.readAsMarkdown(file), tenant);
+            manifest.put(source, new ManifestEntry(attrs.size(), mtime, hash, tenant));
+            manifestDirty.set(true);
+        } catch (Exception e) {
+            // 清单不更新，下次对账或事件时重试
+            log.error("同步文件失败: {}", source, e);
+        }
+    }
+
+    /**
+     * 启动 / 事件溢出时按清单与磁盘对账
+     * @param seedOnly 只生成清单不导入 (首次启动)
+     */
+    private void reconcile(boolean seedOnly) {
+        Set<String> onDisk = new HashSet<>();
+        try (Stream<Path> stream = Files.walk(root)) {
+            List<Path> files = stream.filter(Files::isRegularFile)
+                    .filter(path -> !path.equals(manifestFile))
+                    .filter(this::isAllowed)
+                    .toList();
+            for (Path file : files) {
+                String source = sourceOf(file);
+                onDisk.add(source);
+                if (seedOnly) {
+                    BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                    manifest.put(source, new ManifestEntry(attrs.size(), attrs.lastModifiedTime().toMillis(),
+                            DigestUtil.sha256Hex(file.toFile()), BizKnowledge.DEFAULT_TENANT));
+                    manifestDirty.set(true);
+                } else {
+                    // 指纹一致的文件在 sync 中直接跳过，这里只负责入队
+                    pending.putIfAbsent(source, 0L);
+                }
+            }
+        } catch (IOException e) {
+            log.error("对账扫描失败: {}", root, e);
+            return;
+        }
+        // 清单里有、磁盘上没有：离线期间被删除
+        for (String source : Set.copyOf(manifest.keySet())) {
+            if (!onDisk.contains(source)) {
+                pending.putIfAbsent(source, 0L);
+            }
+        }
+        saveManifestIfDirty();
+        log.info("对账完成: 磁盘文件 {}, 清单 {} 条{}", onDisk.size(), manifest.size(), seedOnly ? " (首次启动，仅生成清单)" : "");
+    }
+
+    private void registerRecursive(Path dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            for (Path sub : stream.filter(Files::isDirectory).toList()) {
+                WatchKey key = sub.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                watchKeys.put(key, sub);
+            }
+        }
+    }
+
+    private boolean isAllowed(Path path) {
+        if (fileUploadConfig.getAllowedExtensions() == null) {
+            return false;
+        }
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return fileUploadConfig.getAllowedExtensions().stream()
+                .filter(ext -> ext != null && !ext.isBlank())
+                .anyMatch(ext -> name.endsWith("." + ext.toLowerCase(Locale.ROOT)));
+    }
+
+    private String sourceOf(Path path) {
+        return root.relativize(path).toString().replace(root.getFileSystem().getSeparator(), "/");
+    }
+
+    private String normalizeTenant(String tenantId) {
+        return (tenantId == null || tenantId.isBlank()) ? BizKnowledge.DEFAULT_TENANT : tenantId;
+    }
+
+    /**
+     * 读取清单
+     * @return 清单是否存在
+     */
+    private boolean loadManifest() {
+        if (!Files.exists(manifestFile)) {
+            return false;
+        }
+        try {
+            manifest.putAll(objectMapper.readValue(manifestFile.toFile(), MANIFEST_TYPE));
+            return true;
+        } catch (IOException e) {
+            // 清单损坏按首次启动处理
+            log.warn("清单读取失败，将重新生成: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void saveManifestIfDirty() {
+        if (manifestDirty.compareAndSet(true, false)) {
+            saveManifest();
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，进程中途退出不会留下半个清单
+     */
+    private synchronized void saveManifest() {
+        try {
+            Path tmp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+            objectMapper.writeValue(tmp.toFile(), new HashMap<>(manifest));
+            Files.move(tmp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            manifestDirty.set(true);
+            log.warn("清单保存失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 清单条目
+     *
+     * @param size 文件大小
+     * @param mtime 修改时间 (ms)
+     * @param hash 内容 SHA-256
+     * @param tenantId 租户
+     */
+    public record ManifestEntry(long size, long mtime, String hash, String tenantId) {
+    }
+}
@@ -0,0 +1,278 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smallfish.zhiwei.config.DedupProperties;
+import com.smallfish.zhiwei.utils.SimHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 近重复分片索引 (SimHash + LSH，存储在 Redis)
+ * <p>
+ * 1. 规范分片：实际写入 Milvus 的分片，按 (租户, 段号, 16 位段值) 分桶，4 段中任意一段相同即为候选，
+ *    再按汉明距离确认。不跨租户去重，避免分区过滤后看不到规范分片。
+ * 2. 引用：与规范分片近重复的分片不写 Milvus，完整内容和元数据记在规范分片的引用表里。
+ * 3. 删除规范分片所在文件时，返回它的引用，由入库服务把第一个引用提升为新的规范分片。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NearDuplicateIndex {
+
+    private static final String KEY_PREFIX = "zhiwei:kb:dedup:";
+    private static final String BAND_PREFIX = KEY_PREFIX + "band:";
+    private static final String SIG_PREFIX = KEY_PREFIX + "sig:";
+    private static final String SOURCE_PREFIX = KEY_PREFIX + "src:";
+    private static final String REFS_PREFIX = KEY_PREFIX + "refs:";
+    private static final String SOURCE_REFS_PREFIX = KEY_PREFIX + "srcrefs:";
+    private static final int BANDS = 4;
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final DedupProperties properties;
+
+    /**
+     * 查找近重复的规范分片
+     *
+     * @return 规范分片 ID，没有返回 null
+     */
+    public String findCanonical(String tenantId, long simhash) {
+        Set<String> candidates = new LinkedHashSet<>();
+        for (int band = 0; band < BANDS; band++) {
+            Set<String> members = redisTemplate.opsForSet().members(bandKey(tenantId, band, simhash));
+            if (members != null) {
+                candidates.addAll(members);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        List<String> ids = new ArrayList<>(candidates);
+        List<String> signatures = redisTemplate.opsForValue().multiGet(ids.stream().map(id -> SIG_PREFIX + id).toList());
+        String best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < ids.size(); i++) {
+            Signature signature = signatures == null ? null : Signature.parse(signatures.get(i));
+            if (signature == null) {
+                continue;
+            }
+            int distance = SimHash.distance(signature.simhash(), simhash);
+            if (distance <= properties.getMaxDistance() && distance < bestDistance) {
+                best = ids.get(i);
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 登记规范分片 (已写入 Milvus)
+     */
+    public void addCanonical(String id, long simhash, String tenantId, String source) {
+        redisTemplate.opsForValue().set(SIG_PREFIX + id, new Signature(simhash, tenantId, source).format());
+        for (int band = 0; band < BANDS; band++) {
+            redisTemplate.opsForSet().add(bandKey(tenantId, band, simhash), id);
+        }
+        redisTemplate.opsForSet().add(SOURCE_PREFIX + source, id);
+    }
+
+    /**
+     * 登记引用 (未写入 Milvus 的近重复分片)
+     */
+    public void addReference(String canonicalId, Reference reference) {
+        try {
+            redisTemplate.opsForHash().put(REFS_PREFIX + canonicalId, reference.id(), objectMapper.writeValueAsString(reference));
+            redisTemplate.opsForSet().add(SOURCE_REFS_PREFIX + reference.source(), canonicalId + "|" + reference.id());
+        } catch (Exception e) {
+            throw new IllegalStateException("记录近重复引用失败: " + reference.id(), e);
+        }
+    }
+
+    /**
+     * 某个文件作为引用登记的分片 ID (这些分片没有写入 Milvus)
+     */
+    public Set<String> referenceIds(String source) {
+        Set<String> ids = new HashSet<>();
+        Set<String> entries = redisTemplate.opsForSet().members(SOURCE_REFS_PREFIX + source);
+        if (entries != null) {
+            for (String entry : entries) {
+                ids.add(entry.substring(entry.indexOf('|') + 1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 查出某个文件的规范分片上挂着的其他文件的引用 (只读，不修改索引)
+     *
+     * @return 该文件的规范分片 -> 需要提升的孤儿引用 (不含同一文件自身的引用)
+     */
+    public Map<String, Orphans> findOrphans(String source) {
+        Map<String, Orphans> orphans = new LinkedHashMap<>();
+        Set<String> canonicalIds = redisTemplate.opsForSet().members(SOURCE_PREFIX + source);
+        if (canonicalIds == null) {
+            return orphans;
+        }
+        for (String id : canonicalIds) {
+            Signature signature = Signature.parse(redisTemplate.opsForValue().get(SIG_PREFIX + id));
+            if (signature == null) {
+                continue;
+            }
+            List<Reference> references = new ArrayList<>();
+            for (Object json : redisTemplate.opsForHash().values(REFS_PREFIX + id)) {
+                Reference reference = parseReference(String.valueOf(json));
+                if (reference != null && !source.equals(reference.source())) {
+                    references.add(reference);
+                }
+            }
+            if (!references.isEmpty()) {
+                orphans.put(id, new Orphans(signature.simhash(), signature.tenantId(), references));
+            }
+        }
+        return orphans;
+    }
+
+    /**
+     * 移除某个文件在索引中的全部记录
+     * 孤儿引用需要先由 {@link #findOrphans} 取出并写入 Milvus 后再调用，否则引用会随之丢失
+     */
+    public void detachSource(String source) {
+        // 1. 该文件作为引用的记录直接删除
+        Set<String> ownRefs = redisTemplate.opsForSet().members(SOURCE_REFS_PREFIX + source);
+        if (ownRefs != null) {
+            for (String entry : ownRefs) {
+                int sep = entry.indexOf('|');
+                redisTemplate.opsForHash().delete(REFS_PREFIX + entry.substring(0, sep), entry.substring(sep + 1));
+            }
+        }
+        redisTemplate.delete(SOURCE_REFS_PREFIX + source);
+
+        // 2. 该文件的规范分片：移出分桶，解除其他文件引用的登记
+        Set<String> canonicalIds = redisTemplate.opsForSet().members(SOURCE_PREFIX + source);
+        if (canonicalIds != null) {
+            for (String id : canonicalIds) {
+                Signature signature = Signature.parse(redisTemplate.opsForValue().get(SIG_PREFIX + id));
+                if (signature != null) {
+                    for (int band = 0; band < BANDS; band++) {
+                        redisTemplate.opsForSet().remove(bandKey(signature.tenantId(), band, signature.simhash()), id);
+                    }
+                }
+                for (Object json : redisTemplate.opsForHash().values(REFS_PREFIX + id)) {
+                    Reference reference = parseReference(String.valueOf(json));
+                    if (reference != null && !source.equals(reference.source())) {
+                        redisTemplate.opsForSet().remove(SOURCE_REFS_PREFIX + reference.source(), id + "|" + reference.id());
+                    }
+                }
+                redisTemplate.delete(List.of(SIG_PREFIX + id, REFS_PREFIX + id));
+            }
+        }
+        redisTemplate.delete(SOURCE_PREFIX + source);
+    }
+
+    /**
+     * 规范分片被引用的来源文件 (检索结果展示用)
+     * 每次检索都会调用，所有分片的引用表在一次管道往返中读出
+     */
+    public Map<String, Set<String>> referencedSources(Collection<String> canonicalIds) {
+        Map<String, Set<String>> result = new LinkedHashMap<>();
+        if (canonicalIds.isEmpty()) {
+            return result;
+        }
+        List<String> ids = new ArrayList<>(canonicalIds);
+        List<Object> values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String id : ids) {
+                connection.hashCommands().hVals((REFS_PREFIX + id).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        for (int i = 0; i < ids.size(); i++) {
+            Set<String> sources = new LinkedHashSet<>();
+            if (values.get(i) instanceof Collection<?> jsons) {
+                for (Object json : jsons) {
+                    Reference reference = parseReference(String.valueOf(json));
+                    if (reference != null) {
+                        sources.add(reference.source());
+                    }
+                }
+            }
+            if (!sources.isEmpty()) {
+                result.put(ids.get(i), sources);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清空索引 (重建集合后旧的规范 / 引用关系失效)
+     */
+    public void clear() {
+        Set<String> keys = new HashSet<>();
+        try (Cursor<String> cursor = redisTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build())) {
+            cursor.forEachRemaining(keys::add);
+        }
+        if (!keys.isEmpty()) {
+            redisTemplate.delete(keys);
+        }
+        log.info("近重复索引已清空: {} 个键", keys.size());
+    }
+
+    private String bandKey(String tenantId, int band, long simhash) {
+        return BAND_PREFIX + tenantId + ":" + band + ":" + Integer.toHexString(SimHash.band(simhash, band));
+    }
+
+    private Reference parseReference(String json) {
+        try {
+            return objectMapper.readValue(json, Reference.class);
+        } catch (Exception e) {
+            log.warn("近重复引用解析失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 近重复引用：重建规范分片所需的全部字段 (向量沿用规范分片的)
+     */
+    public record Reference(String id, String source, String tenantId, String category,
+                            String content, Map<String, Object> metadata) {
+    }
+
+    /**
+     * 被删除的规范分片留下的引用
+     */
+    public record Orphans(long simhash, String tenantId, List<Reference> references) {
+    }
+
+    private record Signature(long simhash, String tenantId, String source) {
+
+        String format() {
+            return Long.toHexString(simhash) + "|" + tenantId + "|" + source;
+        }
+
+        static Signature parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            String[] parts = value.split("\\|", 3);
+            if (parts.length < 3) {
+                return null;
+            }
+            return new Signature(Long.parseUnsignedLong(parts[0], 16), parts[1], parts[2]);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.smallfish.zhiwei.client.EmbeddingProfile;
+import com.smallfish.zhiwei.client.MilvusClientFactory;
+import com.smallfish.zhiwei.client.MilvusClientPool;
+import com.smallfish.zhiwei.client.MilvusIndexTuner;
+import com.smallfish.zhiwei.client.VectorPrecision;
+import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.config.ReindexProperties;
+import com.smallfish.zhiwei.dto.resp.ReindexStatusDTO;
+import com.smallfish.zhiwei.model.BizKnowledge;
+import com.smallfish.zhiwei.service.storage.impl.LocalFileStorageService;
+import com.smallfish.zhiwei.utils.MilvusFilterRewriter;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.FieldSchema;
+import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.SearchResults;
+import io.milvus.grpc.ShowCollectionsResponse;
+import io.milvus.param.MetricType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.alias.AlterAliasParam;
+import io.milvus.param.alias.CreateAliasParam;
+import io.milvus.param.collection.DescribeCollectionParam;
+import io.milvus.param.collection.DropCollectionParam;
+import io.milvus.param.collection.FlushParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.RenameCollectionParam;
+import io.milvus.param.collection.ShowCollectionsParam;
+import io.milvus.param.dml.DeleteParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.response.QueryResultsWrapper;
+import io.milvus.response.SearchResultsWrapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 知识库重建索引 (蓝绿切换)
+ * <p>
+ * 检索与写入始终使用别名 {@link MilvusConstants#MILVUS_COLLECTION_NAME}。重建时在后台按任务指定的向量来源
+ * (模型、维度、精度，未指定时沿用正式集合) 和当前配置 (分片大小、索引类型) 新建版本化集合 model_vyyyyMMddHHmmss，
+ * 从上传目录重新导入；切换前在线检索仍按旧集合的向量来源服务：
+ * 向量来源签名不变时，内容一致的分片直接复用旧集合中的向量；Embedding 限流，避免挤占在线流量。
+ * 重建期间的上传 / 删除会被记录并回放到新集合，最后一轮回放与切换期间阻塞写入。
+ * 抽样校验召回率达标后原子切换别名，旧版本保留用于回滚。
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReindexService {
+
+    private static final String VERSION_PREFIX = MilvusConstants.MILVUS_COLLECTION_NAME + "_v";
+    private static final String LEGACY_PREFIX = MilvusConstants.MILVUS_COLLECTION_NAME + "_legacy_";
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    // 回放增量变更的最大轮数，防止持续写入时无法收敛
+    private static final int MAX_REPLAY_ROUNDS = 3;
+
+    // 建集合、别名切换等低频管理操作用单例客户端，读写数据走连接池
+    private final MilvusServiceClient milvusClient;
+    private final MilvusClientPool milvusClientPool;
+    private final MilvusClientFactory milvusClientFactory;
+    private final MilvusIndexTuner indexTuner;
+    private final VectorIngestionService ingestionService;
+    private final NearDuplicateIndex duplicateIndex;
+    private final LocalFileStorageService fileService;
+    private final ReindexProperties properties;
+    private final Gson gson = new Gson();
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "kb-reindex");
+        t.setDaemon(true);
+        // 低优先级，让出 CPU 给在线请求
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile ReindexStatusDTO status = ReindexStatusDTO.builder().state("IDLE").build();
+
+    @Value("${file.upload.path}")
+    private String uploadPath;
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    /**
+     * 提交重建任务
+     * @param model 目标 Embedding 模型，为空沿用正式集合
+     * @param dimension 目标维度，为空沿用正式集合
+     * @param precision 目标存储精度，为空沿用正式集合
+     * @return 任务初始状态
+     * @throws IllegalStateException 已有任务在运行
+     */
+    public ReindexStatusDTO start(String model, Integer dimension, String precision) {
+        EmbeddingProfile live = milvusClientFactory.getActiveProfile();
+        EmbeddingProfile profile = new EmbeddingProfile(
+                model == null || model.isBlank() ? live.model() : model.trim(),
+                dimension == null ? live.dimension() : dimension,
+                precision == null || precision.isBlank() ? live.precision() : VectorPrecision.of(precision));
+        if (profile.dimension() <= 0) {
+            throw new IllegalArgumentException("维度必须大于 0: " + profile.dimension());
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("已有重建任务在运行: " + status.getTargetCollection());
+        }
+        String target = VERSION_PREFIX + LocalDateTime.now().format(VERSION_FORMAT);
+        status = ReindexStatusDTO.builder()
+                .state("BUILDING")
+                .targetCollection(target)
+                .targetProfile(profile.signature())
+                .startTime(LocalDateTime.now())
+                .build();
+        worker.submit(() -> run(target, profile));
+        return status;
+    }
+
+    /**
+     * 当前 / 最近一次任务状态
+     */
+    public ReindexStatusDTO getStatus() {
+        return status;
+    }
+
+    private void run(String target, EmbeddingProfile profile) {
+        ReindexStatusDTO st = status;
+        boolean switched = false;
+        ingestionService.startCapture();
+        try {
+            // 1. 按目标向量来源建新集合
+            milvusClientFactory.createBizCollection(milvusClient, target, profile);
+            milvusClientFactory.createIndexes(milvusClient, target);
+            LiveInfo live = describeLive(profile);
+            st.setPreviousCollection(live.physicalName());
+            log.info("开始重建索引: {} -> {}, 复用旧向量: {}", live.physicalName(), target, live.reusable());
+
+            // 2. 全量导入 (限流)
+            RateLimiter limiter = RateLimiter.create(properties.getEmbedRatePerSecond());
+            // 递归扫描，source 与批量导入 / 目录同步一致 (相对上传根目录的路径)
+            Path root = uploadRoot();
+            List<Path> files = fileService.walkDirectory(root);
+            st.setTotalFiles(files.size());
+            for (Path file : files) {
+                String source = LocalFileStorageService.sourceOf(root, file);
+                try {
+                    String content = fileService.readFileContent(file.toFile());
+                    Map<String, BizKnowledge> old = loadLive(source, live);
+                    String tenant = old.values().stream().map(BizKnowledge::getTenantId)
+                            .filter(t -> t != null && !t.isBlank()).findFirst().orElse(BizKnowledge.DEFAULT_TENANT);
+                    int reused = ingestionService.ingestInto(target, source, content, tenant,
+                            live.reusable() ? old : Map.of(), limiter, profile);
+                    st.setReusedVectors(st.getReusedVectors() + reused);
+                } catch (Exception e) {
+                    st.setFailedFiles(st.getFailedFiles() + 1);
+                    log.error("重建索引: 文件 {} 导入失败", source, e);
+                }
+                st.setProcessedFiles(st.getProcessedFiles() + 1);
+            }
+
+            // 3. 回放重建期间的增量变更
+            for (int round = 0; round < MAX_REPLAY_ROUNDS && replay(target, limiter, st, profile, false) > 0; round++) {
+                log.info("重建索引: 第 {} 轮增量回放完成", round + 1);
+            }
+
+            // 4. 落盘、加载、抽样校验召回率
+            st.setState("VALIDATING");
+            milvusClient.flush(FlushParam.newBuilder()
+                    .withCollectionNames(List.of(target))
+                    .withSyncFlush(Boolean.TRUE)
+                    .build());
+            check(milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                    .withCollectionName(target)
+                    .withSyncLoad(Boolean.TRUE)
+                    .build()), "加载新集合");
+            double recall = validateRecall(target, profile);
+            st.setRecall(recall);
+            if (recall < properties.getMinRecall()) {
+                throw new IllegalStateException(String.format("召回率 %.3f 低于阈值 %.3f，放弃切换", recall, properties.getMinRecall()));
+            }
+
+            // 5. 阻塞写入，最后一轮回放后切换别名：切换前不会再有漏记的变更，之后的写入直接进入新集合
+            ingestionService.runExclusive(() -> {
+                replay(target, limiter, st, profile, true);
+                switchAlias(target, live.physicalName(), profile);
+                ingestionService.stopCapture();
+            });
+            switched = true;
+            st.setState("SWITCHED");
+            st.setMessage("别名已切换到 " + target);
+            log.info("重建索引完成: 别名 {} -> {}, 复用向量 {}, 召回率 {}", MilvusConstants.MILVUS_COLLECTION_NAME,
+                    target, st.getReusedVectors(), recall);
+
+            // 6. 清理过旧的版本
+            dropOldVersions(target);
+        } catch (Exception e) {
+            st.setState("FAILED");
+            st.setMessage(e.getMessage());
+            log.error("重建索引失败: {}", target, e);
+            if (!switched) {
+                dropQuietly(target);
+            }
+        } finally {
+            ingestionService.stopCapture();
+            st.setEndTime(LocalDateTime.now());
+            running.set(false);
+        }
+    }
+
+    /**
+     * 读取别名当前指向的集合，判断旧向量能否复用 (向量来源与目标一致才复用)
+     */
+    private LiveInfo describeLive(EmbeddingProfile target) {
+        R<DescribeCollectionResponse> response = milvusClient.describeCollection(DescribeCollectionParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            return new LiveInfo(null, false, false, null);
+        }
+        DescribeCollectionResponse data = response.getData();
+        List<FieldSchema> fields = data.getSchema().getFieldsList();
+        boolean hasTenant = fields.stream().anyMatch(f -> f.getName().equals(BizKnowledge.FIELD_TENANT));
+        EmbeddingProfile liveProfile = MilvusClientFactory.profileOf(data);
+        return new LiveInfo(data.getCollectionName(), target.equals(liveProfile), hasTenant,
+                liveProfile == null ? null : liveProfile.precision());
+    }
+
+    /**
+     * 读取旧集合中某个文件的分片 (ID、内容、标题、租户，可复用时带向量)
+     */
+    private Map<String, BizKnowledge> loadLive(String sourcePath, LiveInfo live) {
+        if (live.physicalName() == null) {
+            return Map.of();
+        }
+        List<String> outFields = new ArrayList<>(List.of(BizKnowledge.FIELD_ID, BizKnowledge.FIELD_CONTENT, BizKnowledge.FIELD_METADATA));
+        if (live.reusable()) {
+            outFields.add(BizKnowledge.FIELD_VECTOR);
+        }
+        if (live.hasTenant()) {
+            outFields.add(BizKnowledge.FIELD_TENANT);
+        }
+        R<QueryResults> response = milvusClientPool.execute(client -> client.query(QueryParam.newBuilder()
+                .withCollectionName(live.physicalName())
+                .withExpr(BizKnowledge.FIELD_SOURCE + " == " + MilvusFilterRewriter.quote(sourcePath))
+                .withOutFields(outFields)
+                .build()));
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            return Map.of();
+        }
+
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(response.getData());
+        List<?> ids = wrapper.getFieldWrapper(BizKnowledge.FIELD_ID).getFieldData();
+        List<?> contents = wrapper.getFieldWrapper(BizKnowledge.FIELD_CONTENT).getFieldData();
+        List<?> metadatas = wrapper.getFieldWrapper(BizKnowledge.FIELD_METADATA).getFieldData();
+        List<?> vectors = live.reusable() ? wrapper.getFieldWrapper(BizKnowledge.FIELD_VECTOR).getFieldData() : null;
+        List<?> tenants = live.hasTenant() ? wrapper.getFieldWrapper(BizKnowledge.FIELD_TENANT).getFieldData() : null;
+
+        Map<String, BizKnowledge> result = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            result.put(String.valueOf(ids.get(i)), BizKnowledge.builder()
+                    .id(String.valueOf(ids.get(i)))
+                    .content(String.valueOf(contents.get(i)))
+                    .metadata(parseMetadata(metadatas.get(i)))
+                    .vector(vectors == null ? null : live.precision().decode(vectors.get(i)))
+                    .tenantId(tenants == null ? null : String.valueOf(tenants.get(i)))
+                    .build());
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseMetadata(Object metaObj) {
+        try {
+            if (metaObj instanceof JsonObject json) {
+                return gson.fromJson(json, Map.class);
+            } else if (metaObj instanceof String str) {
+                return gson.fromJson(str, Map.class);
+            } else if (metaObj instanceof Map) {
+                return (Map<String, Object>) metaObj;
+            }
+        } catch (Exception ignore) {
+            // 元数据解析失败不影响导入，只是不能复用带标题的分片
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 回放增量变更到新集合
+     * @param strict 切换前的最后一轮：任何变更回放失败都放弃切换
+     * @return 回放的变更数
+     */
+    private int replay(String target, RateLimiter limiter, ReindexStatusDTO st, EmbeddingProfile profile, boolean strict) {
+        Map<String, VectorIngestionService.CapturedChange> changes = ingestionService.drainCaptured();
+        List<String> failed = new ArrayList<>();
+        changes.forEach((source, change) -> {
+            try {
+                if (change.deleted()) {
+                    R<MutationResult> deleted = milvusClientPool.execute(client -> client.delete(DeleteParam.newBuilder()
+                            .withCollectionName(target)
+                            .withExpr(BizKnowledge.FIELD_SOURCE + " == " + MilvusFilterRewriter.quote(source))
+                            .build()));
+                    if (deleted.getStatus() != R.Status.Success.getCode()) {
+                        throw new IllegalStateException("删除失败: " + deleted.getMessage());
+                    }
+                } else {
+                    String content = fileService.readFileContent(uploadRoot().resolve(source).toFile());
+                    ingestionService.ingestInto(target, source, content, change.tenantId(), Map.of(), limiter, profile);
+                }
+            } catch (Exception e) {
+                failed.add(source);
+                log.warn("重建索引: 回放变更失败 {}: {}", source, e.getMessage());
+            }
+        });
+        if (strict && !failed.isEmpty()) {
+            throw new IllegalStateException("增量回放失败，放弃切换: " + failed);
+        }
+        st.setReplayedChanges(st.getReplayedChanges() + changes.size());
+        return changes.size();
+    }
+
+    /**
+     * 抽样校验：用分片自身的向量检索，统计自身出现在 topK 中的比例
+     */
+    private double validateRecall(String target, EmbeddingProfile profile) {
+        int sampleSize = properties.getRecallSampleSize();
+        VectorPrecision precision = profile.precision();
+        // 按新集合自己的索引推导检索参数，而不是正式集合的
+        String searchParams = indexTuner.searchParams(target, properties.getRecallTopK());
+        R<QueryResults> response = milvusClientPool.execute(client -> client.query(QueryParam.newBuilder()
+                .withCollectionName(target)
+                .withExpr(BizKnowledge.FIELD_ID + " != \"\"")
+                .withOutFields(List.of(BizKnowledge.FIELD_ID, BizKnowledge.FIELD_VECTOR))
+                .withLimit((long) Math.min(16384, sampleSize * 20))
+                .build()));
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("抽样查询失败: " + response.getMessage());
+        }
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(response.getData());
+        List<?> ids = wrapper.getFieldWrapper(BizKnowledge.FIELD_ID).getFieldData();
+        List<?> vectors = wrapper.getFieldWrapper(BizKnowledge.FIELD_VECTOR).getFieldData();
+        if (ids.isEmpty()) {
+            // 上传目录为空时新集合也为空，视为通过
+            return 1.0;
+        }
+
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            indexes.add(i);
+        }
+        Collections.shuffle(indexes);
+        List<Integer> sample = indexes.subList(0, Math.min(sampleSize, indexes.size()));
+
+        int hits = 0;
+        for (int i : sample) {
+            SearchParam.Builder builder = SearchParam.newBuilder()
+                    .withCollectionName(target)
+                    .withMetricType(MetricType.IP)
+                    .withLimit((long) properties.getRecallTopK())
+                    .withVectorFieldName(BizKnowledge.FIELD_VECTOR)
+                    .withParams(searchParams);
+            SearchParam searchParam = precision.withVectors(builder, List.of(precision.decode(vectors.get(i)))).build();
+            R<SearchResults> search = milvusClientPool.execute(client -> client.search(searchParam));
+            if (search.getStatus() != R.Status.Success.getCode()) {
+                continue;
+            }
+            String id = String.valueOf(ids.get(i));
+            boolean found = new SearchResultsWrapper(search.getData().getResults()).getIDScore(0).stream()
+                    .anyMatch(score -> id.equals(score.getStrID()));
+            if (found) {
+                hits++;
+            }
+        }
+        return (double) hits / sample.size();
+    }
+
+    /**
+     * 切换别名：别名已存在则 alterAlias (原子)；旧版本的物理集合与别名同名时，先改名再建别名
+     */
+    private void switchAlias(String target, String previousPhysical, EmbeddingProfile profile) {
+        String alias = MilvusConstants.MILVUS_COLLECTION_NAME;
+        if (alias.equals(previousPhysical)) {
+            String legacy = LEGACY_PREFIX + LocalDateTime.now().format(VERSION_FORMAT);
+            log.warn("正式集合 {} 为物理集合，改名为 {} 后创建别名", alias, legacy);
+            check(milvusClient.renameCollection(RenameCollectionParam.newBuilder()
+                    .withOldCollectionName(alias)
+                    .withNewCollectionName(legacy)
+                    .build()), "旧集合改名");
+            check(milvusClient.createAlias(CreateAliasParam.newBuilder()
+                    .withCollectionName(target)
+                    .withAlias(alias)
+                    .build()), "创建别名");
+        } else if (previousPhysical == null) {
+            check(milvusClient.createAlias(CreateAliasParam.newBuilder()
+                    .withCollectionName(target)
+                    .withAlias(alias)
+                    .build()), "创建别名");
+        } else {
+            check(milvusClient.alterAlias(AlterAliasParam.newBuilder()
+                    .withCollectionName(target)
+                    .withAlias(alias)
+                    .build()), "切换别名");
+        }
+
+        // 刷新依赖集合结构的状态：新集合带分区字段，之后的向量化与写入按新集合的向量来源
+        milvusClientFactory.setPartitionKeyEnabled(true);
+        milvusClientFactory.setActiveProfile(profile);
+        indexTuner.invalidate();
+        // 新集合是全量写入的，旧的规范 / 引用关系不再成立
+        duplicateIndex.clear();
+    }
+
+    /**
+     * 只保留最近 keepVersions 个版本 (含当前)
+     */
+    private void dropOldVersions(String current) {
+        R<ShowCollectionsResponse> response = milvusClient.showCollections(ShowCollectionsParam.newBuilder().build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            return;
+        }
+        // 版本号是时间戳，按去掉前缀后的时间倒序
+        List<String> versions = new ArrayList<>(response.getData().getCollectionNamesList().stream()
+                .filter(name -> name.startsWith(VERSION_PREFIX) || name.startsWith(LEGACY_PREFIX))
+                .filter(name -> !name.equals(current))
+                .sorted((a, b) -> versionOf(b).compareTo(versionOf(a)))
+                .toList());
+        int keepOld = Math.max(0, properties.getKeepVersions() - 1);
+        versions.stream().skip(keepOld).forEach(name -> {
+            log.info("清理旧版本集合: {}", name);
+            dropQuietly(name);
+        });
+    }
+
+    private String versionOf(String name) {
+        return name.startsWith(VERSION_PREFIX) ? name.substring(VERSION_PREFIX.length()) : name.substring(LEGACY_PREFIX.length());
+    }
+
+    private Path uploadRoot() {
+        return Paths.get(uploadPath).toAbsolutePath().normalize();
+    }
+
+    private void dropQuietly(String collection) {
+        try {
+            milvusClient.dropCollection(DropCollectionParam.newBuilder().withCollectionName(collection).build());
+        } catch (Exception e) {
+            log.warn("删除集合 {} 失败: {}", collection, e.getMessage());
+        }
+    }
+
+    private void check(R<RpcStatus> response, String action) {
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new RuntimeException(action + "失败: " + response.getMessage());
+        }
+    }
+
+    /**
+     * 别名当前指向的集合信息
+     *
+     * @param physicalName 物理集合名 (不存在时为 null)
+     * @param reusable 旧向量能否复用
+     * @param hasTenant 是否有租户字段
+     * @param precision 旧集合的向量精度
+     */
+    private record LiveInfo(String physicalName, boolean reusable, boolean hasTenant, VectorPrecision precision) {
+    }
+}
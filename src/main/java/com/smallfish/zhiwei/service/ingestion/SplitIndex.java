@@ -0,0 +1,266 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * 章节的候选分割点索引 (Token 分片模式使用)
+ * <p>
+ * 1. 一次扫描收集所有候选分割点并标注优先级：段落 > 换行 > 句末 > 分句。
+ * 2. 代码块 (``` 围栏) 和 Markdown 表格是原子块，内部不产生分割点；
+ *    原子块本身超过硬上限时才退化为按行分割，避免超出 Embedding 输入上限。
+ * 3. 相邻分割点之间的片段各分词一次，得到 Token 前缀和。之后任意区间的 Token 数是 O(1)，
+ *    "最远可达分割点" 和 "优先级最高的分割点" 都是二分查找，每次分片决策 O(log n)。
+ * </p>
+ */
+public final class SplitIndex {
+
+    public static final int CLAUSE = 0;
+    public static final int SENTENCE = 1;
+    public static final int LINE = 2;
+    public static final int PARAGRAPH = 3;
+    private static final int LEVELS = 4;
+
+    // 分割点在原文中的位置 (首个为 0，末个为文本长度)
+    private final int[] positions;
+    // prefixTokens[i] = [0, positions[i]) 的 Token 数
+    private final long[] prefixTokens;
+    // 按优先级分组的分割点下标 (升序)
+    private final int[][] byPriority;
+
+    private SplitIndex(int[] positions, long[] prefixTokens, int[][] byPriority) {
+        this.positions = positions;
+        this.prefixTokens = prefixTokens;
+        this.byPriority = byPriority;
+    }
+
+    /**
+     * 构建索引
+     *
+     * @param text 章节文本
+     * @param tokenizer 本地分词器
+     * @param hardMaxTokens 原子块超过该值时按行拆开
+     */
+    public static SplitIndex build(String text, TokenCountEstimator tokenizer, int hardMaxTokens) {
+        return index(text, tokenizer::estimate, hardMaxTokens);
+    }
+
+    private static SplitIndex index(String text, ToIntFunction<String> tokenizer, int hardMaxTokens) {
+        int length = text.length();
+        boolean[] atomic = new boolean[length + 1];
+        Map<Integer, int[]> atomicRanges = new HashMap<>();
+        for (int[] range : markAtomicBlocks(text, atomic)) {
+            atomicRanges.put(range[0], range);
+        }
+
+        // 1. 单次扫描：每个位置最多一个分割点，取最高优先级
+        int[] priority = new int[length + 1];
+        Arrays.fill(priority, -1);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int p = -1;
+            if (c == '\n') {
+                p = (i + 1 < length && text.charAt(i + 1) == '\n') ? -1 : (i > 0 && text.charAt(i - 1) == '\n' ? PARAGRAPH : LINE);
+            } else if (c == '。' || c == '！' || c == '？') {
+                p = SENTENCE;
+            } else if ((c == '.' || c == '!' || c == '?') && (i + 1 == length || text.charAt(i + 1) == ' ')) {
+                p = SENTENCE;
+            } else if (c == '，' || c == '；' || c == ';' || (c == ',' && i + 1 < length && text.charAt(i + 1) == ' ')) {
+                p = CLAUSE;
+            }
+            if (p >= 0) {
+                priority[i + 1] = Math.max(priority[i + 1], p);
+            }
+        }
+        // 原子块首尾视为段落边界
+        for (int[] range : atomicRanges.values()) {
+            priority[range[0]] = PARAGRAPH;
+            priority[range[1]] = PARAGRAPH;
+        }
+
+        // 2. 收集分割点 (原子块内部的换行先保留，分词后再决定是否合并)
+        List<Integer> points = new ArrayList<>();
+        points.add(0);
+        for (int i = 1; i < length; i++) {
+            if (priority[i] >= 0 && (!atomic[i] || priority[i] >= LINE)) {
+                points.add(i);
+            }
+        }
+        points.add(length);
+
+        // 3. 逐段分词
+        long[] segmentTokens = new long[points.size() - 1];
+        for (int s = 0; s < segmentTokens.length; s++) {
+            segmentTokens[s] = tokenizer.applyAsInt(text.substring(points.get(s), points.get(s + 1)));
+        }
+
+        // 4. 不超过硬上限的原子块合并为一段
+        List<Integer> keptPoints = new ArrayList<>();
+        List<Long> keptTokens = new ArrayList<>();
+        keptPoints.add(0);
+        int s = 0;
+        while (s < segmentTokens.length) {
+            int start = points.get(s);
+            int[] range = atomicRanges.get(start);
+            if (range != null) {
+                long sum = 0;
+                int e = s;
+                while (e < segmentTokens.length && points.get(e + 1) <= range[1]) {
+                    sum += segmentTokens[e];
+                    e++;
+                }
+                if (sum <= hardMaxTokens && e > s) {
+                    keptTokens.add(sum);
+                    keptPoints.add(points.get(e));
+                    s = e;
+                    continue;
+                }
+            }
+            keptTokens.add(segmentTokens[s]);
+            keptPoints.add(points.get(s + 1));
+            s++;
+        }
+
+        int n = keptPoints.size();
+        int[] positions = new int[n];
+        long[] prefix = new long[n];
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int p = 0; p < LEVELS; p++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; i++) {
+            positions[i] = keptPoints.get(i);
+            prefix[i] = i == 0 ? 0 : prefix[i - 1] + keptTokens.get(i - 1);
+            int p = positions[i] == length ? PARAGRAPH : priority[positions[i]];
+            if (i > 0 && p >= 0) {
+                groups.get(p).add(i);
+            }
+        }
+        int[][] byPriority = new int[LEVELS][];
+        for (int p = 0; p < LEVELS; p++) {
+            byPriority[p] = groups.get(p).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new SplitIndex(positions, prefix, byPriority);
+    }
+
+    /**
+     * 分割点个数 (含首尾)
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    public int position(int index) {
+        return positions[index];
+    }
+
+    /**
+     * 分割点 from 到 to 之间的 Token 数
+     */
+    public long tokens(int from, int to) {
+        return prefixTokens[to] - prefixTokens[from];
+    }
+
+    /**
+     * 从 from 出发、Token 数不超过 maxTokens 的最远分割点；第一段就超限时返回 from + 1
+     */
+    public int furthestWithin(int from, long maxTokens) {
+        long limit = prefixTokens[from] + maxTokens;
+        int idx = Arrays.binarySearch(prefixTokens, from + 1, prefixTokens.length, limit);
+        int end;
+        if (idx >= 0) {
+            // 前缀和可能有相等值 (空白片段)，取最右侧
+            end = idx;
+            while (end + 1 < prefixTokens.length && prefixTokens[end + 1] == limit) {
+                end++;
+            }
+        } else {
+            end = -idx - 2;
+        }
+        return Math.max(end, from + 1);
+    }
+
+    /**
+     * 在 (from, end] 内选择优先级最高、且至少包含 minTokens 的分割点，都不满足时返回 end
+     */
+    public int preferredBreak(int from, int end, long minTokens) {
+        for (int p = PARAGRAPH; p >= CLAUSE; p--) {
+            int[] candidates = byPriority[p];
+            int idx = Arrays.binarySearch(candidates, end);
+            int last = idx >= 0 ? idx : -idx - 2;
+            if (last >= 0 && candidates[last] > from && tokens(from, candidates[last]) >= minTokens) {
+                return candidates[last];
+            }
+        }
+        return end;
+    }
+
+    /**
+     * 重叠起点：距 end 不超过 overlapTokens 的最早分割点 (必须在 from 之后，否则返回 end)
+     */
+    public int overlapStart(int from, int end, long overlapTokens) {
+        if (overlapTokens <= 0) {
+            return end;
+        }
+        long target = prefixTokens[end] - overlapTokens;
+        int idx = Arrays.binarySearch(prefixTokens, from + 1, end + 1, target);
+        int start = idx >= 0 ? idx : -idx - 1;
+        return start > from && start < end ? start : end;
+    }
+
+    /**
+     * 标记代码块与表格所在的字符区间
+     */
+    private static List<int[]> markAtomicBlocks(String text, boolean[] atomic) {
+        List<int[]> ranges = new ArrayList<>();
+        int length = text.length();
+        int lineStart = 0;
+        int fenceStart = -1;
+        int tableStart = -1;
+        while (lineStart < length) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            int next = lineEnd < 0 ? length : lineEnd + 1;
+            boolean fenceLine = text.startsWith("```", lineStart);
+            if (fenceStart >= 0) {
+                if (fenceLine) {
+                    ranges.add(new int[]{fenceStart, next});
+                    fenceStart = -1;
+                }
+            } else if (fenceLine) {
+                tableStart = closeTable(ranges, tableStart, lineStart);
+                fenceStart = lineStart;
+            } else if (text.startsWith("|", lineStart)) {
+                if (tableStart < 0) {
+                    tableStart = lineStart;
+                }
+            } else {
+                tableStart = closeTable(ranges, tableStart, lineStart);
+            }
+            lineStart = next;
+        }
+        if (fenceStart >= 0) {
+            ranges.add(new int[]{fenceStart, length});
+        }
+        closeTable(ranges, tableStart, length);
+
+        for (int[] range : ranges) {
+            for (int i = range[0] + 1; i < range[1]; i++) {
+                atomic[i] = true;
+            }
+        }
+        return ranges;
+    }
+
+    private static int closeTable(List<int[]> ranges, int tableStart, int end) {
+        if (tableStart >= 0) {
+            ranges.add(new int[]{tableStart, end});
+        }
+        return -1;
+    }
+}
@@ -2,28 +2,58 @@ package com.smallfish.zhiwei.service.ingestion;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.smallfish.zhiwei.client.EmbeddingProfile;
+import com.smallfish.zhiwei.client.MilvusClientFactory;
+import com.smallfish.zhiwei.client.MilvusClientPool;
+import com.smallfish.zhiwei.client.VectorPrecision;
 import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.common.context.TrafficContext;
+import com.smallfish.zhiwei.common.enums.TrafficPriority;
+import com.smallfish.zhiwei.config.DedupProperties;
+import com.smallfish.zhiwei.config.IngestionLedgerProperties;
 import com.smallfish.zhiwei.dto.model.DocMetadataDTO;
 import com.smallfish.zhiwei.dto.model.DocumentChunkDTO;
 import com.smallfish.zhiwei.model.BizKnowledge;
 import com.smallfish.zhiwei.service.base.EmbeddingService;
 import com.smallfish.zhiwei.utils.MilvusEntityConverter;
+import com.smallfish.zhiwei.utils.MilvusFilterRewriter;
+import com.smallfish.zhiwei.utils.SimHash;
+import com.smallfish.zhiwei.utils.ThrottlingErrors;
 import io.milvus.client.MilvusServiceClient;
 import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
 import io.milvus.param.R;
 import io.milvus.param.collection.LoadCollectionParam;
 import io.milvus.param.dml.DeleteParam;
-import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.UpsertParam;
+import io.milvus.response.QueryResultsWrapper;
+import com.google.common.util.concurrent.RateLimiter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 /**
  * 子系统：向量入库服务
@@ -36,27 +66,60 @@ public class VectorIngestionService {
 
     private final DocumentChunkService chunkService;
     private final EmbeddingService embeddingService;
+    // 只用于加载集合等管理操作，数据读写走连接池
     private final MilvusServiceClient milvusClient;
+    private final MilvusClientFactory milvusClientFactory;
+    private final MilvusClientPool milvusClientPool;
+    private final NearDuplicateIndex duplicateIndex;
+    private final DedupProperties dedupProperties;
+    private final IngestionLedger ledger;
+    private final IngestionLedgerProperties ledgerProperties;
 
     // 批处理大小 通义千问 只支持 10 段文本
     private static final int BATCHSIZE = 10;
 
+    // 同时在途的异步写入批次上限：向量化下一批时上一批在写入，但不无限堆积
+    private static final int MAX_INFLIGHT_INSERTS = 4;
+
+    // 重建索引期间记录的增量变更 (source -> 变更)，切换别名前回放到新集合
+    private final Map<String, CapturedChange> capturedChanges = new ConcurrentHashMap<>();
+    private volatile boolean capturing = false;
+    // 正式集合的写入持有读锁；重建索引最后一轮回放 + 切换别名持有写锁，期间的写入等待切换完成后写入新集合
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock(true);
+
 
     /**
      * 根据文件名删除向量知识
      * @param fileName 文件名
      */
     public void deleteVectorsByFileName(String fileName) {
+        switchLock.readLock().lock();
+        try {
+            doDeleteVectors(fileName);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    private void doDeleteVectors(String fileName) {
         log.info("正在从 Milvus 删除文档向量: {}", fileName);
+        // 被其他文件引用的规范分片先把引用提升为新的规范分片
+        promoteReferences(fileName);
         // 构造删除表达式 (Expression)
-        String expr = BizKnowledge.FIELD_SOURCE + " == '" + fileName + "'";
+        String expr = BizKnowledge.FIELD_SOURCE + " == " + MilvusFilterRewriter.quote(fileName);
 
         DeleteParam deleteParam = DeleteParam.newBuilder()
                 .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
                 .withExpr(expr)
                 .build();
 
-        milvusClient.delete(deleteParam);
+        R<MutationResult> response = milvusClientPool.execute(client -> client.delete(deleteParam));
+        // 删除被拒绝时抛出，调用方保留物理文件和台账，避免文件没了向量还在 (幽灵知识)
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("删除文档向量失败: " + fileName + ", " + response.getMessage());
+        }
+        ledger.remove(fileName);
+        captureChange(fileName, fileName, null, true);
         log.info("Milvus 向量清理完成");
     }
     /**
@@ -65,30 +128,167 @@ public class VectorIngestionService {
      * @param content 文件内容
      */
     public void ingest(String filename, String content) {
+        ingest(filename, content, BizKnowledge.DEFAULT_TENANT);
+    }
+
+    /**
+     *  处理单个文档的核心流程 (指定租户)
+     * @param filename 文件名称
+     * @param content 文件内容
+     * @param tenantId 租户 ID，写入 Partition Key 字段
+     */
+    public void ingest(String filename, String content, String tenantId) {
+        ingest(filename, content, tenantId, null);
+    }
+
+    /**
+     *  处理单个文档的核心流程 (批量导入使用)
+     * @param limiter 向量化限流 (按文本条数)，为空不限流
+     * @return 分片数
+     */
+    public int ingest(String filename, String content, String tenantId, RateLimiter limiter) {
+        switchLock.readLock().lock();
+        try {
+            return doIngest(filename, content, tenantId, limiter);
+        } finally {
+            switchLock.readLock().unlock();
+        }
+    }
+
+    private int doIngest(String filename, String content, String tenantId, RateLimiter limiter) {
+        String tenant = (tenantId == null || tenantId.isBlank()) ? BizKnowledge.DEFAULT_TENANT : tenantId;
         // 统一处理格式 上传的文件 filename 只是文件名，本地扫描是全路径
         String sourcePath = filename.replace(File.separator, "/");
-        // 1. 先删除该文件的旧数据
-        deleteExistingData(sourcePath);
         log.info("开始处理文档: {}, 长度: {}", filename, content.length());
 
-        // 2. 切片
+        // 1. 切片 (切片结果只取决于内容和配置，续传时与上次一致)
         final List<DocumentChunkDTO> chunks = chunkService.chunkDocument(content, filename);
-        if (CollectionUtil.isEmpty(chunks)) {
-            log.warn("文档切片为空，跳过入库");
-            return;
+        int total = CollectionUtil.isEmpty(chunks) ? 0 : chunks.size();
+
+        // 2. 台账：同一内容上次未完成时从已提交的批次继续。旧数据保留到新版本全部写入后再清理，
+        //    入库失败 (重试中 / 死信) 期间检索仍能查到旧版本，不会出现文档缺失或只剩一半
+        int resumeFrom = ledger.begin(sourcePath, DigestUtil.sha256Hex(content), total, tenant);
+        if (resumeFrom > 0) {
+            log.info("文档 {} 从第 {} 个分片续传 (共 {})", sourcePath, resumeFrom, total);
+        } else {
+            // 其他文件挂在旧规范分片上的引用先提升，旧分片随后会被覆盖或清理
+            promoteReferences(sourcePath);
         }
 
-        // 3. 批量入库
-        processBatch(sourcePath, filename, chunks);
+        // 3. 批量入库 (分片 ID 由文件与序号决定，upsert 直接覆盖旧版本的同号分片)
+        if (total > 0) {
+            processBatch(MilvusConstants.MILVUS_COLLECTION_NAME, sourcePath, filename, tenant, chunks, resumeFrom,
+                    Map.of(), limiter, milvusClientFactory.getActiveProfile());
+        } else {
+            log.warn("文档切片为空，清理旧数据后跳过入库");
+        }
 
+        // 4. 全部写入后清理旧版本多出来的分片 (失败时台账不完成，重试会再次清理)
+        deleteStaleChunks(sourcePath, total > 0 ? chunks : List.of());
+        ledger.complete(sourcePath);
+        captureChange(sourcePath, filename, tenant, false);
 
         log.debug("文档入库完成: {}", sourcePath);
+        return total;
+    }
+
+    /**
+     *  写入指定集合 (重建索引使用)
+     * @param collection 目标集合
+     * @param reusable 可复用的旧向量 (分片 ID -> 旧实体)，内容与标题一致时跳过 Embedding
+     * @param limiter 向量化限流 (按文本条数)，为空不限流
+     * @param profile 目标集合的向量来源
+     * @return 复用的向量数
+     */
+    public int ingestInto(String collection, String filename, String content, String tenantId,
+                          Map<String, BizKnowledge> reusable, RateLimiter limiter, EmbeddingProfile profile) {
+        String tenant = (tenantId == null || tenantId.isBlank()) ? BizKnowledge.DEFAULT_TENANT : tenantId;
+        String sourcePath = filename.replace(File.separator, "/");
+        deleteExistingData(collection, sourcePath);
+
+        final List<DocumentChunkDTO> chunks = chunkService.chunkDocument(content, filename);
+        if (CollectionUtil.isEmpty(chunks)) {
+            return 0;
+        }
+        return processBatch(collection, sourcePath, filename, tenant, chunks, 0, reusable, limiter, profile);
+    }
+
+    /**
+     * 阻塞正式集合的写入执行 (重建索引最后一轮回放 + 切换别名)，保证切换前没有漏记的变更
+     */
+    public void runExclusive(Runnable action) {
+        switchLock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            switchLock.writeLock().unlock();
+        }
     }
 
-    private void processBatch(String sourcePath, String originalFilename, List<DocumentChunkDTO> chunks) {
+    /**
+     * 开始记录增量变更 (重建索引开始时调用)
+     */
+    public void startCapture() {
+        capturedChanges.clear();
+        capturing = true;
+    }
+
+    /**
+     * 取出并清空已记录的变更，记录继续进行
+     */
+    public Map<String, CapturedChange> drainCaptured() {
+        Map<String, CapturedChange> drained = new HashMap<>();
+        capturedChanges.keySet().forEach(key -> {
+            CapturedChange change = capturedChanges.remove(key);
+            if (change != null) {
+                drained.put(key, change);
+            }
+        });
+        return drained;
+    }
+
+    /**
+     * 停止记录增量变更
+     */
+    public void stopCapture() {
+        capturing = false;
+        capturedChanges.clear();
+    }
+
+    private void captureChange(String sourcePath, String filename, String tenantId, boolean deleted) {
+        if (capturing) {
+            capturedChanges.put(sourcePath, new CapturedChange(filename, tenantId, deleted));
+        }
+    }
+
+    /**
+     * 重建索引期间发生的文件变更
+     *
+     * @param filename 文件名
+     * @param tenantId 租户
+     * @param deleted 是否为删除
+     */
+    public record CapturedChange(String filename, String tenantId, boolean deleted) {
+    }
+
+    /**
+     * 批量向量化并写入
+     * @param startIndex 起始分片 (续传时为已提交的分片数)
+     */
+    private int processBatch(String collection, String sourcePath, String originalFilename, String tenantId,
+                             List<DocumentChunkDTO> chunks, int startIndex, Map<String, BizKnowledge> reusable,
+                             RateLimiter limiter, EmbeddingProfile profile) {
+        String category = MilvusFilterRewriter.categoryOf(originalFilename);
+        int reused = 0;
+        boolean live = MilvusConstants.MILVUS_COLLECTION_NAME.equals(collection);
+        // 近重复去重只作用于正式集合 (重建索引的新集合全量写入，切换后索引清空)
+        boolean dedup = dedupProperties.isEnabled() && live;
+        int duplicates = 0;
 
         int totalChunks = chunks.size();
-        for (int i = 0; i < totalChunks; i+= BATCHSIZE) {
+        // 在途批次按顺序确认，台账的已提交位置只会连续推进
+        Deque<PendingBatch> inflight = new ArrayDeque<>();
+        for (int i = startIndex; i < totalChunks; i+= BATCHSIZE) {
             int end = Math.min(i + BATCHSIZE, totalChunks);
             List<DocumentChunkDTO> subList = chunks.subList(i, end);
             try {
@@ -102,17 +302,69 @@ public class VectorIngestionService {
                             return chunk.getContent();
                         })
                         .toList();
-                // 2. 向量化
-                final List<List<Float>> vectors = embeddingService.generateEmbedding(textsToEmbed);
+                // ID 生成逻辑
+                List<String> ids = subList.stream()
+                        .map(chunk -> UUID.nameUUIDFromBytes((sourcePath + "_" + chunk.getChunkIndex())
+                                .getBytes(StandardCharsets.UTF_8)).toString())
+                        .toList();
+
+                // 2. 近重复检测：与已有规范分片近重复的只记引用，不向量化也不写入
+                long[] simhashes = new long[subList.size()];
+                boolean[] skip = new boolean[subList.size()];
+                int skipped = 0;
+                if (dedup) {
+                    for (int j = 0; j < subList.size(); j++) {
+                        simhashes[j] = SimHash.of(textsToEmbed.get(j));
+                        String canonicalId = duplicateIndex.findCanonical(tenantId, simhashes[j]);
+                        if (canonicalId != null && !canonicalId.equals(ids.get(j))) {
+                            DocumentChunkDTO chunk = subList.get(j);
+                            duplicateIndex.addReference(canonicalId, new NearDuplicateIndex.Reference(ids.get(j), sourcePath,
+                                    tenantId, category, chunk.getContent(),
+                                    BeanUtil.beanToMap(buildMetadataDTO(originalFilename, chunk, totalChunks))));
+                            skip[j] = true;
+                            skipped++;
+                        }
+                    }
+                }
 
-                // 3. 构建当前批次的数据
+                // 3. 向量化：内容未变的分片复用旧向量，其余批量 Embedding
+                List<List<Float>> vectors = new ArrayList<>(subList.size());
+                List<Integer> missing = new ArrayList<>();
+                for (int j = 0; j < subList.size(); j++) {
+                    if (skip[j]) {
+                        vectors.add(null);
+                        continue;
+                    }
+                    List<Float> old = reusableVector(reusable.get(ids.get(j)), subList.get(j));
+                    vectors.add(old);
+                    if (old == null) {
+                        missing.add(j);
+                    }
+                }
+                reused += subList.size() - missing.size() - skipped;
+                if (!missing.isEmpty()) {
+                    if (limiter != null) {
+                        limiter.acquire(missing.size());
+                    }
+                    List<String> texts = missing.stream().map(textsToEmbed::get).toList();
+                    // 入库的向量化按批量流量限流，在线对话 / 诊断优先
+                    List<List<Float>> embedded = TrafficContext.withPriority(TrafficPriority.BULK,
+                            () -> withBackoff(() -> embeddingService.generateEmbedding(texts, profile)));
+                    for (int k = 0; k < missing.size(); k++) {
+                        vectors.set(missing.get(k), embedded.get(k));
+                    }
+                }
+
+                // 4. 构建当前批次的数据
                 List<BizKnowledge> entities = new ArrayList<>();
+                List<Long> entityHashes = new ArrayList<>();
                 for (int j = 0; j < subList.size(); j++) {
+                    if (skip[j]) {
+                        continue;
+                    }
 
                     DocumentChunkDTO chunk = subList.get(j);
-                    // ID 生成逻辑
-                    String uniqueKey = sourcePath + "_" + chunk.getChunkIndex();
-                    String id = UUID.nameUUIDFromBytes(uniqueKey.getBytes(StandardCharsets.UTF_8)).toString();
+                    String id = ids.get(j);
 
                     // 构建 元数据
                     DocMetadataDTO metaDto = buildMetadataDTO(originalFilename, chunk, totalChunks);
@@ -124,18 +376,140 @@ public class VectorIngestionService {
                             .vector(vectors.get(j))
                             .metadata(metaMap)
                             .source(sourcePath)
+                            .tenantId(tenantId)
+                            .category(category)
                             .build();
                     entities.add(entity);
+                    entityHashes.add(simhashes[j]);
+                }
+                duplicates += skipped;
+                if (entities.isEmpty()) {
+                    inflight.addLast(new PendingBatch(end, CompletableFuture.completedFuture(0L)));
+                    continue;
+                }
+                // 5. 异步插入这一小批，在途过多时等待最早的一批完成；写入成功后登记为规范分片
+                CompletableFuture<Long> insert = insertWithBackoff(collection, entities, profile, 0);
+                if (dedup) {
+                    insert = insert.thenApply(count -> {
+                        for (int k = 0; k < entities.size(); k++) {
+                            duplicateIndex.addCanonical(entities.get(k).getId(), entityHashes.get(k), tenantId, sourcePath);
+                        }
+                        return count;
+                    });
+                }
+                inflight.addLast(new PendingBatch(end, insert));
+                if (inflight.size() >= MAX_INFLIGHT_INSERTS) {
+                    awaitOldest(inflight, sourcePath, live);
                 }
-                // 4. 插入这一小批
-                insertBatch(entities);
             } catch (Throwable e) {
                 log.error("批次处理失败 [{} - {}]: {}", i, end, e.getMessage());
-                // 这里可以选择 throw 继续抛出，或者记录到错误表
+                // 已经写入成功的批次仍然推进台账，重试时从这里继续
+                drainCommitted(inflight, sourcePath, live);
                 throw new RuntimeException("向量处理失败", e);
             }
         }
 
+        // 6. 按顺序等待剩余写入完成
+        try {
+            while (!inflight.isEmpty()) {
+                awaitOldest(inflight, sourcePath, live);
+            }
+        } catch (Throwable e) {
+            log.error("批次写入失败: {}", e.getMessage());
+            drainCommitted(inflight, sourcePath, live);
+            throw new RuntimeException("向量处理失败", e);
+        }
+        if (duplicates > 0) {
+            log.info("文档 {} 有 {} 个近重复分片，已记为引用，未向量化和写入", sourcePath, duplicates);
+        }
+        return reused;
+    }
+
+    /**
+     * 等待最早的在途批次，成功后推进台账
+     */
+    private void awaitOldest(Deque<PendingBatch> inflight, String sourcePath, boolean track) {
+        PendingBatch batch = inflight.removeFirst();
+        batch.insert().join();
+        if (track) {
+            ledger.commit(sourcePath, batch.end());
+        }
+    }
+
+    /**
+     * 出错后按顺序确认还在途的批次，遇到第一个失败的批次为止
+     */
+    private void drainCommitted(Deque<PendingBatch> inflight, String sourcePath, boolean track) {
+        try {
+            while (!inflight.isEmpty()) {
+                awaitOldest(inflight, sourcePath, track);
+            }
+        } catch (Throwable ignored) {
+            // 失败位置之后的批次在续传时清理后重写
+        }
+    }
+
+    /**
+     * 在途的写入批次
+     *
+     * @param end 该批次结束位置 (不含)
+     * @param insert 写入结果
+     */
+    private record PendingBatch(int end, CompletableFuture<Long> insert) {
+    }
+
+    /**
+     * 遇到限流时指数退避后重试 (同步调用，用于向量化)
+     */
+    private <T> T withBackoff(Supplier<T> call) {
+        long delay = ledgerProperties.getBatchBackoffMs();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return call.get();
+            } catch (RuntimeException e) {
+                if (attempt >= ledgerProperties.getBatchRetries() || !ThrottlingErrors.isThrottled(e)) {
+                    throw e;
+                }
+                log.warn("向量化被限流，{} ms 后重试 ({}/{})", delay, attempt + 1, ledgerProperties.getBatchRetries());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    /**
+     * 异步写入，遇到 Milvus 限流时指数退避后重试 (延迟不占用线程)
+     */
+    private CompletableFuture<Long> insertWithBackoff(String collection, List<BizKnowledge> entities,
+                                                      EmbeddingProfile profile, int attempt) {
+        return insertBatchAsync(collection, entities, profile).exceptionallyCompose(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (attempt >= ledgerProperties.getBatchRetries() || !ThrottlingErrors.isThrottled(cause)) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            long delay = ledgerProperties.getBatchBackoffMs() << attempt;
+            log.warn("Milvus 写入被限流，{} ms 后重试 ({}/{})", delay, attempt + 1, ledgerProperties.getBatchRetries());
+            Executor delayed = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+            return CompletableFuture.supplyAsync(() -> null, delayed)
+                    .thenCompose(ignored -> insertWithBackoff(collection, entities, profile, attempt + 1));
+        });
+    }
+
+    /**
+     * 旧实体的内容和标题与新分片一致时返回旧向量，否则返回 null
+     */
+    private List<Float> reusableVector(BizKnowledge old, DocumentChunkDTO chunk) {
+        if (old == null || old.getVector() == null || !Objects.equals(old.getContent(), chunk.getContent())) {
+            return null;
+        }
+        Object oldTitle = old.getMetadata() == null ? null : old.getMetadata().get("title");
+        String newTitle = (chunk.getTitle() == null || chunk.getTitle().isEmpty()) ? null : chunk.getTitle();
+        return Objects.equals(oldTitle, newTitle) ? old.getVector() : null;
     }
 
     /**
@@ -163,40 +537,157 @@ public class VectorIngestionService {
     }
 
     /**
-     * 批量插入 milvus
+     * 异步批量写入 milvus (走连接池，upsert：重新入库时覆盖同 ID 的旧分片)
      * @param entities 向量数据实体类列表
+     * @return 插入条数
      */
-    private void insertBatch(List<BizKnowledge> entities) {
-        final InsertParam insertParam = InsertParam.newBuilder()
-                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
-                .withFields(MilvusEntityConverter.toInsertFields(entities))
-                .build();
-        final R<MutationResult> response = milvusClient.insert(insertParam);
+    private CompletableFuture<Long> insertBatchAsync(String collection, List<BizKnowledge> entities,
+                                                     EmbeddingProfile profile) {
+        final UpsertParam.Builder builder = UpsertParam.newBuilder();
+        builder.withCollectionName(collection)
+                // 新建的集合总是带分区字段，只有正式集合可能是旧结构
+                .withFields(MilvusEntityConverter.toInsertFields(entities,
+                        !MilvusConstants.MILVUS_COLLECTION_NAME.equals(collection) || milvusClientFactory.isPartitionKeyEnabled(),
+                        profile.precision()));
+        return milvusClientPool.upsertAsync(builder.build())
+                .thenApply(result -> {
+                    log.info("成功写入 {} 条向量数据", result.getUpsertCnt());
+                    return result.getUpsertCnt();
+                });
+    }
 
-        if(response.getStatus() != R.Status.Success.getCode()) {
-            throw new RuntimeException("Milvus 批量插入失败: " + response.getMessage());
+    /**
+     * 文件删除 / 重新入库前，把它的规范分片上挂着的其他文件的引用提升为新的规范分片
+     * (沿用原规范分片的向量，不需要重新向量化)
+     * <p>
+     * 先写入提升后的分片，成功后才改动索引；任何一步失败都抛出异常，调用方中止删除 / 重新入库，
+     * 避免原规范分片被删而引用还没落到 Milvus。
+     * </p>
+     */
+    private void promoteReferences(String sourcePath) {
+        if (!dedupProperties.isEnabled()) {
+            return;
         }
+        Map<String, NearDuplicateIndex.Orphans> orphans = duplicateIndex.findOrphans(sourcePath);
+        if (orphans.isEmpty()) {
+            duplicateIndex.detachSource(sourcePath);
+            return;
+        }
+        try {
+            // 1. 读取原规范分片的向量，构造提升后的分片
+            Map<String, List<Float>> vectors = loadVectors(orphans.keySet());
+            List<BizKnowledge> promoted = new ArrayList<>();
+            List<NearDuplicateIndex.Orphans> groups = new ArrayList<>();
+            for (Map.Entry<String, NearDuplicateIndex.Orphans> entry : orphans.entrySet()) {
+                List<Float> vector = vectors.get(entry.getKey());
+                if (vector == null) {
+                    log.warn("规范分片 {} 的向量不存在，引用无法提升", entry.getKey());
+                    continue;
+                }
+                NearDuplicateIndex.Reference head = entry.getValue().references().get(0);
+                promoted.add(BizKnowledge.builder()
+                        .id(head.id())
+                        .content(head.content())
+                        .vector(vector)
+                        .metadata(head.metadata())
+                        .source(head.source())
+                        .tenantId(head.tenantId())
+                        .category(head.category())
+                        .build());
+                groups.add(entry.getValue());
+            }
 
-        log.info("成功插入 {} 条向量数据", response.getData().getInsertCnt());
+            // 2. 写入 Milvus
+            if (!promoted.isEmpty()) {
+                insertBatchAsync(MilvusConstants.MILVUS_COLLECTION_NAME, promoted, milvusClientFactory.getActiveProfile()).join();
+            }
 
+            // 3. 写入成功后再解除旧文件、登记新的规范分片
+            duplicateIndex.detachSource(sourcePath);
+            for (NearDuplicateIndex.Orphans group : groups) {
+                NearDuplicateIndex.Reference head = group.references().get(0);
+                duplicateIndex.addCanonical(head.id(), group.simhash(), group.tenantId(), head.source());
+                group.references().stream().skip(1).forEach(ref -> duplicateIndex.addReference(head.id(), ref));
+            }
+            log.info("文件 {} 的 {} 个规范分片由引用接替", sourcePath, promoted.size());
+        } catch (Exception e) {
+            throw new IllegalStateException("近重复引用提升失败，中止删除: " + sourcePath, e);
+        }
+    }
+
+    /**
+     * 按 ID 读取正式集合中的向量
+     */
+    private Map<String, List<Float>> loadVectors(Collection<String> ids) {
+        String expr = MilvusFilterRewriter.inList(BizKnowledge.FIELD_ID, ids);
+        R<QueryResults> response = milvusClientPool.execute(client -> client.query(QueryParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withExpr(expr)
+                .withOutFields(List.of(BizKnowledge.FIELD_ID, BizKnowledge.FIELD_VECTOR))
+                .build()));
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("读取规范分片向量失败: " + response.getMessage());
+        }
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(response.getData());
+        List<?> idList = wrapper.getFieldWrapper(BizKnowledge.FIELD_ID).getFieldData();
+        List<?> vectorList = wrapper.getFieldWrapper(BizKnowledge.FIELD_VECTOR).getFieldData();
+        VectorPrecision precision = milvusClientFactory.getActiveProfile().precision();
+        Map<String, List<Float>> result = new HashMap<>();
+        for (int i = 0; i < idList.size(); i++) {
+            result.put(String.valueOf(idList.get(i)), precision.decode(vectorList.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * 删除该文件在正式集合中不属于新版本的分片：旧版本多出的序号，以及这次被记为近重复引用的序号
+     */
+    private void deleteStaleChunks(String sourcePath, List<DocumentChunkDTO> chunks) {
+        Set<String> keep = new HashSet<>();
+        for (DocumentChunkDTO chunk : chunks) {
+            keep.add(UUID.nameUUIDFromBytes((sourcePath + "_" + chunk.getChunkIndex())
+                    .getBytes(StandardCharsets.UTF_8)).toString());
+        }
+        if (dedupProperties.isEnabled()) {
+            keep.removeAll(duplicateIndex.referenceIds(sourcePath));
+        }
+        String expr = BizKnowledge.FIELD_SOURCE + " == " + MilvusFilterRewriter.quote(sourcePath);
+        if (!keep.isEmpty()) {
+            expr += " && " + MilvusFilterRewriter.notInList(BizKnowledge.FIELD_ID, keep);
+        }
+        DeleteParam deleteParam = DeleteParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withExpr(expr)
+                .build();
+        R<MutationResult> response = milvusClientPool.execute(client -> client.delete(deleteParam));
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("清理旧版本分片失败: " + sourcePath + ", " + response.getMessage());
+        }
+        long deleted = response.getData() == null ? 0 : response.getData().getDeleteCnt();
+        if (deleted > 0) {
+            log.info("已清理文件 {} 旧版本多出的分片: {} 条", sourcePath, deleted);
+        }
     }
 
     /**
      * 删除指定文件的所有旧数据
      */
-    private void deleteExistingData(String sourcePath) {
+    private void deleteExistingData(String collection, String sourcePath) {
+        if (MilvusConstants.MILVUS_COLLECTION_NAME.equals(collection)) {
+            promoteReferences(sourcePath);
+        }
         try {
             milvusClient.loadCollection(LoadCollectionParam.newBuilder()
-                    .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                    .withCollectionName(collection)
                     .build());
             // (标量索引过滤，快)
-            String expr = String.format("%s == \"%s\"", BizKnowledge.FIELD_SOURCE, sourcePath);
+            String expr = BizKnowledge.FIELD_SOURCE + " == " + MilvusFilterRewriter.quote(sourcePath);
             DeleteParam deleteParam = DeleteParam.newBuilder()
-                    .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                    .withCollectionName(collection)
                     .withExpr(expr)
                     .build();
 
-            final MutationResult response = milvusClient.delete(deleteParam).getData();
+            final MutationResult response = milvusClientPool.execute(client -> client.delete(deleteParam)).getData();
             log.info("已清理文件旧数据: {}, 影响行数: {}", sourcePath, response.getDeleteCnt());
         } catch (Throwable e) {
             log.warn("清理旧数据失败 (可能是首次上传): {}", e.getMessage());
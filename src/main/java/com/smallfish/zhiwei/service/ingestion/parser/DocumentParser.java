@@ -0,0 +1,28 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 文档解析 SPI
+ * 每种格式一个实现 (Spring Bean)，由 {@link DocumentParserRegistry} 按扩展名分发。
+ * 解析结果是按原文顺序排列的结构化片段 (标题、正文、表格、代码块)，
+ * 统一渲染成 Markdown 后交给 DocumentChunkService 按标题分片。
+ */
+public interface DocumentParser {
+
+    /**
+     * 支持的扩展名 (小写，不带点)
+     */
+    Set<String> extensions();
+
+    /**
+     * 解析文件
+     *
+     * @param file 文件路径
+     * @return 按原文顺序排列的片段
+     */
+    List<ParsedSection> parse(Path file) throws IOException;
+}
@@ -0,0 +1,72 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 文档解析器注册表
+ * 按扩展名选择解析器，把结构化片段渲染成 Markdown：
+ * 标题行让分片服务得到 DocumentChunkDTO.title，分片偏移量对应渲染后的文本
+ */
+@Slf4j
+@Component
+public class DocumentParserRegistry {
+
+    private final Map<String, DocumentParser> parsers = new HashMap<>();
+
+    public DocumentParserRegistry(List<DocumentParser> parserList) {
+        for (DocumentParser parser : parserList) {
+            for (String extension : parser.extensions()) {
+                DocumentParser previous = parsers.put(extension.toLowerCase(Locale.ROOT), parser);
+                if (previous != null) {
+                    log.warn("扩展名 {} 的解析器 {} 被 {} 覆盖", extension,
+                            previous.getClass().getSimpleName(), parser.getClass().getSimpleName());
+                }
+            }
+        }
+        log.info("文档解析器已注册: {}", parsers.keySet());
+    }
+
+    /**
+     * 是否有对应扩展名的解析器
+     */
+    public boolean supports(String extension) {
+        return extension != null && parsers.containsKey(extension.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 解析为结构化片段
+     */
+    public List<ParsedSection> parse(Path file) throws IOException {
+        return parserFor(file).parse(file);
+    }
+
+    /**
+     * 解析并渲染为 Markdown 文本，交给 DocumentChunkService 分片
+     */
+    public String readAsMarkdown(Path file) throws IOException {
+        return parse(file).stream()
+                .map(ParsedSection::toMarkdown)
+                .filter(text -> !text.isEmpty())
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private DocumentParser parserFor(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        DocumentParser parser = parsers.get(extension);
+        if (parser == null) {
+            throw new IllegalArgumentException("不支持的文件格式: " + name);
+        }
+        return parser;
+    }
+}
@@ -0,0 +1,154 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFStyle;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DOCX 解析 (Apache POI)
+ * 按正文顺序输出：标题样式 (Heading 1~6 / 标题 1~6) 转为标题，表格转为 Markdown 表格，
+ * 等宽字体或代码样式的连续段落合并为代码块
+ */
+@Component
+public class DocxDocumentParser implements DocumentParser {
+
+    private static final Pattern HEADING_STYLE = Pattern.compile("(?:heading|标题)\\s*(\\d)");
+    private static final Set<String> MONOSPACE_FONTS = Set.of("consolas", "courier new", "courier", "menlo", "monaco",
+            "source code pro", "jetbrains mono");
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("docx");
+    }
+
+    @Override
+    public List<ParsedSection> parse(Path file) throws IOException {
+        List<ParsedSection> sections = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file); XWPFDocument document = new XWPFDocument(in)) {
+            StringBuilder text = new StringBuilder();
+            StringBuilder code = new StringBuilder();
+            for (IBodyElement element : document.getBodyElements()) {
+                if (element instanceof XWPFParagraph paragraph) {
+                    String content = paragraph.getText();
+                    if (isCode(paragraph)) {
+                        flush(sections, text, false);
+                        code.append(content).append('\n');
+                        continue;
+                    }
+                    flush(sections, code, true);
+                    int level = headingLevel(document, paragraph);
+                    if (level > 0 && !content.isBlank()) {
+                        flush(sections, text, false);
+                        sections.add(ParsedSection.heading(level, content, 0));
+                    } else if (!content.isBlank()) {
+                        text.append(content).append('\n');
+                    }
+                } else if (element instanceof XWPFTable table) {
+                    flush(sections, text, false);
+                    flush(sections, code, true);
+                    String markdown = toMarkdown(table);
+                    if (!markdown.isEmpty()) {
+                        sections.add(ParsedSection.table(markdown, 0));
+                    }
+                }
+            }
+            flush(sections, text, false);
+            flush(sections, code, true);
+        }
+        return sections;
+    }
+
+    private void flush(List<ParsedSection> sections, StringBuilder buffer, boolean code) {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        String content = buffer.toString();
+        buffer.setLength(0);
+        if (!content.isBlank()) {
+            sections.add(code ? ParsedSection.code(content, 0) : ParsedSection.text(content, 0));
+        }
+    }
+
+    /**
+     * 标题级别：样式 ID / 样式名 / 大纲级别，非标题返回 0
+     */
+    private int headingLevel(XWPFDocument document, XWPFParagraph paragraph) {
+        String styleId = paragraph.getStyleID();
+        if (styleId == null) {
+            return 0;
+        }
+        Matcher matcher = HEADING_STYLE.matcher(styleId.toLowerCase(Locale.ROOT));
+        if (matcher.find()) {
+            return Integer.parseInt(matcher.group(1));
+        }
+        XWPFStyle style = document.getStyles() == null ? null : document.getStyles().getStyle(styleId);
+        if (style != null && style.getName() != null) {
+            matcher = HEADING_STYLE.matcher(style.getName().toLowerCase(Locale.ROOT));
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 代码段落：样式名带 code，或所有文字都使用等宽字体
+     */
+    private boolean isCode(XWPFParagraph paragraph) {
+        String styleId = paragraph.getStyleID();
+        if (styleId != null && styleId.toLowerCase(Locale.ROOT).contains("code")) {
+            return true;
+        }
+        List<XWPFRun> runs = paragraph.getRuns();
+        if (runs.isEmpty() || paragraph.getText().isBlank()) {
+            return false;
+        }
+        for (XWPFRun run : runs) {
+            String font = run.getFontFamily();
+            if (font == null || !MONOSPACE_FONTS.contains(font.toLowerCase(Locale.ROOT))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String toMarkdown(XWPFTable table) {
+        List<XWPFTableRow> rows = table.getRows();
+        if (rows.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        int columns = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            List<XWPFTableCell> cells = rows.get(i).getTableCells();
+            sb.append('|');
+            for (XWPFTableCell cell : cells) {
+                sb.append(' ').append(ParsedSection.cell(cell.getText())).append(" |");
+            }
+            sb.append('\n');
+            if (i == 0) {
+                // 第一行作为表头
+                columns = cells.size();
+                sb.append('|').append(" --- |".repeat(Math.max(1, columns))).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
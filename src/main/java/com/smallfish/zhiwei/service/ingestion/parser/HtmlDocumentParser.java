@@ -0,0 +1,110 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * HTML 解析 (jsoup)，主要面向 Confluence 导出页面
+ * 只取正文区域，h1~h6 转为标题，pre / 代码宏转为代码块，table 转为 Markdown 表格，其余块级元素输出文本
+ */
+@Component
+public class HtmlDocumentParser implements DocumentParser {
+
+    // Confluence 导出页面的正文容器，找不到时退回 body
+    private static final String CONTENT_SELECTOR = "#main-content, .wiki-content, article, main";
+    private static final String BLOCK_SELECTOR = "h1, h2, h3, h4, h5, h6, p, li, pre, table, blockquote, dt, dd";
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("html", "htm");
+    }
+
+    @Override
+    public List<ParsedSection> parse(Path file) throws IOException {
+        // charset 为 null 时 jsoup 按 meta 标签 / BOM 识别编码
+        Document document = Jsoup.parse(file.toFile(), null);
+        document.select("script, style, nav, header, footer, .page-metadata, #breadcrumb-section").remove();
+        Element root = document.selectFirst(CONTENT_SELECTOR);
+        if (root == null) {
+            root = document.body();
+        }
+
+        List<ParsedSection> sections = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (Element element : root.select(BLOCK_SELECTOR)) {
+            // 只处理最外层的块：表格、代码块、列表项内部的嵌套块由外层整体输出
+            if (hasBlockAncestor(element, root)) {
+                continue;
+            }
+            String tag = element.tagName();
+            if (tag.length() == 2 && tag.charAt(0) == 'h' && Character.isDigit(tag.charAt(1))) {
+                flush(sections, text);
+                String title = element.text();
+                if (!title.isBlank()) {
+                    sections.add(ParsedSection.heading(tag.charAt(1) - '0', title, 0));
+                }
+            } else if (tag.equals("pre")) {
+                flush(sections, text);
+                sections.add(ParsedSection.code(element.wholeText(), 0));
+            } else if (tag.equals("table")) {
+                flush(sections, text);
+                String markdown = toMarkdown(element);
+                if (!markdown.isEmpty()) {
+                    sections.add(ParsedSection.table(markdown, 0));
+                }
+            } else {
+                String content = element.text();
+                if (!content.isBlank()) {
+                    text.append(tag.equals("li") ? "- " : "").append(content).append('\n');
+                }
+            }
+        }
+        flush(sections, text);
+        return sections;
+    }
+
+    private boolean hasBlockAncestor(Element element, Element root) {
+        for (Element parent = element.parent(); parent != null && parent != root; parent = parent.parent()) {
+            if (parent.is("pre, table, li, blockquote")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void flush(List<ParsedSection> sections, StringBuilder buffer) {
+        if (!buffer.isEmpty()) {
+            sections.add(ParsedSection.text(buffer.toString(), 0));
+            buffer.setLength(0);
+        }
+    }
+
+    private String toMarkdown(Element table) {
+        Elements rows = table.select("tr");
+        if (rows.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rows.size(); i++) {
+            Elements cells = rows.get(i).select("> th, > td");
+            sb.append('|');
+            for (Element cell : cells) {
+                sb.append(' ').append(ParsedSection.cell(cell.text())).append(" |");
+            }
+            sb.append('\n');
+            if (i == 0) {
+                sb.append('|').append(" --- |".repeat(Math.max(1, cells.size()))).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+/**
+ * 解析出的结构化片段
+ *
+ * @param type 片段类型
+ * @param level 标题级别 (1 ~ 6)，非标题为 0
+ * @param text 文本；表格已转为 Markdown 表格
+ * @param page 所在页码 (从 1 开始)，没有分页概念的格式为 0
+ */
+public record ParsedSection(Type type, int level, String text, int page) {
+
+    public enum Type {
+        HEADING, TEXT, TABLE, CODE
+    }
+
+    public static ParsedSection heading(int level, String text, int page) {
+        return new ParsedSection(Type.HEADING, Math.max(1, Math.min(6, level)), text, page);
+    }
+
+    public static ParsedSection text(String text, int page) {
+        return new ParsedSection(Type.TEXT, 0, text, page);
+    }
+
+    public static ParsedSection table(String markdown, int page) {
+        return new ParsedSection(Type.TABLE, 0, markdown, page);
+    }
+
+    public static ParsedSection code(String text, int page) {
+        return new ParsedSection(Type.CODE, 0, text, page);
+    }
+
+    /**
+     * 渲染为 Markdown：标题用 #，代码块用围栏，分片时标题会成为 DocumentChunkDTO 的 title
+     */
+    public String toMarkdown() {
+        return switch (type) {
+            case HEADING -> "#".repeat(level) + " " + text.replace('\n', ' ').trim();
+            case CODE -> "```\n" + text.stripTrailing() + "\n```";
+            case TABLE, TEXT -> text.strip();
+        };
+    }
+
+    /**
+     * 多行单元格转成单行并转义竖线，用于拼 Markdown 表格
+     */
+    public static String cell(String text) {
+        return text == null ? "" : text.replace("|", "\\|").replaceAll("\\s*\\n\\s*", " ").trim();
+    }
+}
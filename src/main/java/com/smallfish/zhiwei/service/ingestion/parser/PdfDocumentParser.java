@@ -0,0 +1,148 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDDocumentOutline;
+import org.apache.pdfbox.pdmodel.interactive.documentnavigation.outline.PDOutlineItem;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * PDF 解析 (PDFBox)
+ * <p>
+ * 1. 按页区间并行抽取：PDDocument 不是线程安全的，每个任务独立打开文件，只抽取自己负责的页。
+ * 2. 标题来自书签 (Outline)：书签指向的页之前插入对应级别的标题，没有书签的 PDF 按页输出正文。
+ * </p>
+ */
+@Slf4j
+@Component
+public class PdfDocumentParser implements DocumentParser {
+
+    // 每个并行任务负责的页数，页数不超过它时直接在当前线程抽取
+    private static final int PAGES_PER_TASK = 8;
+    // 书签最多展开的层级
+    private static final int MAX_OUTLINE_DEPTH = 3;
+
+    private final Executor parseExecutor;
+
+    public PdfDocumentParser(@Qualifier("parseExecutor") Executor parseExecutor) {
+        this.parseExecutor = parseExecutor;
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("pdf");
+    }
+
+    @Override
+    public List<ParsedSection> parse(Path file) throws IOException {
+        int pageCount;
+        Map<Integer, List<ParsedSection>> headings;
+        try (PDDocument document = Loader.loadPDF(file.toFile())) {
+            pageCount = document.getNumberOfPages();
+            headings = outlineHeadings(document);
+        }
+
+        // 按页区间拆分任务，结果按区间顺序拼接，保持原文顺序
+        List<CompletableFuture<List<String>>> tasks = new ArrayList<>();
+        for (int start = 1; start <= pageCount; start += PAGES_PER_TASK) {
+            int from = start;
+            int to = Math.min(pageCount, start + PAGES_PER_TASK - 1);
+            if (pageCount <= PAGES_PER_TASK) {
+                tasks.add(CompletableFuture.completedFuture(extractPages(file, from, to)));
+            } else {
+                tasks.add(CompletableFuture.supplyAsync(() -> extractPages(file, from, to), parseExecutor));
+            }
+        }
+
+        List<ParsedSection> sections = new ArrayList<>();
+        int page = 1;
+        try {
+            for (CompletableFuture<List<String>> task : tasks) {
+                for (String text : task.join()) {
+                    sections.addAll(headings.getOrDefault(page, List.of()));
+                    if (!text.isBlank()) {
+                        sections.add(ParsedSection.text(text, page));
+                    }
+                    page++;
+                }
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+        log.debug("PDF 解析完成: {}, {} 页, {} 个片段", file.getFileName(), pageCount, sections.size());
+        return sections;
+    }
+
+    /**
+     * 抽取 [from, to] 页的文本，每页一个元素
+     */
+    private List<String> extractPages(Path file, int from, int to) {
+        try (PDDocument document = Loader.loadPDF(file.toFile())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            List<String> pages = new ArrayList<>(to - from + 1);
+            for (int p = from; p <= to; p++) {
+                stripper.setStartPage(p);
+                stripper.setEndPage(p);
+                pages.add(stripper.getText(document));
+            }
+            return pages;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 书签 -> (页码 -> 该页开头的标题列表)
+     */
+    private Map<Integer, List<ParsedSection>> outlineHeadings(PDDocument document) {
+        Map<Integer, List<ParsedSection>> headings = new HashMap<>();
+        PDDocumentOutline outline = document.getDocumentCatalog().getDocumentOutline();
+        if (outline != null) {
+            collect(document, outline.children(), 1, headings);
+        }
+        return headings;
+    }
+
+    private void collect(PDDocument document, Iterable<PDOutlineItem> items, int level,
+                         Map<Integer, List<ParsedSection>> headings) {
+        if (level > MAX_OUTLINE_DEPTH) {
+            return;
+        }
+        for (PDOutlineItem item : items) {
+            try {
+                PDPage target = item.findDestinationPage(document);
+                String title = item.getTitle();
+                if (target != null && title != null && !title.isBlank()) {
+                    int page = document.getPages().indexOf(target) + 1;
+                    if (page > 0) {
+                        headings.computeIfAbsent(page, k -> new ArrayList<>()).add(ParsedSection.heading(level, title, page));
+                    }
+                }
+            } catch (IOException e) {
+                // 个别书签损坏不影响正文抽取
+                log.debug("书签解析失败: {}", e.getMessage());
+            }
+            collect(document, item.children(), level + 1, headings);
+        }
+    }
+}
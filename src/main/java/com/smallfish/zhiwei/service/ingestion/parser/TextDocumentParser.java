@@ -0,0 +1,47 @@
+package com.smallfish.zhiwei.service.ingestion.parser;
+
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 纯文本 / Markdown 解析
+ * 原样返回全文 (Markdown 标题由分片服务识别)；不是合法 UTF-8 时按 GB18030 解码，兼容 Windows 下导出的中文文档
+ */
+@Component
+public class TextDocumentParser implements DocumentParser {
+
+    private static final Charset FALLBACK = Charset.forName("GB18030");
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("txt", "md", "markdown");
+    }
+
+    @Override
+    public List<ParsedSection> parse(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        return List.of(ParsedSection.text(decode(bytes), 0));
+    }
+
+    private String decode(byte[] bytes) {
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, FALLBACK);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.smallfish.zhiwei.service.notification;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.client.HttpGateway;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 钉钉自定义机器人
+ * 文档: https://open.dingtalk.com/document/orgapp/custom-robot-access
+ * HTTP 200 也可能失败，需要检查 errcode；130101 表示发送过快
+ */
+public class DingTalkNotificationSink implements NotificationSink {
+
+    private static final int ERR_SEND_TOO_FAST = 130101;
+
+    private final String name;
+    private final String url;
+    private final Duration timeout;
+    private final HttpGateway httpGateway;
+
+    public DingTalkNotificationSink(String name, String url, Duration timeout, HttpGateway httpGateway) {
+        this.name = name;
+        this.url = url;
+        this.timeout = timeout;
+        this.httpGateway = httpGateway;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Mono<Void> send(String title, String markdown) {
+        JSONObject message = JSONUtil.createObj()
+                .set("msgtype", "markdown")
+                .set("markdown", JSONUtil.createObj()
+                        .set("title", title)
+                        .set("text", markdown));
+        return httpGateway.postJson(url, message.toString(), timeout)
+                .flatMap(body -> {
+                    int errcode = JSONUtil.parseObj(body).getInt("errcode", 0);
+                    if (errcode == ERR_SEND_TOO_FAST) {
+                        return Mono.error(new SinkThrottledException("钉钉限流: " + body));
+                    }
+                    if (errcode != 0) {
+                        return Mono.error(new IllegalStateException("钉钉返回错误: " + body));
+                    }
+                    return Mono.empty();
+                });
+    }
+}
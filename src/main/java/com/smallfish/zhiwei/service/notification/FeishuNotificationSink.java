@@ -0,0 +1,59 @@
+package com.smallfish.zhiwei.service.notification;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.client.HttpGateway;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 飞书自定义机器人 (消息卡片 + markdown 元素)
+ * 返回体 code 非 0 为失败；9499 / 11232 表示触发频率限制
+ */
+public class FeishuNotificationSink implements NotificationSink {
+
+    private static final int ERR_TOO_MANY_REQUESTS = 9499;
+    private static final int ERR_FREQUENCY_LIMITED = 11232;
+
+    private final String name;
+    private final String url;
+    private final Duration timeout;
+    private final HttpGateway httpGateway;
+
+    public FeishuNotificationSink(String name, String url, Duration timeout, HttpGateway httpGateway) {
+        this.name = name;
+        this.url = url;
+        this.timeout = timeout;
+        this.httpGateway = httpGateway;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Mono<Void> send(String title, String markdown) {
+        JSONObject card = JSONUtil.createObj()
+                .set("header", JSONUtil.createObj()
+                        .set("title", JSONUtil.createObj().set("tag", "plain_text").set("content", title)))
+                .set("elements", JSONUtil.createArray()
+                        .set(JSONUtil.createObj().set("tag", "markdown").set("content", markdown)));
+        JSONObject message = JSONUtil.createObj()
+                .set("msg_type", "interactive")
+                .set("card", card);
+        return httpGateway.postJson(url, message.toString(), timeout)
+                .flatMap(body -> {
+                    JSONObject resp = JSONUtil.parseObj(body);
+                    int code = resp.getInt("code", resp.getInt("StatusCode", 0));
+                    if (code == ERR_TOO_MANY_REQUESTS || code == ERR_FREQUENCY_LIMITED) {
+                        return Mono.error(new SinkThrottledException("飞书限流: " + body));
+                    }
+                    if (code != 0) {
+                        return Mono.error(new IllegalStateException("飞书返回错误: " + body));
+                    }
+                    return Mono.empty();
+                });
+    }
+}
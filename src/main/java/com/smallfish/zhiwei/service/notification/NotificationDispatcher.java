@@ -0,0 +1,344 @@
+package com.smallfish.zhiwei.service.notification;
+
+import com.smallfish.zhiwei.client.HttpGateway;
+import com.smallfish.zhiwei.config.NotificationProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通知异步调度器
+ * <p>
+ * 1. 异步：提交只是入队，诊断线程不等待网络。
+ * 2. 汇总：每个通道第一条报告入队后等待一个汇总窗口，窗口内的报告合并为一条消息；
+ *    通道额度用尽时报告继续累积，额度恢复后合并发送，不会因为机器人每分钟 20 条的限制丢报告。
+ * 3. 重试：发送失败按指数退避重试，被对方限流时该通道暂停一分钟。
+ * 4. 多通道：钉钉 / 飞书 / 通用 Webhook，每个通道独立的队列、速率和并发。
+ * </p>
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NotificationDispatcher {
+
+    private static final long TICK_MS = 500;
+    private static final long MINUTE_MS = 60_000;
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final String TRUNCATED_SUFFIX = "\n\n...(已截断)";
+
+    private final NotificationProperties properties;
+    private final HttpGateway httpGateway;
+    private final MeterRegistry meterRegistry;
+
+    private final List<SinkState> sinks = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        List<NotificationProperties.Sink> configs = new ArrayList<>(properties.getSinks());
+        if (configs.isEmpty() && properties.getWebhookUrl() != null && !properties.getWebhookUrl().isBlank()) {
+            NotificationProperties.Sink legacy = new NotificationProperties.Sink();
+            legacy.setName("dingtalk");
+            legacy.setUrl(properties.getWebhookUrl());
+            configs.add(legacy);
+        }
+        for (NotificationProperties.Sink config : configs) {
+            if (config.getUrl() == null || config.getUrl().isBlank()) {
+                continue;
+            }
+            String name = config.getName() == null ? config.getType() : config.getName();
+            NotificationSink sink = switch (config.getType().toLowerCase(Locale.ROOT)) {
+                case "dingtalk" -> new DingTalkNotificationSink(name, config.getUrl(), config.getTimeout(), httpGateway);
+                case "feishu" -> new FeishuNotificationSink(name, config.getUrl(), config.getTimeout(), httpGateway);
+                case "webhook" -> new WebhookNotificationSink(name, config.getUrl(), config.getTimeout(), httpGateway);
+                default -> throw new IllegalArgumentException("不支持的通知通道类型: " + config.getType());
+            };
+            sinks.add(new SinkState(sink, config));
+        }
+        if (sinks.isEmpty()) {
+            log.warn("未配置通知通道，通知将被跳过");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notification-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        log.info("通知通道已启动: {}", sinks.stream().map(state -> state.sink.name()).toList());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        // 停机前把积压的报告合并后尽力发出
+        for (SinkState state : sinks) {
+            Message message;
+            synchronized (state) {
+                message = state.pending.isEmpty() ? null : digest(state.drain(state.pending.size()), budgetOf(state));
+            }
+            if (message != null) {
+                try {
+                    state.sink.send(message.title, message.body).block(state.config.getTimeout());
+                } catch (Exception e) {
+                    log.warn("停机前发送通知失败 [{}]: {}", state.sink.name(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否配置了可用通道
+     */
+    public boolean hasSinks() {
+        return !sinks.isEmpty();
+    }
+
+    /**
+     * 提交一条报告到所有通道 (立即返回)
+     */
+    public void submit(String title, String content) {
+        Report report = new Report(title, content, LocalDateTime.now());
+        for (SinkState state : sinks) {
+            synchronized (state) {
+                if (state.pending.size() >= properties.getMaxQueueSize()) {
+                    state.pending.pollFirst();
+                    meterRegistry.counter("zhiwei.notification.dropped", "sink", state.sink.name(), "reason", "queue_full")
+                            .increment();
+                    log.warn("通知队列已满，丢弃最早的报告 [{}]", state.sink.name());
+                }
+                if (state.pending.isEmpty()) {
+                    state.windowStart = System.currentTimeMillis();
+                }
+                state.pending.addLast(report);
+            }
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (SinkState state : sinks) {
+            try {
+                dispatch(state, now);
+            } catch (Throwable e) {
+                // 调度线程不能因为异常退出
+                log.error("通知调度失败 [{}]", state.sink.name(), e);
+            }
+        }
+    }
+
+    private void dispatch(SinkState state, long now) {
+        while (true) {
+            Message message;
+            synchronized (state) {
+                if (state.inflight >= Math.max(1, state.config.getConcurrency()) || !state.hasBudget(now)) {
+                    return;
+                }
+                // 1. 先发到期的重试消息
+                Message retry = state.retries.peekFirst();
+                if (retry != null && retry.notBefore <= now) {
+                    message = state.retries.pollFirst();
+                } else if (!state.pending.isEmpty()
+                        && (now - state.windowStart >= properties.getDigestWindow().toMillis()
+                        || state.pending.size() >= properties.getMaxDigestItems())) {
+                    // 2. 汇总窗口到期或攒满，合并发送
+                    message = digest(state.drain(properties.getMaxDigestItems()), budgetOf(state));
+                    state.windowStart = now;
+                } else {
+                    return;
+                }
+                state.inflight++;
+                state.sentAt.addLast(now);
+            }
+            send(state, message);
+        }
+    }
+
+    private void send(SinkState state, Message message) {
+        message.attempts++;
+        state.sink.send(message.title, message.body)
+                .doFinally(signal -> {
+                    synchronized (state) {
+                        state.inflight--;
+                    }
+                })
+                .subscribe(
+                        ignored -> {
+                        },
+                        e -> onFailure(state, message, e),
+                        () -> meterRegistry.counter("zhiwei.notification.sent", "sink", state.sink.name()).increment());
+    }
+
+    private void onFailure(SinkState state, Message message, Throwable e) {
+        boolean throttled = e instanceof NotificationSink.SinkThrottledException;
+        if (message.attempts >= properties.getMaxAttempts()) {
+            meterRegistry.counter("zhiwei.notification.dropped", "sink", state.sink.name(), "reason", "retries_exhausted")
+                    .increment();
+            log.error("通知发送失败，已重试 {} 次，放弃 [{}]: {}", message.attempts, state.sink.name(), message.title, e);
+            return;
+        }
+        long delay = properties.getRetryBackoff().toMillis() << Math.min(message.attempts - 1, 10);
+        long now = System.currentTimeMillis();
+        synchronized (state) {
+            if (throttled) {
+                // 被对方限流：一分钟内不再发送，期间新报告继续累积
+                state.pausedUntil = now + MINUTE_MS;
+                delay = Math.max(delay, MINUTE_MS);
+            }
+            message.notBefore = now + delay;
+            state.retries.addLast(message);
+        }
+        meterRegistry.counter("zhiwei.notification.retried", "sink", state.sink.name(),
+                "reason", throttled ? "throttled" : "error").increment();
+        log.warn("通知发送失败，{} ms 后重试 [{}]: {}, {}", delay, state.sink.name(), message.title, e.getMessage());
+    }
+
+    /**
+     * 合并报告：单条原样发送，多条合并为汇总消息，正文按报告数均分截断
+     * 预算按 UTF-8 字节计算 (钉钉 / 飞书的上限按字节)，汇总头、每节标题和截断提示都计入预算
+     */
+    private Message digest(List<Report> reports, int budgetBytes) {
+        if (reports.size() == 1) {
+            Report report = reports.get(0);
+            return new Message(report.title, truncate(report.content, budgetBytes));
+        }
+        String header = String.format("### 共 %d 条诊断报告 (%s - %s)%n", reports.size(),
+                TIME_FORMATTER.format(reports.get(0).time), TIME_FORMATTER.format(reports.get(reports.size() - 1).time));
+        int perReport = (budgetBytes - utf8Length(header)) / reports.size();
+        StringBuilder body = new StringBuilder(header);
+        for (int i = 0; i < reports.size(); i++) {
+            Report report = reports.get(i);
+            String section = "\n---\n" + String.format("#### %d. %s (%s)%n", i + 1, report.title, TIME_FORMATTER.format(report.time));
+            // 末尾的换行占 1 字节
+            int contentBudget = perReport - utf8Length(section) - 1;
+            body.append(section)
+                    .append(truncate(report.content, Math.max(0, contentBudget)))
+                    .append('\n');
+        }
+        return new Message(String.format("【汇总】%d 条诊断报告", reports.size()), truncate(body.toString(), budgetBytes));
+    }
+
+    /**
+     * 通道的正文字节上限，未单独配置时使用全局值
+     */
+    private int budgetOf(SinkState state) {
+        Integer bytes = state.config.getMaxMessageBytes();
+        return bytes != null && bytes > 0 ? bytes : properties.getMaxMessageBytes();
+    }
+
+    /**
+     * 按 UTF-8 字节截断 (截断提示计入上限)，只在码点边界处切分，不会切出半个汉字或 emoji
+     */
+    private static String truncate(String text, int maxBytes) {
+        if (text == null) {
+            return "";
+        }
+        if (utf8Length(text) <= maxBytes) {
+            return text;
+        }
+        int keep = maxBytes - utf8Length(TRUNCATED_SUFFIX);
+        if (keep <= 0) {
+            return "";
+        }
+        int end = 0;
+        int bytes = 0;
+        while (end < text.length()) {
+            int codePoint = text.codePointAt(end);
+            int size = utf8Length(codePoint);
+            if (bytes + size > keep) {
+                break;
+            }
+            bytes += size;
+            end += Character.charCount(codePoint);
+        }
+        return text.substring(0, end) + TRUNCATED_SUFFIX;
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+        if (codePoint < 0x800) {
+            return 2;
+        }
+        return codePoint < 0x10000 ? 3 : 4;
+    }
+
+    private record Report(String title, String content, LocalDateTime time) {
+    }
+
+    /**
+     * 待发送消息 (可能是合并后的汇总)
+     */
+    private static final class Message {
+        private final String title;
+        private final String body;
+        private int attempts;
+        private long notBefore;
+
+        private Message(String title, String body) {
+            this.title = title;
+            this.body = body;
+        }
+    }
+
+    /**
+     * 单个通道的队列、额度与并发状态 (由 synchronized(this) 保护)
+     */
+    private static final class SinkState {
+        private final NotificationSink sink;
+        private final NotificationProperties.Sink config;
+        private final Deque<Report> pending = new ArrayDeque<>();
+        private final Deque<Message> retries = new ArrayDeque<>();
+        // 最近一分钟的发送时间，用于按分钟限额
+        private final Deque<Long> sentAt = new ArrayDeque<>();
+        private long windowStart;
+        private long pausedUntil;
+        private int inflight;
+
+        private SinkState(NotificationSink sink, NotificationProperties.Sink config) {
+            this.sink = sink;
+            this.config = config;
+        }
+
+        private boolean hasBudget(long now) {
+            if (now < pausedUntil) {
+                return false;
+            }
+            while (!sentAt.isEmpty() && now - sentAt.peekFirst() >= MINUTE_MS) {
+                sentAt.pollFirst();
+            }
+            return sentAt.size() < config.getMaxPerMinute();
+        }
+
+        private List<Report> drain(int max) {
+            List<Report> batch = new ArrayList<>();
+            while (!pending.isEmpty() && batch.size() < max) {
+                batch.add(pending.pollFirst());
+            }
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.smallfish.zhiwei.service.notification;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * 通知通道
+ * 发送失败以错误信号返回；被对方限流时返回 {@link SinkThrottledException}，调度器会暂停该通道
+ */
+public interface NotificationSink {
+
+    /**
+     * 通道名称
+     */
+    String name();
+
+    /**
+     * 发送一条 Markdown 消息
+     *
+     * @param title 标题
+     * @param markdown 正文
+     */
+    Mono<Void> send(String title, String markdown);
+
+    /**
+     * 通道被对方限流
+     */
+    class SinkThrottledException extends RuntimeException {
+        public SinkThrottledException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.smallfish.zhiwei.service.notification;
+
+import cn.hutool.json.JSONUtil;
+import com.smallfish.zhiwei.client.HttpGateway;
+import com.smallfish.zhiwei.client.HttpGatewayException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * 通用 Webhook：POST {"title": ..., "content": ...}，2xx 即成功，429 视为限流
+ */
+public class WebhookNotificationSink implements NotificationSink {
+
+    private final String name;
+    private final String url;
+    private final Duration timeout;
+    private final HttpGateway httpGateway;
+
+    public WebhookNotificationSink(String name, String url, Duration timeout, HttpGateway httpGateway) {
+        this.name = name;
+        this.url = url;
+        this.timeout = timeout;
+        this.httpGateway = httpGateway;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public Mono<Void> send(String title, String markdown) {
+        String body = JSONUtil.createObj()
+                .set("title", title)
+                .set("content", markdown)
+                .toString();
+        return httpGateway.postJson(url, body, timeout)
+                .onErrorMap(e -> e instanceof HttpGatewayException ge && ge.getStatus() == 429,
+                        e -> new SinkThrottledException("Webhook 限流: " + url))
+                .then();
+    }
+}
@@ -0,0 +1,130 @@
+package com.smallfish.zhiwei.service.retrieval;
+
+import com.smallfish.zhiwei.config.AdaptiveRecallProperties;
+import com.smallfish.zhiwei.dto.resp.SearchResultDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 自适应召回深度规划
+ * <p>
+ * 基于 Milvus IP 分数分布 (已按分数倒序) 计算送入重排的深度：
+ * 1. 分差截断：丢弃与 top1 分差超过 topMargin 的候选
+ * 2. 断层截断：在剩余区间内寻找最大的相邻分差，若显著 (占跨度 gapRatio 以上) 则在断层处截断
+ * 3. 拐点截断：没有明显断层时，用 Kneedle (离首尾连线最远的点) 找分数曲线的拐点
+ * 截断后的候选全部为高置信分数且数量不超过重排 top-k 时，直接跳过重排。
+ * </p>
+ */
+@Component
+@RequiredArgsConstructor
+public class AdaptiveRecallPlanner {
+
+    private final AdaptiveRecallProperties properties;
+
+    /**
+     * 计算召回深度
+     *
+     * @param recallResults 向量召回结果 (分数倒序)
+     * @param rerankTopK 重排最终保留的数量
+     */
+    public RecallPlan plan(List<SearchResultDTO> recallResults, int rerankTopK) {
+        int total = recallResults.size();
+        if (!properties.isEnabled() || total <= properties.getMinDepth()) {
+            return new RecallPlan(total, false, "fixed");
+        }
+
+        double[] scores = new double[total];
+        for (int i = 0; i < total; i++) {
+            Float score = recallResults.get(i).getScore();
+            scores[i] = score == null ? 0.0 : score;
+        }
+
+        // 1. 分差截断
+        int marginCut = total;
+        for (int i = 1; i < total; i++) {
+            if (scores[0] - scores[i] > properties.getTopMargin()) {
+                marginCut = i;
+                break;
+            }
+        }
+
+        // 2. 断层截断 / 3. 拐点截断
+        int depth = marginCut;
+        String reason = marginCut < total ? "margin" : "full";
+        if (marginCut > 2) {
+            int gapCut = findGap(scores, marginCut);
+            if (gapCut > 0) {
+                depth = gapCut;
+                reason = "gap";
+            } else {
+                int knee = findKnee(scores, marginCut);
+                if (knee > 0) {
+                    depth = knee;
+                    reason = "knee";
+                }
+            }
+        }
+        depth = Math.max(depth, Math.min(properties.getMinDepth(), total));
+
+        // 高置信：截断后的候选都是几乎确定的命中，重排不会改变结论
+        boolean skipRerank = depth <= rerankTopK
+                && scores[depth - 1] >= properties.getHighConfidence();
+        return new RecallPlan(depth, skipRerank, skipRerank ? "confident" : reason);
+    }
+
+    /**
+     * 在 [0, end) 区间内找最大相邻分差，显著时返回断层位置 (断层前的候选数)，否则返回 -1
+     */
+    private int findGap(double[] scores, int end) {
+        double span = scores[0] - scores[end - 1];
+        if (span <= 0) {
+            return -1;
+        }
+        int best = -1;
+        double bestGap = 0;
+        for (int i = 1; i < end; i++) {
+            double gap = scores[i - 1] - scores[i];
+            if (gap > bestGap) {
+                bestGap = gap;
+                best = i;
+            }
+        }
+        return bestGap / span >= properties.getGapRatio() ? best : -1;
+    }
+
+    /**
+     * Kneedle：返回离首尾连线最远的点之后的候选数，曲线近似直线时返回 -1
+     */
+    private int findKnee(double[] scores, int end) {
+        double span = scores[0] - scores[end - 1];
+        if (span <= 0) {
+            return -1;
+        }
+        int knee = -1;
+        double maxDistance = 0;
+        for (int i = 1; i < end - 1; i++) {
+            // 归一化到 [0,1]，直线 y = 1 - x
+            double x = (double) i / (end - 1);
+            double y = (scores[i] - scores[end - 1]) / span;
+            double distance = (1 - x) - y;
+            if (distance > maxDistance) {
+                maxDistance = distance;
+                knee = i + 1;
+            }
+        }
+        // 偏离太小说明分布平缓，没有可信的拐点
+        return maxDistance >= 0.1 ? knee : -1;
+    }
+
+    /**
+     * 召回规划结果
+     *
+     * @param depth 送入重排 (或直接返回) 的候选数
+     * @param skipRerank 是否跳过重排
+     * @param reason 截断依据 (fixed / full / margin / gap / knee / confident)，用作指标标签
+     */
+    public record RecallPlan(int depth, boolean skipRerank, String reason) {
+    }
+}
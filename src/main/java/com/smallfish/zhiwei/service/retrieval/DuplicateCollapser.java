@@ -0,0 +1,104 @@
+package com.smallfish.zhiwei.service.retrieval;
+
+import com.smallfish.zhiwei.config.DedupProperties;
+import com.smallfish.zhiwei.dto.resp.SearchResultDTO;
+import com.smallfish.zhiwei.service.ingestion.NearDuplicateIndex;
+import com.smallfish.zhiwei.utils.SimHash;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 检索结果近重复折叠
+ * 召回结果按分数倒序，与已保留结果 SimHash 汉明距离不超过阈值的直接折叠，
+ * 被折叠结果及入库时记录的引用来源合并到保留结果的 metadata.duplicateSources，
+ * 重排和 LLM 上下文不再被同一份手册的多个版本占满
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DuplicateCollapser {
+
+    public static final String META_DUPLICATE_SOURCES = "duplicateSources";
+
+    private final DedupProperties properties;
+    private final NearDuplicateIndex duplicateIndex;
+
+    /**
+     * 折叠近重复结果 (输入需按分数倒序)
+     */
+    public List<SearchResultDTO> collapse(List<SearchResultDTO> results) {
+        if (!properties.isCollapseResults() || results.size() < 2) {
+            return attachReferences(results);
+        }
+        List<SearchResultDTO> kept = new ArrayList<>();
+        List<Long> keptHashes = new ArrayList<>();
+        Map<String, Set<String>> collapsedSources = new HashMap<>();
+        for (SearchResultDTO result : results) {
+            long simhash = SimHash.of(result.getContent());
+            int match = -1;
+            for (int i = 0; i < keptHashes.size(); i++) {
+                if (SimHash.distance(keptHashes.get(i), simhash) <= properties.getMaxDistance()) {
+                    match = i;
+                    break;
+                }
+            }
+            if (match < 0) {
+                kept.add(result);
+                keptHashes.add(simhash);
+            } else if (result.getSource() != null) {
+                collapsedSources.computeIfAbsent(kept.get(match).getId(), k -> new LinkedHashSet<>()).add(result.getSource());
+            }
+        }
+        if (kept.size() < results.size()) {
+            log.info("近重复折叠: {} -> {} 条", results.size(), kept.size());
+        }
+        mergeSources(kept, collapsedSources);
+        return attachReferences(kept);
+    }
+
+    /**
+     * 合并入库时记录的引用来源
+     */
+    private List<SearchResultDTO> attachReferences(List<SearchResultDTO> results) {
+        if (!properties.isEnabled() || results.isEmpty()) {
+            return results;
+        }
+        try {
+            mergeSources(results, duplicateIndex.referencedSources(results.stream().map(SearchResultDTO::getId).toList()));
+        } catch (Exception e) {
+            // 引用来源只用于展示，读取失败不影响检索
+            log.warn("读取近重复引用来源失败: {}", e.getMessage());
+        }
+        return results;
+    }
+
+    private void mergeSources(List<SearchResultDTO> results, Map<String, Set<String>> sourcesById) {
+        if (sourcesById.isEmpty()) {
+            return;
+        }
+        for (SearchResultDTO result : results) {
+            Set<String> sources = sourcesById.get(result.getId());
+            if (sources == null) {
+                continue;
+            }
+            Map<String, Object> metadata = result.getMetadata() == null ? new HashMap<>() : new HashMap<>(result.getMetadata());
+            Set<String> merged = new LinkedHashSet<>();
+            Object existing = metadata.get(META_DUPLICATE_SOURCES);
+            if (existing instanceof List<?> list) {
+                list.forEach(item -> merged.add(String.valueOf(item)));
+            }
+            merged.addAll(sources);
+            merged.remove(result.getSource());
+            metadata.put(META_DUPLICATE_SOURCES, new ArrayList<>(merged));
+            result.setMetadata(metadata);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.smallfish.zhiwei.service.retrieval;
+
+import com.smallfish.zhiwei.client.MilvusClientFactory;
+import com.smallfish.zhiwei.client.MilvusIndexProfile;
+import com.smallfish.zhiwei.client.MilvusIndexTuner;
+import com.smallfish.zhiwei.client.VectorPrecision;
+import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.config.MilvusIndexProperties;
+import com.smallfish.zhiwei.model.BizKnowledge;
+import com.smallfish.zhiwei.service.base.EmbeddingService;
+import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.SearchResults;
+import io.milvus.param.MetricType;
+import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.collection.CollectionSchemaParam;
+import io.milvus.param.collection.CreateCollectionParam;
+import io.milvus.param.collection.DropCollectionParam;
+import io.milvus.param.collection.FieldType;
+import io.milvus.param.collection.FlushParam;
+import io.milvus.param.collection.HasCollectionParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryParam;
+import io.milvus.param.dml.SearchParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.response.QueryResultsWrapper;
+import io.milvus.response.SearchResultsWrapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * 向量索引离线压测
+ * <p>
+ * 从正式集合抽样向量，在本地 Milvus 中为每种候选索引建一个临时集合，
+ * 用样例查询测量 recall@k (以内存暴力检索结果为真值) 与单次检索延迟，
+ * 在满足召回目标的配置中推荐延迟最低的一个，可选直接应用到正式集合。
+ * </p>
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IndexSweepService {
+
+    private static final String SWEEP_COLLECTION_PREFIX = "model_sweep_";
+    private static final int INSERT_BATCH = 1000;
+
+    private final MilvusServiceClient milvusClient;
+    private final MilvusIndexTuner indexTuner;
+    private final MilvusIndexProperties properties;
+    private final EmbeddingService embeddingService;
+    private final MilvusClientFactory milvusClientFactory;
+
+    /**
+     * 执行压测
+     * @return 各候选的测量结果，按推荐优先级排序
+     */
+    public List<SweepResult> sweep() {
+        MilvusIndexProperties.Sweep config = properties.getSweep();
+        if (config.getQueries().isEmpty()) {
+            throw new IllegalArgumentException("milvus.index.sweep.queries 为空，无法压测");
+        }
+
+        // 1. 抽样数据与查询向量，暴力计算真值
+        List<String> ids = new ArrayList<>();
+        List<List<Float>> vectors = new ArrayList<>();
+        sample(config.getSampleRows(), ids, vectors);
+        if (vectors.isEmpty()) {
+            throw new IllegalStateException("正式集合没有数据，无法压测");
+        }
+        List<List<Float>> queries = embeddingService.generateEmbedding(config.getQueries());
+        int topK = Math.min(config.getTopK(), vectors.size());
+        List<Set<String>> truth = queries.stream()
+                .map(q -> exactTopK(q, ids, vectors, topK))
+                .toList();
+        log.info("索引压测开始: 样本 {} 条, 查询 {} 条, k={}, 候选 {}",
+                vectors.size(), queries.size(), topK, config.getCandidates());
+
+        // 2. 逐个候选建临时集合测量
+        List<SweepResult> results = new ArrayList<>();
+        for (String candidate : config.getCandidates()) {
+            MilvusIndexProfile profile = MilvusIndexProfile.resolve(candidate, vectors.size());
+            String collection = SWEEP_COLLECTION_PREFIX + profile.name().toLowerCase(Locale.ROOT);
+            try {
+                prepareCollection(collection, profile, ids, vectors);
+                results.add(measure(collection, profile, queries, truth, vectors.size(), topK));
+            } catch (Exception e) {
+                log.warn("索引 {} 压测失败: {}", profile, e.getMessage());
+            } finally {
+                dropIfExists(collection);
+            }
+        }
+
+        // 3. 满足召回目标的按延迟升序，其余按召回降序排在后面
+        double target = config.getRecallTarget();
+        results.sort(Comparator
+                .comparing((SweepResult r) -> r.recall() < target)
+                .thenComparingDouble(r -> r.recall() >= target ? r.p50Ms() : -r.recall()));
+
+        StringBuilder report = new StringBuilder("\n| 索引 | 检索参数 | recall@").append(topK).append(" | p50 ms | p95 ms |\n");
+        results.forEach(r -> report.append(String.format("| %s | %s | %.3f | %.2f | %.2f |%n",
+                r.profile(), r.searchParams(), r.recall(), r.p50Ms(), r.p95Ms())));
+        log.info("索引压测结果 (目标 recall >= {}):{}", target, report);
+
+        if (!results.isEmpty() && results.get(0).recall() >= target) {
+            SweepResult best = results.get(0);
+            log.info("推荐索引: {} (当前 {})", best.profile(), indexTuner.currentProfile());
+            if (config.isApply() && best.profile() != indexTuner.currentProfile()) {
+                indexTuner.applyIndex(best.profile());
+            }
+        } else {
+            log.warn("没有候选索引达到召回目标 {}，保持现有索引", target);
+        }
+        return results;
+    }
+
+    /**
+     * 从正式集合抽样 ID 与向量
+     */
+    private void sample(int limit, List<String> ids, List<List<Float>> vectors) {
+        // 启动时的加载请求是异步的，这里同步等待加载完成
+        check(milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withSyncLoad(Boolean.TRUE)
+                .build()), "加载正式集合");
+        R<QueryResults> response = milvusClient.query(QueryParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withExpr(BizKnowledge.FIELD_ID + " != \"\"")
+                .withOutFields(List.of(BizKnowledge.FIELD_ID, BizKnowledge.FIELD_VECTOR))
+                .withLimit((long) Math.min(limit, 16384))
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new RuntimeException("抽样查询失败: " + response.getMessage());
+        }
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(response.getData());
+        for (Object id : wrapper.getFieldWrapper(BizKnowledge.FIELD_ID).getFieldData()) {
+            ids.add(String.valueOf(id));
+        }
+        for (Object vector : wrapper.getFieldWrapper(BizKnowledge.FIELD_VECTOR).getFieldData()) {
+            vectors.add(precision().decode(vector));
+        }
+    }
+
+    /**
+     * 内存暴力检索 (内积) 作为真值
+     */
+    private Set<String> exactTopK(List<Float> query, List<String> ids, List<List<Float>> vectors, int topK) {
+        double[] scores = new double[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            List<Float> v = vectors.get(i);
+            double dot = 0;
+            for (int d = 0; d < v.size(); d++) {
+                dot += query.get(d) * v.get(d);
+            }
+            scores[i] = dot;
+        }
+        Set<String> top = new HashSet<>();
+        IntStream.range(0, scores.length).boxed()
+                .sorted((a, b) -> Double.compare(scores[b], scores[a]))
+                .limit(topK)
+                .forEach(i -> top.add(ids.get(i)));
+        return top;
+    }
+
+    /**
+     * 建临时集合、写入样本、同步建索引并加载
+     */
+    private void prepareCollection(String collection, MilvusIndexProfile profile,
+                                   List<String> ids, List<List<Float>> vectors) {
+        dropIfExists(collection);
+        CollectionSchemaParam schema = CollectionSchemaParam.newBuilder()
+                .addFieldType(FieldType.newBuilder()
+                        .withName(BizKnowledge.FIELD_ID)
+                        .withDataType(DataType.VarChar)
+                        .withMaxLength(MilvusConstants.ID_MAX_LENGTH)
+                        .withPrimaryKey(true)
+                        .build())
+                .addFieldType(FieldType.newBuilder()
+                        .withName(BizKnowledge.FIELD_VECTOR)
+                        .withDataType(precision().getDataType())
+                        .withDimension(vectors.get(0).size())
+                        .build())
+                .build();
+        check(milvusClient.createCollection(CreateCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .withSchema(schema)
+                .build()), "创建临时集合");
+
+        for (int from = 0; from < vectors.size(); from += INSERT_BATCH) {
+            int to = Math.min(from + INSERT_BATCH, vectors.size());
+            R<MutationResult> insert = milvusClient.insert(InsertParam.newBuilder()
+                    .withCollectionName(collection)
+                    .withFields(List.of(
+                            new InsertParam.Field(BizKnowledge.FIELD_ID, ids.subList(from, to)),
+                            new InsertParam.Field(BizKnowledge.FIELD_VECTOR, precision().encodeAll(vectors.subList(from, to)))))
+                    .build());
+            if (insert.getStatus() != R.Status.Success.getCode()) {
+                throw new RuntimeException("写入样本失败: " + insert.getMessage());
+            }
+        }
+        // 落盘封存，保证检索走索引而不是增长段的暴力扫描
+        milvusClient.flush(FlushParam.newBuilder()
+                .withCollectionNames(List.of(collection))
+                .withSyncFlush(Boolean.TRUE)
+                .build());
+        check(milvusClient.createIndex(CreateIndexParam.newBuilder()
+                .withCollectionName(collection)
+                .withFieldName(BizKnowledge.FIELD_VECTOR)
+                .withIndexType(profile.getIndexType())
+                .withMetricType(MetricType.IP)
+                .withExtraParam(profile.buildParams(properties, vectors.size()))
+                .withSyncMode(Boolean.TRUE)
+                .build()), "创建索引");
+        check(milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .withSyncLoad(Boolean.TRUE)
+                .build()), "加载临时集合");
+    }
+
+    /**
+     * 用线上同样的参数推导逻辑检索，测量召回率与延迟
+     */
+    private SweepResult measure(String collection, MilvusIndexProfile profile, List<List<Float>> queries,
+                                List<Set<String>> truth, long rows, int topK) {
+        String searchParams = profile.searchParams(properties, 0, rows, topK);
+        double[] latencies = new double[queries.size()];
+        double recallSum = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            long start = System.nanoTime();
+            SearchParam.Builder builder = SearchParam.newBuilder()
+                    .withCollectionName(collection)
+                    .withMetricType(MetricType.IP)
+                    .withLimit((long) topK)
+                    .withVectorFieldName(BizKnowledge.FIELD_VECTOR)
+                    .withParams(searchParams);
+            R<SearchResults> response = milvusClient.search(
+                    precision().withVectors(builder, List.of(queries.get(i))).build());
+            latencies[i] = (System.nanoTime() - start) / 1_000_000.0;
+            if (response.getStatus() != R.Status.Success.getCode()) {
+                throw new RuntimeException("检索失败: " + response.getMessage());
+            }
+            Set<String> expected = truth.get(i);
+            long hits = new SearchResultsWrapper(response.getData().getResults()).getIDScore(0).stream()
+                    .filter(score -> expected.contains(score.getStrID()))
+                    .count();
+            recallSum += (double) hits / Math.max(1, expected.size());
+        }
+        Arrays.sort(latencies);
+        return new SweepResult(profile, searchParams, recallSum / queries.size(),
+                percentile(latencies, 0.50), percentile(latencies, 0.95));
+    }
+
+    /**
+     * 临时集合与正式集合使用相同的存储精度
+     */
+    private VectorPrecision precision() {
+        return milvusClientFactory.getActiveProfile().precision();
+    }
+
+    private double percentile(double[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private void dropIfExists(String collection) {
+        R<Boolean> exists = milvusClient.hasCollection(HasCollectionParam.newBuilder()
+                .withCollectionName(collection).build());
+        if (Boolean.TRUE.equals(exists.getData())) {
+            milvusClient.dropCollection(DropCollectionParam.newBuilder().withCollectionName(collection).build());
+        }
+    }
+
+    private void check(R<RpcStatus> response, String action) {
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new RuntimeException(action + "失败: " + response.getMessage());
+        }
+    }
+
+    /**
+     * 单个候选索引的测量结果
+     */
+    public record SweepResult(MilvusIndexProfile profile, String searchParams,
+                              double recall, double p50Ms, double p95Ms) {
+    }
+}
@@ -0,0 +1,144 @@
+package com.smallfish.zhiwei.service.retrieval;
+
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地轻量重排打分器 (远程 Rerank 降级使用)
+ * 分数 = BM25 (以候选集为语料，归一化到 0~1) 与召回阶段向量余弦分数的加权融合。
+ * 中文按双字切分，英文/数字按单词切分，不依赖任何分词库。
+ */
+@Component
+public class LocalRerankScorer {
+
+    /** 召回阶段写入 Document metadata 的向量分数 */
+    public static final String META_RECALL_SCORE = "recall_score";
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // BM25 与向量分数的权重
+    private static final double LEXICAL_WEIGHT = 0.5;
+
+    /**
+     * 为候选文档打分并按分数倒序返回前 topN 个，分数写入 metadata.score
+     */
+    public List<Document> rerank(String query, List<Document> documents, int topN) {
+        Map<String, Double> scores = score(query, documents);
+        List<Document> sorted = new ArrayList<>(documents);
+        sorted.sort(Comparator.comparingDouble((Document d) -> scores.getOrDefault(d.getId(), 0.0)).reversed());
+        List<Document> result = new ArrayList<>(Math.min(topN, sorted.size()));
+        for (Document doc : sorted.subList(0, Math.min(topN, sorted.size()))) {
+            doc.getMetadata().put("score", scores.getOrDefault(doc.getId(), 0.0));
+            doc.getMetadata().put("rerank_source", "local");
+            result.add(doc);
+        }
+        return result;
+    }
+
+    /**
+     * 计算每个文档的融合分数
+     *
+     * @return Key: 文档 ID, Value: 0~1 之间的分数
+     */
+    public Map<String, Double> score(String query, List<Document> documents) {
+        List<String> queryTerms = tokenize(query);
+        int n = documents.size();
+
+        // 1. 统计词频、文档频率
+        List<Map<String, Integer>> termFreqs = new ArrayList<>(n);
+        Map<String, Integer> docFreq = new HashMap<>();
+        int[] lengths = new int[n];
+        long totalLength = 0;
+        for (int i = 0; i < n; i++) {
+            List<String> terms = tokenize(documents.get(i).getText());
+            Map<String, Integer> tf = new HashMap<>();
+            for (String term : terms) {
+                tf.merge(term, 1, Integer::sum);
+            }
+            for (String term : tf.keySet()) {
+                docFreq.merge(term, 1, Integer::sum);
+            }
+            termFreqs.add(tf);
+            lengths[i] = terms.size();
+            totalLength += terms.size();
+        }
+        double avgLength = n == 0 ? 0 : (double) totalLength / n;
+
+        // 2. BM25
+        double[] bm25 = new double[n];
+        double maxBm25 = 0;
+        for (int i = 0; i < n; i++) {
+            Map<String, Integer> tf = termFreqs.get(i);
+            double s = 0;
+            for (String term : queryTerms) {
+                Integer f = tf.get(term);
+                if (f == null) {
+                    continue;
+                }
+                int df = docFreq.getOrDefault(term, 0);
+                double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                double norm = avgLength == 0 ? 1 : lengths[i] / avgLength;
+                s += idf * (f * (K1 + 1)) / (f + K1 * (1 - B + B * norm));
+            }
+            bm25[i] = s;
+            maxBm25 = Math.max(maxBm25, s);
+        }
+
+        // 3. 融合向量分数
+        Map<String, Double> scores = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            Document doc = documents.get(i);
+            double lexical = maxBm25 > 0 ? bm25[i] / maxBm25 : 0;
+            Object recall = doc.getMetadata().get(META_RECALL_SCORE);
+            double vector = recall instanceof Number num ? Math.max(0, Math.min(1, num.doubleValue())) : 0;
+            scores.put(doc.getId(), LEXICAL_WEIGHT * lexical + (1 - LEXICAL_WEIGHT) * vector);
+        }
+        return scores;
+    }
+
+    /**
+     * 简易分词：英文数字按词，中日韩字符按相邻双字 (单字文本保留单字)
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+        String lower = text.toLowerCase();
+        StringBuilder word = new StringBuilder();
+        char prevCjk = 0;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c) && c < 0x2E80) {
+                word.append(c);
+                prevCjk = 0;
+                continue;
+            }
+            if (!word.isEmpty()) {
+                terms.add(word.toString());
+                word.setLength(0);
+            }
+            if (Character.isIdeographic(c)) {
+                if (prevCjk != 0) {
+                    terms.add(new String(new char[]{prevCjk, c}));
+                } else if (i + 1 >= lower.length() || !Character.isIdeographic(lower.charAt(i + 1))) {
+                    // 孤立的单个汉字
+                    terms.add(String.valueOf(c));
+                }
+                prevCjk = c;
+            } else {
+                prevCjk = 0;
+            }
+        }
+        if (!word.isEmpty()) {
+            terms.add(word.toString());
+        }
+        return terms;
+    }
+}
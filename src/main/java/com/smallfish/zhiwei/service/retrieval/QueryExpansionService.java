@@ -0,0 +1,126 @@
+package com.smallfish.zhiwei.service.retrieval;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 查询扩展服务
+ * <p>
+ * 把复合问题拆成若干子问题，例如 "Redis OOM 和 MySQL 慢查询处理" 拆为
+ * ["Redis OOM 和 MySQL 慢查询处理", "Redis OOM 处理", "MySQL 慢查询处理"]。
+ * 纯规则实现，不调用大模型，避免在检索链路上额外增加一次模型往返。
+ * </p>
+ */
+@Slf4j
+@Service
+public class QueryExpansionService {
+
+    /**
+     * 明确的并列连接词 / 分隔符，直接拆分
+     * 逗号不拆：中文逗号多用于分隔同一问题的前后半句 ("服务重启后，接口超时")
+     */
+    private static final Pattern SPLITTER = Pattern.compile("(?i)\\s*(?:以及|还有|并且|、|；|;|\\band\\b|&)\\s*");
+
+    /**
+     * 单字连接词：常出现在词语内部 (及时、跟踪、参与、和谐)，排除常见组合后，
+     * 还要求两侧都是完整的词才拆分
+     */
+    private static final Pattern WEAK_SPLITTER = Pattern.compile("\\s*(?:和(?!谐)|(?<!参)与(?!其)|(?<![涉普不])及(?![时格])|跟(?![踪进随]))\\s*");
+
+    /**
+     * 单字连接词两侧各自至少的字符数
+     */
+    private static final int MIN_TERM_LENGTH = 2;
+
+    /**
+     * 常见的动作性尾词：只出现在最后一个子句时，补给前面的子句
+     */
+    private static final Pattern ACTION_SUFFIX = Pattern.compile("(处理|排查|解决|优化|方案|原因|怎么办|如何处理|怎么处理)[？?]?$");
+
+    @Value("${rag.query-expansion.enabled:true}")
+    private boolean enabled;
+    @Value("${rag.query-expansion.max-queries:4}")
+    private int maxQueries;
+    @Value("${rag.query-expansion.min-length:2}")
+    private int minLength;
+
+    /**
+     * 扩展查询
+     * @param query 原始问题
+     * @return 子查询列表，第一个总是原始问题
+     */
+    public List<String> expand(String query) {
+        if (!enabled || query == null || query.isBlank()) {
+            return Collections.singletonList(query);
+        }
+        String trimmed = query.trim();
+        List<String> parts = new ArrayList<>();
+        for (String part : SPLITTER.split(trimmed)) {
+            parts.addAll(splitWeak(part));
+        }
+        if (parts.size() < 2) {
+            return List.of(trimmed);
+        }
+
+        // 末尾子句的动作词 (如 "处理")，补到其余子句上
+        var matcher = ACTION_SUFFIX.matcher(parts.get(parts.size() - 1));
+        String suffix = matcher.find() ? matcher.group(1) : "";
+
+        Set<String> queries = new LinkedHashSet<>();
+        queries.add(trimmed);
+        for (String part : parts) {
+            String sub = part.trim();
+            if (sub.length() < minLength) {
+                continue;
+            }
+            if (!suffix.isEmpty() && !ACTION_SUFFIX.matcher(sub).find()) {
+                sub = sub + " " + suffix;
+            }
+            queries.add(sub);
+            if (queries.size() >= maxQueries) {
+                break;
+            }
+        }
+
+        List<String> result = new ArrayList<>(queries);
+        if (result.size() > 1) {
+            log.info("查询扩展: {} -> {}", trimmed, result);
+        }
+        return result;
+    }
+
+    /**
+     * 按单字连接词拆分：只有连接词左右两段都不短于 MIN_TERM_LENGTH 时才在此处切开，
+     * 否则连接词保留在原句中 (如 "如何及时发现" 不拆)
+     */
+    private List<String> splitWeak(String text) {
+        int minTerm = Math.max(MIN_TERM_LENGTH, minLength);
+        List<int[]> connectors = new ArrayList<>();
+        var matcher = WEAK_SPLITTER.matcher(text);
+        while (matcher.find()) {
+            connectors.add(new int[]{matcher.start(), matcher.end()});
+        }
+        List<String> parts = new ArrayList<>();
+        int cut = 0;
+        for (int i = 0; i < connectors.size(); i++) {
+            int[] connector = connectors.get(i);
+            int nextStart = i + 1 < connectors.size() ? connectors.get(i + 1)[0] : text.length();
+            String left = text.substring(cut, connector[0]).trim();
+            String right = text.substring(connector[1], Math.max(connector[1], nextStart)).trim();
+            if (left.length() >= minTerm && right.length() >= minTerm) {
+                parts.add(left);
+                cut = connector[1];
+            }
+        }
+        parts.add(text.substring(cut).trim());
+        return parts;
+    }
+}
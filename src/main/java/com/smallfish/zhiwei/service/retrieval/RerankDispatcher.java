@@ -0,0 +1,268 @@
+package com.smallfish.zhiwei.service.retrieval;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 重排调度器
+ * <p>
+ * 1. 微批：在 batch-window-ms 窗口内到达的请求合并处理，同一 query 的请求合并为一次远程调用 (文档去重)，
+ *    不同 query 并发调用 (DashScope Rerank 单次请求只支持一个 query)。
+ * 2. 缓存：(query, 文档 ID, 内容) -> 分数，命中的文档不再发往远程。
+ * 3. SLO：远程调用超过 timeout-ms 或失败时，降级到本地 BM25 + 向量分数融合打分；
+ *    超时的远程调用会被中断，不在后台继续占用重排线程。
+ * </p>
+ */
+@Slf4j
+@Service
+public class RerankDispatcher {
+
+    private final RerankService rerankService;
+    private final LocalRerankScorer localScorer;
+    private final Executor rerankExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rag.rerank.batch-window-ms:5}")
+    private long batchWindowMs;
+    @Value("${rag.rerank.timeout-ms:1500}")
+    private long timeoutMs;
+    @Value("${rag.rerank.cache-size:10000}")
+    private int cacheSize;
+
+    private final ConcurrentLinkedQueue<PendingRerank> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private ScheduledExecutorService scheduler;
+    private Map<String, Double> scoreCache;
+
+    public RerankDispatcher(RerankService rerankService,
+                            LocalRerankScorer localScorer,
+                            @Qualifier("rerankExecutor") Executor rerankExecutor,
+                            MeterRegistry meterRegistry) {
+        this.rerankService = rerankService;
+        this.localScorer = localScorer;
+        this.rerankExecutor = rerankExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rerank-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+        int capacity = cacheSize;
+        this.scoreCache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 重排 (同步接口，内部微批 + 缓存 + 超时降级)
+     *
+     * @param query 用户问题
+     * @param documents 待排序文档
+     * @param topN 返回前 N 个
+     * @return 按分数倒序的文档列表，分数写入 metadata.score
+     */
+    public List<Document> rerank(String query, List<Document> documents, int topN) {
+        if (documents == null || documents.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 1. 全部命中缓存，直接返回
+        Map<String, Double> cached = lookupCache(query, documents);
+        if (cached.size() == documents.size()) {
+            meterRegistry.counter("zhiwei.rerank.requests", "source", "cache").increment();
+            return select(documents, cached, topN, "cache");
+        }
+
+        // 2. 进入微批队列，窗口内第一个请求负责调度一次 flush
+        PendingRerank pending = new PendingRerank(query, documents, topN);
+        queue.add(pending);
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, batchWindowMs, TimeUnit.MILLISECONDS);
+        }
+
+        try {
+            List<Document> result = pending.future.get(timeoutMs + batchWindowMs, TimeUnit.MILLISECONDS);
+            meterRegistry.counter("zhiwei.rerank.requests", "source", "remote").increment();
+            return result;
+        } catch (TimeoutException | ExecutionException e) {
+            log.warn("远程 Rerank 超时或失败，降级为本地打分: {}", e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // 3. 降级：本地 BM25 + 向量分数
+        meterRegistry.counter("zhiwei.rerank.requests", "source", "local").increment();
+        return localScorer.rerank(query, documents, topN);
+    }
+
+    /**
+     * 取出窗口内的所有请求，按 query 分组后并发调用远程重排
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        Map<String, List<PendingRerank>> groups = new HashMap<>();
+        PendingRerank pending;
+        while ((pending = queue.poll()) != null) {
+            groups.computeIfAbsent(pending.query, k -> new ArrayList<>()).add(pending);
+        }
+
+        groups.forEach((query, requests) -> {
+            // 合并去重，只发送未命中缓存的文档
+            Map<String, Document> uncached = new LinkedHashMap<>();
+            for (PendingRerank request : requests) {
+                for (Document doc : request.documents) {
+                    String key = cacheKey(query, doc);
+                    if (!scoreCache.containsKey(key)) {
+                        uncached.putIfAbsent(doc.getId(), doc);
+                    }
+                }
+            }
+            if (uncached.isEmpty()) {
+                requests.forEach(this::complete);
+                return;
+            }
+
+            List<Document> batch = new ArrayList<>(uncached.values());
+            FutureTask<Map<String, Double>> task = new FutureTask<>(() -> rerankService.scoreRemote(query, batch)) {
+                @Override
+                protected void done() {
+                    onScored(query, batch, requests, this);
+                }
+            };
+            try {
+                rerankExecutor.execute(task);
+            } catch (RuntimeException e) {
+                // 线程池已满 (AbortPolicy)，直接让调用方降级
+                requests.forEach(r -> r.future.completeExceptionally(e));
+                return;
+            }
+            // 超时后中断远程调用，避免调用方已降级而线程池仍被慢请求占满
+            scheduler.schedule(() -> task.cancel(true), timeoutMs, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * 远程打分结束 (成功、失败或超时被取消)：写入缓存并完成同组请求
+     */
+    private void onScored(String query, List<Document> batch, List<PendingRerank> requests,
+                          FutureTask<Map<String, Double>> task) {
+        Map<String, Double> scores;
+        try {
+            scores = task.get();
+        } catch (CancellationException e) {
+            meterRegistry.counter("zhiwei.rerank.cancelled").increment();
+            TimeoutException timeout = new TimeoutException("远程 Rerank 超过 " + timeoutMs + " ms，已取消");
+            requests.forEach(r -> r.future.completeExceptionally(timeout));
+            return;
+        } catch (ExecutionException e) {
+            requests.forEach(r -> r.future.completeExceptionally(e.getCause()));
+            return;
+        } catch (InterruptedException e) {
+            // done() 时任务已结束，get 不会阻塞
+            Thread.currentThread().interrupt();
+            requests.forEach(r -> r.future.completeExceptionally(e));
+            return;
+        }
+        for (Document doc : batch) {
+            Double score = scores.get(doc.getId());
+            if (score != null) {
+                scoreCache.put(cacheKey(query, doc), score);
+            }
+        }
+        log.debug("Rerank 微批完成: query 合并请求 {} 个, 远程打分 {} 篇", requests.size(), batch.size());
+        requests.forEach(this::complete);
+    }
+
+    /**
+     * 用缓存中的分数完成请求
+     */
+    private void complete(PendingRerank request) {
+        Map<String, Double> scores = lookupCache(request.query, request.documents);
+        if (scores.size() < request.documents.size()) {
+            // 远程结果缺失部分文档 (理论上不会发生)，缺失的按 0 分处理
+            request.documents.forEach(doc -> scores.putIfAbsent(doc.getId(), 0.0));
+        }
+        request.future.complete(select(request.documents, scores, request.topN, "remote"));
+    }
+
+    private Map<String, Double> lookupCache(String query, List<Document> documents) {
+        Map<String, Double> scores = new HashMap<>(documents.size() * 2);
+        for (Document doc : documents) {
+            Double score = scoreCache.get(cacheKey(query, doc));
+            if (score != null) {
+                scores.put(doc.getId(), score);
+            }
+        }
+        return scores;
+    }
+
+    private List<Document> select(List<Document> documents, Map<String, Double> scores, int topN, String source) {
+        List<Document> sorted = new ArrayList<>(documents);
+        sorted.sort(Comparator.comparingDouble((Document d) -> scores.getOrDefault(d.getId(), 0.0)).reversed());
+        List<Document> result = new ArrayList<>(Math.min(topN, sorted.size()));
+        for (Document doc : sorted.subList(0, Math.min(topN, sorted.size()))) {
+            doc.getMetadata().put("score", scores.getOrDefault(doc.getId(), 0.0));
+            doc.getMetadata().put("rerank_source", source);
+            result.add(doc);
+        }
+        return result;
+    }
+
+    /**
+     * 缓存 Key 带上内容哈希：同一 ID 的分片被重新导入后内容变化，旧分数自动失效
+     */
+    private String cacheKey(String query, Document doc) {
+        String text = doc.getText();
+        return query + '\u0000' + doc.getId() + '\u0000' + (text == null ? 0 : text.hashCode());
+    }
+
+    private static class PendingRerank {
+        final String query;
+        final List<Document> documents;
+        final int topN;
+        final CompletableFuture<List<Document>> future = new CompletableFuture<>();
+
+        PendingRerank(String query, List<Document> documents, int topN) {
+            this.query = query;
+            this.documents = documents;
+            this.topN = topN;
+        }
+    }
+}
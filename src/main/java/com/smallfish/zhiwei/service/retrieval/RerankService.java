@@ -11,7 +11,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
 *  重排服务
@@ -23,6 +25,9 @@ public class RerankService {
     @Resource
     private DashScopeRerankModel dashScopeRerankModel;
 
+    @Resource
+    private LocalRerankScorer localRerankScorer;
+
     @Value("${rag.model}")
     private String model;
 
@@ -69,8 +74,29 @@ public class RerankService {
 
         } catch (Exception e) {
             log.error("Rerank 服务异常，降级处理", e);
-            // 降级策略：直接返回原列表的前 N 个
-            return documents.stream().limit(topN).toList();
+            // 降级策略：本地 BM25 + 向量分数融合打分，而不是简单按召回顺序截断
+            return localRerankScorer.rerank(query, documents, topN);
         }
     }
+
+    /**
+     * 远程打分 (不降级，失败直接抛出，由 RerankDispatcher 统一处理超时与降级)
+     *
+     * @param query 用户问题
+     * @param documents 待打分文档 (ID 需唯一)
+     * @return Key: 文档 ID, Value: DashScope 返回的相关性分数
+     */
+    public Map<String, Double> scoreRemote(String query, List<Document> documents) {
+        RerankRequest request = new RerankRequest(query, documents,
+                DashScopeRerankOptions.builder()
+                        .model(model)
+                        .topN(documents.size())
+                        .build());
+        RerankResponse response = dashScopeRerankModel.call(request);
+
+        Map<String, Double> scores = new HashMap<>(documents.size() * 2);
+        response.getResults().forEach(docWithScore ->
+                scores.put(docWithScore.getOutput().getId(), docWithScore.getScore()));
+        return scores;
+    }
 }
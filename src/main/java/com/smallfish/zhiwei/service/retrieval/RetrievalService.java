@@ -1,6 +1,8 @@
 package com.smallfish.zhiwei.service.retrieval;
 
 import com.smallfish.zhiwei.dto.resp.SearchResultDTO;
+import com.smallfish.zhiwei.service.base.EmbeddingService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -8,6 +10,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -21,7 +25,17 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class RetrievalService {
     private final VectorSearchService vectorSearchService;
-    private final RerankService rerankService;
+    private final EmbeddingService embeddingService;
+    private final QueryExpansionService queryExpansionService;
+    private final RerankDispatcher rerankDispatcher;
+    private final AdaptiveRecallPlanner recallPlanner;
+    private final DuplicateCollapser duplicateCollapser;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 单个候选的重排耗时 (ms) 的滑动平均，用于估算自适应截断节省的延迟
+     */
+    private volatile double rerankMsPerDoc = 0;
 
     @Value("${rag.recall.top-k}")
     private   Long recallTopK;
@@ -29,6 +43,9 @@ public class RetrievalService {
     private   int rerankTopK;
     @Value("${rag.rerank.threshold}")
     private double rerankThreshold;
+    // 本地降级打分 (BM25 + 向量融合) 与远程模型的分数分布不同，阈值单独配置
+    @Value("${rag.rerank.local-threshold:0.3}")
+    private double localRerankThreshold;
 
     /**
      * 执行完整的检索流程
@@ -46,45 +63,64 @@ public class RetrievalService {
      * @return 排序后且包含元数据的文档列表
      */
     public List<SearchResultDTO> retrieve(String query, String filterExpr) {
-        // 1. Recall (向量召回) - 快速获取候选集
-        List<SearchResultDTO> recallResults = vectorSearchService.search(query, recallTopK, filterExpr);
+        // 1. Recall (向量召回) - 快速获取候选集，复合问题拆成子查询后合并召回
+        List<SearchResultDTO> recallResults = recall(query, filterExpr);
 
         if (recallResults == null || recallResults.isEmpty()) {
             log.info("向量库未召回到任何数据，直接返回空");
             return new ArrayList<>();
         }
-        // 2. 建立 ID 映射 (Map<ID, Object>)
+        // 近重复折叠：同一份手册的多个版本只保留分数最高的一条，再决定重排深度
+        recallResults = duplicateCollapser.collapse(recallResults);
+        // 2. 自适应召回深度：根据分数分布决定送入重排的候选数，高置信时跳过重排
+        AdaptiveRecallPlanner.RecallPlan plan = recallPlanner.plan(recallResults, rerankTopK);
+        List<SearchResultDTO> candidates = recallResults.subList(0, plan.depth());
+        meterRegistry.summary("zhiwei.retrieval.recall.depth", "reason", plan.reason()).record(plan.depth());
+        log.info("召回 {} 条, 自适应深度 {} (依据: {})", recallResults.size(), plan.depth(), plan.reason());
+
+        if (plan.skipRerank()) {
+            recordSaved(recallResults.size());
+            return new ArrayList<>(candidates);
+        }
+
+        // 3. 建立 ID 映射 (Map<ID, Object>)
         // Key 是 SearchResult 的 ID (唯一)，Value 是 SearchResult 对象本身
-        Map<String, SearchResultDTO> idMap = recallResults.stream()
+        Map<String, SearchResultDTO> idMap = candidates.stream()
                 .collect(Collectors.toMap(SearchResultDTO::getId, Function.identity()));
 
-        // 3. 转换为 Document 对象，并保留 ID
+        // 4. 转换为 Document 对象，并保留 ID
         // -------------------------------------------------------------
-        List<Document> documentsForRerank = recallResults.stream()
+        List<Document> documentsForRerank = candidates.stream()
                 .map(result -> {
                     // 创建 Spring AI Document
                     // 【关键一步】把原始对象的 ID 赋值给 Document 的 ID
+                    // 召回分数一并带上，供本地降级打分使用
                     return Document.builder()
                             .id(result.getId())
                             .text(result.getContent())
+                            .metadata(LocalRerankScorer.META_RECALL_SCORE, result.getScore())
                             .build();
                 })
                 .toList();
 
-        // 4. Rerank (重排) - 传入 Document 列表
-        List<Document> rerankedDocs = rerankService.rerank(query, documentsForRerank, rerankTopK);
-        // 5. 结果还原
+        // 5. Rerank (重排) - 传入 Document 列表 (微批 + 缓存 + 超时降级)
+        long start = System.nanoTime();
+        List<Document> rerankedDocs = rerankDispatcher.rerank(query, documentsForRerank, rerankTopK);
+        updateRerankCost(System.nanoTime() - start, documentsForRerank.size());
+        recordSaved(recallResults.size() - documentsForRerank.size());
+        // 6. 结果还原
         List<SearchResultDTO> finalResults = new ArrayList<>();
 
-        // 6. 阈值过滤
+        // 7. 阈值过滤
         for (Document doc : rerankedDocs) {
             Double score = (Double) doc.getMetadata().get("score");
-            // 阈值过滤
-            if (score != null && score < rerankThreshold) {
+            // 阈值过滤 (按打分来源选择阈值)
+            double threshold = "local".equals(doc.getMetadata().get("rerank_source")) ? localRerankThreshold : rerankThreshold;
+            if (score != null && score < threshold) {
                 continue;
             }
 
-            // 7. 通过 id 召回原始对象
+            // 8. 通过 id 召回原始对象
             SearchResultDTO originalObj = idMap.get(doc.getId());
 
             if (originalObj != null) {
@@ -99,4 +135,61 @@ public class RetrievalService {
         }
         return finalResults;
     }
+
+    /**
+     * 更新单个候选的重排耗时滑动平均 (EWMA, alpha = 0.2)
+     */
+    private void updateRerankCost(long nanos, int docCount) {
+        if (docCount <= 0) {
+            return;
+        }
+        double perDoc = nanos / 1_000_000.0 / docCount;
+        rerankMsPerDoc = rerankMsPerDoc == 0 ? perDoc : rerankMsPerDoc * 0.8 + perDoc * 0.2;
+    }
+
+    /**
+     * 记录少送入重排的候选数及据此估算的节省延迟
+     */
+    private void recordSaved(int skippedDocs) {
+        if (skippedDocs <= 0) {
+            return;
+        }
+        meterRegistry.counter("zhiwei.retrieval.rerank.docs.skipped").increment(skippedDocs);
+        meterRegistry.summary("zhiwei.retrieval.rerank.saved.ms").record(skippedDocs * rerankMsPerDoc);
+    }
+
+    /**
+     * 多查询召回
+     * 子查询通过一次批量 Embedding 调用生成向量，再合并为一次 Milvus 多向量搜索，
+     * 按分片 ID 去重 (保留最高分) 后按分数倒序，耗时接近单次查询
+     */
+    private List<SearchResultDTO> recall(String query, String filterExpr) {
+        List<String> queries = queryExpansionService.expand(query);
+        if (queries.size() == 1) {
+            return vectorSearchService.search(query, recallTopK, filterExpr);
+        }
+
+        List<List<Float>> vectors;
+        try {
+            vectors = embeddingService.generateEmbedding(queries);
+        } catch (Exception e) {
+            log.warn("子查询批量向量化失败，退化为单查询召回: {}", e.getMessage());
+            return vectorSearchService.search(query, recallTopK, filterExpr);
+        }
+
+        Map<String, SearchResultDTO> merged = new LinkedHashMap<>();
+        for (List<SearchResultDTO> results : vectorSearchService.searchByVectors(vectors, recallTopK, filterExpr)) {
+            for (SearchResultDTO result : results) {
+                merged.merge(result.getId(), result, (a, b) -> score(b) > score(a) ? b : a);
+            }
+        }
+        return merged.values().stream()
+                .sorted(Comparator.comparingDouble(RetrievalService::score).reversed())
+                .limit(recallTopK)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    private static double score(SearchResultDTO result) {
+        return result.getScore() == null ? 0.0 : result.getScore();
+    }
 }
@@ -3,15 +3,22 @@ package com.smallfish.zhiwei.service.retrieval;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.smallfish.zhiwei.client.MilvusClientFactory;
+import com.smallfish.zhiwei.client.MilvusClientPool;
+import com.smallfish.zhiwei.client.MilvusIndexTuner;
+import com.smallfish.zhiwei.client.VectorPrecision;
+import com.smallfish.zhiwei.common.context.OpsTraceContext;
 import com.smallfish.zhiwei.common.constant.MilvusConstants;
+import com.smallfish.zhiwei.config.VectorStorageProperties;
 import com.smallfish.zhiwei.dto.resp.SearchResultDTO;
 import com.smallfish.zhiwei.model.BizKnowledge;
 import com.smallfish.zhiwei.service.base.EmbeddingService;
-import io.milvus.client.MilvusServiceClient;
+import com.smallfish.zhiwei.utils.MilvusFilterRewriter;
 import io.milvus.grpc.SearchResults;
 import io.milvus.param.MetricType;
-import io.milvus.param.R;
+import io.milvus.param.dml.QueryParam;
 import io.milvus.param.dml.SearchParam;
+import io.milvus.response.QueryResultsWrapper;
 import io.milvus.response.SearchResultsWrapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -20,8 +27,11 @@ import org.springframework.stereotype.Service;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 向量搜索服务
@@ -32,8 +42,11 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class VectorSearchService {
 
-    private final MilvusServiceClient milvusClient;
+    private final MilvusClientPool milvusClientPool;
     private final EmbeddingService embeddingService;
+    private final MilvusIndexTuner indexTuner;
+    private final MilvusClientFactory milvusClientFactory;
+    private final VectorStorageProperties vectorProperties;
     private final Gson gson = new Gson();
     public List<SearchResultDTO> search(String query, Long limit) {
         return search(query, limit, null);
@@ -45,81 +58,216 @@ public class VectorSearchService {
         try {
             // 1. 生成向量
             final List<Float> queryVector = embeddingService.generateEmbedding(query);
+            // 2. 搜索
+            return searchByVectors(Collections.singletonList(queryVector), limit, filterExpr).get(0);
+        } catch (Throwable e) {
+            log.error("搜索相似文档失败", e);
+            // 返回空列表
+            return Collections.emptyList();
+        }
+    }
 
-            // 2. 构建搜索参数
-            SearchParam.Builder builder = SearchParam.newBuilder()
-                    .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
-                    .withMetricType(MetricType.IP)
-                    .withLimit(limit)
-                    .withFloatVectors(Collections.singletonList(queryVector))
-                    .withVectorFieldName(BizKnowledge.FIELD_VECTOR)
-                    .withOutFields(List.of(
-                            BizKnowledge.FIELD_ID,
-                            BizKnowledge.FIELD_CONTENT,
-                            BizKnowledge.FIELD_METADATA,
-                            BizKnowledge.FIELD_SOURCE
-                    ))
-                    .withParams("{\"nprobe\":10}");
-
-            // 注入过滤表达式
-            if (filterExpr != null && !filterExpr.isEmpty()) {
-                builder.withExpr(filterExpr);
-            }
+    /**
+     * 多向量搜索：N 个查询向量合并为一次 Milvus 请求 (nq = N)
+     * @param queryVectors 查询向量列表
+     * @return 与查询向量一一对应的结果列表，失败时每个位置都是空列表
+     */
+    public List<List<SearchResultDTO>> searchByVectors(List<List<Float>> queryVectors, Long limit, String filterExpr) {
+        return searchByVectorsAsync(queryVectors, limit, filterExpr).join();
+    }
+
+    /**
+     * 异步搜索单个查询 (向量化在调用线程完成，检索不阻塞线程)
+     */
+    public CompletableFuture<List<SearchResultDTO>> searchAsync(String query, Long limit, String filterExpr) {
+        final List<Float> queryVector;
+        try {
+            queryVector = embeddingService.generateEmbedding(query);
+        } catch (Throwable e) {
+            log.error("查询向量化失败", e);
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        return searchByVectorsAsync(Collections.singletonList(queryVector), limit, filterExpr)
+                .thenApply(all -> all.get(0));
+    }
+
+    /**
+     * 异步多向量搜索：走 Milvus 连接池的 searchAsync，失败时每个位置都是空列表
+     */
+    public CompletableFuture<List<List<SearchResultDTO>>> searchByVectorsAsync(List<List<Float>> queryVectors,
+                                                                               Long limit, String filterExpr) {
+        final SearchParam searchParam;
+        // 开启全精度重打分时先过采样。只有 FLOAT32 存储能取回全精度向量；
+        // 半精度存储的向量与索引同样有损，重打分没有意义，结果即为近似值
+        final VectorPrecision precision = milvusClientFactory.getActiveProfile().precision();
+        final int rescoreFactor = precision == VectorPrecision.FLOAT32 ? Math.max(1, vectorProperties.getRescoreFactor()) : 1;
+        final long fetchLimit = limit * rescoreFactor;
+        try {
+            // 1. 构建搜索参数 (租户等线程上下文必须在当前线程读取)
+            searchParam = buildSearchParam(queryVectors, fetchLimit, filterExpr);
+        } catch (Throwable e) {
+            log.error("构建搜索参数失败", e);
+            return CompletableFuture.completedFuture(emptyResults(queryVectors.size()));
+        }
+
+        // 2. 执行搜索，3. 按查询向量逐个解析结果
+        CompletableFuture<SearchResults> future;
+        try {
+            future = milvusClientPool.searchAsync(searchParam);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        return future
+                .thenApply(data -> {
+                    final SearchResultsWrapper wrapper = new SearchResultsWrapper(data.getResults());
+                    List<List<SearchResultDTO>> all = new ArrayList<>(queryVectors.size());
+                    for (int q = 0; q < queryVectors.size(); q++) {
+                        all.add(parseResults(wrapper, q));
+                    }
+                    log.info("搜索完成, 查询向量 {} 个, 找到 {} 个相似文档", queryVectors.size(),
+                            all.stream().mapToInt(List::size).sum());
+                    return all;
+                })
+                .thenCompose(all -> rescoreFactor > 1
+                        ? rescore(queryVectors, all, limit.intValue(), precision)
+                        : CompletableFuture.completedFuture(all))
+                .exceptionally(e -> {
+                    log.error("搜索相似文档失败", e);
+                    // 每个查询都返回空列表
+                    return emptyResults(queryVectors.size());
+                });
+    }
 
-            final SearchParam searchParam = builder.build();
-            // 3. 执行搜索
-            final R<SearchResults> response = milvusClient.search(searchParam);
+    private SearchParam buildSearchParam(List<List<Float>> queryVectors, Long limit, String filterExpr) {
+        SearchParam.Builder builder = SearchParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withMetricType(MetricType.IP)
+                .withLimit(limit)
+                .withVectorFieldName(BizKnowledge.FIELD_VECTOR)
+                .withOutFields(List.of(
+                        BizKnowledge.FIELD_ID,
+                        BizKnowledge.FIELD_CONTENT,
+                        BizKnowledge.FIELD_METADATA,
+                        BizKnowledge.FIELD_SOURCE
+                ))
+                // nprobe / ef 按当前索引类型与行数推导
+                .withParams(indexTuner.searchParams(limit.intValue()));
 
-            if (response.getStatus() != R.Status.Success.getCode()) {
-                throw new RuntimeException("向量搜索失败: " + response.getMessage());
+        // 查询向量按存储精度编码
+        milvusClientFactory.getActiveProfile().precision().withVectors(builder, queryVectors);
+
+        // 注入过滤表达式：后缀匹配改写为 category 倒排索引，追加租户条件命中 Partition Key
+        String expr = MilvusFilterRewriter.rewrite(filterExpr, OpsTraceContext.currentTenant(),
+                milvusClientFactory.isPartitionKeyEnabled());
+        if (expr != null && !expr.isEmpty()) {
+            log.debug("过滤表达式: {} -> {}", filterExpr, expr);
+            builder.withExpr(expr);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 全精度重打分：取回候选的 float32 存储向量，与查询向量精确计算内积，重新排序后截断到 limit
+     * (用于 IVF_PQ 等量化索引，索引里的向量有损但存储的原始向量是全精度的)
+     */
+    private CompletableFuture<List<List<SearchResultDTO>>> rescore(List<List<Float>> queryVectors,
+                                                                   List<List<SearchResultDTO>> all, int limit,
+                                                                   VectorPrecision precision) {
+        List<String> ids = all.stream().flatMap(List::stream).map(SearchResultDTO::getId).distinct().toList();
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(all);
+        }
+        QueryParam queryParam = QueryParam.newBuilder()
+                .withCollectionName(MilvusConstants.MILVUS_COLLECTION_NAME)
+                .withExpr(MilvusFilterRewriter.inList(BizKnowledge.FIELD_ID, ids))
+                .withOutFields(List.of(BizKnowledge.FIELD_ID, BizKnowledge.FIELD_VECTOR))
+                .build();
+
+        return milvusClientPool.queryAsync(queryParam).thenApply(data -> {
+            QueryResultsWrapper wrapper = new QueryResultsWrapper(data);
+            List<?> idData = wrapper.getFieldWrapper(BizKnowledge.FIELD_ID).getFieldData();
+            List<?> vectorData = wrapper.getFieldWrapper(BizKnowledge.FIELD_VECTOR).getFieldData();
+            Map<String, List<Float>> stored = new HashMap<>(idData.size() * 2);
+            for (int i = 0; i < idData.size(); i++) {
+                stored.put(String.valueOf(idData.get(i)), precision.decode(vectorData.get(i)));
             }
 
-            // 4. 解析结果
-            final SearchResultsWrapper wrapper = new SearchResultsWrapper(response.getData().getResults());
-            final List<SearchResultsWrapper.IDScore> scores = wrapper.getIDScore(0);
-            // 获取字段数据列表 (注意：这里返回的是整列数据)
-            List<?> contents = wrapper.getFieldData(BizKnowledge.FIELD_CONTENT, 0);
-            List<?> metadatas = wrapper.getFieldData(BizKnowledge.FIELD_METADATA, 0);
-            List<?> sources = wrapper.getFieldData(BizKnowledge.FIELD_SOURCE, 0);
-
-            List<SearchResultDTO> results = new ArrayList<>();
-            // 预定义 Map 类型，避免循环中重复创建
-            Type mapType = new TypeToken<Map<String, Object>>(){}.getType();
-            for (int i = 0; i < scores.size(); i++) {
-                // 安全获取各字段，防止越界
-                String contentStr = (contents != null && i < contents.size()) ? String.valueOf(contents.get(i)) : "";
-                String sourceStr = (sources != null && i < sources.size()) ? String.valueOf(sources.get(i)) : "";
-                // 设置元数据
-                Map<String, Object> metaMap = Collections.emptyMap();
-                if (metadatas != null && i < metadatas.size()) {
-                    Object metaObj = metadatas.get(i);
-                    try {
-                        if (metaObj instanceof JsonObject) {
-                            metaMap = gson.fromJson((JsonObject) metaObj, mapType);
-                        } else if (metaObj instanceof String) {
-                            metaMap = gson.fromJson((String) metaObj, mapType);
-                        } else if (metaObj instanceof Map) {
-                            metaMap = (Map<String, Object>) metaObj;
-                        }
-                    } catch (Exception e) {
-                        log.warn("Metadata 解析失败，ID: {}", scores.get(i).getStrID());
+            List<List<SearchResultDTO>> rescored = new ArrayList<>(all.size());
+            for (int q = 0; q < all.size(); q++) {
+                List<Float> query = queryVectors.get(q);
+                List<SearchResultDTO> results = new ArrayList<>(all.get(q));
+                for (SearchResultDTO result : results) {
+                    List<Float> vector = stored.get(result.getId());
+                    if (vector != null) {
+                        result.setScore((float) dot(query, vector));
                     }
                 }
-                results.add(SearchResultDTO.builder()
-                        .id(scores.get(i).getStrID())
-                        .score(scores.get(i).getScore())
-                        .content(contentStr)
-                        .source(sourceStr)
-                        .metadata(metaMap)
-                        .build());
+                results.sort(Comparator.comparing(SearchResultDTO::getScore, Comparator.nullsLast(Comparator.reverseOrder())));
+                rescored.add(results.size() > limit ? results.subList(0, limit) : results);
             }
-            log.info("搜索完成, 找到 {} 个相似文档", results.size());
-            return results;
-        } catch (Throwable e) {
-            log.error("搜索相似文档失败", e);
-            // 返回空列表
-            return Collections.emptyList();
+            return rescored;
+        });
+    }
+
+    private static double dot(List<Float> a, List<Float> b) {
+        double sum = 0;
+        for (int i = 0, n = Math.min(a.size(), b.size()); i < n; i++) {
+            sum += a.get(i) * b.get(i);
+        }
+        return sum;
+    }
+
+    private List<List<SearchResultDTO>> emptyResults(int size) {
+        List<List<SearchResultDTO>> empty = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            empty.add(Collections.emptyList());
+        }
+        return empty;
+    }
+
+    /**
+     * 解析第 index 个查询向量的结果
+     */
+    @SuppressWarnings("unchecked")
+    private List<SearchResultDTO> parseResults(SearchResultsWrapper wrapper, int index) {
+        final List<SearchResultsWrapper.IDScore> scores = wrapper.getIDScore(index);
+        // 获取字段数据列表 (注意：这里返回的是整列数据)
+        List<?> contents = wrapper.getFieldData(BizKnowledge.FIELD_CONTENT, index);
+        List<?> metadatas = wrapper.getFieldData(BizKnowledge.FIELD_METADATA, index);
+        List<?> sources = wrapper.getFieldData(BizKnowledge.FIELD_SOURCE, index);
+
+        List<SearchResultDTO> results = new ArrayList<>();
+        // 预定义 Map 类型，避免循环中重复创建
+        Type mapType = new TypeToken<Map<String, Object>>(){}.getType();
+        for (int i = 0; i < scores.size(); i++) {
+            // 安全获取各字段，防止越界
+            String contentStr = (contents != null && i < contents.size()) ? String.valueOf(contents.get(i)) : "";
+            String sourceStr = (sources != null && i < sources.size()) ? String.valueOf(sources.get(i)) : "";
+            // 设置元数据
+            Map<String, Object> metaMap = Collections.emptyMap();
+            if (metadatas != null && i < metadatas.size()) {
+                Object metaObj = metadatas.get(i);
+                try {
+                    if (metaObj instanceof JsonObject) {
+                        metaMap = gson.fromJson((JsonObject) metaObj, mapType);
+                    } else if (metaObj instanceof String) {
+                        metaMap = gson.fromJson((String) metaObj, mapType);
+                    } else if (metaObj instanceof Map) {
+                        metaMap = (Map<String, Object>) metaObj;
+                    }
+                } catch (Exception e) {
+                    log.warn("Metadata 解析失败，ID: {}", scores.get(i).getStrID());
+                }
+            }
+            results.add(SearchResultDTO.builder()
+                    .id(scores.get(i).getStrID())
+                    .score(scores.get(i).getScore())
+                    .content(contentStr)
+                    .source(sourceStr)
+                    .metadata(metaMap)
+                    .build());
         }
+        return results;
     }
 
 }
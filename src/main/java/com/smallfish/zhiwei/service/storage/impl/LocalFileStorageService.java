@@ -2,6 +2,7 @@ package com.smallfish.zhiwei.service.storage.impl;
 
 import com.smallfish.zhiwei.config.FileUploadConfig;
 import com.smallfish.zhiwei.dto.req.FileUploadReqDTO;
+import com.smallfish.zhiwei.service.ingestion.parser.DocumentParserRegistry;
 import com.smallfish.zhiwei.service.storage.FileStorageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -11,11 +12,16 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -29,6 +35,7 @@ import java.util.stream.Stream;
 public class LocalFileStorageService implements FileStorageService {
 
     private final FileUploadConfig fileUploadConfig;
+    private final DocumentParserRegistry parserRegistry;
 
     // 最大 100 MB
     private static final int FILE_SIZE_MAX = 100 * 1024 * 1024;
@@ -67,17 +74,24 @@ public class LocalFileStorageService implements FileStorageService {
             // 使用原始文件名
             Path filePath = uploadDir.resolve(originalFilename).normalize();
 
-            // 原子性文件写入
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            // 流式写入临时文件，同一遍读取中计算内容哈希，完成后原子替换
+            // (避免目录监听读到写了一半的文件，也不需要再把文件读回内存)
+            Path tmpPath = uploadDir.resolve("." + originalFilename + ".uploading");
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, tmpPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.move(tmpPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             log.info("文件存储成功: {}", filePath);
 
-            return new FileUploadReqDTO(
-                    originalFilename,
-                    filePath.toString(),
-                    file.getSize()
-            );
+            return FileUploadReqDTO.builder()
+                    .fileName(originalFilename)
+                    .filePath(filePath.toString())
+                    .fileSize(file.getSize())
+                    .contentHash(HexFormat.of().formatHex(digest.digest()))
+                    .build();
 
-        } catch (IOException e) {
+        } catch (IOException | NoSuchAlgorithmException e) {
             log.error("文件存储失败", e);
             throw new RuntimeException("文件存储失败: " + e.getMessage(), e);
         }
@@ -94,13 +108,15 @@ public class LocalFileStorageService implements FileStorageService {
 
         try (Stream<Path> pathStream = Files.walk(uploadDir, 1)) {
             pathStream.filter(Files::isRegularFile)
+                    // 跳过隐藏文件 (如目录同步的清单 .kb-manifest.json)
+                    .filter(path -> !path.getFileName().toString().startsWith("."))
                     .forEach(path -> {
                         try {
-                            files.add(new FileUploadReqDTO(
-                                    path.getFileName().toString(),
-                                    path.toAbsolutePath().toString(),
-                                    Files.size(path)
-                            ));
+                            files.add(FileUploadReqDTO.builder()
+                                    .fileName(path.getFileName().toString())
+                                    .filePath(path.toAbsolutePath().toString())
+                                    .fileSize(Files.size(path))
+                                    .build());
                         } catch (IOException e) {
                             log.warn("无法获取文件信息: {}", path, e);
                         }
@@ -117,7 +133,7 @@ public class LocalFileStorageService implements FileStorageService {
     public String readFileContent(String pathStr) {
         try {
             Path path = Paths.get(pathStr);
-            return Files.readString(path);
+            return parserRegistry.readAsMarkdown(path);
         } catch (IOException e) {
             throw new RuntimeException("读取文件内容失败: " + e.getMessage(), e);
         }
@@ -125,9 +141,10 @@ public class LocalFileStorageService implements FileStorageService {
 
     /**
      * 读取文件内容 (Overload for File object)
+     * PDF / DOCX / HTML 经解析器转为 Markdown，文本文件原样返回
      */
     public String readFileContent(File file) throws IOException {
-        return Files.readString(file.toPath());
+        return parserRegistry.readAsMarkdown(file.toPath());
     }
 
     @Override
@@ -177,4 +194,31 @@ public class LocalFileStorageService implements FileStorageService {
         return List.of(files);
     }
 
+    /**
+     * 递归扫描目录，获取符合配置扩展名的文件列表 (按路径排序)
+     */
+    public List<Path> walkDirectory(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            throw new IllegalArgumentException("目录不存在: " + root);
+        }
+        try (Stream<Path> stream = Files.walk(root)) {
+            return stream
+                    .filter(Files::isRegularFile)
+                    .filter(path -> {
+                        String lowerName = path.getFileName().toString().toLowerCase();
+                        return fileUploadConfig.getAllowedExtensions().stream()
+                                .anyMatch(ext -> lowerName.endsWith(ext.toLowerCase()));
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * 文件相对根目录的来源路径 (统一用 / 分隔)，与批量导入、目录同步写入 Milvus 的 source 一致
+     */
+    public static String sourceOf(Path root, Path file) {
+        return root.relativize(file).toString().replace(root.getFileSystem().getSeparator(), "/");
+    }
+
 }
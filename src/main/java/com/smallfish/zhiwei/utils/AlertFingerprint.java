@@ -0,0 +1,68 @@
+package com.smallfish.zhiwei.utils;
+
+import cn.hutool.crypto.digest.DigestUtil;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * 告警指纹工具类
+ * 指纹 = 排序后的标签 (去掉 Pod 名等易变标签) + 归一化描述 的 SHA-1。
+ * 描述中的数字、IP、十六进制 ID 统一替换为占位符，"CPU 使用率 91.2%" 与 "CPU 使用率 87.5%" 得到相同指纹。
+ */
+public class AlertFingerprint {
+
+    private static final Pattern IP = Pattern.compile("\\b\\d{1,3}(\\.\\d{1,3}){3}(:\\d+)?\\b");
+    private static final Pattern HEX_ID = Pattern.compile("\\b[0-9a-f]{8,}\\b");
+    private static final Pattern NUMBER = Pattern.compile("\\d+(\\.\\d+)?");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private AlertFingerprint() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 计算指纹
+     *
+     * @param labels 告警标签
+     * @param description 告警描述
+     * @param ignoredLabels 不参与指纹的标签
+     */
+    public static String of(Map<String, String> labels, String description, Collection<String> ignoredLabels) {
+        return DigestUtil.sha1Hex(signature(labels, ignoredLabels) + "|" + normalize(description));
+    }
+
+    /**
+     * 排序后的标签串 (也用于生成检索文本)
+     */
+    public static String signature(Map<String, String> labels, Collection<String> ignoredLabels) {
+        Map<String, String> sorted = new TreeMap<>();
+        if (labels != null) {
+            labels.forEach((key, value) -> {
+                if (ignoredLabels == null || !ignoredLabels.contains(key)) {
+                    sorted.put(key, value);
+                }
+            });
+        }
+        StringBuilder sb = new StringBuilder();
+        sorted.forEach((key, value) -> sb.append(key).append('=').append(value).append(','));
+        return sb.toString();
+    }
+
+    /**
+     * 归一化描述：小写、替换数字 / IP / 十六进制 ID、合并空白
+     */
+    public static String normalize(String description) {
+        if (description == null) {
+            return "";
+        }
+        String text = description.toLowerCase(Locale.ROOT);
+        text = IP.matcher(text).replaceAll("<ip>");
+        text = HEX_ID.matcher(text).replaceAll("<id>");
+        text = NUMBER.matcher(text).replaceAll("<n>");
+        return SPACES.matcher(text).replaceAll(" ").trim();
+    }
+}
@@ -2,6 +2,7 @@ package com.smallfish.zhiwei.utils;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
+import com.smallfish.zhiwei.client.VectorPrecision;
 import com.smallfish.zhiwei.model.BizKnowledge;
 import io.milvus.param.dml.InsertParam;
 
@@ -16,6 +17,16 @@ public class MilvusEntityConverter {
      * 将实体列表转换为 Milvus 插入所需的字段列表
      */
     public static List<InsertParam.Field> toInsertFields(List<BizKnowledge> entities) {
+        return toInsertFields(entities, true, VectorPrecision.FLOAT32);
+    }
+
+    /**
+     * 将实体列表转换为 Milvus 插入所需的字段列表
+     * @param withPartitionFields 集合是否包含 tenant_id / category 字段 (旧集合没有)
+     * @param precision 向量存储精度，float16 / bfloat16 需要编码为 ByteBuffer
+     */
+    public static List<InsertParam.Field> toInsertFields(List<BizKnowledge> entities, boolean withPartitionFields,
+                                                         VectorPrecision precision) {
         List<String> ids = entities.stream().map(BizKnowledge::getId).toList();
         List<String> contents = entities.stream().map(BizKnowledge::getContent).toList();
         List<List<Float>> vectors = entities.stream().map(BizKnowledge::getVector).toList();
@@ -27,9 +38,15 @@ public class MilvusEntityConverter {
         List<InsertParam.Field> fields = new ArrayList<>();
         fields.add(new InsertParam.Field(BizKnowledge.FIELD_ID, ids));
         fields.add(new InsertParam.Field(BizKnowledge.FIELD_CONTENT, contents));
-        fields.add(new InsertParam.Field(BizKnowledge.FIELD_VECTOR, vectors));
+        fields.add(new InsertParam.Field(BizKnowledge.FIELD_VECTOR, precision.encodeAll(vectors)));
         fields.add(new InsertParam.Field(BizKnowledge.FIELD_METADATA, metadataList));
         fields.add(new InsertParam.Field(BizKnowledge.FIELD_SOURCE, source));
+        if (withPartitionFields) {
+            fields.add(new InsertParam.Field(BizKnowledge.FIELD_TENANT,
+                    entities.stream().map(BizKnowledge::getTenantId).toList()));
+            fields.add(new InsertParam.Field(BizKnowledge.FIELD_CATEGORY,
+                    entities.stream().map(BizKnowledge::getCategory).toList()));
+        }
 
         return fields;
     }
@@ -0,0 +1,103 @@
+package com.smallfish.zhiwei.utils;
+
+import com.smallfish.zhiwei.model.BizKnowledge;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/*
+*  Milvus 过滤表达式改写
+*  1. source like '%.md' 这类按后缀的模糊匹配是逐行标量扫描，改写为 category == "md" (倒排索引)
+*  2. 追加租户条件 tenant_id in [租户, default]，命中 Partition Key 后只检索对应分区
+* */
+public class MilvusFilterRewriter {
+
+    /**
+     * 匹配 source like '%.md' / source like "%.md"
+     */
+    private static final Pattern SUFFIX_LIKE = Pattern.compile(
+            BizKnowledge.FIELD_SOURCE + "\\s+like\\s+(['\"])%\\.([A-Za-z0-9]{1,10})\\1",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 租户 ID 只允许安全字符，防止表达式注入
+     */
+    private static final Pattern SAFE_TAG = Pattern.compile("[A-Za-z0-9_.:-]{1,64}");
+
+    private MilvusFilterRewriter() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 改写过滤表达式
+     * @param filterExpr 原始表达式 (可为空)
+     * @param tenantId 当前租户 (可为空，为空时不加租户条件)
+     * @param partitionFields 集合是否带 tenant_id / category 字段
+     * @return 改写后的表达式，可能为 null
+     */
+    public static String rewrite(String filterExpr, String tenantId, boolean partitionFields) {
+        if (!partitionFields) {
+            return filterExpr;
+        }
+        String expr = filterExpr == null || filterExpr.isBlank() ? null : filterExpr.trim();
+
+        if (expr != null) {
+            Matcher matcher = SUFFIX_LIKE.matcher(expr);
+            StringBuilder sb = new StringBuilder();
+            while (matcher.find()) {
+                String category = matcher.group(2).toLowerCase(Locale.ROOT);
+                matcher.appendReplacement(sb, Matcher.quoteReplacement(
+                        BizKnowledge.FIELD_CATEGORY + " == \"" + category + "\""));
+            }
+            matcher.appendTail(sb);
+            expr = sb.toString();
+        }
+
+        if (tenantId == null || !SAFE_TAG.matcher(tenantId).matches()) {
+            return expr;
+        }
+        String tenantExpr = BizKnowledge.DEFAULT_TENANT.equals(tenantId)
+                ? String.format("%s == \"%s\"", BizKnowledge.FIELD_TENANT, tenantId)
+                : String.format("%s in [\"%s\", \"%s\"]", BizKnowledge.FIELD_TENANT, tenantId, BizKnowledge.DEFAULT_TENANT);
+        return expr == null ? tenantExpr : tenantExpr + " && (" + expr + ")";
+    }
+
+    /**
+     * 表达式中的字符串字面量 (转义反斜杠与双引号)
+     */
+    public static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * field in ["a", "b"] 表达式，值逐个转义
+     */
+    public static String inList(String field, Collection<String> values) {
+        return field + " in " + listOf(values);
+    }
+
+    /**
+     * field not in ["a", "b"] 表达式，值逐个转义
+     */
+    public static String notInList(String field, Collection<String> values) {
+        return field + " not in " + listOf(values);
+    }
+
+    private static String listOf(Collection<String> values) {
+        return "[" + values.stream().map(MilvusFilterRewriter::quote).collect(Collectors.joining(",")) + "]";
+    }
+
+    /**
+     * 由文件名推导文档类别 (小写后缀，无后缀时为 unknown)
+     */
+    public static String categoryOf(String fileName) {
+        int dotIndex = fileName == null ? -1 : fileName.lastIndexOf('.');
+        if (dotIndex < 0 || dotIndex == fileName.length() - 1) {
+            return "unknown";
+        }
+        return fileName.substring(dotIndex + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,60 @@
+package com.smallfish.zhiwei.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+/**
+ * SimHash 工具类
+ * 以字符 3-gram 为特征 (对中文无需分词)，空白归一、忽略大小写，生成 64 位指纹。
+ * 内容相近的文本指纹的汉明距离小，运维手册不同版本间的小改动通常在 3 位以内。
+ */
+public class SimHash {
+
+    private static final int SHINGLE = 3;
+
+    private SimHash() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 计算 64 位 SimHash
+     *
+     * @param text 文本
+     * @return 指纹 (空文本返回 0)
+     */
+    public static long of(String text) {
+        if (text == null || text.isBlank()) {
+            return 0L;
+        }
+        String normalized = text.toLowerCase().replaceAll("\\s+", " ").trim();
+        int[] weights = new int[64];
+        int shingles = Math.max(1, normalized.length() - SHINGLE + 1);
+        for (int i = 0; i < shingles; i++) {
+            String gram = normalized.substring(i, Math.min(normalized.length(), i + SHINGLE));
+            long hash = MurmurHash.hash64(gram);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1L) == 1L ? 1 : -1;
+            }
+        }
+        long fingerprint = 0L;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 汉明距离
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * 第 band 段的 16 位值 (LSH 分桶用，4 段)
+     */
+    public static int band(long fingerprint, int band) {
+        return (int) ((fingerprint >>> (band * 16)) & 0xFFFF);
+    }
+}
@@ -0,0 +1,37 @@
+package com.smallfish.zhiwei.utils;
+
+import java.util.Locale;
+
+/**
+ * 限流错误识别工具类
+ * DashScope 限流返回 429 或 Throttling.*，Milvus 限流返回 "rate limit exceeded"，沿异常链逐层匹配。
+ */
+public class ThrottlingErrors {
+
+    private static final String[] MARKERS = {
+            "throttling", "429", "too many requests", "rate limit", "ratelimit", "quota exceeded"
+    };
+
+    private ThrottlingErrors() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 是否为限流错误
+     */
+    public static boolean isThrottled(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            String message = t.getMessage();
+            if (message == null) {
+                continue;
+            }
+            String lower = message.toLowerCase(Locale.ROOT);
+            for (String marker : MARKERS) {
+                if (lower.contains(marker)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
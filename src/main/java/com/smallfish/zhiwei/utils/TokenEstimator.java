@@ -0,0 +1,72 @@
+package com.smallfish.zhiwei.utils;
+
+/**
+ * Token 估算工具类
+ * 本地粗略估算文本的 Token 数，不依赖远程分词服务。
+ * 经验值：中日韩字符约 1 字 = 1 token，其余字符约 4 字符 = 1 token。
+ */
+public class TokenEstimator {
+
+    private TokenEstimator() {
+        // 工具类，禁止实例化
+    }
+
+    /**
+     * 估算文本 Token 数
+     *
+     * @param text 文本
+     * @return 估算的 Token 数 (空文本返回 0)
+     */
+    public static int estimate(CharSequence text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 计算文本 UTF-8 编码后的字节数 (不分配新的 byte[])
+     */
+    public static int utf8Length(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // 代理对 (如 emoji) 合计 4 字节
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+}
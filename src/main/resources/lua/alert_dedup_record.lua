@@ -0,0 +1,45 @@
+-- 告警滑动窗口去重：记录一次触发并给出处置决策 (原子执行，一次往返)
+-- KEYS[1] 触发时间 ZSET   KEYS[2] 告警轮次 ZSET (member = startsAt)   KEYS[3] 处置状态 HASH
+-- ARGV[1] 触发记录 ID   ARGV[2] startsAt   ARGV[3] 窗口 ms   ARGV[4] 保留 ms   ARGV[5] 诊断冷却 ms
+-- ARGV[6] 升级触发次数   ARGV[7] 升级抖动次数   ARGV[8] 升级冷却 ms   ARGV[9] Key 过期 ms
+-- 返回 {决策, 原因, 窗口内触发次数, 窗口内抖动次数, 窗口内首次触发时间 ms}
+
+-- 使用 Redis 时钟，多实例之间没有时钟漂移
+redis.replicate_commands()
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local windowStart = now - tonumber(ARGV[3])
+local retentionStart = now - tonumber(ARGV[4])
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', '(' .. retentionStart)
+redis.call('ZADD', KEYS[1], now, ARGV[1])
+redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', '(' .. retentionStart)
+if ARGV[2] ~= '' then
+    -- 只记录每一轮首次出现的时间
+    redis.call('ZADD', KEYS[2], 'NX', now, ARGV[2])
+end
+
+local count = redis.call('ZCOUNT', KEYS[1], windowStart, '+inf')
+-- 第一轮不算抖动
+local flaps = math.max(redis.call('ZCOUNT', KEYS[2], windowStart, '+inf') - 1, 0)
+local first = redis.call('ZRANGEBYSCORE', KEYS[1], windowStart, '+inf', 'WITHSCORES', 'LIMIT', 0, 1)
+
+local lastDiagnose = tonumber(redis.call('HGET', KEYS[3], 'diagnose') or '0')
+local lastEscalate = tonumber(redis.call('HGET', KEYS[3], 'escalate') or '0')
+
+local decision = 'SUPPRESS'
+local reason = 'cooldown'
+if now - lastDiagnose >= tonumber(ARGV[5]) then
+    decision = 'DIAGNOSE'
+    reason = lastDiagnose == 0 and 'new' or 'cooldown_expired'
+    redis.call('HSET', KEYS[3], 'diagnose', now)
+elseif (count >= tonumber(ARGV[6]) or flaps >= tonumber(ARGV[7])) and now - lastEscalate >= tonumber(ARGV[8]) then
+    decision = 'ESCALATE'
+    reason = flaps >= tonumber(ARGV[7]) and 'flapping' or 'frequent'
+    redis.call('HSET', KEYS[3], 'diagnose', now, 'escalate', now)
+end
+
+for i = 1, 3 do
+    redis.call('PEXPIRE', KEYS[i], ARGV[9])
+end
+return {decision, reason, count, flaps, tonumber(first[2])}
@@ -0,0 +1,19 @@
+-- 告警频率统计 (只读)
+-- KEYS[1] 触发时间 ZSET   KEYS[2] 告警轮次 ZSET   KEYS[3] 处置状态 HASH
+-- ARGV[1] 窗口 ms
+-- 返回 {当前时间 ms, 窗口内触发次数, 保留期内触发次数, 窗口内抖动次数, 首次触发 ms, 最近触发 ms, 上次诊断 ms, 上次升级 ms}
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local windowStart = now - tonumber(ARGV[1])
+
+local count = redis.call('ZCOUNT', KEYS[1], windowStart, '+inf')
+local total = redis.call('ZCARD', KEYS[1])
+local flaps = math.max(redis.call('ZCOUNT', KEYS[2], windowStart, '+inf') - 1, 0)
+local first = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+local last = redis.call('ZRANGE', KEYS[1], -1, -1, 'WITHSCORES')
+local state = redis.call('HMGET', KEYS[3], 'diagnose', 'escalate')
+
+return {now, count, total, flaps,
+        tonumber(first[2]) or 0, tonumber(last[2]) or 0,
+        tonumber(state[1]) or 0, tonumber(state[2]) or 0}
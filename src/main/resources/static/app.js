@@ -1185,6 +1185,17 @@ class SuperBizAgentApp {
             }
 
             let fullResponse = '';
+            // 进度信息 (节点切换、工具调用)，只在生成过程中展示，不计入最终报告
+            let progressLog = '';
+            const renderStreaming = () => {
+                if (loadingMessageElement) {
+                    this.updateAIOpsStreamContent(loadingMessageElement, progressLog + fullResponse);
+                }
+            };
+            const appendProgress = (text) => {
+                progressLog += `> ${text || ''}\n\n`;
+                renderStreaming();
+            };
 
             // 处理 SSE 流式响应
             const reader = response.body.getReader();
@@ -1247,9 +1258,9 @@ class SuperBizAgentApp {
                                                         this.sessionId = chatResp.conversationId;
                                                     }
                                                     // 实时更新显示
-                                                    if (loadingMessageElement) {
-                                                        this.updateAIOpsStreamContent(loadingMessageElement, fullResponse);
-                                                    }
+                                                    renderStreaming();
+                                                } else if (chatResp.type === 'tool_log') {
+                                                    appendProgress(chatResp.answer);
                                                 } else if (chatResp.type === 'done') {
                                                     console.log('AI Ops 流完成，最终内容长度:', fullResponse.length);
                                                     this.updateAIOpsMessage(loadingMessageElement, fullResponse, chatResp.details || []);
@@ -1282,9 +1293,9 @@ class SuperBizAgentApp {
                                             if (chatResp.conversationId) {
                                                 this.sessionId = chatResp.conversationId;
                                             }
-                                            if (loadingMessageElement) {
-                                                this.updateAIOpsStreamContent(loadingMessageElement, fullResponse);
-                                            }
+                                            renderStreaming();
+                                        } else if (chatResp.type === 'tool_log') {
+                                            appendProgress(chatResp.answer);
                                         } else if (chatResp.type === 'done') {
                                             console.log('AI Ops 流完成，最终内容长度:', fullResponse.length);
                                             this.updateAIOpsMessage(loadingMessageElement, fullResponse, chatResp.details || []);
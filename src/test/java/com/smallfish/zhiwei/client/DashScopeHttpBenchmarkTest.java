@@ -0,0 +1,144 @@
+package com.smallfish.zhiwei.client;
+
+import com.smallfish.zhiwei.config.DashScopeHttpProperties;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * DashScope HTTP 客户端压测：本地模拟服务 (固定 20ms 响应)，200 并发
+ * 对比共享连接池的 RestClient 与每次新建 HttpClient (不复用连接) 的 p99 延迟和连接数。
+ * 本地模拟服务只支持 HTTP/1.1，HTTP/2 多路复用需要对真实 TLS 端点验证。
+ */
+@Slf4j
+public class DashScopeHttpBenchmarkTest {
+
+    private static final int CONCURRENCY = 200;
+    private static final int REQUESTS = 2000;
+    // 每次新建 HttpClient 的对照组开销大，只跑少量请求
+    private static final int FRESH_REQUESTS = 400;
+    private static final String PATH = "/api/v1/services/embeddings/text-embedding/text-embedding";
+
+    private static HttpServer server;
+    private static final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            remotePorts.add(exchange.getRemoteAddress().getPort());
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = "{\"output\":{\"embeddings\":[]}}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void compareConnectionReuse() throws Exception {
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        DashScopeHttpProperties properties = new DashScopeHttpProperties();
+        properties.setVersion("HTTP_1_1");
+        // 空闲连接池不小于并发数，否则超出的连接用完即关，复用率下降
+        properties.setMaxConnections(CONCURRENCY);
+        ProfiledClientHttpRequestFactory factory = new ProfiledClientHttpRequestFactory(properties);
+        Assertions.assertEquals("embedding", factory.profileOf(URI.create(base + PATH)));
+        Assertions.assertEquals("rerank", factory.profileOf(URI.create(base + "/api/v1/services/rerank/text-rerank/text-rerank")));
+        Assertions.assertEquals("chat", factory.profileOf(URI.create(base + "/api/v1/services/aigc/text-generation/generation")));
+
+        RestClient pooled = RestClient.builder().requestFactory(factory).baseUrl(base).build();
+        // 预热
+        run(() -> pooled, 200);
+
+        remotePorts.clear();
+        Result shared = run(() -> pooled, REQUESTS);
+        int sharedConnections = remotePorts.size();
+
+        remotePorts.clear();
+        Result fresh = run(() -> {
+            JdkClientHttpRequestFactory single = new JdkClientHttpRequestFactory(HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(3))
+                    .build());
+            return RestClient.builder().requestFactory(single).baseUrl(base).build();
+        }, FRESH_REQUESTS);
+        int freshConnections = remotePorts.size();
+
+        log.info("共享连接池: p50 {} ms, p99 {} ms, 连接数 {}, 请求数 {}", shared.p50(), shared.p99(), sharedConnections, REQUESTS);
+        log.info("每次新建:   p50 {} ms, p99 {} ms, 连接数 {}, 请求数 {}", fresh.p50(), fresh.p99(), freshConnections, FRESH_REQUESTS);
+
+        Assertions.assertEquals(0, shared.errors());
+        // 连接被复用：连接数不超过并发数，远小于请求数
+        Assertions.assertTrue(sharedConnections <= CONCURRENCY, "连接未复用: " + sharedConnections);
+        Assertions.assertTrue(sharedConnections < freshConnections);
+    }
+
+    private Result run(Supplier<RestClient> clients, int requests) throws Exception {
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        int errors = 0;
+        try (ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                futures.add(pool.submit(() -> {
+                    long start = System.nanoTime();
+                    clients.get().post().uri(PATH).body("{\"input\":{\"texts\":[\"a\"]}}")
+                            .retrieve().body(String.class);
+                    latencies.add((System.nanoTime() - start) / 1_000_000);
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    errors++;
+                }
+            }
+        }
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return new Result(percentile(sorted, 0.5), percentile(sorted, 0.99), errors);
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return -1;
+        }
+        return sorted.get(Math.min(sorted.size() - 1, (int) Math.ceil(p * sorted.size()) - 1));
+    }
+
+    private record Result(long p50, long p99, int errors) {
+    }
+}
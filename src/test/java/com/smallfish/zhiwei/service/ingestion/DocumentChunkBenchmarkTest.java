@@ -0,0 +1,86 @@
+package com.smallfish.zhiwei.service.ingestion;
+
+import com.smallfish.zhiwei.config.DocumentChunkProperties;
+import com.smallfish.zhiwei.dto.model.DocumentChunkDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+/**
+ * 分片性能对比：char 模式 (原实现) vs token 模式 (分割点索引 + 本地分词)
+ * 不启动 Spring 上下文，直接构造 DocumentChunkService
+ */
+@Slf4j
+public class DocumentChunkBenchmarkTest {
+
+    private static final int ROUNDS = 5;
+    private static String largeMarkdown;
+
+    @BeforeAll
+    static void prepare() {
+        // 约 2MB 的运维手册：标题 + 长段落 + 代码块 + 表格
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("## 故障处理 ").append(i).append("\n\n");
+            for (int p = 0; p < 3; p++) {
+                sb.append("当 Redis 内存使用率超过阈值时，首先确认是否存在大 Key，其次检查过期策略是否生效。")
+                        .append("如果主从同步延迟持续升高，需要排查网络带宽，并确认 repl-backlog-size 配置是否足够；")
+                        .append("Check the slowlog first, then inspect the client list for blocked connections. ")
+                        .append("必要时执行主从切换，并通知业务方观察错误率。\n");
+            }
+            sb.append("\n```bash\n# 查看内存\nredis-cli info memory\n# 查看大 Key\nredis-cli --bigkeys\n```\n\n");
+            sb.append("| 指标 | 阈值 | 处理人 |\n| --- | --- | --- |\n| used_memory | 80% | SRE |\n| latency | 100ms | DBA |\n\n");
+        }
+        largeMarkdown = sb.toString();
+    }
+
+    @Test
+    public void compareChunkModes() {
+        DocumentChunkService charChunker = chunker("char");
+        DocumentChunkService tokenChunker = chunker("token");
+
+        // 预热
+        charChunker.chunkDocument(largeMarkdown, "warmup.md");
+        tokenChunker.chunkDocument(largeMarkdown, "warmup.md");
+
+        long charNanos = 0;
+        long tokenNanos = 0;
+        List<DocumentChunkDTO> charChunks = null;
+        List<DocumentChunkDTO> tokenChunks = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            charChunks = charChunker.chunkDocument(largeMarkdown, "bench.md");
+            charNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            tokenChunks = tokenChunker.chunkDocument(largeMarkdown, "bench.md");
+            tokenNanos += System.nanoTime() - start;
+        }
+        log.info("文档长度 {} 字符", largeMarkdown.length());
+        log.info("char  模式: 平均 {} ms, {} 个分片", charNanos / ROUNDS / 1_000_000, charChunks.size());
+        log.info("token 模式: 平均 {} ms, {} 个分片 (含本地分词)", tokenNanos / ROUNDS / 1_000_000, tokenChunks.size());
+
+        // token 模式下代码块不会被切开：每个分片中的围栏数必须成对
+        for (DocumentChunkDTO chunk : tokenChunks) {
+            int fences = chunk.getContent().split("```", -1).length - 1;
+            Assertions.assertEquals(0, fences % 2, "代码块被切开: " + chunk.getContent());
+        }
+    }
+
+    private DocumentChunkService chunker(String mode) {
+        DocumentChunkProperties properties = new DocumentChunkProperties();
+        properties.setMaxSize(800);
+        properties.setOverlap(100);
+        properties.setMode(mode);
+        properties.setMaxTokens(512);
+        properties.setOverlapTokens(64);
+        properties.setHardMaxTokens(2048);
+        DocumentChunkService service = new DocumentChunkService();
+        ReflectionTestUtils.setField(service, "chunkConfig", properties);
+        return service;
+    }
+}